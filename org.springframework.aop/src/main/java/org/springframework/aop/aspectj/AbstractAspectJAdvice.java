@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,13 @@
 
 package org.springframework.aop.aspectj;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.aopalliance.aop.Advice;
 import org.aopalliance.intercept.MethodInvocation;
@@ -30,11 +32,13 @@ import org.aspectj.weaver.tools.JoinPointMatch;
 import org.aspectj.weaver.tools.PointcutParameter;
 
 import org.springframework.aop.AopInvocationException;
+import org.springframework.aop.ClassFilter;
 import org.springframework.aop.MethodMatcher;
 import org.springframework.aop.Pointcut;
 import org.springframework.aop.ProxyMethodInvocation;
 import org.springframework.aop.interceptor.ExposeInvocationInterceptor;
 import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.IndexablePointcut;
 import org.springframework.aop.support.MethodMatchers;
 import org.springframework.aop.support.StaticMethodMatcher;
 import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
@@ -183,10 +187,10 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	 * @see #getPointcut()
 	 */
 	public final Pointcut buildSafePointcut() {
-		Pointcut pc = getPointcut();
+		AspectJExpressionPointcut pc = getPointcut();
 		MethodMatcher safeMethodMatcher = MethodMatchers.intersection(
 				new AdviceExcludingMethodMatcher(this.aspectJAdviceMethod), pc.getMethodMatcher());
-		return new ComposablePointcut(pc.getClassFilter(), safeMethodMatcher);
+		return new SafePointcut(pc.getClassFilter(), safeMethodMatcher, pc);
 	}
 
 	/**
@@ -666,6 +670,38 @@ public abstract class AbstractAspectJAdvice implements Advice, AspectJPrecedence
 	}
 
 
+	/**
+	 * Composed 'safe' pointcut, exposing the annotation types required
+	 * by the original AspectJ expression pointcut - as long as it has
+	 * not been combined with further ClassFilters or MethodMatchers.
+	 * @see AbstractAspectJAdvice#buildSafePointcut()
+	 */
+	private static class SafePointcut extends ComposablePointcut implements IndexablePointcut {
+
+		private final ClassFilter originalClassFilter;
+
+		private final MethodMatcher originalMethodMatcher;
+
+		private final AspectJExpressionPointcut expressionPointcut;
+
+		public SafePointcut(ClassFilter classFilter, MethodMatcher methodMatcher,
+				AspectJExpressionPointcut expressionPointcut) {
+
+			super(classFilter, methodMatcher);
+			this.originalClassFilter = classFilter;
+			this.originalMethodMatcher = methodMatcher;
+			this.expressionPointcut = expressionPointcut;
+		}
+
+		public Set<Class<? extends Annotation>> getRequiredAnnotationTypes() {
+			if (getClassFilter() != this.originalClassFilter || getMethodMatcher() != this.originalMethodMatcher) {
+				return null;
+			}
+			return this.expressionPointcut.getRequiredAnnotationTypes();
+		}
+	}
+
+
 	/**
 	 * MethodMatcher that excludes the specified advice method.
 	 * @see AbstractAspectJAdvice#buildSafePointcut()
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,8 +18,13 @@ package org.springframework.aop.aspectj;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,7 +33,14 @@ import org.aopalliance.intercept.MethodInvocation;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.aspectj.weaver.BCException;
+import org.aspectj.weaver.internal.tools.PointcutExpressionImpl;
+import org.aspectj.weaver.patterns.AndPointcut;
+import org.aspectj.weaver.patterns.AnnotationPointcut;
+import org.aspectj.weaver.patterns.AnnotationTypePattern;
+import org.aspectj.weaver.patterns.ExactAnnotationTypePattern;
 import org.aspectj.weaver.patterns.NamePattern;
+import org.aspectj.weaver.patterns.OrPointcut;
+import org.aspectj.weaver.patterns.WithinAnnotationPointcut;
 import org.aspectj.weaver.reflect.ReflectionWorld;
 import org.aspectj.weaver.reflect.ShadowMatchImpl;
 import org.aspectj.weaver.tools.ContextBasedMatcher;
@@ -50,11 +62,13 @@ import org.springframework.aop.framework.autoproxy.ProxyCreationContext;
 import org.springframework.aop.interceptor.ExposeInvocationInterceptor;
 import org.springframework.aop.support.AbstractExpressionPointcut;
 import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.IndexablePointcut;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
@@ -68,6 +82,12 @@ import org.springframework.util.StringUtils;
  * <p>Naturally, as this is to be processed by Spring AOP's proxy-based model,
  * only method execution pointcuts are supported.
  *
+ * <p>Shadow matches are cached per method. Pointcuts with identical expressions,
+ * declaration scope, parameters and class loader share the same cache,
+ * unless they use the Spring-specific <code>bean()</code> designator.
+ * Pointcuts that require specific annotations expose those as
+ * {@link IndexablePointcut}, for auto-proxy creators to pre-filter on.
+ *
  * @author Rob Harrop
  * @author Adrian Colyer
  * @author Rod Johnson
@@ -76,7 +96,7 @@ import org.springframework.util.StringUtils;
  * @since 2.0
  */
 public class AspectJExpressionPointcut extends AbstractExpressionPointcut
-		implements ClassFilter, IntroductionAwareMethodMatcher, BeanFactoryAware {
+		implements ClassFilter, IntroductionAwareMethodMatcher, IndexablePointcut, BeanFactoryAware {
 
 	private static final Set<PointcutPrimitive> SUPPORTED_PRIMITIVES = new HashSet<PointcutPrimitive>();
 
@@ -94,6 +114,13 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	}
 
 
+	/**
+	 * Shadow match caches shared between pointcut instances with the same key,
+	 * held weakly: they are referenced by the pointcut instances themselves.
+	 */
+	private static final Map<ShadowMatchCacheKey, WeakReference<Map<Method, ShadowMatch>>> sharedShadowMatchCaches =
+			new ConcurrentHashMap<ShadowMatchCacheKey, WeakReference<Map<Method, ShadowMatch>>>(32);
+
 	private static final Log logger = LogFactory.getLog(AspectJExpressionPointcut.class);
 
 	private Class pointcutDeclarationScope;
@@ -108,6 +135,8 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 
 	private transient Map<Method, ShadowMatch> shadowMatchCache = new ConcurrentHashMap<Method, ShadowMatch>(32);
 
+	private transient boolean beanNameDesignatorUsed;
+
 
 	/**
 	 * Create a new default AspectJExpressionPointcut.
@@ -178,15 +207,29 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 			throw new IllegalStateException("Must set property 'expression' before attempting to match");
 		}
 		if (this.pointcutExpression == null) {
-			this.pointcutExpression = buildPointcutExpression();
+			ClassLoader classLoader = determinePointcutClassLoader();
+			PointcutExpression expression = buildPointcutExpression(classLoader);
+			if (!this.beanNameDesignatorUsed) {
+				this.shadowMatchCache = obtainSharedShadowMatchCache(classLoader);
+			}
+			this.pointcutExpression = expression;
 		}
 	}
 
+	/**
+	 * Determine the ClassLoader to use for pointcut evaluation.
+	 */
+	private ClassLoader determinePointcutClassLoader() {
+		return (this.beanFactory instanceof ConfigurableBeanFactory ?
+				((ConfigurableBeanFactory) this.beanFactory).getBeanClassLoader() :
+				Thread.currentThread().getContextClassLoader());
+	}
+
 	/**
 	 * Build the underlying AspectJ pointcut expression.
 	 */
-	private PointcutExpression buildPointcutExpression() {
-		PointcutParser parser = initializePointcutParser();
+	private PointcutExpression buildPointcutExpression(ClassLoader classLoader) {
+		PointcutParser parser = initializePointcutParser(classLoader);
 		PointcutParameter[] pointcutParameters = new PointcutParameter[this.pointcutParameterNames.length];
 		for (int i = 0; i < pointcutParameters.length; i++) {
 			pointcutParameters[i] = parser.createPointcutParameter(
@@ -199,13 +242,10 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	/**
 	 * Initialize the underlying AspectJ pointcut parser.
 	 */
-	private PointcutParser initializePointcutParser() {
-		ClassLoader cl = (this.beanFactory instanceof ConfigurableBeanFactory ?
-				((ConfigurableBeanFactory) this.beanFactory).getBeanClassLoader() :
-				Thread.currentThread().getContextClassLoader());
+	private PointcutParser initializePointcutParser(ClassLoader classLoader) {
 		PointcutParser parser =
 				PointcutParser.getPointcutParserSupportingSpecifiedPrimitivesAndUsingSpecifiedClassLoaderForResolution(
-						SUPPORTED_PRIMITIVES, cl);
+						SUPPORTED_PRIMITIVES, classLoader);
 		parser.registerPointcutDesignatorHandler(new BeanNamePointcutDesignatorHandler());
 		return parser;
 	}
@@ -272,6 +312,15 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		return this.pointcutExpression.mayNeedDynamicTest();
 	}
 
+	public Set<Class<? extends Annotation>> getRequiredAnnotationTypes() {
+		checkReadyToMatch();
+		if (this.pointcutExpression instanceof PointcutExpressionImpl) {
+			return determineRequiredAnnotationTypes(
+					((PointcutExpressionImpl) this.pointcutExpression).getUnderlyingPointcut());
+		}
+		return null;
+	}
+
 	public boolean matches(Method method, Class targetClass, Object[] args) {
 		checkReadyToMatch();
 		ShadowMatch shadowMatch = getShadowMatch(AopUtils.getMostSpecificMethod(method, targetClass), method);
@@ -384,6 +433,81 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		return shadowMatch;
 	}
 
+	/**
+	 * Obtain the shadow match cache shared with other pointcuts that have
+	 * the same expression, declaration scope, parameters and class loader.
+	 */
+	private Map<Method, ShadowMatch> obtainSharedShadowMatchCache(ClassLoader classLoader) {
+		ShadowMatchCacheKey key = new ShadowMatchCacheKey(getExpression(), this.pointcutDeclarationScope,
+				this.pointcutParameterNames, this.pointcutParameterTypes, classLoader);
+		synchronized (sharedShadowMatchCaches) {
+			WeakReference<Map<Method, ShadowMatch>> ref = sharedShadowMatchCaches.get(key);
+			Map<Method, ShadowMatch> cache = (ref != null ? ref.get() : null);
+			if (cache == null) {
+				// Remove stale entries from pointcuts or classes that have been garbage-collected.
+				for (Iterator<Map.Entry<ShadowMatchCacheKey, WeakReference<Map<Method, ShadowMatch>>>> it =
+						sharedShadowMatchCaches.entrySet().iterator(); it.hasNext();) {
+					Map.Entry<ShadowMatchCacheKey, WeakReference<Map<Method, ShadowMatch>>> entry = it.next();
+					if (entry.getValue().get() == null || entry.getKey().isStale()) {
+						it.remove();
+					}
+				}
+				cache = new ConcurrentHashMap<Method, ShadowMatch>(32);
+				sharedShadowMatchCaches.put(key, new WeakReference<Map<Method, ShadowMatch>>(cache));
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Determine the annotation types required by the given AspectJ pointcut:
+	 * through <code>@annotation</code> and <code>@within</code>, possibly combined
+	 * with <code>&&</code> and <code>||</code>. Not considering <code>@this</code>
+	 * and <code>@target</code>, since those may leave a runtime test.
+	 * @return the annotation types, or <code>null</code> if none can be determined
+	 */
+	private Set<Class<? extends Annotation>> determineRequiredAnnotationTypes(
+			org.aspectj.weaver.patterns.Pointcut pointcut) {
+
+		if (pointcut instanceof AndPointcut) {
+			AndPointcut andPointcut = (AndPointcut) pointcut;
+			Set<Class<? extends Annotation>> left = determineRequiredAnnotationTypes(andPointcut.getLeft());
+			return (left != null ? left : determineRequiredAnnotationTypes(andPointcut.getRight()));
+		}
+		if (pointcut instanceof OrPointcut) {
+			OrPointcut orPointcut = (OrPointcut) pointcut;
+			Set<Class<? extends Annotation>> left = determineRequiredAnnotationTypes(orPointcut.getLeft());
+			Set<Class<? extends Annotation>> right = determineRequiredAnnotationTypes(orPointcut.getRight());
+			if (left == null || right == null) {
+				return null;
+			}
+			Set<Class<? extends Annotation>> result = new LinkedHashSet<Class<? extends Annotation>>(left);
+			result.addAll(right);
+			return result;
+		}
+		AnnotationTypePattern annotationTypePattern = null;
+		if (pointcut instanceof AnnotationPointcut) {
+			annotationTypePattern = ((AnnotationPointcut) pointcut).getAnnotationTypePattern();
+		}
+		else if (pointcut instanceof WithinAnnotationPointcut) {
+			annotationTypePattern = ((WithinAnnotationPointcut) pointcut).getAnnotationTypePattern();
+		}
+		if (annotationTypePattern instanceof ExactAnnotationTypePattern) {
+			String typeName = ((ExactAnnotationTypePattern) annotationTypePattern).getAnnotationType().getName();
+			try {
+				Class<?> annotationType = ClassUtils.forName(typeName, determinePointcutClassLoader());
+				if (annotationType.isAnnotation()) {
+					return Collections.<Class<? extends Annotation>>singleton(
+							annotationType.asSubclass(Annotation.class));
+				}
+			}
+			catch (Throwable ex) {
+				logger.debug("Could not resolve annotation type [" + typeName + "] required by pointcut", ex);
+			}
+		}
+		return null;
+	}
+
 
 	@Override
 	public boolean equals(Object other) {
@@ -453,6 +577,7 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 		}
 
 		public ContextBasedMatcher parse(String expression) {
+			beanNameDesignatorUsed = true;
 			return new BeanNameContextMatcher(expression);
 		}
 	}
@@ -530,6 +655,97 @@ public class AspectJExpressionPointcut extends AbstractExpressionPointcut
 	}
 
 
+	/**
+	 * Key for a shared shadow match cache. Holds the declaration scope, the
+	 * parameter types and the class loader weakly, not to prevent them from
+	 * being garbage-collected through the static map. A key becomes stale
+	 * once any of them has been collected, never matching any other key then.
+	 */
+	private static class ShadowMatchCacheKey {
+
+		private final String expression;
+
+		private final WeakReference<Class> declarationScope;
+
+		private final String[] parameterNames;
+
+		private final WeakReference<Class>[] parameterTypes;
+
+		private final WeakReference<ClassLoader> classLoader;
+
+		private final int hashCode;
+
+		@SuppressWarnings("unchecked")
+		public ShadowMatchCacheKey(String expression, Class declarationScope,
+				String[] parameterNames, Class[] parameterTypes, ClassLoader classLoader) {
+
+			this.expression = expression;
+			this.declarationScope = (declarationScope != null ? new WeakReference<Class>(declarationScope) : null);
+			this.parameterNames = parameterNames;
+			this.parameterTypes = new WeakReference[parameterTypes.length];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				this.parameterTypes[i] = new WeakReference<Class>(parameterTypes[i]);
+			}
+			this.classLoader = (classLoader != null ? new WeakReference<ClassLoader>(classLoader) : null);
+			this.hashCode = ObjectUtils.nullSafeHashCode(expression) * 29 + ObjectUtils.nullSafeHashCode(declarationScope);
+		}
+
+		/**
+		 * Return whether any of the classes or the class loader that this key
+		 * refers to has been garbage-collected.
+		 */
+		public boolean isStale() {
+			if (isCleared(this.declarationScope) || isCleared(this.classLoader)) {
+				return true;
+			}
+			for (WeakReference<Class> parameterType : this.parameterTypes) {
+				if (isCleared(parameterType)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean isCleared(WeakReference<?> ref) {
+			return (ref != null && ref.get() == null);
+		}
+
+		private static Object dereference(WeakReference<?> ref) {
+			return (ref != null ? ref.get() : null);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ShadowMatchCacheKey)) {
+				return false;
+			}
+			ShadowMatchCacheKey otherKey = (ShadowMatchCacheKey) other;
+			if (isStale() || otherKey.isStale() ||
+					!ObjectUtils.nullSafeEquals(this.expression, otherKey.expression) ||
+					dereference(this.declarationScope) != dereference(otherKey.declarationScope) ||
+					!ObjectUtils.nullSafeEquals(this.parameterNames, otherKey.parameterNames) ||
+					this.parameterTypes.length != otherKey.parameterTypes.length ||
+					dereference(this.classLoader) != dereference(otherKey.classLoader)) {
+				return false;
+			}
+			for (int i = 0; i < this.parameterTypes.length; i++) {
+				if (dereference(this.parameterTypes[i]) != dereference(otherKey.parameterTypes[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+
 	//---------------------------------------------------------------------
 	// Serialization support
 	//---------------------------------------------------------------------
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.aopalliance.intercept.MethodInterceptor;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Internal framework class, holding the precomputed interception chain
+ * for a method of a frozen proxy configuration: the resolved bridged method,
+ * the chain as List, and - for chains without dynamic method matchers -
+ * the interceptors as array, allowing for dispatch without any type checks.
+ * Also lazily generates a {@link JoinpointInvoker} for the target method,
+ * if the Spring ASM library is available and the method is accessible.
+ *
+ * @since 3.1
+ * @see AdvisedSupport#getAdviceChain
+ * @see ReflectiveMethodInvocation#ReflectiveMethodInvocation(Object, Object, Object[], Class, AdviceChain)
+ */
+final class AdviceChain implements Serializable {
+
+	/** Whether the Spring ASM library is present on the classpath */
+	private static final boolean asmAvailable =
+			ClassUtils.isPresent("org.springframework.asm.ClassWriter", AdviceChain.class.getClassLoader());
+
+
+	transient Method method;
+
+	private final Class<?> declaringClass;
+
+	private final String methodName;
+
+	private final Class[] parameterTypes;
+
+	final List<Object> interceptorsAndDynamicMethodMatchers;
+
+	/** Array of MethodInterceptors, or <code>null</code> if dynamic checks are needed */
+	final MethodInterceptor[] staticInterceptors;
+
+	/** Direct-call invoker for the method, or <code>null</code> for reflective invocation */
+	private transient volatile JoinpointInvoker joinpointInvoker;
+
+	private transient volatile boolean joinpointInvokerResolved;
+
+
+	public AdviceChain(Method method, List<Object> interceptorsAndDynamicMethodMatchers) {
+		this.method = BridgeMethodResolver.findBridgedMethod(method);
+		this.declaringClass = this.method.getDeclaringClass();
+		this.methodName = this.method.getName();
+		this.parameterTypes = this.method.getParameterTypes();
+		this.interceptorsAndDynamicMethodMatchers = interceptorsAndDynamicMethodMatchers;
+		MethodInterceptor[] interceptors = new MethodInterceptor[interceptorsAndDynamicMethodMatchers.size()];
+		for (int i = 0; i < interceptors.length; i++) {
+			Object interceptor = interceptorsAndDynamicMethodMatchers.get(i);
+			if (!(interceptor instanceof MethodInterceptor)) {
+				interceptors = null;
+				break;
+			}
+			interceptors[i] = (MethodInterceptor) interceptor;
+		}
+		this.staticInterceptors = interceptors;
+	}
+
+
+	public boolean isEmpty() {
+		return this.interceptorsAndDynamicMethodMatchers.isEmpty();
+	}
+
+	/**
+	 * Invoke the method on the given target, through the generated invoker
+	 * if available, or reflectively otherwise.
+	 * <p>The invoker gets generated on first invocation, since proxies
+	 * with their own target dispatch (such as CGLIB proxies for public
+	 * methods) never get here.
+	 * <p>If the generated invoker fails because the given target or arguments
+	 * do not match the method's signature (i.e. before the method got called),
+	 * the invocation is retried reflectively, raising the same exceptions as
+	 * a reflective invocation would.
+	 * @see AopUtils#invokeJoinpointUsingReflection
+	 */
+	public Object invokeJoinpoint(Object target, Object[] arguments) throws Throwable {
+		JoinpointInvoker invoker = getJoinpointInvoker();
+		if (invoker != null) {
+			try {
+				return invoker.invoke(target, arguments);
+			}
+			catch (RuntimeException ex) {
+				if (!(ex instanceof ClassCastException || ex instanceof NullPointerException ||
+						ex instanceof ArrayIndexOutOfBoundsException) || matchesSignature(target, arguments)) {
+					// Thrown by the target method itself.
+					throw ex;
+				}
+			}
+		}
+		return AopUtils.invokeJoinpointUsingReflection(target, this.method, arguments);
+	}
+
+	/**
+	 * Check whether the given target and arguments can be passed to the
+	 * generated invoker as-is. A <code>null</code> target is accepted here,
+	 * since a reflective invocation would throw a NullPointerException as well.
+	 */
+	private boolean matchesSignature(Object target, Object[] arguments) {
+		if (target != null && !this.declaringClass.isInstance(target)) {
+			return false;
+		}
+		int argCount = (arguments != null ? arguments.length : 0);
+		if (argCount != this.parameterTypes.length) {
+			return false;
+		}
+		for (int i = 0; i < argCount; i++) {
+			if (!ClassUtils.isAssignableValue(this.parameterTypes[i], arguments[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the generated invoker for the method, generating it if necessary.
+	 * @return the JoinpointInvoker, or <code>null</code> for reflective invocation
+	 */
+	JoinpointInvoker getJoinpointInvoker() {
+		if (!this.joinpointInvokerResolved) {
+			resolveJoinpointInvoker();
+		}
+		return this.joinpointInvoker;
+	}
+
+	private synchronized void resolveJoinpointInvoker() {
+		if (!this.joinpointInvokerResolved) {
+			if (asmAvailable) {
+				this.joinpointInvoker = JoinpointInvokerGenerator.generateInvoker(this.method);
+			}
+			this.joinpointInvokerResolved = true;
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Serialization support
+	//---------------------------------------------------------------------
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		// Rely on default serialization; just initialize state after deserialization.
+		ois.defaultReadObject();
+
+		// Restore reflective handle (which is unfortunately not serializable)
+		try {
+			this.method = this.declaringClass.getDeclaredMethod(this.methodName, this.parameterTypes);
+		}
+		catch (Throwable ex) {
+			throw new IllegalStateException("Could not find original class structure", ex);
+		}
+	}
+
+}
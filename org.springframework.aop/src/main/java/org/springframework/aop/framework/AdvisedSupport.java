@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -82,7 +82,10 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	AdvisorChainFactory advisorChainFactory = new DefaultAdvisorChainFactory();
 
 	/** Cache with Method as key and advisor chain List as value */
-	private transient Map<MethodCacheKey, List<Object>> methodCache;
+	private transient Map<Method, List<Object>> methodCache;
+
+	/** Cache with Method as key and precomputed AdviceChain as value */
+	private transient Map<Method, AdviceChain> adviceChainCache;
 
 	/**
 	 * Interfaces to be implemented by the proxy. Held in List to keep the order
@@ -123,7 +126,8 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 * Initialize the method cache.
 	 */
 	private void initMethodCache() {
-		this.methodCache = new ConcurrentHashMap<MethodCacheKey, List<Object>>(32);
+		this.methodCache = new ConcurrentHashMap<Method, List<Object>>(32);
+		this.adviceChainCache = new ConcurrentHashMap<Method, AdviceChain>(32);
 	}
 
 
@@ -476,12 +480,29 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 * @return List of MethodInterceptors (may also include InterceptorAndDynamicMethodMatchers)
 	 */
 	public List<Object> getInterceptorsAndDynamicInterceptionAdvice(Method method, Class targetClass) {
-		MethodCacheKey cacheKey = new MethodCacheKey(method);
-		List<Object> cached = this.methodCache.get(cacheKey);
+		List<Object> cached = this.methodCache.get(method);
 		if (cached == null) {
 			cached = this.advisorChainFactory.getInterceptorsAndDynamicInterceptionAdvice(
 					this, method, targetClass);
-			this.methodCache.put(cacheKey, cached);
+			this.methodCache.put(method, cached);
+		}
+		return cached;
+	}
+
+	/**
+	 * Determine the precomputed interception chain for the given method,
+	 * based on {@link #getInterceptorsAndDynamicInterceptionAdvice}.
+	 * <p>Used by AOP proxies for {@link #isFrozen() frozen} configurations only,
+	 * where the chain for a method is known to remain the same.
+	 * @param method the proxied method
+	 * @param targetClass the target class
+	 * @return the AdviceChain (never <code>null</code>)
+	 */
+	AdviceChain getAdviceChain(Method method, Class targetClass) {
+		AdviceChain cached = this.adviceChainCache.get(method);
+		if (cached == null) {
+			cached = new AdviceChain(method, getInterceptorsAndDynamicInterceptionAdvice(method, targetClass));
+			this.adviceChainCache.put(method, cached);
 		}
 		return cached;
 	}
@@ -491,6 +512,7 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 	 */
 	protected void adviceChanged() {
 		this.methodCache.clear();
+		this.adviceChainCache.clear();
 	}
 
 	/**
@@ -573,35 +595,4 @@ public class AdvisedSupport extends ProxyConfig implements Advised {
 		return sb.toString();
 	}
 
-
-	/**
-	 * Simple wrapper class around a Method. Used as the key when
-	 * caching methods, for efficient equals and hashCode comparisons.
-	 */
-	private static class MethodCacheKey {
-
-		private final Method method;
-
-		private final int hashCode;
-
-		public MethodCacheKey(Method method) {
-			this.method = method;
-			this.hashCode = method.hashCode();
-		}
-
-		@Override
-		public boolean equals(Object other) {
-			if (other == this) {
-				return true;
-			}
-			MethodCacheKey otherKey = (MethodCacheKey) other;
-			return (this.method == otherKey.method);
-		}
-
-		@Override
-		public int hashCode() {
-			return this.hashCode;
-		}
-	}
-
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,15 +17,20 @@
 package org.springframework.aop.framework;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
 import net.sf.cglib.core.CodeGenerationException;
+import net.sf.cglib.core.ReflectUtils;
 import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.CallbackFilter;
 import net.sf.cglib.proxy.Dispatcher;
@@ -92,6 +97,13 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 	/** Keeps track of the Classes that we have validated for final methods */
 	private static final Map<Class, Boolean> validatedClasses = new WeakHashMap<Class, Boolean>();
 
+	/**
+	 * Generated proxy classes per proxy superclass, keyed by structural proxy configuration.
+	 * Neither keys nor values hold on to the superclass or its ClassLoader.
+	 */
+	private static final Map<Class, Map<ProxyClassKey, Reference<Class>>> proxyClassCache =
+			new WeakHashMap<Class, Map<ProxyClassKey, Reference<Class>>>();
+
 
 	/** The configuration used to configure this proxy */
 	protected final AdvisedSupport advised;
@@ -168,20 +180,22 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 
 			// Configure CGLIB Enhancer...
 			Enhancer enhancer = createEnhancer();
+			boolean useCache = true;
 			if (classLoader != null) {
 				enhancer.setClassLoader(classLoader);
 				if (classLoader instanceof SmartClassLoader &&
 						((SmartClassLoader) classLoader).isClassReloadable(proxySuperClass)) {
 					enhancer.setUseCache(false);
+					useCache = false;
 				}
 			}
+			Class[] interfaces = AopProxyUtils.completeProxiedInterfaces(this.advised);
 			enhancer.setSuperclass(proxySuperClass);
 			enhancer.setStrategy(new UndeclaredThrowableStrategy(UndeclaredThrowableException.class));
-			enhancer.setInterfaces(AopProxyUtils.completeProxiedInterfaces(this.advised));
+			enhancer.setInterfaces(interfaces);
 			enhancer.setInterceptDuringConstruction(false);
 
 			Callback[] callbacks = getCallbacks(rootClass);
-			enhancer.setCallbacks(callbacks);
 			enhancer.setCallbackFilter(new ProxyCallbackFilter(
 					this.advised.getConfigurationOnlyCopy(), this.fixedInterceptorMap, this.fixedInterceptorOffset));
 
@@ -191,16 +205,18 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 			}
 			enhancer.setCallbackTypes(types);
 
-			// Generate the proxy class and create a proxy instance.
-			Object proxy;
-			if (this.constructorArgs != null) {
-				proxy = enhancer.create(this.constructorArgTypes, this.constructorArgs);
+			// Generate the proxy class (or reuse a structurally identical one)
+			// and create a proxy instance.
+			Class proxyClass;
+			if (useCache) {
+				ProxyClassKey key = new ProxyClassKey(classLoader, interfaces, types,
+						getCallbackIndices(proxySuperClass, interfaces));
+				proxyClass = getProxyClass(enhancer, proxySuperClass, key);
 			}
 			else {
-				proxy = enhancer.create();
+				proxyClass = enhancer.createClass();
 			}
-
-			return proxy;
+			return createProxyInstance(proxyClass, callbacks);
 		}
 		catch (CodeGenerationException ex) {
 			throw new AopConfigException("Could not generate CGLIB subclass of class [" +
@@ -228,6 +244,70 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 		return new Enhancer();
 	}
 
+	/**
+	 * Determine the callback index that the {@link ProxyCallbackFilter} assigns
+	 * to each method that CGLIB will consider for the given proxy structure.
+	 * <p>Together with the proxied interfaces and callback types, this signature
+	 * fully determines the generated proxy class - independent of the identity
+	 * of the advisors and pointcuts that led to it.
+	 */
+	private int[] getCallbackIndices(Class proxySuperClass, Class[] interfaces) {
+		List<Method> methods = new ArrayList<Method>();
+		Enhancer.getMethods(proxySuperClass, interfaces, methods);
+		CallbackFilter filter =
+				new ProxyCallbackFilter(this.advised, this.fixedInterceptorMap, this.fixedInterceptorOffset);
+		int[] indices = new int[methods.size()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = filter.accept(methods.get(i));
+		}
+		return indices;
+	}
+
+	/**
+	 * Obtain the proxy class for the given structural key, generating it
+	 * through the given Enhancer if no identical proxy class has been
+	 * generated for the proxy superclass before.
+	 */
+	private Class getProxyClass(Enhancer enhancer, Class proxySuperClass, ProxyClassKey key) {
+		synchronized (proxyClassCache) {
+			Map<ProxyClassKey, Reference<Class>> proxyClasses = proxyClassCache.get(proxySuperClass);
+			if (proxyClasses == null) {
+				proxyClasses = new HashMap<ProxyClassKey, Reference<Class>>();
+				proxyClassCache.put(proxySuperClass, proxyClasses);
+			}
+			Reference<Class> ref = proxyClasses.get(key);
+			Class proxyClass = (ref != null ? ref.get() : null);
+			if (proxyClass == null) {
+				proxyClass = enhancer.createClass();
+				proxyClasses.put(key, new WeakReference<Class>(proxyClass));
+			}
+			else if (logger.isDebugEnabled()) {
+				logger.debug("Reusing CGLIB2 proxy class [" + proxyClass.getName() + "]");
+			}
+			return proxyClass;
+		}
+	}
+
+	/**
+	 * Instantiate the given proxy class, binding the given callbacks
+	 * to the new instance.
+	 */
+	private Object createProxyInstance(Class proxyClass, Callback[] callbacks) {
+		Enhancer.registerCallbacks(proxyClass, callbacks);
+		try {
+			if (this.constructorArgs != null) {
+				return ReflectUtils.newInstance(proxyClass, this.constructorArgTypes, this.constructorArgs);
+			}
+			else {
+				return ReflectUtils.newInstance(proxyClass);
+			}
+		}
+		finally {
+			// Unbind the callbacks from the current thread again.
+			Enhancer.registerCallbacks(proxyClass, null);
+		}
+	}
+
 	/**
 	 * Checks to see whether the supplied <code>Class</code> has already been validated and
 	 * validates it if not.
@@ -307,7 +387,7 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 			// TODO: small memory optimisation here (can skip creation for
 			// methods with no advice)
 			for (int x = 0; x < methods.length; x++) {
-				List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(methods[x], rootClass);
+				AdviceChain chain = this.advised.getAdviceChain(methods[x], rootClass);
 				fixedCallbacks[x] = new FixedChainStaticTargetInterceptor(
 						chain, this.advised.getTargetSource().getTarget(), this.advised.getTargetClass());
 				this.fixedInterceptorMap.put(methods[x].toString(), x);
@@ -553,13 +633,13 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 	 */
 	private static class FixedChainStaticTargetInterceptor implements MethodInterceptor, Serializable {
 
-		private final List<Object> adviceChain;
+		private final AdviceChain adviceChain;
 
 		private final Object target;
 
 		private final Class targetClass;
 
-		public FixedChainStaticTargetInterceptor(List<Object> adviceChain, Object target, Class targetClass) {
+		public FixedChainStaticTargetInterceptor(AdviceChain adviceChain, Object target, Class targetClass) {
 			this.adviceChain = adviceChain;
 			this.target = target;
 			this.targetClass = targetClass;
@@ -605,8 +685,19 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 				if (target != null) {
 					targetClass = target.getClass();
 				}
-				List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
 				Object retVal;
+				if (this.advised.isFrozen()) {
+					// Precomputed interception chain for this method.
+					AdviceChain chain = this.advised.getAdviceChain(method, targetClass);
+					if (chain.isEmpty() && Modifier.isPublic(method.getModifiers())) {
+						retVal = methodProxy.invoke(target, args);
+					}
+					else {
+						retVal = new CglibMethodInvocation(proxy, target, method, args, targetClass, chain, methodProxy).proceed();
+					}
+					return massageReturnTypeIfNecessary(proxy, target, method, retVal);
+				}
+				List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
 				// Check whether we only have one InvokerInterceptor: that is,
 				// no real advice, but just reflective invocation of the target.
 				if (chain.isEmpty() && Modifier.isPublic(method.getModifiers())) {
@@ -675,6 +766,13 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 			this.protectedMethod = Modifier.isProtected(method.getModifiers());
 		}
 
+		public CglibMethodInvocation(Object proxy, Object target, Method method, Object[] arguments,
+				Class targetClass, AdviceChain adviceChain, MethodProxy methodProxy) {
+			super(proxy, target, arguments, targetClass, adviceChain);
+			this.methodProxy = methodProxy;
+			this.protectedMethod = Modifier.isProtected(method.getModifiers());
+		}
+
 		/**
 		 * Gives a marginal performance improvement versus using reflection to
 		 * invoke the target when invoking public methods.
@@ -691,6 +789,66 @@ final class Cglib2AopProxy implements AopProxy, Serializable {
 	}
 
 
+	/**
+	 * Structural key for a generated proxy class: the ClassLoader to define it in,
+	 * the proxied interfaces, the callback types and the callback index assigned
+	 * to each proxied method. Interfaces are held by name and the ClassLoader
+	 * weakly, in order to not keep application classes alive through the cache.
+	 */
+	private static final class ProxyClassKey {
+
+		private final Reference<ClassLoader> classLoader;
+
+		private final String[] interfaceNames;
+
+		private final Class[] callbackTypes;
+
+		private final int[] callbackIndices;
+
+		private final int hashCode;
+
+		public ProxyClassKey(ClassLoader classLoader, Class[] interfaces, Class[] callbackTypes, int[] callbackIndices) {
+			this.classLoader = (classLoader != null ? new WeakReference<ClassLoader>(classLoader) : null);
+			this.interfaceNames = new String[interfaces.length];
+			for (int i = 0; i < interfaces.length; i++) {
+				this.interfaceNames[i] = interfaces[i].getName();
+			}
+			this.callbackTypes = callbackTypes;
+			this.callbackIndices = callbackIndices;
+			int hashCode = System.identityHashCode(classLoader);
+			hashCode = 29 * hashCode + Arrays.hashCode(this.interfaceNames);
+			hashCode = 29 * hashCode + Arrays.hashCode(this.callbackTypes);
+			hashCode = 29 * hashCode + Arrays.hashCode(this.callbackIndices);
+			this.hashCode = hashCode;
+		}
+
+		private ClassLoader getClassLoader() {
+			return (this.classLoader != null ? this.classLoader.get() : null);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ProxyClassKey)) {
+				return false;
+			}
+			ProxyClassKey otherKey = (ProxyClassKey) other;
+			return (getClassLoader() == otherKey.getClassLoader() &&
+					(this.classLoader == null) == (otherKey.classLoader == null) &&
+					Arrays.equals(this.interfaceNames, otherKey.interfaceNames) &&
+					Arrays.equals(this.callbackTypes, otherKey.callbackTypes) &&
+					Arrays.equals(this.callbackIndices, otherKey.callbackIndices));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+
 	/**
 	 * CallbackFilter to assign Callbacks to methods.
 	 */
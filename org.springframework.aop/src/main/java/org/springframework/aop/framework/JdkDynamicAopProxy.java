@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -184,6 +184,19 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 				targetClass = target.getClass();
 			}
 
+			if (this.advised.isFrozen()) {
+				// Precomputed interception chain for this method.
+				AdviceChain chain = this.advised.getAdviceChain(method, targetClass);
+				if (chain.isEmpty()) {
+					retVal = chain.invokeJoinpoint(target, args);
+				}
+				else {
+					invocation = new ReflectiveMethodInvocation(proxy, target, args, targetClass, chain);
+					retVal = invocation.proceed();
+				}
+				return massageReturnValueIfNecessary(proxy, target, method, retVal);
+			}
+
 			// Get the interception chain for this method.
 			List<Object> chain = this.advised.getInterceptorsAndDynamicInterceptionAdvice(method, targetClass);
 
@@ -202,15 +215,7 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 				retVal = invocation.proceed();
 			}
 
-			// Massage return value if necessary.
-			if (retVal != null && retVal == target && method.getReturnType().isInstance(proxy) &&
-					!RawTargetAccess.class.isAssignableFrom(method.getDeclaringClass())) {
-				// Special case: it returned "this" and the return type of the method
-				// is type-compatible. Note that we can't help if the target sets
-				// a reference to itself in another returned object.
-				retVal = proxy;
-			}
-			return retVal;
+			return massageReturnValueIfNecessary(proxy, target, method, retVal);
 		}
 		finally {
 			if (target != null && !targetSource.isStatic()) {
@@ -225,6 +230,22 @@ final class JdkDynamicAopProxy implements AopProxy, InvocationHandler, Serializa
 	}
 
 
+	/**
+	 * Massage the return value if necessary: replace the target with the proxy
+	 * in case of a method returning "this".
+	 */
+	private static Object massageReturnValueIfNecessary(Object proxy, Object target, Method method, Object retVal) {
+		if (retVal != null && retVal == target && method.getReturnType().isInstance(proxy) &&
+				!RawTargetAccess.class.isAssignableFrom(method.getDeclaringClass())) {
+			// Special case: it returned "this" and the return type of the method
+			// is type-compatible. Note that we can't help if the target sets
+			// a reference to itself in another returned object.
+			return proxy;
+		}
+		return retVal;
+	}
+
+
 	/**
 	 * Equality means interfaces, advisors and TargetSource are equal.
 	 * <p>The compared object may be a JdkDynamicAopProxy instance itself
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework;
+
+/**
+ * Strategy for invoking the target method of a proxied invocation,
+ * bound to a specific method.
+ *
+ * <p>Implementations are generated by the framework as direct-call stubs
+ * for frozen proxy configurations; see {@link JoinpointInvokerGenerator}.
+ * Only public for the generated classes to be able to implement it.
+ *
+ * @since 3.1
+ * @see ReflectiveMethodInvocation#invokeJoinpoint()
+ */
+public interface JoinpointInvoker {
+
+	/**
+	 * Invoke the method that this invoker is bound to on the given target.
+	 * <p>Exceptions thrown by the target method are propagated as-is,
+	 * i.e. not wrapped in an InvocationTargetException.
+	 * @param target the target object to invoke the method on
+	 * @param arguments the arguments to pass in
+	 * @return the return value of the method, with primitive values
+	 * as their wrapper objects, or <code>null</code> for a void method
+	 * @throws Throwable if thrown by the target method
+	 */
+	Object invoke(Object target, Object[] arguments) throws Throwable;
+
+}
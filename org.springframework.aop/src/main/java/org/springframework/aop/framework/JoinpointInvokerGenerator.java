@@ -0,0 +1,254 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Generates {@link JoinpointInvoker} implementations that call a specific
+ * target method directly, through an <code>invokevirtual</code> or
+ * <code>invokeinterface</code> instruction, instead of going through
+ * <code>Method.invoke</code>.
+ *
+ * <p>Only applies to public methods declared on public types, with public
+ * parameter types: i.e. methods that can be linked from outside of their
+ * package. The invoker classes for the methods of a given class are defined
+ * in a common class loader, as a child of that class's loader, so that they
+ * can be garbage collected along with the proxy configurations that hold them.
+ *
+ * <p>Requires the Spring ASM library on the class path.
+ *
+ * @since 3.1
+ * @see AdviceChain
+ */
+abstract class JoinpointInvokerGenerator implements Opcodes {
+
+	private static final String INVOKER_CLASS_NAME_PREFIX = JoinpointInvoker.class.getName() + "$$Generated$$";
+
+	private static final String OBJECT_INTERNAL_NAME = Type.getInternalName(Object.class);
+
+	private static final String INVOKE_METHOD_DESCRIPTOR =
+			Type.getMethodDescriptor(Type.getType(Object.class), new Type[] {
+					Type.getType(Object.class), Type.getType(Object[].class)});
+
+	private static final Log logger = LogFactory.getLog(JoinpointInvokerGenerator.class);
+
+	private static final AtomicInteger invokerClassCount = new AtomicInteger();
+
+	/**
+	 * Invoker class loaders per declaring class, referenced weakly since every
+	 * generated invoker keeps its loader (and hence the declaring class) alive.
+	 * Each loader caches the invokers generated for the methods of its class.
+	 */
+	private static final Map<Class, WeakReference<InvokerClassLoader>> invokerClassLoaders =
+			new WeakHashMap<Class, WeakReference<InvokerClassLoader>>();
+
+
+	/**
+	 * Generate a direct-call JoinpointInvoker for the given method, if possible.
+	 * <p>The invoker for a given method is generated once and shared, as long
+	 * as it is referenced by any proxy configuration.
+	 * @param method the method to invoke
+	 * @return the JoinpointInvoker, or <code>null</code> if the method
+	 * cannot be invoked through a generated stub (to be invoked reflectively then)
+	 */
+	public static JoinpointInvoker generateInvoker(Method method) {
+		if (!isDirectlyInvocable(method)) {
+			return null;
+		}
+		try {
+			return getInvokerClassLoader(method.getDeclaringClass()).getInvoker(method);
+		}
+		catch (Throwable ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Could not generate JoinpointInvoker for method [" + method +
+						"] - falling back to reflective invocation", ex);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Obtain the class loader to define invoker classes for methods of the
+	 * given class in, creating it if necessary.
+	 */
+	private static InvokerClassLoader getInvokerClassLoader(Class declaringClass) {
+		synchronized (invokerClassLoaders) {
+			WeakReference<InvokerClassLoader> ref = invokerClassLoaders.get(declaringClass);
+			InvokerClassLoader classLoader = (ref != null ? ref.get() : null);
+			if (classLoader == null) {
+				classLoader = new InvokerClassLoader(declaringClass.getClassLoader());
+				invokerClassLoaders.put(declaringClass, new WeakReference<InvokerClassLoader>(classLoader));
+			}
+			return classLoader;
+		}
+	}
+
+	/**
+	 * Determine whether the given method can be called from a generated class
+	 * in a different package and class loader.
+	 */
+	private static boolean isDirectlyInvocable(Method method) {
+		int modifiers = method.getModifiers();
+		if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) ||
+				!isPublicType(method.getDeclaringClass())) {
+			return false;
+		}
+		for (Class paramType : method.getParameterTypes()) {
+			if (!isPublicType(paramType)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isPublicType(Class clazz) {
+		while (clazz.isArray()) {
+			clazz = clazz.getComponentType();
+		}
+		return (clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers()));
+	}
+
+	/**
+	 * Generate the bytecode for an invoker class with the given name,
+	 * calling the given method.
+	 */
+	private static byte[] generateInvokerClass(String internalClassName, Method method) {
+		ClassWriter cw = new ClassWriter(true);
+		cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalClassName, null, OBJECT_INTERNAL_NAME,
+				new String[] {Type.getInternalName(JoinpointInvoker.class)});
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, OBJECT_INTERNAL_NAME, "<init>", "()V");
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(ACC_PUBLIC, "invoke", INVOKE_METHOD_DESCRIPTOR, null,
+				new String[] {Type.getInternalName(Throwable.class)});
+		mv.visitCode();
+		Class declaringClass = method.getDeclaringClass();
+		String owner = Type.getInternalName(declaringClass);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitTypeInsn(CHECKCAST, owner);
+		Class[] paramTypes = method.getParameterTypes();
+		for (int i = 0; i < paramTypes.length; i++) {
+			mv.visitVarInsn(ALOAD, 2);
+			pushInt(mv, i);
+			mv.visitInsn(AALOAD);
+			unboxOrCast(mv, paramTypes[i]);
+		}
+		mv.visitMethodInsn((declaringClass.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL),
+				owner, method.getName(), Type.getMethodDescriptor(method));
+		boxReturnValue(mv, method.getReturnType());
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static void pushInt(MethodVisitor mv, int value) {
+		if (value <= 5) {
+			mv.visitInsn(ICONST_0 + value);
+		}
+		else if (value <= Byte.MAX_VALUE) {
+			mv.visitIntInsn(BIPUSH, value);
+		}
+		else {
+			mv.visitIntInsn(SIPUSH, value);
+		}
+	}
+
+	private static void unboxOrCast(MethodVisitor mv, Class type) {
+		if (type.isPrimitive()) {
+			Type wrapperType = Type.getType(ClassUtils.resolvePrimitiveIfNecessary(type));
+			mv.visitTypeInsn(CHECKCAST, wrapperType.getInternalName());
+			mv.visitMethodInsn(INVOKEVIRTUAL, wrapperType.getInternalName(), type.getName() + "Value",
+					Type.getMethodDescriptor(Type.getType(type), new Type[0]));
+		}
+		else if (!Object.class.equals(type)) {
+			mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+		}
+	}
+
+	private static void boxReturnValue(MethodVisitor mv, Class type) {
+		if (void.class.equals(type)) {
+			mv.visitInsn(ACONST_NULL);
+		}
+		else if (type.isPrimitive()) {
+			Type wrapperType = Type.getType(ClassUtils.resolvePrimitiveIfNecessary(type));
+			mv.visitMethodInsn(INVOKESTATIC, wrapperType.getInternalName(), "valueOf",
+					Type.getMethodDescriptor(wrapperType, new Type[] {Type.getType(type)}));
+		}
+	}
+
+
+	/**
+	 * ClassLoader for the generated invoker classes of one declaring class,
+	 * delegating to that class's loader while exposing the JoinpointInvoker interface.
+	 * Holds the invoker instances per method, for reuse across proxy configurations.
+	 */
+	private static class InvokerClassLoader extends ClassLoader {
+
+		private final Map<Method, JoinpointInvoker> invokers = new HashMap<Method, JoinpointInvoker>();
+
+		public InvokerClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (JoinpointInvoker.class.getName().equals(name)) {
+				return JoinpointInvoker.class;
+			}
+			return super.loadClass(name, resolve);
+		}
+
+		public JoinpointInvoker getInvoker(Method method) throws Exception {
+			synchronized (this.invokers) {
+				JoinpointInvoker invoker = this.invokers.get(method);
+				if (invoker == null) {
+					String className = INVOKER_CLASS_NAME_PREFIX + invokerClassCount.incrementAndGet();
+					byte[] bytes = generateInvokerClass(className.replace('.', '/'), method);
+					invoker = (JoinpointInvoker) defineClass(className, bytes, 0, bytes.length).newInstance();
+					this.invokers.put(method, invoker);
+				}
+				return invoker;
+			}
+		}
+	}
+
+}
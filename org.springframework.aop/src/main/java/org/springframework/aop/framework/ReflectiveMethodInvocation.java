@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -81,6 +81,18 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 	 */
 	protected final List interceptorsAndDynamicMethodMatchers;
 
+	/**
+	 * Precomputed array of MethodInterceptors for a chain without
+	 * dynamic checks, or <code>null</code> for dispatch through the List.
+	 */
+	private final MethodInterceptor[] staticInterceptors;
+
+	/**
+	 * Precomputed chain for the method, providing a generated invoker
+	 * for the target method, or <code>null</code> for reflective invocation.
+	 */
+	private final AdviceChain adviceChain;
+
 	/**
 	 * Index from 0 of the current interceptor we're invoking.
 	 * -1 until we invoke: then the current interceptor.
@@ -111,6 +123,31 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 		this.method = BridgeMethodResolver.findBridgedMethod(method);
 		this.arguments = arguments;
 		this.interceptorsAndDynamicMethodMatchers = interceptorsAndDynamicMethodMatchers;
+		this.staticInterceptors = null;
+		this.adviceChain = null;
+	}
+
+	/**
+	 * Construct a new ReflectiveMethodInvocation for the given precomputed chain,
+	 * avoiding any per-invocation work for resolving the method and dispatching
+	 * to the interceptors.
+	 * @param proxy the proxy object that the invocation was made on
+	 * @param target the target object to invoke
+	 * @param arguments the arguments to invoke the method with
+	 * @param targetClass the target class, for MethodMatcher invocations
+	 * @param adviceChain the precomputed chain for the method to invoke
+	 */
+	ReflectiveMethodInvocation(
+			Object proxy, Object target, Object[] arguments, Class targetClass, AdviceChain adviceChain) {
+
+		this.proxy = proxy;
+		this.target = target;
+		this.targetClass = targetClass;
+		this.method = adviceChain.method;
+		this.arguments = arguments;
+		this.interceptorsAndDynamicMethodMatchers = adviceChain.interceptorsAndDynamicMethodMatchers;
+		this.staticInterceptors = adviceChain.staticInterceptors;
+		this.adviceChain = adviceChain;
 	}
 
 
@@ -145,6 +182,14 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 
 
 	public Object proceed() throws Throwable {
+		if (this.staticInterceptors != null) {
+			// Precomputed chain without dynamic checks.
+			if (this.currentInterceptorIndex == this.staticInterceptors.length - 1) {
+				return invokeJoinpoint();
+			}
+			return this.staticInterceptors[++this.currentInterceptorIndex].invoke(this);
+		}
+
 		//	We start with an index of -1 and increment early.
 		if (this.currentInterceptorIndex == this.interceptorsAndDynamicMethodMatchers.size() - 1) {
 			return invokeJoinpoint();
@@ -174,12 +219,16 @@ public class ReflectiveMethodInvocation implements ProxyMethodInvocation, Clonea
 	}
 
 	/**
-	 * Invoke the joinpoint using reflection.
+	 * Invoke the joinpoint using reflection, or through a generated
+	 * {@link JoinpointInvoker} for a precomputed chain.
 	 * Subclasses can override this to use custom invocation.
 	 * @return the return value of the joinpoint
 	 * @throws Throwable if invoking the joinpoint resulted in an exception
 	 */
 	protected Object invokeJoinpoint() throws Throwable {
+		if (this.adviceChain != null) {
+			return this.adviceChain.invokeJoinpoint(this.target, this.arguments);
+		}
 		return AopUtils.invokeJoinpointUsingReflection(this.target, this.method, this.arguments);
 	}
 
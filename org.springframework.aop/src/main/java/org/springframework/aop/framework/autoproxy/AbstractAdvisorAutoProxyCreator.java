@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,6 +40,11 @@ import org.springframework.core.OrderComparator;
  * Ordered interface will be considered as unordered; they will appear
  * at the end of the advisor chain in undefined order.
  *
+ * <p>Candidate Advisors whose pointcuts require specific annotations
+ * (see {@link org.springframework.aop.support.IndexablePointcut}) are
+ * pre-filtered per bean class through an index, built once for a given
+ * set of candidate Advisors.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #findCandidateAdvisors
@@ -48,6 +53,8 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 
 	private BeanFactoryAdvisorRetrievalHelper advisorRetrievalHelper;
 
+	private volatile CandidateAdvisorIndex candidateAdvisorIndex;
+
 
 	@Override
 	public void setBeanFactory(BeanFactory beanFactory) {
@@ -103,6 +110,8 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 	/**
 	 * Search the given candidate Advisors to find all Advisors that
 	 * can apply to the specified bean.
+	 * <p>Only evaluates the Advisors that remain candidates for the bean class
+	 * according to the index of required annotation types.
 	 * @param candidateAdvisors the candidate Advisors
 	 * @param beanClass the target's bean class
 	 * @param beanName the target's bean name
@@ -114,7 +123,12 @@ public abstract class AbstractAdvisorAutoProxyCreator extends AbstractAutoProxyC
 
 		ProxyCreationContext.setCurrentProxiedBeanName(beanName);
 		try {
-			return AopUtils.findAdvisorsThatCanApply(candidateAdvisors, beanClass);
+			CandidateAdvisorIndex index = this.candidateAdvisorIndex;
+			if (index == null || !index.isIndexFor(candidateAdvisors)) {
+				index = new CandidateAdvisorIndex(candidateAdvisors);
+				this.candidateAdvisorIndex = index;
+			}
+			return AopUtils.findAdvisorsThatCanApply(index.getCandidateAdvisors(beanClass), beanClass);
 		}
 		finally {
 			ProxyCreationContext.setCurrentProxiedBeanName(null);
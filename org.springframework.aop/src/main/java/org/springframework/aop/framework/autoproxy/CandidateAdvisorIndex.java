@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework.autoproxy;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.PointcutAdvisor;
+import org.springframework.aop.support.IndexablePointcut;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Index over a given list of candidate Advisors, built once: records the
+ * annotation types required by {@link IndexablePointcut IndexablePointcuts},
+ * for narrowing the candidates for a specific bean class before the actual
+ * pointcuts get evaluated. Advisors without such requirements always remain
+ * candidates.
+ *
+ * @since 3.1
+ * @see AbstractAdvisorAutoProxyCreator#findAdvisorsThatCanApply
+ */
+final class CandidateAdvisorIndex {
+
+	private static final Log logger = LogFactory.getLog(CandidateAdvisorIndex.class);
+
+	private final List<Advisor> advisors;
+
+	/** Required annotation types per Advisor, or null entries for Advisors without requirements */
+	private final List<Set<Class<? extends Annotation>>> requiredAnnotationTypes;
+
+	private final boolean indexed;
+
+
+	public CandidateAdvisorIndex(List<Advisor> advisors) {
+		this.advisors = new ArrayList<Advisor>(advisors);
+		this.requiredAnnotationTypes = new ArrayList<Set<Class<? extends Annotation>>>(advisors.size());
+		boolean indexed = false;
+		for (Advisor advisor : advisors) {
+			Set<Class<? extends Annotation>> annotationTypes = determineRequiredAnnotationTypes(advisor);
+			this.requiredAnnotationTypes.add(annotationTypes);
+			indexed |= (annotationTypes != null);
+		}
+		this.indexed = indexed;
+	}
+
+	private static Set<Class<? extends Annotation>> determineRequiredAnnotationTypes(Advisor advisor) {
+		if (advisor instanceof PointcutAdvisor) {
+			Object pointcut = ((PointcutAdvisor) advisor).getPointcut();
+			if (pointcut instanceof IndexablePointcut) {
+				try {
+					return ((IndexablePointcut) pointcut).getRequiredAnnotationTypes();
+				}
+				catch (RuntimeException ex) {
+					// Leave it up to the actual pointcut evaluation to report the problem.
+					logger.debug("Could not determine required annotation types for advisor [" + advisor + "]", ex);
+				}
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Determine whether this index has been built for the given Advisors,
+	 * i.e. for the same Advisor instances in the same order.
+	 */
+	public boolean isIndexFor(List<Advisor> advisors) {
+		if (advisors.size() != this.advisors.size()) {
+			return false;
+		}
+		for (int i = 0; i < advisors.size(); i++) {
+			if (advisors.get(i) != this.advisors.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the Advisors that may apply to the given bean class,
+	 * in their original order.
+	 * @param beanClass the target's bean class
+	 * @return the candidate Advisors (to be evaluated against the bean class)
+	 */
+	public List<Advisor> getCandidateAdvisors(Class beanClass) {
+		if (!this.indexed) {
+			return this.advisors;
+		}
+		Set<Class<? extends Annotation>> presentAnnotationTypes;
+		try {
+			presentAnnotationTypes = collectAnnotationTypes(beanClass);
+		}
+		catch (Throwable ex) {
+			// Probably a class with unresolvable method signatures:
+			// leave it up to the actual pointcut evaluation.
+			logger.debug("Could not introspect annotations of bean class [" + beanClass.getName() + "]", ex);
+			return this.advisors;
+		}
+		List<Advisor> candidates = new ArrayList<Advisor>(this.advisors.size());
+		for (int i = 0; i < this.advisors.size(); i++) {
+			Set<Class<? extends Annotation>> required = this.requiredAnnotationTypes.get(i);
+			if (required == null || containsAny(presentAnnotationTypes, required)) {
+				candidates.add(this.advisors.get(i));
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Collect all annotation types present on the given class, its superclasses
+	 * and interfaces, and their declared methods - including meta-annotations.
+	 */
+	private static Set<Class<? extends Annotation>> collectAnnotationTypes(Class beanClass) {
+		Set<Class> types = new LinkedHashSet<Class>();
+		for (Class clazz = beanClass; clazz != null; clazz = clazz.getSuperclass()) {
+			types.add(clazz);
+		}
+		types.addAll(ClassUtils.getAllInterfacesForClassAsSet(beanClass));
+		Set<Class<? extends Annotation>> result = new HashSet<Class<? extends Annotation>>();
+		for (Class type : types) {
+			addAnnotationTypes(type.getAnnotations(), result);
+			for (Method method : type.getDeclaredMethods()) {
+				addAnnotationTypes(method.getAnnotations(), result);
+			}
+		}
+		return result;
+	}
+
+	private static void addAnnotationTypes(Annotation[] annotations, Set<Class<? extends Annotation>> result) {
+		for (Annotation annotation : annotations) {
+			Class<? extends Annotation> annotationType = annotation.annotationType();
+			if (result.add(annotationType)) {
+				addAnnotationTypes(annotationType.getAnnotations(), result);
+			}
+		}
+	}
+
+	private static boolean containsAny(Set<Class<? extends Annotation>> present,
+			Set<Class<? extends Annotation>> candidates) {
+
+		for (Class<? extends Annotation> candidate : candidates) {
+			if (present.contains(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
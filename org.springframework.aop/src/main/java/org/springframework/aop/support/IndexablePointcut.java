@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.support;
+
+import java.lang.annotation.Annotation;
+import java.util.Set;
+
+/**
+ * Interface to be implemented by pointcuts that can only ever match
+ * if specific annotations are present on the target class or its methods.
+ *
+ * <p>Allows auto-proxy creators to pre-filter their candidate advisors per
+ * target class through an index, without evaluating the pointcut itself.
+ * This is an optimization only: the pointcut's ClassFilter and MethodMatcher
+ * remain the authoritative criteria for the actual match.
+ *
+ * @since 3.1
+ * @see org.springframework.aop.framework.autoproxy.AbstractAdvisorAutoProxyCreator#findAdvisorsThatCanApply
+ */
+public interface IndexablePointcut {
+
+	/**
+	 * Return the annotation types at least one of which needs to be present
+	 * on the target class, its superclasses or interfaces, or one of their
+	 * methods - either directly or as meta-annotation - for this pointcut
+	 * to be able to match.
+	 * @return the annotation types, or <code>null</code> if this pointcut
+	 * may match classes without any specific annotation
+	 */
+	Set<Class<? extends Annotation>> getRequiredAnnotationTypes();
+
+}
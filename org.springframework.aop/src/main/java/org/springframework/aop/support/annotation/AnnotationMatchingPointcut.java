@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,10 +17,13 @@
 package org.springframework.aop.support.annotation;
 
 import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Set;
 
 import org.springframework.aop.ClassFilter;
 import org.springframework.aop.MethodMatcher;
 import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.IndexablePointcut;
 import org.springframework.util.Assert;
 
 /**
@@ -33,12 +36,14 @@ import org.springframework.util.Assert;
  * @see AnnotationClassFilter
  * @see AnnotationMethodMatcher
  */
-public class AnnotationMatchingPointcut implements Pointcut {
+public class AnnotationMatchingPointcut implements Pointcut, IndexablePointcut {
 
 	private final ClassFilter classFilter;
 
 	private final MethodMatcher methodMatcher;
 
+	private final Class<? extends Annotation> requiredAnnotationType;
+
 
 	/**
 	 * Create a new AnnotationMatchingPointcut for the given annotation type.
@@ -47,6 +52,7 @@ public class AnnotationMatchingPointcut implements Pointcut {
 	public AnnotationMatchingPointcut(Class<? extends Annotation> classAnnotationType) {
 		this.classFilter = new AnnotationClassFilter(classAnnotationType);
 		this.methodMatcher = MethodMatcher.TRUE;
+		this.requiredAnnotationType = classAnnotationType;
 	}
 
 	/**
@@ -59,6 +65,7 @@ public class AnnotationMatchingPointcut implements Pointcut {
 	public AnnotationMatchingPointcut(Class<? extends Annotation> classAnnotationType, boolean checkInherited) {
 		this.classFilter = new AnnotationClassFilter(classAnnotationType, checkInherited);
 		this.methodMatcher = MethodMatcher.TRUE;
+		this.requiredAnnotationType = classAnnotationType;
 	}
 
 	/**
@@ -87,6 +94,9 @@ public class AnnotationMatchingPointcut implements Pointcut {
 		else {
 			this.methodMatcher = MethodMatcher.TRUE;
 		}
+
+		// Either annotation needs to be present; the method-level one is more selective.
+		this.requiredAnnotationType = (methodAnnotationType != null ? methodAnnotationType : classAnnotationType);
 	}
 
 
@@ -98,6 +108,10 @@ public class AnnotationMatchingPointcut implements Pointcut {
 		return this.methodMatcher;
 	}
 
+	public Set<Class<? extends Annotation>> getRequiredAnnotationTypes() {
+		return Collections.<Class<? extends Annotation>>singleton(this.requiredAnnotationType);
+	}
+
 
 	/**
 	 * Factory method for an AnnotationMatchingPointcut that matches
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2005 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,17 +16,29 @@
 
 package org.springframework.aop.aspectj;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import org.springframework.util.ReflectionUtils;
+
 import test.annotation.EmptySpringAnnotation;
 import test.annotation.transaction.Tx;
 import test.beans.TestBean;
@@ -239,6 +251,52 @@ public final class TigerAspectJExpressionPointcutTests {
 				ProcessesSpringAnnotatedParameters.class));
 	}
 
+	@Test
+	public void testRequiredAnnotationTypes() {
+		assertEquals(Collections.singleton(Tx.class),
+				requiredAnnotationTypes("@annotation(test.annotation.transaction.Tx)"));
+		assertEquals(Collections.singleton(EmptySpringAnnotation.class),
+				requiredAnnotationTypes("execution(* *(..)) && @within(test.annotation.EmptySpringAnnotation)"));
+		assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Tx.class, EmptySpringAnnotation.class)),
+				requiredAnnotationTypes("@annotation(test.annotation.transaction.Tx) || " +
+						"@within(test.annotation.EmptySpringAnnotation)"));
+		assertNull(requiredAnnotationTypes("execution(* *(..))"));
+		assertNull(requiredAnnotationTypes("!@annotation(test.annotation.transaction.Tx)"));
+		assertNull(requiredAnnotationTypes("@annotation(test.annotation.transaction.Tx) || execution(* get*())"));
+		assertNull(requiredAnnotationTypes("@target(test.annotation.transaction.Tx)"));
+	}
+
+	@Test
+	public void testSharedShadowMatchCache() throws Exception {
+		String expression = "@annotation(test.annotation.transaction.Tx)";
+		AspectJExpressionPointcut ajexp1 = new AspectJExpressionPointcut();
+		ajexp1.setExpression(expression);
+		AspectJExpressionPointcut ajexp2 = new AspectJExpressionPointcut();
+		ajexp2.setExpression(expression);
+		AspectJExpressionPointcut beanNamePointcut = new AspectJExpressionPointcut();
+		beanNamePointcut.setExpression(expression + " && bean(beanA)");
+
+		Method method = BeanA.class.getMethod("getAge");
+		assertTrue(ajexp1.matches(method, BeanA.class));
+		assertTrue(ajexp2.matches(method, BeanA.class));
+		assertFalse(ajexp2.matches(BeanA.class.getMethod("setName", String.class), BeanA.class));
+		beanNamePointcut.matches(method, BeanA.class);
+
+		Field field = AspectJExpressionPointcut.class.getDeclaredField("shadowMatchCache");
+		ReflectionUtils.makeAccessible(field);
+		Map<?, ?> cache = (Map<?, ?>) field.get(ajexp1);
+		assertSame(cache, field.get(ajexp2));
+		assertNotSame(cache, field.get(beanNamePointcut));
+		assertTrue(cache.containsKey(BeanA.class.getMethod("setName", String.class)));
+	}
+
+	private Object requiredAnnotationTypes(String expression) {
+		AspectJExpressionPointcut ajexp = new AspectJExpressionPointcut();
+		ajexp.setExpression(expression);
+		Set<Class<? extends Annotation>> annotationTypes = ajexp.getRequiredAnnotationTypes();
+		return (annotationTypes != null ? new HashSet<Class<?>>(annotationTypes) : null);
+	}
+
 
 	public static class ProcessesSpringAnnotatedParameters {
 
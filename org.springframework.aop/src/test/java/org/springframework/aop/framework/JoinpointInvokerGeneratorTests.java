@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Test;
+
+import org.springframework.aop.AopInvocationException;
+
+import test.beans.ITestBean;
+import test.beans.TestBean;
+
+/**
+ * Unit tests for {@link JoinpointInvokerGenerator} and its use through
+ * {@link AdviceChain}.
+ *
+ * @since 3.1
+ */
+public final class JoinpointInvokerGeneratorTests {
+
+	@Test
+	public void interfaceMethodWithPrimitives() throws Throwable {
+		TestBean tb = new TestBean();
+		JoinpointInvoker setter = generate(ITestBean.class.getMethod("setAge", int.class));
+		JoinpointInvoker getter = generate(ITestBean.class.getMethod("getAge"));
+		assertNull(setter.invoke(tb, new Object[] {34}));
+		assertEquals(34, tb.getAge());
+		assertEquals(34, getter.invoke(tb, new Object[0]));
+	}
+
+	@Test
+	public void classMethodWithObjects() throws Throwable {
+		TestBean tb = new TestBean();
+		generate(TestBean.class.getMethod("setName", String.class)).invoke(tb, new Object[] {"juergen"});
+		assertEquals("juergen", generate(TestBean.class.getMethod("getName")).invoke(tb, null));
+		assertSame(tb, generate(TestBean.class.getMethod("returnsThis")).invoke(tb, null));
+	}
+
+	@Test
+	public void targetExceptionIsNotWrapped() throws Throwable {
+		JoinpointInvoker invoker = generate(TestBean.class.getMethod("exceptional", Throwable.class));
+		IOException ex = new IOException();
+		try {
+			invoker.invoke(new TestBean(), new Object[] {ex});
+			fail("Should have thrown IOException");
+		}
+		catch (IOException actual) {
+			assertSame(ex, actual);
+		}
+	}
+
+	@Test
+	public void invokersShareClassLoaderPerDeclaringClass() throws Exception {
+		ClassLoader getterLoader = generate(TestBean.class.getMethod("getName")).getClass().getClassLoader();
+		ClassLoader setterLoader = generate(TestBean.class.getMethod("setName", String.class)).getClass().getClassLoader();
+		ClassLoader otherLoader = generate(PublicBean.class.getMethod("setValue", Object.class)).getClass().getClassLoader();
+		assertSame(getterLoader, setterLoader);
+		assertNotSame(getterLoader, otherLoader);
+	}
+
+	@Test
+	public void invokerSharedBetweenProxyConfigurations() throws Exception {
+		Method method = ITestBean.class.getMethod("getAge");
+		AdviceChain chain1 = createFrozenProxyFactory().getAdviceChain(method, TestBean.class);
+		AdviceChain chain2 = createFrozenProxyFactory().getAdviceChain(method, TestBean.class);
+		assertNotSame(chain1, chain2);
+		assertNotNull(chain1.getJoinpointInvoker());
+		assertSame(chain1.getJoinpointInvoker(), chain2.getJoinpointInvoker());
+		assertSame(chain1.getJoinpointInvoker(), JoinpointInvokerGenerator.generateInvoker(method));
+	}
+
+	@Test
+	public void inaccessibleMethods() throws Exception {
+		assertNull(JoinpointInvokerGenerator.generateInvoker(
+				NonPublicBean.class.getMethod("getValue")));
+		assertNull(JoinpointInvokerGenerator.generateInvoker(
+				PublicBean.class.getMethod("setValue", NonPublicBean.class)));
+		assertNull(JoinpointInvokerGenerator.generateInvoker(
+				PublicBean.class.getDeclaredMethod("getValue")));
+	}
+
+	@Test
+	public void adviceChainFallsBackToReflection() throws Throwable {
+		AdviceChain chain = new AdviceChain(
+				NonPublicBean.class.getMethod("getValue"), Collections.<Object>emptyList());
+		assertEquals("value", chain.invokeJoinpoint(new NonPublicBean(), new Object[0]));
+	}
+
+	@Test
+	public void adviceChainTranslatesSignatureMismatch() throws Throwable {
+		AdviceChain chain = new AdviceChain(
+				ITestBean.class.getMethod("setAge", int.class), Collections.<Object>emptyList());
+		assertInvalidInvocation(chain, new TestBean(), new Object[] {null});
+		assertInvalidInvocation(chain, new TestBean(), new Object[] {"34"});
+		assertInvalidInvocation(chain, new TestBean(), new Object[0]);
+		assertInvalidInvocation(chain, new PublicBean(), new Object[] {34});
+		TestBean tb = new TestBean();
+		chain.invokeJoinpoint(tb, new Object[] {34});
+		assertEquals(34, tb.getAge());
+	}
+
+	@Test
+	public void adviceChainPropagatesTargetExceptions() throws Throwable {
+		AdviceChain chain = new AdviceChain(
+				TestBean.class.getMethod("exceptional", Throwable.class), Collections.<Object>emptyList());
+		RuntimeException[] exceptions = new RuntimeException[] {
+				new ClassCastException(), new NullPointerException(), new ArrayIndexOutOfBoundsException()};
+		for (RuntimeException ex : exceptions) {
+			try {
+				chain.invokeJoinpoint(new TestBean(), new Object[] {ex});
+				fail("Should have thrown " + ex);
+			}
+			catch (RuntimeException actual) {
+				assertSame(ex, actual);
+			}
+		}
+	}
+
+	@Test
+	public void reflectiveMethodInvocationUsesAdviceChain() throws Throwable {
+		TestBean tb = new TestBean();
+		tb.setAge(11);
+		MethodInterceptor interceptor = new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				return ((Integer) invocation.proceed()) + 1;
+			}
+		};
+		AdviceChain chain = new AdviceChain(
+				ITestBean.class.getMethod("getAge"), Collections.<Object>singletonList(interceptor));
+		ReflectiveMethodInvocation invocation =
+				new ReflectiveMethodInvocation(null, tb, new Object[0], TestBean.class, chain);
+		assertEquals(12, invocation.proceed());
+		assertEquals(11, chain.invokeJoinpoint(tb, new Object[0]));
+	}
+
+
+	private static void assertInvalidInvocation(AdviceChain chain, Object target, Object[] arguments)
+			throws Throwable {
+		try {
+			chain.invokeJoinpoint(target, arguments);
+			fail("Should have thrown AopInvocationException");
+		}
+		catch (AopInvocationException ex) {
+			// expected
+		}
+	}
+
+	private static ProxyFactory createFrozenProxyFactory() {
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				return invocation.proceed();
+			}
+		});
+		pf.setFrozen(true);
+		return pf;
+	}
+
+	private static JoinpointInvoker generate(Method method) {
+		JoinpointInvoker invoker = JoinpointInvokerGenerator.generateInvoker(method);
+		assertNotNull("No invoker generated for " + method, invoker);
+		return invoker;
+	}
+
+
+	static class NonPublicBean {
+
+		public String getValue() {
+			return "value";
+		}
+	}
+
+
+	public static class PublicBean {
+
+		public void setValue(NonPublicBean value) {
+		}
+
+		public void setValue(Object value) {
+		}
+
+		protected String getValue() {
+			return "value";
+		}
+	}
+
+}
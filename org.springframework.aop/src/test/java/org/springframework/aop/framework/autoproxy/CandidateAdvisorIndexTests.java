@@ -0,0 +1,159 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.framework.autoproxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.interceptor.DebugInterceptor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+
+import test.annotation.EmptySpringAnnotation;
+import test.annotation.transaction.Tx;
+import test.beans.TestBean;
+
+/**
+ * Unit tests for {@link CandidateAdvisorIndex}.
+ *
+ * @since 3.1
+ */
+public final class CandidateAdvisorIndexTests {
+
+	private final Advisor txMethodAdvisor = advisor(AnnotationMatchingPointcut.forMethodAnnotation(Tx.class));
+
+	private final Advisor springClassAdvisor =
+			advisor(AnnotationMatchingPointcut.forClassAnnotation(EmptySpringAnnotation.class));
+
+	private final Advisor metaAdvisor = advisor(expressionPointcut("@annotation(" + Meta.class.getName() + ")"));
+
+	private final Advisor unindexedAdvisor = advisor(expressionPointcut("execution(* *(..))"));
+
+	private final List<Advisor> advisors =
+			Arrays.asList(txMethodAdvisor, springClassAdvisor, metaAdvisor, unindexedAdvisor);
+
+
+	@Test
+	public void methodAnnotation() {
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(advisors);
+		assertEquals(Arrays.asList(txMethodAdvisor, unindexedAdvisor), index.getCandidateAdvisors(TxBean.class));
+		assertEquals(Arrays.asList(txMethodAdvisor, unindexedAdvisor), index.getCandidateAdvisors(TxSubBean.class));
+		assertEquals(Arrays.asList(unindexedAdvisor), index.getCandidateAdvisors(TestBean.class));
+	}
+
+	@Test
+	public void classAnnotationAndMetaAnnotation() {
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(advisors);
+		assertEquals(Arrays.asList(springClassAdvisor, metaAdvisor, unindexedAdvisor),
+				index.getCandidateAdvisors(MetaAnnotatedBean.class));
+	}
+
+	@Test
+	public void interfaceMethodAnnotation() {
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(advisors);
+		assertEquals(Arrays.asList(txMethodAdvisor, unindexedAdvisor),
+				index.getCandidateAdvisors(TxInterfaceImpl.class));
+	}
+
+	@Test
+	public void withoutIndexableAdvisors() {
+		List<Advisor> unindexed = Arrays.asList(unindexedAdvisor);
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(unindexed);
+		assertEquals(unindexed, index.getCandidateAdvisors(TestBean.class));
+	}
+
+	@Test
+	public void isIndexFor() {
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(advisors);
+		assertTrue(index.isIndexFor(new ArrayList<Advisor>(advisors)));
+		assertFalse(index.isIndexFor(advisors.subList(0, 3)));
+		List<Advisor> reordered = new ArrayList<Advisor>(advisors);
+		reordered.set(0, advisors.get(1));
+		reordered.set(1, advisors.get(0));
+		assertFalse(index.isIndexFor(reordered));
+	}
+
+	@Test
+	public void keepsOriginalAdvisorInstances() {
+		CandidateAdvisorIndex index = new CandidateAdvisorIndex(advisors);
+		assertSame(txMethodAdvisor, index.getCandidateAdvisors(TxBean.class).get(0));
+	}
+
+
+	private static Advisor advisor(org.springframework.aop.Pointcut pointcut) {
+		return new DefaultPointcutAdvisor(pointcut, new DebugInterceptor());
+	}
+
+	private static AspectJExpressionPointcut expressionPointcut(String expression) {
+		AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+		pointcut.setExpression(expression);
+		return pointcut;
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	@EmptySpringAnnotation
+	public @interface Meta {
+	}
+
+
+	public static class TxBean {
+
+		@Tx
+		public void doSomething() {
+		}
+	}
+
+
+	public static class TxSubBean extends TxBean {
+	}
+
+
+	@Meta
+	public static class MetaAnnotatedBean {
+	}
+
+
+	public interface TxInterface {
+
+		@Tx
+		void doSomething();
+	}
+
+
+	public static class TxInterfaceImpl implements TxInterface {
+
+		public void doSomething() {
+		}
+	}
+
+}
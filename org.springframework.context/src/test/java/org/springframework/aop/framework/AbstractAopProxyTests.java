@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,6 +43,7 @@ import org.springframework.aop.Advisor;
 import org.springframework.aop.AfterReturningAdvice;
 import org.springframework.aop.DynamicIntroductionAdvice;
 import org.springframework.aop.MethodBeforeAdvice;
+import org.springframework.aop.ProxyMethodInvocation;
 import org.springframework.aop.TargetSource;
 import org.springframework.aop.ThrowsAdvice;
 import org.springframework.aop.interceptor.DebugInterceptor;
@@ -1090,6 +1091,94 @@ public abstract class AbstractAopProxyTests {
 		assertEquals(dp.count, 2);
 	}
 
+	@Test
+	public void testFrozenProxyWithStaticChain() throws Throwable {
+		TestBean tb = new TestBean();
+		ProxyFactory pc = new ProxyFactory(new Class[] {ITestBean.class});
+		final List<String> calls = new LinkedList<String>();
+		pc.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				calls.add("first " + invocation.getMethod().getName());
+				return invocation.proceed();
+			}
+		});
+		NopInterceptor nop = new NopInterceptor();
+		pc.addAdvice(nop);
+		pc.setTarget(tb);
+		pc.setFrozen(true);
+		ITestBean it = (ITestBean) createProxy(pc);
+		it.setAge(11);
+		assertEquals(11, it.getAge());
+		assertEquals(2, nop.getCount());
+		assertEquals(2, calls.size());
+		assertEquals("first setAge", calls.get(0));
+		assertEquals("first getAge", calls.get(1));
+	}
+
+	@Test
+	public void testFrozenProxyWithDynamicPointcut() throws Throwable {
+		TestBean tb = new TestBean();
+		ProxyFactory pc = new ProxyFactory(new Class[] {ITestBean.class});
+		TestDynamicPointcutAdvice dp = new TestDynamicPointcutAdvice(new NopInterceptor(), "getAge");
+		pc.addAdvisor(dp);
+		NopInterceptor nop = new NopInterceptor();
+		pc.addAdvice(nop);
+		pc.setTarget(tb);
+		pc.setFrozen(true);
+		ITestBean it = (ITestBean) createProxy(pc);
+		it.getAge();
+		assertEquals(1, dp.count);
+		it.setAge(11);
+		assertEquals(11, it.getAge());
+		assertEquals(2, dp.count);
+		assertEquals(3, nop.getCount());
+	}
+
+	@Test
+	public void testFrozenProxyInvocableClone() throws Throwable {
+		TestBean tb = new TestBean();
+		ProxyFactory pc = new ProxyFactory(new Class[] {ITestBean.class});
+		pc.addAdvice(new MethodInterceptor() {
+			public Object invoke(MethodInvocation invocation) throws Throwable {
+				// Proceed twice through independent clones.
+				((ProxyMethodInvocation) invocation).invocableClone().proceed();
+				return ((ProxyMethodInvocation) invocation).invocableClone().proceed();
+			}
+		});
+		NopInterceptor nop = new NopInterceptor();
+		pc.addAdvice(nop);
+		pc.setTarget(tb);
+		pc.setFrozen(true);
+		ITestBean it = (ITestBean) createProxy(pc);
+		it.setAge(11);
+		assertEquals(2, nop.getCount());
+		assertEquals(11, it.getAge());
+	}
+
+	@Test
+	public void testFrozenProxySerialization() throws Throwable {
+		SerializablePerson personTarget = new SerializablePerson();
+		personTarget.setAge(26);
+		ProxyFactory pf = new ProxyFactory(personTarget);
+		pf.addAdvice(new SerializableNopInterceptor());
+		pf.setFrozen(true);
+		Person p = (Person) createAopProxy(pf).getProxy();
+		assertEquals(26, p.getAge());
+		try {
+			p.echo(new IOException());
+			fail("Should have thrown IOException");
+		}
+		catch (IOException ex) {
+			// expected
+		}
+
+		Person p2 = (Person) SerializationTestUtils.serializeAndDeserialize(p);
+		assertEquals(26, p2.getAge());
+		p2.setAge(27);
+		assertEquals(27, p2.getAge());
+		assertEquals("x", p2.echo("x"));
+	}
+
 	@Test
 	public void testDynamicMethodPointcutThatAppliesStaticallyOnlyToSetters() throws Throwable {
 		TestBean tb = new TestBean();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -250,6 +250,55 @@ public final class CglibProxyTests extends AbstractAopProxyTests implements Seri
 		return (ITestBean) pf.getProxy();
 	}
 
+	@Test
+	public void testProxyClassSharedForStructurallyEqualConfiguration() {
+		TestBean target = new TestBean();
+		target.setAge(20);
+		TestBean target2 = new TestBean();
+		target2.setAge(21);
+
+		NopInterceptor advice = new NopInterceptor();
+		NopInterceptor advice2 = new NopInterceptor();
+		ITestBean proxy1 = getProxyWithDistinctPointcut(target, advice, false);
+		ITestBean proxy2 = getProxyWithDistinctPointcut(target2, advice2, false);
+		assertSame("Incorrect duplicate creation of proxy classes", proxy1.getClass(), proxy2.getClass());
+
+		assertEquals(20, proxy1.getAge());
+		assertEquals(21, proxy2.getAge());
+		assertEquals(1, advice.getCount());
+		assertEquals(1, advice2.getCount());
+	}
+
+	@Test
+	public void testProxyClassNotSharedForStructurallyDifferentConfiguration() {
+		ITestBean proxy1 = getProxyWithDistinctPointcut(new TestBean(), new NopInterceptor(), false);
+		ITestBean proxy2 = getProxyWithDistinctPointcut(new TestBean(), new NopInterceptor(), true);
+		assertNotSame(proxy1.getClass(), proxy2.getClass());
+	}
+
+	private ITestBean getProxyWithDistinctPointcut(TestBean target, MethodInterceptor advice, boolean exposeProxy) {
+		ProxyFactory pf = new ProxyFactory(new Class[]{ITestBean.class});
+		pf.setProxyTargetClass(true);
+
+		// Pointcut instances without equals implementation: not equal to each other.
+		Pointcut pointcut = new Pointcut() {
+			public ClassFilter getClassFilter() {
+				return ClassFilter.TRUE;
+			}
+
+			public MethodMatcher getMethodMatcher() {
+				return MethodMatcher.TRUE;
+			}
+		};
+		pf.addAdvisor(new DefaultPointcutAdvisor(pointcut, advice));
+
+		pf.setTarget(target);
+		pf.setFrozen(true);
+		pf.setExposeProxy(exposeProxy);
+
+		return (ITestBean) pf.getProxy();
+	}
+
 	@Test
 	public void testWithNoArgConstructor() {
 		NoArgCtorTestBean target = new NoArgCtorTestBean("b", 1);
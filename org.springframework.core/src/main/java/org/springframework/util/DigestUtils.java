@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,8 @@
 
 package org.springframework.util;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -36,6 +38,8 @@ public abstract class DigestUtils {
 	private static final char[] HEX_CHARS =
 			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 
+	private static final int BUFFER_SIZE = 4096;
+
 	/**
 	 * Calculate the MD5 digest of the given bytes.
 	 * @param bytes the bytes to calculate the digest over
@@ -66,6 +70,48 @@ public abstract class DigestUtils {
 		return appendDigestAsHex(MD5_ALGORITHM_NAME, bytes, builder);
 	}
 
+	/**
+	 * Calculate the MD5 digest of the given stream, reading it in chunks
+	 * rather than loading the entire content into memory.
+	 * <p>Note: The stream will be read to its end but not closed.
+	 * @param inputStream the stream to calculate the digest over
+	 * @return the digest
+	 * @throws IOException in case of I/O errors
+	 * @since 3.1
+	 */
+	public static byte[] md5Digest(InputStream inputStream) throws IOException {
+		return digest(MD5_ALGORITHM_NAME, inputStream);
+	}
+
+	/**
+	 * Return a hexadecimal string representation of the MD5 digest of the given
+	 * stream.
+	 * <p>Note: The stream will be read to its end but not closed.
+	 * @param inputStream the stream to calculate the digest over
+	 * @return a hexadecimal digest string
+	 * @throws IOException in case of I/O errors
+	 * @since 3.1
+	 */
+	public static String md5DigestAsHex(InputStream inputStream) throws IOException {
+		return new String(encodeHex(md5Digest(inputStream)));
+	}
+
+	/**
+	 * Append a hexadecimal string representation of the MD5 digest of the given
+	 * stream to the given {@link StringBuilder}.
+	 * <p>Note: The stream will be read to its end but not closed.
+	 * @param inputStream the stream to calculate the digest over
+	 * @param builder the string builder to append the digest to
+	 * @return the given string builder
+	 * @throws IOException in case of I/O errors
+	 * @since 3.1
+	 */
+	public static StringBuilder appendMd5DigestAsHex(InputStream inputStream, StringBuilder builder)
+			throws IOException {
+
+		return builder.append(encodeHex(md5Digest(inputStream)));
+	}
+
 	/**
 	 * Creates a new {@link MessageDigest} with the given algorithm. Necessary 
 	 * because {@code MessageDigest} is not thread-safe.
@@ -83,6 +129,16 @@ public abstract class DigestUtils {
 		return getDigest(algorithm).digest(bytes);
 	}
 
+	private static byte[] digest(String algorithm, InputStream inputStream) throws IOException {
+		MessageDigest messageDigest = getDigest(algorithm);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			messageDigest.update(buffer, 0, bytesRead);
+		}
+		return messageDigest.digest();
+	}
+
 	private static String digestAsHexString(String algorithm, byte[] bytes) {
 		char[] hexDigest = digestAsHexChars(algorithm, bytes);
 		return new String(hexDigest);
@@ -159,6 +159,29 @@ public abstract class ReflectionUtils {
 		return null;
 	}
 
+	/**
+	 * Determine whether the given class overrides the specified method of the given
+	 * base class, either itself or through a superclass in between.
+	 * <p>Typically used to detect whether a subclass customizes a template method,
+	 * e.g. in order to keep a code path that such a customization relies on.
+	 * @param clazz the class to introspect (the base class or a subclass of it)
+	 * @param baseClass the class that declares or inherits the original method
+	 * @param name the name of the method
+	 * @param paramTypes the parameter types of the method
+	 * @return <code>true</code> if <code>clazz</code> overrides the method,
+	 * <code>false</code> if it uses the base class's implementation
+	 * @throws IllegalArgumentException if the base class does not have such a method
+	 * @since 3.1
+	 */
+	public static boolean isOverridden(Class<?> clazz, Class<?> baseClass, String name, Class<?>... paramTypes) {
+		Assert.isAssignable(baseClass, clazz);
+		Method baseMethod = findMethod(baseClass, name, paramTypes);
+		if (baseMethod == null) {
+			throw new IllegalArgumentException("No method '" + name + "' found on " + baseClass);
+		}
+		return (findMethod(clazz, name, paramTypes).getDeclaringClass() != baseMethod.getDeclaringClass());
+	}
+
 	/**
 	 * Invoke the specified {@link Method} against the supplied target object with no arguments.
 	 * The target object can be <code>null</code> when invoking a static {@link Method}.
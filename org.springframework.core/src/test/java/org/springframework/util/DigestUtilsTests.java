@@ -16,6 +16,8 @@
 
 package org.springframework.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 import static org.junit.Assert.*;
@@ -52,5 +54,16 @@ public class DigestUtilsTests {
 		assertEquals("Invalid hash", "b10a8db164e0754105b7a99be72e3fe5", builder.toString());
 	}
 
+	@Test
+	public void md5InputStream() throws IOException {
+		assertArrayEquals("Invalid hash", DigestUtils.md5Digest(bytes),
+				DigestUtils.md5Digest(new ByteArrayInputStream(bytes)));
+		assertEquals("Invalid hash", "b10a8db164e0754105b7a99be72e3fe5",
+				DigestUtils.md5DigestAsHex(new ByteArrayInputStream(bytes)));
+		StringBuilder builder = new StringBuilder("\"");
+		DigestUtils.appendMd5DigestAsHex(new ByteArrayInputStream(bytes), builder);
+		assertEquals("Invalid hash", "\"b10a8db164e0754105b7a99be72e3fe5", builder.toString());
+	}
+
 
 }
\ No newline at end of file
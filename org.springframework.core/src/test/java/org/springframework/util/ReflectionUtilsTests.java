@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -98,6 +98,20 @@ public class ReflectionUtilsTests {
 		assertEquals("Incorrect name set", juergen, bean.getName());
 	}
 
+	@Test
+	public void isOverridden() {
+		assertTrue(ReflectionUtils.isOverridden(TestBeanSubclass.class, TestBean.class, "absquatulate"));
+		assertFalse(ReflectionUtils.isOverridden(TestBean.class, TestBean.class, "absquatulate"));
+		assertFalse(ReflectionUtils.isOverridden(TestBeanSubclassWithPublicField.class, TestBean.class, "absquatulate"));
+		assertFalse(ReflectionUtils.isOverridden(TestBeanSubclass.class, TestBean.class, "setName", String.class));
+		assertTrue(ReflectionUtils.isOverridden(TestBeanSubclass.class, Object.class, "toString"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void isOverriddenWithUnknownMethod() {
+		ReflectionUtils.isOverridden(TestBeanSubclass.class, TestBean.class, "absquatulate", String.class);
+	}
+
 	@Test
 	public void declaresException() throws Exception {
 		Method remoteExMethod = A.class.getDeclaredMethod("foo", new Class[]{Integer.class});
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Aggregate outcome of a {@link JdbcBatchWriter} run: the number of batches
+ * and rows written, the sum of the reported update counts, and the batches
+ * that failed (if the writer was configured to continue on errors).
+ *
+ * @since 3.1
+ * @see JdbcBatchWriter#write(java.util.Iterator)
+ */
+public class BatchWriteResult {
+
+	private int batchCount;
+
+	private long rowCount;
+
+	private long updateCount;
+
+	private long unknownUpdateCount;
+
+	private final List<FailedBatch> failedBatches = new ArrayList<FailedBatch>();
+
+
+	void addBatch(int rows, int[] updateCounts) {
+		this.batchCount++;
+		this.rowCount += rows;
+		for (int count : updateCounts) {
+			if (count >= 0) {
+				this.updateCount += count;
+			}
+			else {
+				this.unknownUpdateCount++;
+			}
+		}
+	}
+
+	void addFailedBatch(FailedBatch failedBatch) {
+		this.batchCount++;
+		this.failedBatches.add(failedBatch);
+	}
+
+
+	/**
+	 * Return the number of batches processed, including failed batches.
+	 */
+	public int getBatchCount() {
+		return this.batchCount;
+	}
+
+	/**
+	 * Return the number of rows written as part of successful batches.
+	 */
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	/**
+	 * Return the sum of the update counts reported by the JDBC driver
+	 * for successful batches.
+	 * @see #getUnknownUpdateCount()
+	 */
+	public long getUpdateCount() {
+		return this.updateCount;
+	}
+
+	/**
+	 * Return the number of statements for which the JDBC driver did not
+	 * report an update count ({@link java.sql.Statement#SUCCESS_NO_INFO}),
+	 * and which are therefore not included in {@link #getUpdateCount()}.
+	 */
+	public long getUnknownUpdateCount() {
+		return this.unknownUpdateCount;
+	}
+
+	/**
+	 * Return whether any batch failed.
+	 */
+	public boolean hasFailedBatches() {
+		return !this.failedBatches.isEmpty();
+	}
+
+	/**
+	 * Return the batches that failed, in the order of their occurrence.
+	 */
+	public List<FailedBatch> getFailedBatches() {
+		return Collections.unmodifiableList(this.failedBatches);
+	}
+
+	/**
+	 * Return the number of rows that were part of failed batches.
+	 */
+	public long getFailedRowCount() {
+		long failedRows = 0;
+		for (FailedBatch failedBatch : this.failedBatches) {
+			failedRows += failedBatch.getRowCount();
+		}
+		return failedRows;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchWriteResult: " + this.batchCount + " batches, " + this.rowCount + " rows, " +
+				this.updateCount + " updates, " + this.failedBatches.size() + " failed batches";
+	}
+
+
+	/**
+	 * Describes a batch that could not be written.
+	 */
+	public static class FailedBatch {
+
+		private final int batchIndex;
+
+		private final long firstRow;
+
+		private final int rowCount;
+
+		private final DataAccessException exception;
+
+		FailedBatch(int batchIndex, long firstRow, int rowCount, DataAccessException exception) {
+			this.batchIndex = batchIndex;
+			this.firstRow = firstRow;
+			this.rowCount = rowCount;
+			this.exception = exception;
+		}
+
+		/**
+		 * Return the index of the failed batch, starting from 0.
+		 */
+		public int getBatchIndex() {
+			return this.batchIndex;
+		}
+
+		/**
+		 * Return the position of the batch's first row in the written
+		 * sequence of rows, starting from 0.
+		 */
+		public long getFirstRow() {
+			return this.firstRow;
+		}
+
+		/**
+		 * Return the number of rows in the failed batch.
+		 */
+		public int getRowCount() {
+			return this.rowCount;
+		}
+
+		/**
+		 * Return the exception that the batch failed with.
+		 */
+		public DataAccessException getException() {
+			return this.exception;
+		}
+
+		@Override
+		public String toString() {
+			return "Failed batch " + this.batchIndex + " (rows " + this.firstRow + "-" +
+					(this.firstRow + this.rowCount - 1) + "): " + this.exception;
+		}
+	}
+
+}
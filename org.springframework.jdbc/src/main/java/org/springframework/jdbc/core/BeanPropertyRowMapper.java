@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,27 +16,43 @@
 
 package org.springframework.jdbc.core;
 
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.MethodInvocationException;
 import org.springframework.beans.NotWritablePropertyException;
 import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.SimpleTypeConverter;
 import org.springframework.beans.TypeMismatchException;
+import org.springframework.core.MethodParameter;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * {@link RowMapper} implementation that converts a row into a new instance
@@ -61,8 +77,13 @@ import org.springframework.util.Assert;
  * Be aware that if you use the values from the generated bean to update the database the primitive value
  * will have been set to the primitive's default value instead of null.
  *
- * <p>Please note that this class is designed to provide convenience rather than high performance.
- * For best performance consider using a custom RowMapper.
+ * <p>As of Spring 3.1, the column-to-property mapping is resolved once per result set shape
+ * (i.e. per distinct list of column labels) and cached as a mapping plan. Each row is then
+ * populated through the typed <code>ResultSet</code> getter matching the property type and a
+ * direct setter invocation, without a {@link BeanWrapper} in between. Subclasses that override
+ * {@link #initBeanWrapper} or {@link #getColumnValue} get the traditional per-row BeanWrapper
+ * based mapping instead, since their customizations rely on it. For the very best performance
+ * consider using a custom RowMapper.
  *
  * @author Thomas Risberg
  * @author Juergen Hoeller
@@ -70,6 +91,9 @@ import org.springframework.util.Assert;
  */
 public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 
+	/** Maximum number of result set shapes to keep mapping plans for */
+	private static final int MAX_MAPPING_PLANS = 64;
+
 	/** Logger available to subclasses */
 	protected final Log logger = LogFactory.getLog(getClass());
 
@@ -88,6 +112,15 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 	/** Set of bean properties we provide mapping for */
 	private Set<String> mappedProperties;
 
+	/** Whether a subclass customizes the BeanWrapper based mapping, ruling out mapping plans */
+	private final boolean beanWrapperRequired = isBeanWrapperRequired();
+
+	/** Cache of mapping plans, keyed by the list of column labels they apply to */
+	private final Map<List<String>, MappingPlan> mappingPlans = new ConcurrentHashMap<List<String>, MappingPlan>();
+
+	/** The mapping plan for the ResultSet mapped most recently */
+	private volatile ResultSetMappingPlan currentPlan;
+
 
 	/**
 	 * Create a new BeanPropertyRowMapper for bean-style configuration.
@@ -141,6 +174,8 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 	 */
 	protected void initialize(Class<T> mappedClass) {
 		this.mappedClass = mappedClass;
+		this.mappingPlans.clear();
+		this.currentPlan = null;
 		this.mappedFields = new HashMap<String, PropertyDescriptor>();
 		this.mappedProperties = new HashSet<String>();
 		PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(mappedClass);
@@ -230,6 +265,9 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 	 */
 	public T mapRow(ResultSet rs, int rowNumber) throws SQLException {
 		Assert.state(this.mappedClass != null, "Mapped class was not specified");
+		if (!this.beanWrapperRequired) {
+			return mapRowWithPlan(rs, rowNumber);
+		}
 		T mappedObject = BeanUtils.instantiate(this.mappedClass);
 		BeanWrapper bw = PropertyAccessorFactory.forBeanPropertyAccess(mappedObject);
 		initBeanWrapper(bw);
@@ -281,6 +319,95 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 		return mappedObject;
 	}
 
+	/**
+	 * Map the current row through the cached mapping plan for the given ResultSet.
+	 */
+	private T mapRowWithPlan(ResultSet rs, int rowNumber) throws SQLException {
+		MappingPlan plan = getMappingPlan(rs, rowNumber);
+		T mappedObject = BeanUtils.instantiate(this.mappedClass);
+		for (ColumnMapping mapping : plan.columnMappings) {
+			Object value = mapping.getValue(rs);
+			if (value == null && mapping.primitive) {
+				if (!this.primitivesDefaultedForNullValue) {
+					throw new TypeMismatchException(
+							new PropertyChangeEvent(mappedObject, mapping.propertyName, null, null), mapping.propertyType);
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Skipping null value for row " + rowNumber + " and column '" + mapping.column +
+							"' when setting property '" + mapping.propertyName + "' of type " + mapping.propertyType +
+							" on object: " + mappedObject);
+				}
+			}
+			else {
+				mapping.setValue(mappedObject, value);
+			}
+		}
+		if (this.checkFullyPopulated && !plan.populatedProperties.equals(this.mappedProperties)) {
+			throw new InvalidDataAccessApiUsageException("Given ResultSet does not contain all fields " +
+					"necessary to populate object of class [" + this.mappedClass + "]: " + this.mappedProperties);
+		}
+		return mappedObject;
+	}
+
+	/**
+	 * Obtain the mapping plan for the given ResultSet, reading its metadata
+	 * only on the first row or when the ResultSet changed in the meantime.
+	 */
+	private MappingPlan getMappingPlan(ResultSet rs, int rowNumber) throws SQLException {
+		ResultSetMappingPlan current = this.currentPlan;
+		if (rowNumber != 0 && current != null && current.resultSet.get() == rs) {
+			return current.plan;
+		}
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int columnCount = rsmd.getColumnCount();
+		List<String> columns = new ArrayList<String>(columnCount);
+		for (int index = 1; index <= columnCount; index++) {
+			columns.add(JdbcUtils.lookupColumnName(rsmd, index));
+		}
+		MappingPlan plan = this.mappingPlans.get(columns);
+		if (plan == null) {
+			plan = buildMappingPlan(columns);
+			if (this.mappingPlans.size() < MAX_MAPPING_PLANS) {
+				this.mappingPlans.put(columns, plan);
+			}
+		}
+		this.currentPlan = new ResultSetMappingPlan(rs, plan);
+		return plan;
+	}
+
+	/**
+	 * Resolve the target property for each of the given columns.
+	 */
+	private MappingPlan buildMappingPlan(List<String> columns) {
+		List<ColumnMapping> columnMappings = new ArrayList<ColumnMapping>(columns.size());
+		Set<String> populatedProperties = new HashSet<String>();
+		for (int i = 0; i < columns.size(); i++) {
+			String column = columns.get(i);
+			PropertyDescriptor pd = this.mappedFields.get(column.replaceAll(" ", "").toLowerCase());
+			if (pd != null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Mapping column '" + column + "' to property '" +
+							pd.getName() + "' of type " + pd.getPropertyType());
+				}
+				columnMappings.add(new ColumnMapping(i + 1, column, pd));
+				populatedProperties.add(pd.getName());
+			}
+		}
+		return new MappingPlan(columnMappings.toArray(new ColumnMapping[columnMappings.size()]),
+				Collections.unmodifiableSet(populatedProperties));
+	}
+
+	/**
+	 * Determine whether this instance overrides one of the BeanWrapper based
+	 * mapping hooks, in which case every row has to go through a BeanWrapper.
+	 */
+	private boolean isBeanWrapperRequired() {
+		return (ReflectionUtils.isOverridden(getClass(), BeanPropertyRowMapper.class, "initBeanWrapper",
+				BeanWrapper.class) ||
+				ReflectionUtils.isOverridden(getClass(), BeanPropertyRowMapper.class, "getColumnValue",
+						ResultSet.class, int.class, PropertyDescriptor.class));
+	}
+
 	/**
 	 * Initialize the given BeanWrapper to be used for row mapping.
 	 * To be called for each row.
@@ -320,4 +447,207 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 		return newInstance;
 	}
 
+
+	/**
+	 * The resolved column mappings for one result set shape.
+	 */
+	private static class MappingPlan {
+
+		private final ColumnMapping[] columnMappings;
+
+		private final Set<String> populatedProperties;
+
+		public MappingPlan(ColumnMapping[] columnMappings, Set<String> populatedProperties) {
+			this.columnMappings = columnMappings;
+			this.populatedProperties = populatedProperties;
+		}
+	}
+
+
+	/**
+	 * Associates a mapping plan with the ResultSet it has been resolved for.
+	 * The ResultSet is only weakly referenced, not to keep it reachable
+	 * through a long-lived mapper instance.
+	 */
+	private static class ResultSetMappingPlan {
+
+		private final WeakReference<ResultSet> resultSet;
+
+		private final MappingPlan plan;
+
+		public ResultSetMappingPlan(ResultSet resultSet, MappingPlan plan) {
+			this.resultSet = new WeakReference<ResultSet>(resultSet);
+			this.plan = plan;
+		}
+	}
+
+
+	/**
+	 * Maps a single column onto a bean property, using the <code>ResultSet</code>
+	 * getter that matches the property type and the property's write method.
+	 */
+	private static class ColumnMapping {
+
+		private static final int OBJECT = 0;
+		private static final int STRING = 1;
+		private static final int BOOLEAN = 2;
+		private static final int BYTE = 3;
+		private static final int SHORT = 4;
+		private static final int INT = 5;
+		private static final int LONG = 6;
+		private static final int FLOAT = 7;
+		private static final int DOUBLE = 8;
+		private static final int BYTES = 9;
+		private static final int DATE = 10;
+		private static final int TIME = 11;
+		private static final int TIMESTAMP = 12;
+		private static final int BIG_DECIMAL = 13;
+		private static final int BLOB = 14;
+		private static final int CLOB = 15;
+
+		private final int index;
+
+		private final String column;
+
+		private final String propertyName;
+
+		private final Class<?> propertyType;
+
+		private final boolean primitive;
+
+		private final Method writeMethod;
+
+		private final int valueType;
+
+		public ColumnMapping(int index, String column, PropertyDescriptor pd) {
+			this.index = index;
+			this.column = column;
+			this.propertyName = pd.getName();
+			this.propertyType = pd.getPropertyType();
+			this.primitive = this.propertyType.isPrimitive();
+			this.writeMethod = pd.getWriteMethod();
+			ReflectionUtils.makeAccessible(this.writeMethod);
+			this.valueType = determineValueType(this.propertyType);
+		}
+
+		/**
+		 * Mirrors the type dispatch of
+		 * {@link JdbcUtils#getResultSetValue(java.sql.ResultSet, int, Class)}.
+		 */
+		private static int determineValueType(Class<?> type) {
+			if (String.class.equals(type)) {
+				return STRING;
+			}
+			else if (boolean.class.equals(type) || Boolean.class.equals(type)) {
+				return BOOLEAN;
+			}
+			else if (byte.class.equals(type) || Byte.class.equals(type)) {
+				return BYTE;
+			}
+			else if (short.class.equals(type) || Short.class.equals(type)) {
+				return SHORT;
+			}
+			else if (int.class.equals(type) || Integer.class.equals(type)) {
+				return INT;
+			}
+			else if (long.class.equals(type) || Long.class.equals(type)) {
+				return LONG;
+			}
+			else if (float.class.equals(type) || Float.class.equals(type)) {
+				return FLOAT;
+			}
+			else if (double.class.equals(type) || Double.class.equals(type) || Number.class.equals(type)) {
+				return DOUBLE;
+			}
+			else if (byte[].class.equals(type)) {
+				return BYTES;
+			}
+			else if (java.sql.Date.class.equals(type)) {
+				return DATE;
+			}
+			else if (java.sql.Time.class.equals(type)) {
+				return TIME;
+			}
+			else if (java.sql.Timestamp.class.equals(type) || java.util.Date.class.equals(type)) {
+				return TIMESTAMP;
+			}
+			else if (BigDecimal.class.equals(type)) {
+				return BIG_DECIMAL;
+			}
+			else if (Blob.class.equals(type)) {
+				return BLOB;
+			}
+			else if (Clob.class.equals(type)) {
+				return CLOB;
+			}
+			else {
+				return OBJECT;
+			}
+		}
+
+		public Object getValue(ResultSet rs) throws SQLException {
+			switch (this.valueType) {
+				case STRING:
+					return rs.getString(this.index);
+				case BOOLEAN:
+					boolean booleanValue = rs.getBoolean(this.index);
+					return (rs.wasNull() ? null : booleanValue);
+				case BYTE:
+					byte byteValue = rs.getByte(this.index);
+					return (rs.wasNull() ? null : byteValue);
+				case SHORT:
+					short shortValue = rs.getShort(this.index);
+					return (rs.wasNull() ? null : shortValue);
+				case INT:
+					int intValue = rs.getInt(this.index);
+					return (rs.wasNull() ? null : intValue);
+				case LONG:
+					long longValue = rs.getLong(this.index);
+					return (rs.wasNull() ? null : longValue);
+				case FLOAT:
+					float floatValue = rs.getFloat(this.index);
+					return (rs.wasNull() ? null : floatValue);
+				case DOUBLE:
+					double doubleValue = rs.getDouble(this.index);
+					return (rs.wasNull() ? null : doubleValue);
+				case BYTES:
+					return rs.getBytes(this.index);
+				case DATE:
+					return rs.getDate(this.index);
+				case TIME:
+					return rs.getTime(this.index);
+				case TIMESTAMP:
+					return rs.getTimestamp(this.index);
+				case BIG_DECIMAL:
+					return rs.getBigDecimal(this.index);
+				case BLOB:
+					return rs.getBlob(this.index);
+				case CLOB:
+					return rs.getClob(this.index);
+				default:
+					return JdbcUtils.getResultSetValue(rs, this.index);
+			}
+		}
+
+		public void setValue(Object target, Object value) {
+			Object valueToSet = value;
+			if (value != null && !ClassUtils.isAssignableValue(this.propertyType, value)) {
+				// Only happens for types without a dedicated getter, e.g. enums.
+				valueToSet = new SimpleTypeConverter().convertIfNecessary(
+						value, this.propertyType, new MethodParameter(this.writeMethod, 0));
+			}
+			try {
+				this.writeMethod.invoke(target, valueToSet);
+			}
+			catch (InvocationTargetException ex) {
+				throw new MethodInvocationException(
+						new PropertyChangeEvent(target, this.propertyName, null, valueToSet), ex.getTargetException());
+			}
+			catch (IllegalAccessException ex) {
+				throw new DataRetrievalFailureException(
+						"Unable to map column " + this.column + " to property " + this.propertyName, ex);
+			}
+		}
+	}
+
 }
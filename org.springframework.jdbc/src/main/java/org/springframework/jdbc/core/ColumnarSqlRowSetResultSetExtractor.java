@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.support.rowset.ColumnarSqlRowSet;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+/**
+ * ResultSetExtractor implementation that returns a memory-compact
+ * {@link ColumnarSqlRowSet} for each given ResultSet, as an alternative
+ * to the CachedRowSet-based {@link SqlRowSetResultSetExtractor}.
+ *
+ * <p>Typically used for caching large reference data in a disconnected fashion:
+ * <pre class="code">
+ * SqlRowSet rowSet = jdbcTemplate.query("select * from country", new ColumnarSqlRowSetResultSetExtractor());</pre>
+ *
+ * @since 3.1
+ * @see org.springframework.jdbc.support.rowset.ColumnarSqlRowSet
+ */
+public class ColumnarSqlRowSetResultSetExtractor implements ResultSetExtractor<SqlRowSet> {
+
+	public SqlRowSet extractData(ResultSet rs) throws SQLException {
+		ColumnarSqlRowSet rowSet = new ColumnarSqlRowSet(rs);
+		rowSet.trimToSize();
+		return rowSet;
+	}
+
+}
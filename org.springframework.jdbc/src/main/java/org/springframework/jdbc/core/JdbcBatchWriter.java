@@ -0,0 +1,525 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Writes an unbounded sequence of rows through a single SQL statement,
+ * flushing a JDBC batch every {@link #setBatchSize batchSize} rows.
+ * In contrast to {@link JdbcTemplate#batchUpdate(String, BatchPreparedStatementSetter)},
+ * the rows do not need to be available upfront: they are pulled from an
+ * {@link Iterator} and only one batch is held in memory at any time.
+ *
+ * <p>Optionally, each batch can be committed on its own
+ * ({@link #setCommitPerBatch commitPerBatch}) and failed batches can be skipped
+ * rather than aborting the whole run ({@link #setContinueOnError continueOnError}).
+ * The outcome is reported as a {@link BatchWriteResult}.
+ *
+ * <p>For databases that support multi-row inserts
+ * (<code>INSERT INTO t (a, b) VALUES (?, ?), (?, ?), ...</code>), several rows can be
+ * combined into a single statement through {@link #setRowsPerStatement rowsPerStatement},
+ * which significantly reduces the number of statements the driver has to process.
+ * The {@link ParameterizedPreparedStatementSetter} does not need to be aware of
+ * this: it keeps setting parameters from index 1 for each row.
+ *
+ * <p>A JdbcBatchWriter is thread-safe once configured; each call to
+ * {@link #write} uses its own connection and statements.
+ *
+ * @since 3.1
+ * @see JdbcTemplate#batchUpdate(String, Iterator, int, ParameterizedPreparedStatementSetter)
+ */
+public class JdbcBatchWriter<T> {
+
+	/** Default number of rows per batch: 1000 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private static final Pattern VALUES_PATTERN = Pattern.compile("^(.*\\bvalues\\s*)(\\(.*\\))\\s*$",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String sql;
+
+	private final ParameterizedPreparedStatementSetter<T> pss;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private boolean commitPerBatch = false;
+
+	private boolean continueOnError = false;
+
+	private int rowsPerStatement = 1;
+
+	private int parametersPerRow;
+
+	private String valuesPrefix;
+
+	private String valuesTuple;
+
+
+	/**
+	 * Create a new JdbcBatchWriter for the given DataSource.
+	 * @param dataSource the JDBC DataSource to write to
+	 * @param sql the SQL statement to execute for each row
+	 * @param pss the callback setting the parameter values for each row
+	 */
+	public JdbcBatchWriter(DataSource dataSource, String sql, ParameterizedPreparedStatementSetter<T> pss) {
+		this(new JdbcTemplate(dataSource), sql, pss);
+	}
+
+	/**
+	 * Create a new JdbcBatchWriter for the given JdbcTemplate, sharing its
+	 * DataSource and exception translation.
+	 * @param jdbcTemplate the JdbcTemplate to use
+	 * @param sql the SQL statement to execute for each row
+	 * @param pss the callback setting the parameter values for each row
+	 */
+	public JdbcBatchWriter(JdbcTemplate jdbcTemplate, String sql, ParameterizedPreparedStatementSetter<T> pss) {
+		Assert.notNull(jdbcTemplate, "JdbcTemplate must not be null");
+		Assert.notNull(sql, "SQL must not be null");
+		Assert.notNull(pss, "ParameterizedPreparedStatementSetter must not be null");
+		this.jdbcTemplate = jdbcTemplate;
+		this.sql = sql;
+		this.pss = pss;
+	}
+
+
+	/**
+	 * Return the SQL statement executed for each row.
+	 */
+	public String getSql() {
+		return this.sql;
+	}
+
+	/**
+	 * Set the number of rows to submit per JDBC batch. Default is 1000.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the number of rows submitted per JDBC batch.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set whether to commit each batch on its own, switching the connection to
+	 * manual commit mode for the duration of the write. Default is "false",
+	 * leaving the commit to the connection's auto-commit mode or to an
+	 * enclosing transaction.
+	 * <p>Committing per batch is not possible within a Spring-managed transaction.
+	 */
+	public void setCommitPerBatch(boolean commitPerBatch) {
+		this.commitPerBatch = commitPerBatch;
+	}
+
+	/**
+	 * Return whether each batch is committed on its own.
+	 */
+	public boolean isCommitPerBatch() {
+		return this.commitPerBatch;
+	}
+
+	/**
+	 * Set whether to continue with the next batch when a batch fails.
+	 * Default is "false", propagating the first failure as DataAccessException.
+	 * <p>If "true", failures are reported through
+	 * {@link BatchWriteResult#getFailedBatches()}. This is best combined with
+	 * {@link #setCommitPerBatch commitPerBatch}, which rolls back a failed batch
+	 * as a whole; otherwise, the driver may have applied part of a failed batch.
+	 */
+	public void setContinueOnError(boolean continueOnError) {
+		this.continueOnError = continueOnError;
+	}
+
+	/**
+	 * Return whether to continue with the next batch when a batch fails.
+	 */
+	public boolean isContinueOnError() {
+		return this.continueOnError;
+	}
+
+	/**
+	 * Set the number of rows to combine into a single multi-row
+	 * <code>VALUES</code> statement. Default is 1, executing the SQL as given.
+	 * <p>Any higher value requires the SQL to end with a <code>VALUES (...)</code>
+	 * clause and the database to support multi-row inserts, e.g. MySQL, PostgreSQL,
+	 * SQL Server 2008, DB2, H2 or Derby. Keep in mind that databases limit the
+	 * number of parameters per statement.
+	 * @throws InvalidDataAccessApiUsageException if the SQL does not end with a
+	 * <code>VALUES</code> clause
+	 */
+	public void setRowsPerStatement(int rowsPerStatement) {
+		Assert.isTrue(rowsPerStatement > 0, "rowsPerStatement must be greater than 0");
+		if (rowsPerStatement > 1 && this.valuesTuple == null) {
+			Matcher matcher = VALUES_PATTERN.matcher(this.sql);
+			if (!matcher.matches()) {
+				throw new InvalidDataAccessApiUsageException(
+						"Cannot combine rows for SQL that does not end with a VALUES clause: " + this.sql);
+			}
+			this.valuesPrefix = matcher.group(1);
+			this.valuesTuple = matcher.group(2);
+			this.parametersPerRow = countPlaceholders(this.valuesTuple);
+		}
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	/**
+	 * Return the number of rows combined into a single statement.
+	 */
+	public int getRowsPerStatement() {
+		return this.rowsPerStatement;
+	}
+
+
+	/**
+	 * Write all rows of the given Iterable.
+	 * @param rows the rows to write
+	 * @return the outcome of the write
+	 * @throws DataAccessException if a batch failed and
+	 * {@link #setContinueOnError continueOnError} is not set
+	 * @see #write(Iterator)
+	 */
+	public BatchWriteResult write(Iterable<? extends T> rows) throws DataAccessException {
+		Assert.notNull(rows, "Rows must not be null");
+		return write(rows.iterator());
+	}
+
+	/**
+	 * Write all rows the given Iterator provides, pulling one batch at a time.
+	 * @param rows the rows to write
+	 * @return the outcome of the write
+	 * @throws DataAccessException if a batch failed and
+	 * {@link #setContinueOnError continueOnError} is not set
+	 */
+	public BatchWriteResult write(final Iterator<? extends T> rows) throws DataAccessException {
+		Assert.notNull(rows, "Rows must not be null");
+		if (this.commitPerBatch && TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new InvalidDataAccessApiUsageException(
+					"Cannot commit per batch within a transaction - set 'commitPerBatch' to false");
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executing SQL batch writer [" + this.sql + "] with batches of " + this.batchSize + " rows");
+		}
+		return this.jdbcTemplate.execute(new ConnectionCallback<BatchWriteResult>() {
+			public BatchWriteResult doInConnection(Connection con) throws SQLException {
+				return doWrite(con, rows);
+			}
+		});
+	}
+
+	private BatchWriteResult doWrite(Connection con, Iterator<? extends T> rows) throws SQLException {
+		BatchWriteResult result = new BatchWriteResult();
+		boolean resetAutoCommit = false;
+		if (this.commitPerBatch && con.getAutoCommit()) {
+			con.setAutoCommit(false);
+			resetAutoCommit = true;
+		}
+		BatchStatements statements = new BatchStatements(con);
+		try {
+			List<T> batch = new ArrayList<T>(this.batchSize);
+			long position = 0;
+			while (rows.hasNext()) {
+				batch.add(rows.next());
+				if (batch.size() == this.batchSize) {
+					writeBatch(con, statements, batch, position, result);
+					position += batch.size();
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) {
+				writeBatch(con, statements, batch, position, result);
+			}
+		}
+		finally {
+			statements.close();
+			if (resetAutoCommit) {
+				con.setAutoCommit(true);
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug(result);
+		}
+		return result;
+	}
+
+	private void writeBatch(Connection con, BatchStatements statements, List<T> batch, long position,
+			BatchWriteResult result) throws SQLException {
+
+		try {
+			int[] updateCounts = executeBatch(statements, batch);
+			if (this.commitPerBatch) {
+				con.commit();
+			}
+			result.addBatch(batch.size(), updateCounts);
+		}
+		catch (SQLException ex) {
+			if (this.commitPerBatch) {
+				rollback(con);
+			}
+			DataAccessException dae =
+					this.jdbcTemplate.getExceptionTranslator().translate("JdbcBatchWriter", this.sql, ex);
+			if (!this.continueOnError) {
+				throw dae;
+			}
+			if (logger.isWarnEnabled()) {
+				logger.warn("Batch of " + batch.size() + " rows starting at row " + position + " failed", dae);
+			}
+			result.addFailedBatch(new BatchWriteResult.FailedBatch(
+					result.getBatchCount(), position, batch.size(), dae));
+			statements.clearBatch();
+		}
+	}
+
+	private int[] executeBatch(BatchStatements statements, List<T> batch) throws SQLException {
+		int fullStatements = batch.size() / this.rowsPerStatement;
+		int remainingRows = batch.size() % this.rowsPerStatement;
+		int[] updateCounts = new int[0];
+		if (fullStatements > 0) {
+			updateCounts = statements.execute(this.rowsPerStatement, batch, 0, fullStatements);
+		}
+		if (remainingRows > 0) {
+			int[] remainingCounts = statements.execute(remainingRows, batch, batch.size() - remainingRows, 1);
+			int[] combinedCounts = new int[updateCounts.length + remainingCounts.length];
+			System.arraycopy(updateCounts, 0, combinedCounts, 0, updateCounts.length);
+			System.arraycopy(remainingCounts, 0, combinedCounts, updateCounts.length, remainingCounts.length);
+			updateCounts = combinedCounts;
+		}
+		return updateCounts;
+	}
+
+	private void rollback(Connection con) {
+		try {
+			con.rollback();
+		}
+		catch (SQLException ex) {
+			logger.debug("Could not roll back failed batch", ex);
+		}
+		catch (Throwable ex) {
+			logger.debug("Unexpected exception on rolling back failed batch", ex);
+		}
+	}
+
+	/**
+	 * Build the SQL for a statement covering the given number of rows.
+	 */
+	protected String getSqlForRows(int rows) {
+		if (rows == 1) {
+			return this.sql;
+		}
+		StringBuilder sb = new StringBuilder(this.valuesPrefix);
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(this.valuesTuple);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Count the '?' placeholders outside of quoted literals.
+	 */
+	private static int countPlaceholders(String sql) {
+		int count = 0;
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			}
+			else if (c == '\'' || c == '"') {
+				quote = c;
+			}
+			else if (c == '?') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * The PreparedStatements of a single write: one covering
+	 * {@link #setRowsPerStatement rowsPerStatement} rows, and one for
+	 * the remaining rows of a batch, if any.
+	 */
+	private class BatchStatements {
+
+		private final Connection con;
+
+		private final boolean supportsBatchUpdates;
+
+		private PreparedStatement statement;
+
+		private PreparedStatement remainderStatement;
+
+		private int remainderRows;
+
+		private ParameterOffsetHandler offsetHandler;
+
+		private PreparedStatement offsetStatement;
+
+		public BatchStatements(Connection con) throws SQLException {
+			this.con = con;
+			this.supportsBatchUpdates = JdbcUtils.supportsBatchUpdates(con);
+		}
+
+		/**
+		 * Execute the given number of statements, each covering the given number of rows.
+		 */
+		public int[] execute(int rows, List<T> batch, int firstRow, int statementCount) throws SQLException {
+			PreparedStatement ps = getStatement(rows);
+			int[] updateCounts = (this.supportsBatchUpdates ? null : new int[statementCount]);
+			int row = firstRow;
+			for (int i = 0; i < statementCount; i++) {
+				if (rows == 1) {
+					pss.setValues(ps, batch.get(row++));
+				}
+				else {
+					PreparedStatement target = getOffsetStatement(ps);
+					for (int j = 0; j < rows; j++) {
+						this.offsetHandler.offset = j * parametersPerRow;
+						pss.setValues(target, batch.get(row++));
+					}
+				}
+				if (this.supportsBatchUpdates) {
+					ps.addBatch();
+				}
+				else {
+					updateCounts[i] = ps.executeUpdate();
+				}
+			}
+			if (this.supportsBatchUpdates) {
+				updateCounts = ps.executeBatch();
+			}
+			return updateCounts;
+		}
+
+		private PreparedStatement getStatement(int rows) throws SQLException {
+			if (rows == rowsPerStatement) {
+				if (this.statement == null) {
+					this.statement = this.con.prepareStatement(getSqlForRows(rows));
+				}
+				return this.statement;
+			}
+			if (this.remainderStatement != null && this.remainderRows != rows) {
+				JdbcUtils.closeStatement(this.remainderStatement);
+				this.remainderStatement = null;
+			}
+			if (this.remainderStatement == null) {
+				this.remainderStatement = this.con.prepareStatement(getSqlForRows(rows));
+				this.remainderRows = rows;
+			}
+			return this.remainderStatement;
+		}
+
+		private PreparedStatement getOffsetStatement(PreparedStatement ps) {
+			if (this.offsetHandler == null || this.offsetHandler.target != ps) {
+				this.offsetHandler = new ParameterOffsetHandler(ps);
+				this.offsetStatement = (PreparedStatement) Proxy.newProxyInstance(
+						PreparedStatement.class.getClassLoader(), new Class[] {PreparedStatement.class},
+						this.offsetHandler);
+			}
+			return this.offsetStatement;
+		}
+
+		public void clearBatch() {
+			if (this.supportsBatchUpdates) {
+				clearBatch(this.statement);
+				clearBatch(this.remainderStatement);
+			}
+		}
+
+		private void clearBatch(PreparedStatement ps) {
+			if (ps != null) {
+				try {
+					ps.clearBatch();
+				}
+				catch (SQLException ex) {
+					logger.debug("Could not clear JDBC batch", ex);
+				}
+			}
+		}
+
+		public void close() {
+			JdbcUtils.closeStatement(this.statement);
+			JdbcUtils.closeStatement(this.remainderStatement);
+		}
+	}
+
+
+	/**
+	 * Invocation handler that shifts parameter indexes by the position of the
+	 * current row within a multi-row statement.
+	 */
+	private static class ParameterOffsetHandler implements InvocationHandler {
+
+		private final PreparedStatement target;
+
+		private int offset;
+
+		public ParameterOffsetHandler(PreparedStatement target) {
+			this.target = target;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == PreparedStatement.class && method.getName().startsWith("set") &&
+					args != null && args.length > 1 && args[0] instanceof Integer) {
+				args[0] = (Integer) args[0] + this.offset;
+			}
+			try {
+				return method.invoke(this.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+}
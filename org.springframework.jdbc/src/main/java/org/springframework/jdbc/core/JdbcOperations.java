@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.jdbc.core;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -907,6 +908,71 @@ public interface JdbcOperations {
 	 */
 	SqlRowSet queryForRowSet(String sql, Object... args) throws DataAccessException;
 
+	/**
+	 * Query using a prepared statement, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * <p>In contrast to the query methods returning a List, rows are read on demand,
+	 * so the entire result does not have to fit into memory. The JDBC resources
+	 * are held open until the returned iterator has been exhausted or closed.
+	 * @param psc object that can create a PreparedStatement given a Connection
+	 * @param pss object that knows how to set values on the prepared statement.
+	 * If this is <code>null</code>, the SQL will be assumed to contain no bind parameters.
+	 * @param rowMapper object that will map one object per row
+	 * @param fetchSize the fetch size to apply to the statement,
+	 * or 0 to use the template's {@linkplain JdbcTemplate#setFetchSize default}
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws DataAccessException if the query fails
+	 */
+	<T> RowIterator<T> queryForIterator(
+			PreparedStatementCreator psc, PreparedStatementSetter pss, RowMapper<T> rowMapper, int fetchSize)
+			throws DataAccessException;
+
+	/**
+	 * Query using a prepared statement, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * @param psc object that can create a PreparedStatement given a Connection
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws DataAccessException if the query fails
+	 * @see #queryForIterator(PreparedStatementCreator, PreparedStatementSetter, RowMapper, int)
+	 */
+	<T> RowIterator<T> queryForIterator(PreparedStatementCreator psc, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * @param sql SQL query to execute
+	 * @param args arguments to bind to the query
+	 * @param argTypes SQL types of the arguments
+	 * (constants from <code>java.sql.Types</code>)
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws DataAccessException if the query fails
+	 * @see #queryForIterator(PreparedStatementCreator, PreparedStatementSetter, RowMapper, int)
+	 * @see java.sql.Types
+	 */
+	<T> RowIterator<T> queryForIterator(String sql, Object[] args, int[] argTypes, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * @param sql SQL query to execute
+	 * @param rowMapper object that will map one object per row
+	 * @param args arguments to bind to the query
+	 * (leaving it to the PreparedStatement to guess the corresponding SQL type);
+	 * may also contain {@link SqlParameterValue} objects which indicate not
+	 * only the argument value but also the SQL type and optionally the scale
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws DataAccessException if the query fails
+	 * @see #queryForIterator(PreparedStatementCreator, PreparedStatementSetter, RowMapper, int)
+	 */
+	<T> RowIterator<T> queryForIterator(String sql, RowMapper<T> rowMapper, Object... args)
+			throws DataAccessException;
+
 	/**
 	 * Issue a single SQL update operation (such as an insert, update or delete statement)
 	 * using a PreparedStatementCreator to provide SQL and any required parameters.
@@ -987,6 +1053,26 @@ public interface JdbcOperations {
 	 */
 	int[] batchUpdate(String sql, BatchPreparedStatementSetter pss) throws DataAccessException;
 
+	/**
+	 * Issue a batch update for an unbounded sequence of rows, using a
+	 * ParameterizedPreparedStatementSetter to set values for each row.
+	 * <p>Rows are pulled from the given Iterator and submitted in JDBC batches of
+	 * the given size, so only one batch is held in memory at any time. Use a
+	 * {@link JdbcBatchWriter} directly for per-batch commits, continuing after
+	 * failed batches, or multi-row statements.
+	 * @param sql defining PreparedStatement that will be reused.
+	 * All statements in the batch will use the same SQL.
+	 * @param batchArgs the rows to write
+	 * @param batchSize the number of rows per JDBC batch
+	 * @param pss object to set parameters on the PreparedStatement
+	 * created by this method
+	 * @return the aggregate outcome of all batches
+	 * @throws DataAccessException if there is any problem issuing the update
+	 * @since 3.1
+	 */
+	<T> BatchWriteResult batchUpdate(String sql, Iterator<? extends T> batchArgs, int batchSize,
+			ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException;
+
 
 	//-------------------------------------------------------------------------
 	// Methods dealing with callable statements
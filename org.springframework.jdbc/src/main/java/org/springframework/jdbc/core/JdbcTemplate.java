@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,9 +30,11 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
@@ -804,6 +806,82 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		return query(sql, args, new SqlRowSetResultSetExtractor());
 	}
 
+	public <T> RowIterator<T> queryForIterator(
+			PreparedStatementCreator psc, PreparedStatementSetter pss, RowMapper<T> rowMapper, int fetchSize)
+			throws DataAccessException {
+
+		Assert.notNull(psc, "PreparedStatementCreator must not be null");
+		Assert.notNull(rowMapper, "RowMapper must not be null");
+		if (logger.isDebugEnabled()) {
+			String sql = getSql(psc);
+			logger.debug("Executing prepared SQL query for iteration" + (sql != null ? " [" + sql + "]" : ""));
+		}
+
+		Connection con = DataSourceUtils.getConnection(getDataSource());
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			Connection conToUse = con;
+			if (this.nativeJdbcExtractor != null &&
+					this.nativeJdbcExtractor.isNativeConnectionNecessaryForNativePreparedStatements()) {
+				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
+			}
+			ps = psc.createPreparedStatement(conToUse);
+			applyStatementSettings(ps);
+			if (fetchSize != 0) {
+				ps.setFetchSize(fetchSize);
+			}
+			PreparedStatement psToUse = ps;
+			if (this.nativeJdbcExtractor != null) {
+				psToUse = this.nativeJdbcExtractor.getNativePreparedStatement(ps);
+			}
+			if (pss != null) {
+				pss.setValues(psToUse);
+			}
+			rs = psToUse.executeQuery();
+			ResultSet rsToUse = rs;
+			if (this.nativeJdbcExtractor != null) {
+				rsToUse = this.nativeJdbcExtractor.getNativeResultSet(rs);
+			}
+			return new ResultSetRowIterator<T>(con, ps, rs, rsToUse, rowMapper, psc, pss);
+		}
+		catch (SQLException ex) {
+			String sql = getSql(psc);
+			cleanupParameters(psc, pss);
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+			DataSourceUtils.releaseConnection(con, getDataSource());
+			throw getExceptionTranslator().translate("PreparedStatementCallback", sql, ex);
+		}
+		catch (RuntimeException ex) {
+			cleanupParameters(psc, pss);
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+			DataSourceUtils.releaseConnection(con, getDataSource());
+			throw ex;
+		}
+	}
+
+	public <T> RowIterator<T> queryForIterator(PreparedStatementCreator psc, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(psc, null, rowMapper, 0);
+	}
+
+	public <T> RowIterator<T> queryForIterator(String sql, Object[] args, int[] argTypes, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql),
+				newArgTypePreparedStatementSetter(args, argTypes), rowMapper, 0);
+	}
+
+	public <T> RowIterator<T> queryForIterator(String sql, RowMapper<T> rowMapper, Object... args)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql),
+				newArgPreparedStatementSetter(args), rowMapper, 0);
+	}
+
 	protected int update(final PreparedStatementCreator psc, final PreparedStatementSetter pss)
 			throws DataAccessException {
 
@@ -923,6 +1001,15 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	}
 
 
+	public <T> BatchWriteResult batchUpdate(String sql, Iterator<? extends T> batchArgs, int batchSize,
+			ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException {
+
+		JdbcBatchWriter<T> batchWriter = new JdbcBatchWriter<T>(this, sql, pss);
+		batchWriter.setBatchSize(batchSize);
+		return batchWriter.write(batchArgs);
+	}
+
+
 	//-------------------------------------------------------------------------
 	// Methods dealing with callable statements
 	//-------------------------------------------------------------------------
@@ -1293,6 +1380,19 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		}
 	}
 
+	/**
+	 * Clean up parameters held by the given objects, if they are ParameterDisposers.
+	 * @param parameterHolders objects that potentially hold parameters (may be <code>null</code>)
+	 * @see ParameterDisposer
+	 */
+	private static void cleanupParameters(Object... parameterHolders) {
+		for (Object parameterHolder : parameterHolders) {
+			if (parameterHolder instanceof ParameterDisposer) {
+				((ParameterDisposer) parameterHolder).cleanupParameters();
+			}
+		}
+	}
+
 
 	/**
 	 * Invocation handler that suppresses close calls on JDBC Connections.
@@ -1424,4 +1524,113 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		}
 	}
 
+
+	/**
+	 * RowIterator that maps rows of an open ResultSet on demand, releasing
+	 * the ResultSet, PreparedStatement and Connection once exhausted or closed.
+	 */
+	private class ResultSetRowIterator<T> implements RowIterator<T> {
+
+		private final Connection con;
+
+		private final PreparedStatement ps;
+
+		private final ResultSet rs;
+
+		private final ResultSet rsToUse;
+
+		private final RowMapper<T> rowMapper;
+
+		private final PreparedStatementCreator psc;
+
+		private final PreparedStatementSetter pss;
+
+		private int rowNum = 0;
+
+		private boolean rowAvailable = false;
+
+		private boolean closed = false;
+
+		public ResultSetRowIterator(Connection con, PreparedStatement ps, ResultSet rs, ResultSet rsToUse,
+				RowMapper<T> rowMapper, PreparedStatementCreator psc, PreparedStatementSetter pss) {
+
+			this.con = con;
+			this.ps = ps;
+			this.rs = rs;
+			this.rsToUse = rsToUse;
+			this.rowMapper = rowMapper;
+			this.psc = psc;
+			this.pss = pss;
+		}
+
+		public boolean hasNext() {
+			if (this.closed) {
+				return false;
+			}
+			if (!this.rowAvailable) {
+				try {
+					this.rowAvailable = this.rsToUse.next();
+				}
+				catch (SQLException ex) {
+					throw translateAndClose(ex);
+				}
+				if (!this.rowAvailable) {
+					close();
+				}
+			}
+			return this.rowAvailable;
+		}
+
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more rows in ResultSet");
+			}
+			this.rowAvailable = false;
+			try {
+				return this.rowMapper.mapRow(this.rsToUse, this.rowNum++);
+			}
+			catch (SQLException ex) {
+				throw translateAndClose(ex);
+			}
+			catch (RuntimeException ex) {
+				close();
+				throw ex;
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("RowIterator does not support removal of rows");
+		}
+
+		public void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				handleWarnings(this.ps);
+			}
+			catch (SQLException ex) {
+				throw getExceptionTranslator().translate("RowIterator", getSql(this.psc), ex);
+			}
+			finally {
+				JdbcUtils.closeResultSet(this.rs);
+				cleanupParameters(this.psc, this.pss);
+				JdbcUtils.closeStatement(this.ps);
+				DataSourceUtils.releaseConnection(this.con, getDataSource());
+			}
+		}
+
+		private DataAccessException translateAndClose(SQLException ex) {
+			// Release Connection before translating, as in execute(PreparedStatementCreator, ...).
+			this.closed = true;
+			String sql = getSql(this.psc);
+			JdbcUtils.closeResultSet(this.rs);
+			cleanupParameters(this.psc, this.pss);
+			JdbcUtils.closeStatement(this.ps);
+			DataSourceUtils.releaseConnection(this.con, getDataSource());
+			return getExceptionTranslator().translate("RowIterator", sql, ex);
+		}
+	}
+
 }
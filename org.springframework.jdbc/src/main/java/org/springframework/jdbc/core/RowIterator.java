@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over the mapped rows of a query result, reading rows from the
+ * underlying JDBC ResultSet on demand. Holds the JDBC Connection, Statement and
+ * ResultSet open until the last row has been read or the iterator has been closed.
+ *
+ * <p>Callers must always {@link #close()} the iterator, typically in a finally
+ * block, unless they iterate over all rows. Methods throw
+ * {@link org.springframework.dao.DataAccessException DataAccessExceptions}
+ * if reading a row fails, after releasing the JDBC resources.
+ *
+ * <p>The {@link #remove()} operation is not supported.
+ *
+ * @since 3.1
+ * @see JdbcOperations#queryForIterator(String, RowMapper, Object...)
+ * @see org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations#queryForIterator
+ */
+public interface RowIterator<T> extends Iterator<T> {
+
+	/**
+	 * Release the JDBC resources held by this iterator.
+	 * Has no effect if the iterator is already closed.
+	 */
+	void close();
+
+}
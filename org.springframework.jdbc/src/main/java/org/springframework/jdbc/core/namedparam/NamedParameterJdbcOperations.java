@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,7 @@ import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowIterator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
@@ -166,6 +167,53 @@ public interface NamedParameterJdbcOperations {
 	<T> List<T> query(String sql, Map<String, ?> paramMap, RowMapper<T> rowMapper)
 			throws DataAccessException;
 
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list
+	 * of arguments to bind to the query, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * <p>Rows are read on demand, with the JDBC resources held open until the
+	 * returned iterator has been exhausted or closed.
+	 * @param sql SQL query to execute
+	 * @param paramSource container of arguments to bind to the query
+	 * @param rowMapper object that will map one object per row
+	 * @param fetchSize the fetch size to apply to the statement,
+	 * or 0 to use the fetch size of the underlying JdbcTemplate
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws org.springframework.dao.DataAccessException if the query fails
+	 * @see JdbcOperations#queryForIterator
+	 */
+	<T> RowIterator<T> queryForIterator(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper,
+			int fetchSize) throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list
+	 * of arguments to bind to the query, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * @param sql SQL query to execute
+	 * @param paramSource container of arguments to bind to the query
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws org.springframework.dao.DataAccessException if the query fails
+	 * @see #queryForIterator(String, SqlParameterSource, RowMapper, int)
+	 */
+	<T> RowIterator<T> queryForIterator(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list
+	 * of arguments to bind to the query, mapping each row to a Java object
+	 * via a RowMapper as it is read from the ResultSet.
+	 * @param sql SQL query to execute
+	 * @param paramMap map of parameters to bind to the query
+	 * (leaving it to the PreparedStatement to guess the corresponding SQL type)
+	 * @param rowMapper object that will map one object per row
+	 * @return the iterator over the mapped objects, to be closed after use
+	 * @throws org.springframework.dao.DataAccessException if the query fails
+	 * @see #queryForIterator(String, SqlParameterSource, RowMapper, int)
+	 */
+	<T> RowIterator<T> queryForIterator(String sql, Map<String, ?> paramMap, RowMapper<T> rowMapper)
+			throws DataAccessException;
+
 	/**
 	 * Query given SQL to create a prepared statement from SQL and a list
 	 * of arguments to bind to the query, mapping a single result row to a
@@ -19,6 +19,7 @@ package org.springframework.jdbc.core.namedparam;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
@@ -31,6 +32,7 @@ import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowIterator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.core.SqlParameter;
@@ -69,12 +71,21 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 
 	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
 
-	/** Cache of original SQL String to ParsedSql representation */
+	/** Fast access cache of original SQL String to ParsedSql representation */
+	private final Map<String, ParsedSql> parsedSqlAccessCache =
+			new ConcurrentHashMap<String, ParsedSql>(DEFAULT_CACHE_LIMIT);
+
+	/** Creation-ordered map of ParsedSql representations, for eviction beyond the cache limit */
+	@SuppressWarnings("serial")
 	private final Map<String, ParsedSql> parsedSqlCache =
-			new LinkedHashMap<String, ParsedSql>(DEFAULT_CACHE_LIMIT, 0.75f, true) {
+			new LinkedHashMap<String, ParsedSql>(DEFAULT_CACHE_LIMIT, 0.75f) {
 				@Override
 				protected boolean removeEldestEntry(Map.Entry<String, ParsedSql> eldest) {
-					return size() > getCacheLimit();
+					if (size() > getCacheLimit()) {
+						parsedSqlAccessCache.remove(eldest.getKey());
+						return true;
+					}
+					return false;
 				}
 			};
 
@@ -172,6 +183,25 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 		return query(sql, new MapSqlParameterSource(paramMap), rowMapper);
 	}
 
+	public <T> RowIterator<T> queryForIterator(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper,
+			int fetchSize) throws DataAccessException {
+
+		return getJdbcOperations().queryForIterator(
+				getPreparedStatementCreator(sql, paramSource), null, rowMapper, fetchSize);
+	}
+
+	public <T> RowIterator<T> queryForIterator(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(sql, paramSource, rowMapper, 0);
+	}
+
+	public <T> RowIterator<T> queryForIterator(String sql, Map<String, ?> paramMap, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(sql, new MapSqlParameterSource(paramMap), rowMapper, 0);
+	}
+
 	public <T> T queryForObject(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper)
 			throws DataAccessException {
 
@@ -321,8 +351,9 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 
 	/**
 	 * Obtain a parsed representation of the given SQL statement.
-	 * <p>The default implementation uses an LRU cache with an upper limit
-	 * of 256 entries.
+	 * <p>The default implementation uses a cache with an upper limit of 256
+	 * entries, evicting the oldest entries first. Cache hits do not require
+	 * any synchronization.
 	 * @param sql the original SQL
 	 * @return a representation of the parsed SQL statement
 	 */
@@ -330,14 +361,19 @@ public class NamedParameterJdbcTemplate implements NamedParameterJdbcOperations
 		if (getCacheLimit() <= 0) {
 			return NamedParameterUtils.parseSqlStatement(sql);
 		}
-		synchronized (this.parsedSqlCache) {
-			ParsedSql parsedSql = this.parsedSqlCache.get(sql);
-			if (parsedSql == null) {
-				parsedSql = NamedParameterUtils.parseSqlStatement(sql);
-				this.parsedSqlCache.put(sql, parsedSql);
+		ParsedSql parsedSql = this.parsedSqlAccessCache.get(sql);
+		if (parsedSql == null) {
+			ParsedSql newParsedSql = NamedParameterUtils.parseSqlStatement(sql);
+			synchronized (this.parsedSqlCache) {
+				parsedSql = this.parsedSqlCache.get(sql);
+				if (parsedSql == null) {
+					parsedSql = newParsedSql;
+					this.parsedSqlAccessCache.put(sql, parsedSql);
+					this.parsedSqlCache.put(sql, parsedSql);
+				}
 			}
-			return parsedSql;
 		}
+		return parsedSql;
 	}
 
 }
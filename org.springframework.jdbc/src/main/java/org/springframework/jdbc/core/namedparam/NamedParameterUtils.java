@@ -185,12 +185,54 @@ public abstract class NamedParameterUtils {
 	 * placeholder to be used for a select list. Select lists should be limited
 	 * to 100 or fewer elements. A larger number of elements is not guaramteed to
 	 * be supported by the database and is strictly vendor-dependent.
+	 * <p>The resulting SQL is kept with the given ParsedSql, per shape of the
+	 * collection expansions, so that repeated substitutions for a cached ParsedSql
+	 * do not rebuild the same statement.
 	 * @param parsedSql the parsed represenation of the SQL statement
 	 * @param paramSource the source for named parameters
 	 * @return the SQL statement with substituted parameters
 	 * @see #parseSqlStatement
 	 */
 	public static String substituteNamedParameters(ParsedSql parsedSql, SqlParameterSource paramSource) {
+		int[] expansion = null;
+		boolean cacheable = true;
+		List<String> names = parsedSql.getParameterNames();
+		for (int i = 0; i < names.size() && cacheable; i++) {
+			String paramName = names.get(i);
+			if (paramSource != null && paramSource.hasValue(paramName)) {
+				Object value = paramSource.getValue(paramName);
+				if (value instanceof Collection) {
+					Collection<?> entries = (Collection<?>) value;
+					for (Object entry : entries) {
+						if (entry instanceof Object[]) {
+							// Expression lists are not worth caching.
+							cacheable = false;
+							break;
+						}
+					}
+					if (expansion == null) {
+						expansion = new int[names.size()];
+					}
+					expansion[i] = entries.size() + 1;
+				}
+			}
+		}
+		if (cacheable) {
+			String substitutedSql = parsedSql.getSubstitutedSql(expansion);
+			if (substitutedSql == null) {
+				substitutedSql = buildSubstitutedSql(parsedSql, paramSource);
+				parsedSql.setSubstitutedSql(expansion, substitutedSql);
+			}
+			return substitutedSql;
+		}
+		return buildSubstitutedSql(parsedSql, paramSource);
+	}
+
+	/**
+	 * Build the SQL statement with named parameters replaced by placeholders.
+	 * @see #substituteNamedParameters(ParsedSql, SqlParameterSource)
+	 */
+	private static String buildSubstitutedSql(ParsedSql parsedSql, SqlParameterSource paramSource) {
 		String originalSql = parsedSql.getOriginalSql();
 		StringBuilder actualSql = new StringBuilder();
 		List paramNames = parsedSql.getParameterNames();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,7 +17,10 @@
 package org.springframework.jdbc.core.namedparam;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Holds information about a parsed SQL statement.
@@ -28,6 +31,9 @@ import java.util.List;
  */
 public class ParsedSql {
 
+	/** Maximum number of collection expansions to keep the substituted SQL for */
+	private static final int MAX_EXPANDED_SQL = 16;
+
 	private String originalSql;
 
 	private List<String> parameterNames = new ArrayList<String>();
@@ -40,6 +46,10 @@ public class ParsedSql {
 
 	private int totalParameterCount;
 
+	private volatile String substitutedSql;
+
+	private final Map<ExpansionKey, String> expandedSql = new ConcurrentHashMap<ExpansionKey, String>(4);
+
 
 	/**
 	 * Create a new instance of the {@link ParsedSql} class.
@@ -134,6 +144,37 @@ public class ParsedSql {
 	}
 
 
+	/**
+	 * Return the substituted SQL previously stored for the given expansion.
+	 * @param expansion the placeholder expansion per parameter position: 0 for a
+	 * single placeholder, or the number of collection elements plus 1 for an expanded
+	 * collection; <code>null</code> if all parameters use a single placeholder
+	 * @return the substituted SQL, or <code>null</code> if none stored yet
+	 */
+	String getSubstitutedSql(int[] expansion) {
+		if (expansion == null) {
+			return this.substitutedSql;
+		}
+		return this.expandedSql.get(new ExpansionKey(expansion));
+	}
+
+	/**
+	 * Store the substituted SQL for the given expansion, as long as the
+	 * number of distinct collection expansions stays within bounds.
+	 * @param expansion the placeholder expansion per parameter position
+	 * (see {@link #getSubstitutedSql})
+	 * @param sql the substituted SQL
+	 */
+	void setSubstitutedSql(int[] expansion, String sql) {
+		if (expansion == null) {
+			this.substitutedSql = sql;
+		}
+		else if (this.expandedSql.size() < MAX_EXPANDED_SQL) {
+			this.expandedSql.put(new ExpansionKey(expansion), sql);
+		}
+	}
+
+
 	/**
 	 * Exposes the original SQL String.
 	 */
@@ -142,4 +183,28 @@ public class ParsedSql {
 		return this.originalSql;
 	}
 
+
+	/**
+	 * Key for the substituted SQL of a specific collection expansion.
+	 */
+	private static class ExpansionKey {
+
+		private final int[] expansion;
+
+		public ExpansionKey(int[] expansion) {
+			this.expansion = expansion;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (this == other ||
+					(other instanceof ExpansionKey && Arrays.equals(this.expansion, ((ExpansionKey) other).expansion)));
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.expansion);
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -38,7 +38,9 @@ import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcBatchWriter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.SqlTypeValue;
 import org.springframework.jdbc.core.StatementCreatorUtils;
@@ -580,6 +582,22 @@ public abstract class AbstractJdbcInsert {
 		return executeBatchInternal(batchValues);
 	}
 
+	/**
+	 * Create a batch writer for the insert statement, matching each
+	 * {@link SqlParameterSource} with the insert columns.
+	 * @return a new JdbcBatchWriter for the insert statement
+	 */
+	protected JdbcBatchWriter<SqlParameterSource> doCreateBatchWriter() {
+		checkCompiled();
+		return new JdbcBatchWriter<SqlParameterSource>(this.jdbcTemplate, getInsertString(),
+				new ParameterizedPreparedStatementSetter<SqlParameterSource>() {
+					public void setValues(PreparedStatement ps, SqlParameterSource parameterSource) throws SQLException {
+						List<Object> values = matchInParameterValuesWithInsertColumns(parameterSource);
+						setParameterValues(ps, values, getInsertTypes());
+					}
+				});
+	}
+
 	/**
 	 * Method to execute the batch insert
 	 */
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,10 +17,13 @@
 package org.springframework.jdbc.core.simple;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.springframework.jdbc.core.BatchWriteResult;
+import org.springframework.jdbc.core.JdbcBatchWriter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.KeyHolder;
@@ -142,4 +145,14 @@ public class SimpleJdbcInsert extends AbstractJdbcInsert implements SimpleJdbcIn
 		return doExecuteBatch(batch);
 	}
 
+	public BatchWriteResult executeBatch(Iterator<? extends SqlParameterSource> batch, int batchSize) {
+		JdbcBatchWriter<SqlParameterSource> batchWriter = newBatchWriter();
+		batchWriter.setBatchSize(batchSize);
+		return batchWriter.write(batch);
+	}
+
+	public JdbcBatchWriter<SqlParameterSource> newBatchWriter() {
+		return doCreateBatchWriter();
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,11 @@
 
 package org.springframework.jdbc.core.simple;
 
+import java.util.Iterator;
 import java.util.Map;
 
+import org.springframework.jdbc.core.BatchWriteResult;
+import org.springframework.jdbc.core.JdbcBatchWriter;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
@@ -157,4 +160,23 @@ public interface SimpleJdbcInsertOperations {
 	 */
 	int[] executeBatch(SqlParameterSource[] batch);
 
+	/**
+	 * Execute a batch insert for an unbounded sequence of values, submitting
+	 * JDBC batches of the given size as values are pulled from the Iterator.
+	 * @param batch an Iterator over SqlParameterSource containing values for the batch
+	 * @param batchSize the number of rows per JDBC batch
+	 * @return the aggregate outcome of all batches
+	 * @since 3.1
+	 * @see #newBatchWriter()
+	 */
+	BatchWriteResult executeBatch(Iterator<? extends SqlParameterSource> batch, int batchSize);
+
+	/**
+	 * Create a new batch writer for this insert, allowing for further configuration
+	 * such as per-batch commits or multi-row <code>VALUES</code> statements.
+	 * @return a new JdbcBatchWriter for the insert statement
+	 * @since 3.1
+	 */
+	JdbcBatchWriter<SqlParameterSource> newBatchWriter();
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -208,6 +208,26 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
 	}
 
 
+	/**
+	 * Fetch the actual JDBC Connection for a lazy Connection handle,
+	 * on first creation of a Statement.
+	 * <p>The default implementation obtains a Connection from the target DataSource.
+	 * Can be overridden in subclasses, for example to choose among several target
+	 * DataSources based on the read-only flag of the Connection handle.
+	 * @param username the per-Connection username (<code>null</code> if none)
+	 * @param password the per-Connection password (<code>null</code> if none)
+	 * @param readOnly whether the Connection handle has been marked as read-only
+	 * @return the target Connection
+	 * @throws SQLException if thrown by the target DataSource
+	 * @since 3.1
+	 */
+	protected Connection doGetTargetConnection(String username, String password, boolean readOnly)
+			throws SQLException {
+
+		return (username != null ? getTargetDataSource().getConnection(username, password) :
+				getTargetDataSource().getConnection());
+	}
+
 	/**
 	 * Return a Connection handle that lazily fetches an actual JDBC Connection
 	 * when asked for a Statement (or PreparedStatement or CallableStatement).
@@ -398,9 +418,7 @@ public class LazyConnectionDataSourceProxy extends DelegatingDataSource {
 				}
 
 				// Fetch physical Connection from DataSource.
-				this.target = (this.username != null) ?
-						getTargetDataSource().getConnection(this.username, this.password) :
-						getTargetDataSource().getConnection();
+				this.target = doGetTargetConnection(this.username, this.password, this.readOnly);
 
 				// If we still lack default connection properties, check them now.
 				checkDefaultConnectionProperties(this.target);
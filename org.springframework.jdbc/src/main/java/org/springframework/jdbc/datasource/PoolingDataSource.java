@@ -0,0 +1,802 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.CustomizableThreadCreator;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * {@link SmartDataSource} that pools the physical JDBC Connections obtained from a
+ * target DataSource, e.g. a {@link SimpleDriverDataSource} or an embedded database.
+ * Closing a Connection returned by this DataSource hands it back to the pool.
+ *
+ * <p>Connections are kept in a shared lock-free bag: borrowing a Connection
+ * first tries the Connection last returned by the current thread, then any idle
+ * Connection in the pool, then creates a new physical Connection as long as the
+ * {@linkplain #setMaxPoolSize maximum pool size} has not been reached. Otherwise the
+ * calling thread waits up to {@linkplain #setMaxWait "maxWait"} milliseconds for a
+ * Connection to be handed off by another thread, throwing a SQLException on timeout.
+ *
+ * <p>Idle Connections are {@linkplain #setValidateOnBorrow validated} before being
+ * handed out, and closed after being unused for the {@linkplain #setIdleTimeout
+ * idle timeout}, keeping at least the {@linkplain #setMinPoolSize minimum pool size}.
+ * Transactions left open on a returned Connection are rolled back, and the
+ * read-only flag, transaction isolation and catalog of a returned Connection are
+ * reset to the values that the Connection was created with, if changed by the borrower.
+ *
+ * <p>Pool metrics such as the number of active and idle Connections, the number
+ * of waiting threads and the number of wait timeouts are exposed through getters,
+ * e.g. for export through JMX.
+ *
+ * <p>This is intended for standalone and test environments, e.g. in front of
+ * an {@link org.springframework.jdbc.datasource.embedded.EmbeddedDatabase}.
+ * In a Java EE environment, prefer the server's DataSource obtained from JNDI.
+ *
+ * @since 3.1
+ * @see #getConnection()
+ * @see #destroy()
+ */
+public class PoolingDataSource extends DelegatingDataSource implements SmartDataSource, DisposableBean {
+
+	private static final int STATE_IDLE = 0;
+
+	private static final int STATE_IN_USE = 1;
+
+	private static final int STATE_REMOVED = -1;
+
+	/** Maximum time that a waiting thread blocks before checking for freed pool capacity */
+	private static final long WAIT_SLICE_MILLIS = 100;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int maxPoolSize = 10;
+
+	private int minPoolSize = 0;
+
+	private long maxWait = 30000;
+
+	private long idleTimeout = 600000;
+
+	private long evictionInterval = 30000;
+
+	private boolean validateOnBorrow = true;
+
+	private String validationQuery;
+
+	private int validationTimeout = 5;
+
+	/** The shared bag of all pooled Connections, in use or idle */
+	private final List<PooledConnection> connections = new CopyOnWriteArrayList<PooledConnection>();
+
+	/** The Connection last returned by each thread, to be preferred on its next borrow */
+	private final ThreadLocal<WeakReference<PooledConnection>> lastReturnedConnection =
+			new ThreadLocal<WeakReference<PooledConnection>>();
+
+	/** Hand-off of returned Connections to waiting threads */
+	private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<PooledConnection>(true);
+
+	private final AtomicInteger totalConnections = new AtomicInteger();
+
+	private final AtomicInteger waitingThreads = new AtomicInteger();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+
+	private final AtomicLong createdCount = new AtomicLong();
+
+	private final AtomicLong discardedCount = new AtomicLong();
+
+	private final AtomicLong waitTimeoutCount = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private ScheduledExecutorService evictionExecutor;
+
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Create a new PoolingDataSource.
+	 * @see #setTargetDataSource
+	 */
+	public PoolingDataSource() {
+	}
+
+	/**
+	 * Create a new PoolingDataSource.
+	 * @param targetDataSource the target DataSource to obtain physical Connections from
+	 */
+	public PoolingDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+
+	/**
+	 * Set the maximum number of Connections in the pool, in use or idle.
+	 * <p>Default is 10.
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/**
+	 * Return the maximum number of Connections in the pool.
+	 */
+	public int getMaxPoolSize() {
+		return this.maxPoolSize;
+	}
+
+	/**
+	 * Set the number of Connections to open on initialization and to keep
+	 * in the pool, even if idle.
+	 * <p>Default is 0.
+	 */
+	public void setMinPoolSize(int minPoolSize) {
+		this.minPoolSize = minPoolSize;
+	}
+
+	/**
+	 * Return the minimum number of Connections in the pool.
+	 */
+	public int getMinPoolSize() {
+		return this.minPoolSize;
+	}
+
+	/**
+	 * Set the maximum number of milliseconds to wait for a Connection
+	 * if all Connections are in use and the pool cannot grow any further.
+	 * <p>Default is 30000 (30 seconds).
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Set the number of milliseconds after which an idle Connection is closed.
+	 * <p>Default is 600000 (10 minutes). A value of 0 keeps idle Connections open.
+	 * @see #setEvictionInterval
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Set the interval in milliseconds between checks for idle Connections to close,
+	 * performed by a background thread.
+	 * <p>Default is 30000 (30 seconds). A value of 0 switches the checks off.
+	 */
+	public void setEvictionInterval(long evictionInterval) {
+		this.evictionInterval = evictionInterval;
+	}
+
+	/**
+	 * Set whether to validate idle Connections before handing them out,
+	 * discarding invalid Connections.
+	 * <p>Default is "true".
+	 * @see #setValidationQuery
+	 */
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	/**
+	 * Set the SQL statement to validate Connections with, e.g. "SELECT 1".
+	 * <p>Default is none, validating Connections through JDBC 4.0's
+	 * <code>Connection.isValid</code>.
+	 */
+	public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	/**
+	 * Set the timeout in seconds for validating a Connection.
+	 * <p>Default is 5.
+	 */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		if (this.maxPoolSize <= 0) {
+			throw new IllegalArgumentException("Property 'maxPoolSize' must be greater than 0");
+		}
+		if (this.minPoolSize < 0 || this.minPoolSize > this.maxPoolSize) {
+			throw new IllegalArgumentException("Property 'minPoolSize' must be between 0 and 'maxPoolSize'");
+		}
+		try {
+			fillPool();
+		}
+		catch (SQLException ex) {
+			logger.warn("Could not open initial pooled JDBC Connections", ex);
+		}
+		if (this.evictionInterval > 0 && (this.idleTimeout > 0 || this.minPoolSize > 0)) {
+			final CustomizableThreadCreator threadCreator = new CustomizableThreadCreator("PoolingDataSource-evictor-");
+			threadCreator.setDaemon(true);
+			this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					return threadCreator.createThread(runnable);
+				}
+			});
+			this.evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					evictIdleConnections();
+				}
+			}, this.evictionInterval, this.evictionInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * Borrow a Connection from the pool, creating a new physical Connection if necessary.
+	 * <p>The returned Connection is a proxy for the pooled Connection which hands
+	 * the pooled Connection back to the pool when closed.
+	 * @throws SQLException if no Connection became available within the
+	 * {@linkplain #setMaxWait "maxWait"} period, or if the target DataSource failed
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		this.borrowCount.incrementAndGet();
+		long deadline = System.currentTimeMillis() + this.maxWait;
+		while (true) {
+			PooledConnection pc = borrowConnection(deadline);
+			if (pc == null) {
+				this.waitTimeoutCount.incrementAndGet();
+				throw new SQLException("Timed out after " + this.maxWait +
+						"ms waiting for a pooled JDBC Connection: all " + this.maxPoolSize + " Connections in use");
+			}
+			if (pc.fresh || !this.validateOnBorrow || isValid(pc.target)) {
+				pc.fresh = false;
+				return getPooledConnectionProxy(pc);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Discarding invalid pooled JDBC Connection: " + pc.target);
+			}
+			discardConnection(pc);
+		}
+	}
+
+	/**
+	 * Pooled Connections are only available for the target DataSource's default
+	 * credentials: This implementation returns a non-pooled Connection.
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return getTargetDataSource().getConnection(username, password);
+	}
+
+	/**
+	 * Closing a pooled Connection returns it to the pool,
+	 * so Connections should always be closed after use.
+	 */
+	public boolean shouldClose(Connection con) {
+		return true;
+	}
+
+	/**
+	 * Close all idle Connections and stop handing out Connections.
+	 * Connections currently in use are closed when returned to the pool.
+	 */
+	public void destroy() {
+		this.closed = true;
+		if (this.evictionExecutor != null) {
+			this.evictionExecutor.shutdownNow();
+		}
+		for (PooledConnection pc : this.connections) {
+			if (pc.state.compareAndSet(STATE_IDLE, STATE_REMOVED)) {
+				removeConnection(pc);
+			}
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Closed JDBC Connection pool: " + this);
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Pool metrics
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the number of Connections currently in use.
+	 */
+	public int getActiveConnections() {
+		int count = 0;
+		for (PooledConnection pc : this.connections) {
+			if (pc.state.get() == STATE_IN_USE) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of idle Connections in the pool.
+	 */
+	public int getIdleConnections() {
+		int count = 0;
+		for (PooledConnection pc : this.connections) {
+			if (pc.state.get() == STATE_IDLE) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the total number of Connections in the pool, in use or idle.
+	 */
+	public int getTotalConnections() {
+		return this.totalConnections.get();
+	}
+
+	/**
+	 * Return the number of threads currently waiting for a Connection.
+	 */
+	public int getThreadsAwaitingConnection() {
+		return this.waitingThreads.get();
+	}
+
+	/**
+	 * Return the number of Connections requested from this DataSource so far.
+	 */
+	public long getBorrowCount() {
+		return this.borrowCount.get();
+	}
+
+	/**
+	 * Return the number of physical Connections created so far.
+	 */
+	public long getCreatedCount() {
+		return this.createdCount.get();
+	}
+
+	/**
+	 * Return the number of physical Connections closed so far,
+	 * because they were invalid, idle for too long or the pool was closed.
+	 */
+	public long getDiscardedCount() {
+		return this.discardedCount.get();
+	}
+
+	/**
+	 * Return the number of requests that timed out waiting for a Connection.
+	 */
+	public long getWaitTimeoutCount() {
+		return this.waitTimeoutCount.get();
+	}
+
+	/**
+	 * Return the total time in milliseconds that threads spent waiting for a Connection.
+	 */
+	public long getTotalWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": active=" + getActiveConnections() + ", idle=" +
+				getIdleConnections() + ", waiting=" + getThreadsAwaitingConnection() + ", borrowed=" +
+				getBorrowCount() + ", created=" + getCreatedCount() + ", discarded=" + getDiscardedCount() +
+				", timeouts=" + getWaitTimeoutCount();
+	}
+
+
+	//---------------------------------------------------------------------
+	// Pool internals
+	//---------------------------------------------------------------------
+
+	/**
+	 * Acquire a pooled Connection, waiting until the given deadline if necessary.
+	 * @return the acquired Connection, or <code>null</code> on timeout
+	 */
+	private PooledConnection borrowConnection(long deadline) throws SQLException {
+		assertOpen();
+		// Fast path: the Connection that this thread returned last.
+		WeakReference<PooledConnection> ref = this.lastReturnedConnection.get();
+		if (ref != null) {
+			PooledConnection pc = ref.get();
+			if (pc != null && pc.state.compareAndSet(STATE_IDLE, STATE_IN_USE)) {
+				return pc;
+			}
+		}
+		PooledConnection pc = acquireIdleConnection();
+		if (pc == null) {
+			pc = createConnection();
+		}
+		if (pc != null) {
+			return pc;
+		}
+		this.waitingThreads.incrementAndGet();
+		long waitStart = System.nanoTime();
+		try {
+			while (true) {
+				// Check again, then wait for a hand-off. Wake up periodically
+				// for capacity freed up by discarded Connections.
+				assertOpen();
+				pc = acquireIdleConnection();
+				if (pc == null) {
+					pc = createConnection();
+				}
+				if (pc != null) {
+					return pc;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return null;
+				}
+				pc = this.handoffQueue.poll(Math.min(remaining, WAIT_SLICE_MILLIS), TimeUnit.MILLISECONDS);
+				if (pc != null && pc.state.compareAndSet(STATE_IDLE, STATE_IN_USE)) {
+					return pc;
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled JDBC Connection");
+		}
+		finally {
+			this.totalWaitNanos.addAndGet(System.nanoTime() - waitStart);
+			this.waitingThreads.decrementAndGet();
+		}
+	}
+
+	private PooledConnection acquireIdleConnection() {
+		for (PooledConnection pc : this.connections) {
+			if (pc.state.compareAndSet(STATE_IDLE, STATE_IN_USE)) {
+				return pc;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Create a new physical Connection in use, if the pool has not reached its maximum size.
+	 * @return the new Connection, or <code>null</code> if the pool is exhausted
+	 */
+	private PooledConnection createConnection() throws SQLException {
+		int total;
+		do {
+			total = this.totalConnections.get();
+			if (total >= this.maxPoolSize) {
+				return null;
+			}
+		}
+		while (!this.totalConnections.compareAndSet(total, total + 1));
+		boolean created = false;
+		try {
+			Connection con = getTargetDataSource().getConnection();
+			PooledConnection pc = new PooledConnection(con);
+			this.connections.add(pc);
+			this.createdCount.incrementAndGet();
+			created = true;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Created pooled JDBC Connection: " + con);
+			}
+			return pc;
+		}
+		finally {
+			if (!created) {
+				this.totalConnections.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Return the given Connection to the pool, handing it off to a waiting thread if any.
+	 * @param pc the Connection to return
+	 * @param resetState whether the borrower changed the read-only flag, transaction
+	 * isolation or catalog of the Connection, which need to be reset then
+	 */
+	private void returnConnection(PooledConnection pc, boolean resetState) {
+		try {
+			if (pc.target.getAutoCommit() != pc.defaultAutoCommit) {
+				pc.target.rollback();
+				pc.target.setAutoCommit(pc.defaultAutoCommit);
+			}
+			else if (!pc.defaultAutoCommit) {
+				pc.target.rollback();
+			}
+			if (resetState) {
+				resetConnectionState(pc);
+			}
+			pc.target.clearWarnings();
+		}
+		catch (SQLException ex) {
+			logger.debug("Could not reset pooled JDBC Connection - discarding it", ex);
+			discardConnection(pc);
+			return;
+		}
+		if (this.closed) {
+			discardConnection(pc);
+			return;
+		}
+		pc.lastAccess = System.currentTimeMillis();
+		WeakReference<PooledConnection> ref = this.lastReturnedConnection.get();
+		if (ref == null || ref.get() != pc) {
+			this.lastReturnedConnection.set(new WeakReference<PooledConnection>(pc));
+		}
+		pc.state.set(STATE_IDLE);
+		while (this.waitingThreads.get() > 0) {
+			if (pc.state.get() != STATE_IDLE || this.handoffQueue.offer(pc)) {
+				break;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Reset the read-only flag, transaction isolation and catalog of the given
+	 * Connection to the values it has been created with.
+	 * @throws SQLException if the state could not be reset, e.g. since the
+	 * Connection did not have a catalog originally
+	 */
+	private void resetConnectionState(PooledConnection pc) throws SQLException {
+		Connection con = pc.target;
+		if (con.isReadOnly() != pc.defaultReadOnly) {
+			con.setReadOnly(pc.defaultReadOnly);
+		}
+		if (con.getTransactionIsolation() != pc.defaultTransactionIsolation) {
+			con.setTransactionIsolation(pc.defaultTransactionIsolation);
+		}
+		if (!ObjectUtils.nullSafeEquals(con.getCatalog(), pc.defaultCatalog)) {
+			if (pc.defaultCatalog == null) {
+				throw new SQLException("Cannot reset catalog [" + con.getCatalog() + "] to none");
+			}
+			con.setCatalog(pc.defaultCatalog);
+		}
+	}
+
+	private void discardConnection(PooledConnection pc) {
+		if (pc.state.getAndSet(STATE_REMOVED) != STATE_REMOVED) {
+			removeConnection(pc);
+		}
+	}
+
+	private void removeConnection(PooledConnection pc) {
+		this.connections.remove(pc);
+		this.totalConnections.decrementAndGet();
+		this.discardedCount.incrementAndGet();
+		try {
+			pc.target.close();
+		}
+		catch (Throwable ex) {
+			logger.debug("Could not close pooled JDBC Connection", ex);
+		}
+	}
+
+	/**
+	 * Close Connections that have been idle for longer than the idle timeout,
+	 * keeping the minimum pool size.
+	 */
+	private void evictIdleConnections() {
+		if (this.idleTimeout > 0) {
+			long threshold = System.currentTimeMillis() - this.idleTimeout;
+			for (PooledConnection pc : this.connections) {
+				if (this.totalConnections.get() <= this.minPoolSize) {
+					break;
+				}
+				if (pc.lastAccess < threshold && pc.state.compareAndSet(STATE_IDLE, STATE_REMOVED)) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Closing idle pooled JDBC Connection: " + pc.target);
+					}
+					removeConnection(pc);
+				}
+			}
+		}
+		try {
+			fillPool();
+		}
+		catch (SQLException ex) {
+			logger.debug("Could not open pooled JDBC Connections up to the minimum pool size", ex);
+		}
+	}
+
+	/**
+	 * Open idle Connections up to the minimum pool size.
+	 */
+	private void fillPool() throws SQLException {
+		while (!this.closed && this.totalConnections.get() < this.minPoolSize) {
+			PooledConnection pc = createConnection();
+			if (pc == null) {
+				break;
+			}
+			pc.fresh = false;
+			pc.state.set(STATE_IDLE);
+		}
+	}
+
+	/**
+	 * Validate the given physical Connection, through the validation query if specified.
+	 */
+	private boolean isValid(Connection con) {
+		try {
+			if (this.validationQuery != null) {
+				Statement stmt = con.createStatement();
+				try {
+					stmt.setQueryTimeout(this.validationTimeout);
+					stmt.execute(this.validationQuery);
+				}
+				finally {
+					stmt.close();
+				}
+				return true;
+			}
+			try {
+				return con.isValid(this.validationTimeout);
+			}
+			catch (AbstractMethodError err) {
+				// JDBC 4.0 method not implemented by the driver
+				return !con.isClosed();
+			}
+		}
+		catch (SQLException ex) {
+			logger.debug("Validation of pooled JDBC Connection failed", ex);
+			return false;
+		}
+	}
+
+	private void assertOpen() throws SQLException {
+		if (this.closed) {
+			throw new SQLException("PoolingDataSource has been closed");
+		}
+	}
+
+	/**
+	 * Wrap the given pooled Connection with a proxy that returns it to the pool when closed.
+	 */
+	private Connection getPooledConnectionProxy(PooledConnection pc) {
+		return (Connection) Proxy.newProxyInstance(
+				ConnectionProxy.class.getClassLoader(),
+				new Class[] {ConnectionProxy.class},
+				new PooledConnectionInvocationHandler(pc));
+	}
+
+
+	/**
+	 * A physical Connection in the pool, along with its pool state.
+	 */
+	private static class PooledConnection {
+
+		private final Connection target;
+
+		private final boolean defaultAutoCommit;
+
+		private final boolean defaultReadOnly;
+
+		private final int defaultTransactionIsolation;
+
+		private final String defaultCatalog;
+
+		private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+
+		/** Whether this Connection has just been created, not requiring validation */
+		private volatile boolean fresh = true;
+
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private PooledConnection(Connection target) throws SQLException {
+			this.target = target;
+			this.defaultAutoCommit = target.getAutoCommit();
+			this.defaultReadOnly = target.isReadOnly();
+			this.defaultTransactionIsolation = target.getTransactionIsolation();
+			this.defaultCatalog = target.getCatalog();
+		}
+	}
+
+
+	/**
+	 * Invocation handler for a borrowed Connection, returning it to the pool on close.
+	 * Each borrow gets its own handler, so stale handles cannot affect a later borrower.
+	 */
+	private class PooledConnectionInvocationHandler implements InvocationHandler {
+
+		private final PooledConnection pooledConnection;
+
+		private boolean closed = false;
+
+		/** Whether the borrower changed Connection state that needs to be reset on return */
+		private boolean stateChanged = false;
+
+		public PooledConnectionInvocationHandler(PooledConnection pooledConnection) {
+			this.pooledConnection = pooledConnection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Invocation on ConnectionProxy interface coming in...
+
+			if (method.getName().equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0]);
+			}
+			else if (method.getName().equals("hashCode")) {
+				// Use hashCode of Connection proxy.
+				return System.identityHashCode(proxy);
+			}
+			else if (method.getName().equals("toString")) {
+				return "Pooled Connection [" + this.pooledConnection.target + "]";
+			}
+			else if (method.getName().equals("unwrap")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return proxy;
+				}
+			}
+			else if (method.getName().equals("isWrapperFor")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return true;
+				}
+			}
+			else if (method.getName().equals("close")) {
+				// Handle close method: return the Connection to the pool, once.
+				if (!this.closed) {
+					this.closed = true;
+					returnConnection(this.pooledConnection, this.stateChanged);
+				}
+				return null;
+			}
+			else if (method.getName().equals("isClosed")) {
+				return (this.closed || this.pooledConnection.target.isClosed());
+			}
+
+			if (this.closed) {
+				throw new SQLException("Pooled Connection has already been closed");
+			}
+			if (method.getName().equals("getTargetConnection")) {
+				// Handle getTargetConnection method: return underlying Connection.
+				return this.pooledConnection.target;
+			}
+			else if (method.getName().equals("setReadOnly") || method.getName().equals("setTransactionIsolation") ||
+					method.getName().equals("setCatalog")) {
+				this.stateChanged = true;
+			}
+
+			// Invoke method on target Connection.
+			try {
+				return method.invoke(this.pooledConnection.target, args);
+			}
+			catch (InvocationTargetException ex) {
+				throw ex.getTargetException();
+			}
+		}
+	}
+
+}
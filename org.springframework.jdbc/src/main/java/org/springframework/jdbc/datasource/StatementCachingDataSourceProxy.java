@@ -0,0 +1,609 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+
+/**
+ * Proxy for a target JDBC {@link javax.sql.DataSource}, caching
+ * {@link PreparedStatement PreparedStatements} per Connection. Closing a
+ * PreparedStatement obtained from one of the returned Connections does not
+ * close the target statement but keeps it for the next
+ * <code>prepareStatement</code> call with the same SQL and statement options
+ * on the same Connection, saving the round trip and statement parsing that
+ * many JDBC drivers - including the HSQL, H2 and Derby ones - perform on
+ * every <code>prepareStatement</code> call.
+ *
+ * <p>Each Connection keeps a least-recently-used cache of at most
+ * {@link #setCacheSize cacheSize} idle statements. When the target DataSource
+ * returns {@link ConnectionProxy} handles for pooled physical Connections,
+ * as {@link PoolingDataSource} does, the cache is bound to the physical
+ * Connection and therefore survives returning the Connection to the pool.
+ * Otherwise, the cache is discarded as soon as the Connection is closed.
+ *
+ * <p>Statement settings such as maximum rows, fetch size and query timeout
+ * are reset to their original values before a statement is cached again,
+ * and ResultSets left open by the caller are closed.
+ * <code>prepareStatement</code> variants taking column indexes or names for
+ * generated keys as well as <code>prepareCall</code> are not cached.
+ *
+ * <p>Hit and miss counts are kept across all Connections, allowing to monitor
+ * the effectiveness of the cache through {@link #getHitRatio()}.
+ *
+ * <p>This proxy can be combined with other DataSource proxies: for example,
+ * a {@link LazyConnectionDataSourceProxy} or {@link TransactionAwareDataSourceProxy}
+ * may delegate to a StatementCachingDataSourceProxy which in turn delegates
+ * to the actual connection pool. Note that any DataSourceTransactionManager
+ * needs to use the same DataSource as the data access code in order for
+ * transactional Connections to use the statement cache.
+ *
+ * <p><b>NOTE:</b> Do not combine this proxy with a connection pool that caches
+ * statements itself, which would only duplicate the effort.
+ *
+ * @since 3.1
+ * @see #getHitCount()
+ * @see #getMissCount()
+ * @see PoolingDataSource
+ */
+public class StatementCachingDataSourceProxy extends DelegatingDataSource {
+
+	/** Default maximum number of cached statements per Connection: 32 */
+	public static final int DEFAULT_CACHE_SIZE = 32;
+
+	private static final Log logger = LogFactory.getLog(StatementCachingDataSourceProxy.class);
+
+	/** Statement setters to their corresponding getters, for settings reset on release */
+	private static final Map<String, Method> RESETTABLE_SETTINGS = new HashMap<String, Method>();
+
+	static {
+		try {
+			for (String setting : new String[] {"FetchSize", "FetchDirection", "MaxRows", "MaxFieldSize", "QueryTimeout"}) {
+				RESETTABLE_SETTINGS.put("set" + setting, Statement.class.getMethod("get" + setting));
+			}
+		}
+		catch (NoSuchMethodException ex) {
+			throw new IllegalStateException("Could not resolve java.sql.Statement settings: " + ex);
+		}
+	}
+
+
+	private volatile int cacheSize = DEFAULT_CACHE_SIZE;
+
+	/** Statement caches by physical Connection, for Connections that outlive their handles */
+	private final Map<Connection, StatementCache> statementCaches = new HashMap<Connection, StatementCache>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+
+	/**
+	 * Create a new StatementCachingDataSourceProxy.
+	 * @see #setTargetDataSource
+	 */
+	public StatementCachingDataSourceProxy() {
+	}
+
+	/**
+	 * Create a new StatementCachingDataSourceProxy.
+	 * @param targetDataSource the target DataSource
+	 */
+	public StatementCachingDataSourceProxy(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+
+	/**
+	 * Set the maximum number of idle statements to cache per Connection.
+	 * Default is 32. A size of 0 effectively disables caching.
+	 */
+	public void setCacheSize(int cacheSize) {
+		Assert.isTrue(cacheSize >= 0, "cacheSize must not be negative");
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Return the maximum number of idle statements to cache per Connection.
+	 */
+	public int getCacheSize() {
+		return this.cacheSize;
+	}
+
+
+	/**
+	 * Return the number of <code>prepareStatement</code> calls served from the cache.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Return the number of <code>prepareStatement</code> calls that had to
+	 * prepare a new statement on the target Connection.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Return the number of idle statements that have been closed to make
+	 * room for more recently used statements.
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+	/**
+	 * Return the ratio of cache hits to all cacheable <code>prepareStatement</code>
+	 * calls, between 0 and 1 (0 if no calls happened yet).
+	 */
+	public double getHitRatio() {
+		long hits = this.hitCount.get();
+		long total = hits + this.missCount.get();
+		return (total > 0 ? (double) hits / total : 0);
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counts.
+	 */
+	public void resetStatistics() {
+		this.hitCount.set(0);
+		this.missCount.set(0);
+		this.evictionCount.set(0);
+	}
+
+
+	/**
+	 * Obtain a Connection from the target DataSource, caching its statements.
+	 * <p>The returned Connection handle implements the ConnectionProxy interface,
+	 * allowing to retrieve the underlying target Connection.
+	 * @see ConnectionProxy#getTargetConnection
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getStatementCachingConnectionProxy(getTargetDataSource().getConnection());
+	}
+
+	/**
+	 * Obtain a Connection from the target DataSource, caching its statements.
+	 * @see #getConnection()
+	 */
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return getStatementCachingConnectionProxy(getTargetDataSource().getConnection(username, password));
+	}
+
+	/**
+	 * Wrap the given Connection with a proxy that caches its statements.
+	 * @param target the original Connection to wrap
+	 * @return the wrapped Connection
+	 */
+	protected Connection getStatementCachingConnectionProxy(Connection target) {
+		Connection statementTarget = target;
+		StatementCache cache;
+		if (target instanceof ConnectionProxy) {
+			// Pooled handle: bind the cache to the physical Connection behind it.
+			statementTarget = ((ConnectionProxy) target).getTargetConnection();
+			synchronized (this.statementCaches) {
+				cache = this.statementCaches.get(statementTarget);
+				if (cache == null) {
+					// New physical Connection: a good time to drop caches of closed ones.
+					purgeClosedConnections();
+					cache = new StatementCache();
+					this.statementCaches.put(statementTarget, cache);
+				}
+			}
+		}
+		else {
+			cache = new StatementCache();
+		}
+		return (Connection) Proxy.newProxyInstance(
+				ConnectionProxy.class.getClassLoader(),
+				new Class[] {ConnectionProxy.class},
+				new StatementCachingInvocationHandler(target, statementTarget, cache));
+	}
+
+	/**
+	 * Remove the statement caches of physical Connections that have been
+	 * closed in the meantime, e.g. evicted by the connection pool.
+	 * To be called with the statement caches lock held.
+	 */
+	private void purgeClosedConnections() {
+		for (Iterator<Map.Entry<Connection, StatementCache>> it = this.statementCaches.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Connection, StatementCache> entry = it.next();
+			boolean closed;
+			try {
+				closed = entry.getKey().isClosed();
+			}
+			catch (SQLException ex) {
+				closed = true;
+			}
+			if (closed) {
+				entry.getValue().close();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Create a proxy for the given target statement, returning it to the
+	 * cache rather than closing it.
+	 */
+	private PreparedStatement getCachedStatementProxy(
+			PreparedStatement target, StatementKey key, StatementCache cache, Connection connectionProxy) {
+
+		return (PreparedStatement) Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(),
+				new Class[] {PreparedStatement.class},
+				new CachedStatementInvocationHandler(target, key, cache, connectionProxy));
+	}
+
+
+	/**
+	 * Invoke the given method on the given target, unwrapping any exception thrown.
+	 */
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException ex) {
+			throw ex.getTargetException();
+		}
+	}
+
+
+	/**
+	 * Invocation handler for Connection proxies, serving cacheable
+	 * <code>prepareStatement</code> calls from the statement cache.
+	 */
+	private class StatementCachingInvocationHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private final Connection statementTarget;
+
+		private final StatementCache cache;
+
+		private boolean closed = false;
+
+		public StatementCachingInvocationHandler(Connection target, Connection statementTarget, StatementCache cache) {
+			this.target = target;
+			this.statementTarget = statementTarget;
+			this.cache = cache;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Invocation on ConnectionProxy interface coming in...
+
+			if (method.getName().equals("equals")) {
+				// Only consider equal when proxies are identical.
+				return (proxy == args[0]);
+			}
+			else if (method.getName().equals("hashCode")) {
+				// Use hashCode of Connection proxy.
+				return System.identityHashCode(proxy);
+			}
+			else if (method.getName().equals("toString")) {
+				return "Statement-caching proxy for target Connection [" + this.target + "]";
+			}
+			else if (method.getName().equals("unwrap")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return proxy;
+				}
+			}
+			else if (method.getName().equals("isWrapperFor")) {
+				if (((Class) args[0]).isInstance(proxy)) {
+					return true;
+				}
+			}
+			else if (method.getName().equals("getTargetConnection")) {
+				// Handle getTargetConnection method: return underlying Connection.
+				return this.target;
+			}
+			else if (method.getName().equals("close")) {
+				if (!this.closed) {
+					this.closed = true;
+					try {
+						this.target.close();
+					}
+					finally {
+						releaseCache();
+					}
+				}
+				return null;
+			}
+			else if (method.getName().equals("isClosed")) {
+				return (this.closed || this.target.isClosed());
+			}
+			else if (method.getName().equals("prepareStatement") && isCacheable(method) && !this.closed) {
+				StatementKey key = new StatementKey(args);
+				PreparedStatement ps = this.cache.obtain(key);
+				if (ps == null) {
+					ps = (PreparedStatement) invokeOn(this.statementTarget, method, args);
+				}
+				return getCachedStatementProxy(ps, key, this.cache, (Connection) proxy);
+			}
+
+			return invokeOn(this.target, method, args);
+		}
+
+		private boolean isCacheable(Method method) {
+			Class<?>[] types = method.getParameterTypes();
+			for (int i = 1; i < types.length; i++) {
+				if (!int.class.equals(types[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void releaseCache() throws SQLException {
+			if (this.statementTarget != this.target && !this.statementTarget.isClosed()) {
+				// Physical Connection still open: keep its statements for the next handle.
+				return;
+			}
+			synchronized (statementCaches) {
+				statementCaches.remove(this.statementTarget);
+			}
+			this.cache.close();
+		}
+	}
+
+
+	/**
+	 * Invocation handler for statement proxies, returning the target
+	 * statement to the cache on close.
+	 */
+	private class CachedStatementInvocationHandler implements InvocationHandler {
+
+		private final PreparedStatement target;
+
+		private final StatementKey key;
+
+		private final StatementCache cache;
+
+		private final Connection connectionProxy;
+
+		private Map<String, Object> originalSettings;
+
+		/** ResultSets obtained since the last execution, to be closed on release */
+		private List<ResultSet> resultSets;
+
+		private boolean batchPending = false;
+
+		private boolean reusable = true;
+
+		private boolean closed = false;
+
+		public CachedStatementInvocationHandler(
+				PreparedStatement target, StatementKey key, StatementCache cache, Connection connectionProxy) {
+
+			this.target = target;
+			this.key = key;
+			this.cache = cache;
+			this.connectionProxy = connectionProxy;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+			if (methodName.equals("equals")) {
+				return (proxy == args[0]);
+			}
+			else if (methodName.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			else if (methodName.equals("toString")) {
+				return "Cached statement proxy for target statement [" + this.target + "]";
+			}
+			else if (methodName.equals("close")) {
+				if (!this.closed) {
+					this.closed = true;
+					release();
+				}
+				return null;
+			}
+			else if (methodName.equals("isClosed")) {
+				return this.closed;
+			}
+			else if (this.closed) {
+				throw new SQLException("Statement handle already closed");
+			}
+			else if (methodName.equals("getConnection")) {
+				return this.connectionProxy;
+			}
+			else if (methodName.equals("addBatch")) {
+				this.batchPending = true;
+			}
+			else if (methodName.equals("executeBatch") || methodName.equals("clearBatch")) {
+				this.batchPending = false;
+			}
+			else if (RESETTABLE_SETTINGS.containsKey(methodName)) {
+				if (this.originalSettings == null) {
+					this.originalSettings = new HashMap<String, Object>(4);
+				}
+				if (!this.originalSettings.containsKey(methodName)) {
+					this.originalSettings.put(methodName, RESETTABLE_SETTINGS.get(methodName).invoke(this.target));
+				}
+			}
+			else if (methodName.equals("setEscapeProcessing") || methodName.equals("setCursorName") ||
+					methodName.equals("setPoolable")) {
+				// Settings we cannot reset: do not reuse this statement.
+				this.reusable = false;
+			}
+			if (methodName.startsWith("execute") && this.resultSets != null) {
+				// Executing a statement implicitly closes its current ResultSet(s).
+				this.resultSets.clear();
+			}
+
+			Object retVal = invokeOn(this.target, method, args);
+			if (retVal instanceof ResultSet) {
+				if (this.resultSets == null) {
+					this.resultSets = new ArrayList<ResultSet>(2);
+				}
+				this.resultSets.add((ResultSet) retVal);
+			}
+			return retVal;
+		}
+
+		private void release() {
+			if (this.resultSets != null) {
+				// Do not hand an open cursor to the next user of the statement.
+				for (ResultSet rs : this.resultSets) {
+					JdbcUtils.closeResultSet(rs);
+				}
+				this.resultSets = null;
+			}
+			boolean reuse = this.reusable;
+			if (reuse) {
+				try {
+					if (this.originalSettings != null) {
+						for (Map.Entry<String, Object> entry : this.originalSettings.entrySet()) {
+							Statement.class.getMethod(entry.getKey(), int.class).invoke(this.target, entry.getValue());
+						}
+					}
+					if (this.batchPending) {
+						this.target.clearBatch();
+					}
+					this.target.clearParameters();
+					this.target.clearWarnings();
+				}
+				catch (Throwable ex) {
+					logger.debug("Could not reset JDBC Statement for reuse", ex);
+					reuse = false;
+				}
+			}
+			if (reuse) {
+				this.cache.release(this.key, this.target);
+			}
+			else {
+				JdbcUtils.closeStatement(this.target);
+			}
+		}
+	}
+
+
+	/**
+	 * LRU cache of idle statements for a single Connection.
+	 */
+	private class StatementCache {
+
+		private final LinkedHashMap<StatementKey, PreparedStatement> statements =
+				new LinkedHashMap<StatementKey, PreparedStatement>(16, 0.75f, true);
+
+		private boolean closed = false;
+
+		public synchronized PreparedStatement obtain(StatementKey key) {
+			PreparedStatement ps = this.statements.remove(key);
+			if (ps != null) {
+				hitCount.incrementAndGet();
+			}
+			else {
+				missCount.incrementAndGet();
+			}
+			return ps;
+		}
+
+		public synchronized void release(StatementKey key, PreparedStatement ps) {
+			if (this.closed || getCacheSize() == 0) {
+				JdbcUtils.closeStatement(ps);
+				return;
+			}
+			PreparedStatement existing = this.statements.put(key, ps);
+			if (existing != null) {
+				// Another statement for the same key had been released in the meantime.
+				JdbcUtils.closeStatement(existing);
+			}
+			Iterator<PreparedStatement> it = this.statements.values().iterator();
+			while (this.statements.size() > getCacheSize() && it.hasNext()) {
+				JdbcUtils.closeStatement(it.next());
+				it.remove();
+				evictionCount.incrementAndGet();
+			}
+		}
+
+		public synchronized void close() {
+			this.closed = true;
+			for (PreparedStatement ps : this.statements.values()) {
+				JdbcUtils.closeStatement(ps);
+			}
+			this.statements.clear();
+		}
+	}
+
+
+	/**
+	 * Cache key for a statement: SQL plus result set type, concurrency and
+	 * holdability, or the auto-generated keys flag, depending on the variant.
+	 */
+	private static class StatementKey {
+
+		private final String sql;
+
+		private final int[] options;
+
+		public StatementKey(Object[] args) {
+			this.sql = (String) args[0];
+			this.options = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				this.options[i - 1] = (Integer) args[i];
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof StatementKey)) {
+				return false;
+			}
+			StatementKey otherKey = (StatementKey) other;
+			return (this.sql.equals(otherKey.sql) && Arrays.equals(this.options, otherKey.options));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.sql.hashCode() * 29 + Arrays.hashCode(this.options);
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.datasource.init.DatabasePopulator;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.util.Assert;
 
 /**
@@ -148,16 +149,22 @@ public class EmbeddedDatabaseFactory {
 
 	private void populateDatabase() {
 		try {
-			Connection connection = this.dataSource.getConnection();
-			try {
-				this.databasePopulator.populate(connection);
+			if (this.databasePopulator instanceof ResourceDatabasePopulator) {
+				// may execute independent scripts in parallel on connections of their own
+				((ResourceDatabasePopulator) this.databasePopulator).populate(this.dataSource);
 			}
-			finally {
+			else {
+				Connection connection = this.dataSource.getConnection();
 				try {
-					connection.close();
+					this.databasePopulator.populate(connection);
 				}
-				catch (SQLException ex) {
-					// ignore
+				finally {
+					try {
+						connection.close();
+					}
+					catch (SQLException ex) {
+						// ignore
+					}
 				}
 			}
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -75,16 +75,22 @@ public class DataSourceInitializer implements InitializingBean {
 			Assert.state(this.dataSource != null, "DataSource must be provided");
 			Assert.state(this.databasePopulator != null, "DatabasePopulator must be provided");
 			try {
-				Connection connection = this.dataSource.getConnection();
-				try {
-					this.databasePopulator.populate(connection);
+				if (this.databasePopulator instanceof ResourceDatabasePopulator) {
+					// may execute independent scripts in parallel on connections of their own
+					((ResourceDatabasePopulator) this.databasePopulator).populate(this.dataSource);
 				}
-				finally {
+				else {
+					Connection connection = this.dataSource.getConnection();
 					try {
-						connection.close();
+						this.databasePopulator.populate(connection);
 					}
-					catch (SQLException ex) {
-						// ignore
+					finally {
+						try {
+							connection.close();
+						}
+						catch (SQLException ex) {
+							// ignore
+						}
 					}
 				}
 			}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.jdbc.datasource.init;
 
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -25,12 +26,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 /**
@@ -39,6 +47,12 @@ import org.springframework.util.StringUtils;
  * <p>Call {@link #addScript(Resource)} to add a SQL script location.
  * Call {@link #setSqlScriptEncoding(String)} to set the encoding for all added scripts.
  *
+ * <p>Scripts are read statement by statement rather than being loaded into memory
+ * as a whole, so arbitrarily large scripts can be executed. Consecutive DML statements
+ * may be sent to the database in JDBC batches (see {@link #setBatchSize}), and
+ * independent scripts may be executed in parallel on separate connections when
+ * populating through {@link #populate(DataSource)} (see {@link #setParallelism}).
+ *
  * @author Keith Donald
  * @author Dave Syer
  * @author Juergen Hoeller
@@ -61,6 +75,10 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 
 	private boolean ignoreFailedDrops = false;
 
+	private int batchSize = 0;
+
+	private int parallelism = 1;
+
 
 	/**
 	 * Add a script to execute to populate the database.
@@ -115,12 +133,95 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 	}
 
 
+	/**
+	 * Set the maximum number of consecutive DML statements (<code>INSERT</code>,
+	 * <code>UPDATE</code>, <code>DELETE</code>, <code>MERGE</code>) to send to the
+	 * database in a single JDBC batch. Default is 0, executing every statement
+	 * on its own.
+	 * <p>Batching is ignored if the JDBC driver does not support batch updates.
+	 * Failures within a batch are handled like failures of single statements,
+	 * as far as the driver reports which statement of the batch has failed.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize >= 0, "batchSize must not be negative");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the maximum number of scripts to execute concurrently, each on its own
+	 * connection. Default is 1, executing all scripts one after the other.
+	 * <p>Only applies when populating through {@link #populate(DataSource)}; a given
+	 * Connection is always used for one script at a time. Only use this for scripts
+	 * that do not depend on each other, since they will be executed in no particular order.
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be greater than 0");
+		this.parallelism = parallelism;
+	}
+
+
 	public void populate(Connection connection) throws SQLException {
 		for (Resource script : this.scripts) {
 			executeSqlScript(connection, applyEncodingIfNecessary(script), this.continueOnError, this.ignoreFailedDrops);
 		}
 	}
 
+	/**
+	 * Populate the database through the given DataSource, executing the scripts
+	 * in parallel if a {@link #setParallelism parallelism} greater than 1 has been set.
+	 * <p>Each parallel script is executed on a Connection of its own, which gets
+	 * committed after successful execution unless in auto-commit mode. All scripts
+	 * are executed before the first failure encountered, if any, is rethrown.
+	 * @param dataSource the DataSource to obtain JDBC connections from
+	 * @throws SQLException if an unrecoverable data access exception occurs during database population
+	 */
+	public void populate(DataSource dataSource) throws SQLException {
+		if (this.parallelism <= 1 || this.scripts.size() <= 1) {
+			Connection connection = dataSource.getConnection();
+			try {
+				populate(connection);
+			}
+			finally {
+				JdbcUtils.closeConnection(connection);
+			}
+			return;
+		}
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(getClass().getSimpleName() + "-");
+		executor.setDaemon(true);
+		executor.setConcurrencyLimit(this.parallelism);
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(this.scripts.size());
+		for (Resource script : this.scripts) {
+			futures.add(executor.submit(new ScriptExecution(dataSource, applyEncodingIfNecessary(script))));
+		}
+		Throwable failure = null;
+		for (Future<Object> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException ex) {
+				if (failure == null) {
+					failure = ex.getCause();
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				for (Future<Object> other : futures) {
+					other.cancel(true);
+				}
+				throw new IllegalStateException("Interrupted while waiting for SQL scripts to be executed");
+			}
+		}
+		if (failure instanceof SQLException) {
+			throw (SQLException) failure;
+		}
+		else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
 	private EncodedResource applyEncodingIfNecessary(Resource script) {
 		if (script instanceof EncodedResource) {
 			return (EncodedResource) script;
@@ -132,8 +233,8 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 
 	/**
 	 * Execute the given SQL script.
-	 * <p>The script will normally be loaded by classpath. There should be one statement per line.
-	 * Any semicolons will be removed.
+	 * <p>The script will normally be loaded by classpath. Statements are delimited by
+	 * semicolons or, if the script does not contain any, by line breaks.
 	 * <p><b>Do not use this method to execute DDL if you expect rollback.</b>
 	 * @param connection the JDBC Connection with which to perform JDBC operations
 	 * @param resource the resource (potentially associated with a specific encoding) to load the SQL script from
@@ -147,43 +248,40 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 			logger.info("Executing SQL script from " + resource);
 		}
 		long startTime = System.currentTimeMillis();
-		List<String> statements = new LinkedList<String>();
-		String script;
+		ScriptStatementReader reader;
 		try {
-			script = readScript(resource);
+			reader = new ScriptStatementReader(new LineNumberReader(resource.getReader()), this.commentPrefix);
 		}
 		catch (IOException ex) {
 			throw new CannotReadScriptException(resource, ex);
 		}
-		char delimiter = ';';
-		if (!containsSqlScriptDelimiters(script, delimiter)) {
-			delimiter = '\n';
-		}
-		splitSqlScript(script, delimiter, statements);
+		int batchSize = (this.batchSize > 0 && JdbcUtils.supportsBatchUpdates(connection) ? this.batchSize : 0);
+		List<String> batch = new ArrayList<String>(batchSize);
+		List<Integer> batchLineNumbers = new ArrayList<Integer>(batchSize);
 		int lineNumber = 0;
 		Statement stmt = connection.createStatement();
 		try {
-			for (String statement : statements) {
+			String statement;
+			while ((statement = readStatement(reader, resource)) != null) {
 				lineNumber++;
-				try {
-					int rowsAffected = stmt.executeUpdate(statement);
-					if (logger.isDebugEnabled()) {
-						logger.debug(rowsAffected + " rows affected by SQL: " + statement);
+				if (batchSize > 0 && isBatchableStatement(statement)) {
+					stmt.addBatch(statement);
+					batch.add(statement);
+					batchLineNumbers.add(lineNumber);
+					if (batch.size() >= batchSize) {
+						executeBatch(stmt, batch, batchLineNumbers, resource, continueOnError, ignoreFailedDrops);
 					}
 				}
-				catch (SQLException ex) {
-					boolean dropStatement = StringUtils.startsWithIgnoreCase(statement.trim(), "drop");
-					if (continueOnError || (dropStatement && ignoreFailedDrops)) {
-						if (logger.isDebugEnabled()) {
-							logger.debug("Failed to execute SQL script statement at line " + lineNumber +
-									" of resource " + resource + ": " + statement, ex);
-						}
-					}
-					else {
-						throw new ScriptStatementFailedException(statement, lineNumber, resource, ex);
+				else {
+					if (!batch.isEmpty()) {
+						executeBatch(stmt, batch, batchLineNumbers, resource, continueOnError, ignoreFailedDrops);
 					}
+					executeStatement(stmt, statement, lineNumber, resource, continueOnError, ignoreFailedDrops);
 				}
 			}
+			if (!batch.isEmpty()) {
+				executeBatch(stmt, batch, batchLineNumbers, resource, continueOnError, ignoreFailedDrops);
+			}
 		}
 		finally {
 			try {
@@ -192,6 +290,7 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 			catch (Throwable ex) {
 				logger.debug("Could not close JDBC Statement", ex);
 			}
+			reader.close();
 		}
 		long elapsedTime = System.currentTimeMillis() - startTime;
 		if (logger.isInfoEnabled()) {
@@ -199,80 +298,250 @@ public class ResourceDatabasePopulator implements DatabasePopulator {
 		}
 	}
 
+	private String readStatement(ScriptStatementReader reader, EncodedResource resource) {
+		try {
+			return reader.nextStatement();
+		}
+		catch (IOException ex) {
+			throw new CannotReadScriptException(resource, ex);
+		}
+	}
+
 	/**
-	 * Read a script from the given resource and build a String containing the lines.
-	 * @param resource the resource to be read
-	 * @return <code>String</code> containing the script lines
-	 * @throws IOException in case of I/O errors
+	 * Determine whether the given statement may be executed as part of a JDBC batch.
 	 */
-	private String readScript(EncodedResource resource) throws IOException {
-		LineNumberReader lnr = new LineNumberReader(resource.getReader());
-		String currentStatement = lnr.readLine();
-		StringBuilder scriptBuilder = new StringBuilder();
-		while (currentStatement != null) {
-			if (StringUtils.hasText(currentStatement) &&
-					(this.commentPrefix != null && !currentStatement.startsWith(this.commentPrefix))) {
-				if (scriptBuilder.length() > 0) {
-					scriptBuilder.append('\n');
+	private boolean isBatchableStatement(String statement) {
+		String trimmed = statement.trim();
+		return (StringUtils.startsWithIgnoreCase(trimmed, "insert") ||
+				StringUtils.startsWithIgnoreCase(trimmed, "update") ||
+				StringUtils.startsWithIgnoreCase(trimmed, "delete") ||
+				StringUtils.startsWithIgnoreCase(trimmed, "merge"));
+	}
+
+	private void executeStatement(Statement stmt, String statement, int lineNumber, EncodedResource resource,
+			boolean continueOnError, boolean ignoreFailedDrops) {
+
+		try {
+			int rowsAffected = stmt.executeUpdate(statement);
+			if (logger.isDebugEnabled()) {
+				logger.debug(rowsAffected + " rows affected by SQL: " + statement);
+			}
+		}
+		catch (SQLException ex) {
+			handleFailedStatement(statement, lineNumber, resource, ex, continueOnError, ignoreFailedDrops);
+		}
+	}
+
+	/**
+	 * Execute the pending batch of statements, handling a failure like the failure
+	 * of a single statement. If the driver stopped processing the batch at the failed
+	 * statement, the remaining statements of the batch are executed one by one.
+	 */
+	private void executeBatch(Statement stmt, List<String> batch, List<Integer> lineNumbers,
+			EncodedResource resource, boolean continueOnError, boolean ignoreFailedDrops) throws SQLException {
+
+		try {
+			int[] rowsAffected = stmt.executeBatch();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Executed batch of " + batch.size() + " SQL statements, rows affected: " +
+						Arrays.toString(rowsAffected));
+			}
+		}
+		catch (BatchUpdateException ex) {
+			stmt.clearBatch();
+			int[] updateCounts = ex.getUpdateCounts();
+			if (updateCounts != null && updateCounts.length >= batch.size()) {
+				// the driver continued processing: report every failed statement
+				boolean reported = false;
+				for (int i = 0; i < batch.size(); i++) {
+					if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+						handleFailedStatement(batch.get(i), lineNumbers.get(i), resource, ex,
+								continueOnError, ignoreFailedDrops);
+						reported = true;
+					}
+				}
+				if (!reported) {
+					handleFailedStatement(batch.get(0), lineNumbers.get(0), resource, ex,
+							continueOnError, ignoreFailedDrops);
+				}
+			}
+			else {
+				// the driver stopped processing at the failed statement
+				int failedIndex = (updateCounts != null ? updateCounts.length : 0);
+				handleFailedStatement(batch.get(failedIndex), lineNumbers.get(failedIndex), resource, ex,
+						continueOnError, ignoreFailedDrops);
+				for (int i = failedIndex + 1; i < batch.size(); i++) {
+					executeStatement(stmt, batch.get(i), lineNumbers.get(i), resource, continueOnError, ignoreFailedDrops);
 				}
-				scriptBuilder.append(currentStatement);
 			}
-			currentStatement = lnr.readLine();
 		}
-		return scriptBuilder.toString();
+		finally {
+			batch.clear();
+			lineNumbers.clear();
+		}
 	}
 
+	private void handleFailedStatement(String statement, int lineNumber, EncodedResource resource,
+			SQLException ex, boolean continueOnError, boolean ignoreFailedDrops) {
+
+		boolean dropStatement = StringUtils.startsWithIgnoreCase(statement.trim(), "drop");
+		if (continueOnError || (dropStatement && ignoreFailedDrops)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to execute SQL script statement at line " + lineNumber +
+						" of resource " + resource + ": " + statement, ex);
+			}
+		}
+		else {
+			throw new ScriptStatementFailedException(statement, lineNumber, resource, ex);
+		}
+	}
+
+
 	/**
-	 * Does the provided SQL script contain the specified delimiter?
-	 * @param script the SQL script
-	 * @param delim character delimiting each statement - typically a ';' character
+	 * Executes a single script on a Connection of its own, for parallel population.
 	 */
-	private boolean containsSqlScriptDelimiters(String script, char delim) {
-		boolean inLiteral = false;
-		char[] content = script.toCharArray();
-		for (int i = 0; i < script.length(); i++) {
-			if (content[i] == '\'') {
-				inLiteral = !inLiteral;
+	private class ScriptExecution implements Callable<Object> {
+
+		private final DataSource dataSource;
+
+		private final EncodedResource resource;
+
+		public ScriptExecution(DataSource dataSource, EncodedResource resource) {
+			this.dataSource = dataSource;
+			this.resource = resource;
+		}
+
+		public Object call() throws SQLException {
+			Connection connection = this.dataSource.getConnection();
+			try {
+				executeSqlScript(connection, this.resource, continueOnError, ignoreFailedDrops);
+				if (!connection.getAutoCommit()) {
+					connection.commit();
+				}
 			}
-			if (content[i] == delim && !inLiteral) {
-				return true;
+			finally {
+				JdbcUtils.closeConnection(connection);
 			}
+			return null;
 		}
-		return false;
 	}
 
+
 	/**
-	 * Split an SQL script into separate statements delimited with the provided delimiter character.
-	 * Each individual statement will be added to the provided <code>List</code>.
-	 * @param script the SQL script
-	 * @param delim character delimiting each statement (typically a ';' character)
-	 * @param statements the List that will contain the individual statements
+	 * Reads the statements of a SQL script one at a time, without loading the entire
+	 * script into memory. Lines that are empty or start with the comment prefix are
+	 * skipped; statements are delimited by semicolons outside of literals or, if the
+	 * script does not contain any such semicolon, by line breaks outside of literals.
+	 * <p>Until the first delimiting semicolon has been found, the script content read
+	 * so far needs to be buffered, since it may turn out to use line break delimiters.
 	 */
-	private void splitSqlScript(String script, char delim, List<String> statements) {
-		StringBuilder sb = new StringBuilder();
-		boolean inLiteral = false;
-		char[] content = script.toCharArray();
-		for (int i = 0; i < script.length(); i++) {
-			char c = content[i];
+	private static class ScriptStatementReader {
+
+		private static final char UNDETERMINED = 0;
+
+		private final LineNumberReader reader;
+
+		private final String commentPrefix;
+
+		private char delimiter = UNDETERMINED;
+
+		/** Script content read before the delimiter has been determined */
+		private StringBuilder undetermined = new StringBuilder();
+
+		private boolean inLiteralWhileUndetermined = false;
+
+		private StringBuilder currentStatement = new StringBuilder();
+
+		private boolean inLiteral = false;
+
+		private final LinkedList<String> statements = new LinkedList<String>();
+
+		private boolean firstLine = true;
+
+		private boolean exhausted = false;
+
+		public ScriptStatementReader(LineNumberReader reader, String commentPrefix) {
+			this.reader = reader;
+			this.commentPrefix = commentPrefix;
+		}
+
+		/**
+		 * Return the next statement of the script, or <code>null</code> if there are no more.
+		 */
+		public String nextStatement() throws IOException {
+			while (this.statements.isEmpty() && !this.exhausted) {
+				String line = this.reader.readLine();
+				if (line == null) {
+					this.exhausted = true;
+					if (this.delimiter == UNDETERMINED) {
+						determineDelimiter('\n');
+					}
+					if (StringUtils.hasText(this.currentStatement)) {
+						this.statements.add(this.currentStatement.toString());
+					}
+				}
+				else if (StringUtils.hasText(line) && (this.commentPrefix != null && !line.startsWith(this.commentPrefix))) {
+					if (!this.firstLine) {
+						append('\n');
+					}
+					this.firstLine = false;
+					for (int i = 0; i < line.length(); i++) {
+						append(line.charAt(i));
+					}
+				}
+			}
+			return this.statements.poll();
+		}
+
+		private void append(char c) {
+			if (this.delimiter != UNDETERMINED) {
+				split(c);
+				return;
+			}
+			this.undetermined.append(c);
+			if (c == '\'') {
+				this.inLiteralWhileUndetermined = !this.inLiteralWhileUndetermined;
+			}
+			if (c == ';' && !this.inLiteralWhileUndetermined) {
+				determineDelimiter(';');
+			}
+		}
+
+		private void determineDelimiter(char delimiter) {
+			this.delimiter = delimiter;
+			StringBuilder content = this.undetermined;
+			this.undetermined = null;
+			for (int i = 0; i < content.length(); i++) {
+				split(content.charAt(i));
+			}
+		}
+
+		private void split(char c) {
 			if (c == '\'') {
-				inLiteral = !inLiteral;
+				this.inLiteral = !this.inLiteral;
 			}
-			if (!inLiteral) {
-				if (c == delim) {
-					if (sb.length() > 0) {
-						statements.add(sb.toString());
-						sb = new StringBuilder();
+			if (!this.inLiteral) {
+				if (c == this.delimiter) {
+					if (this.currentStatement.length() > 0) {
+						this.statements.add(this.currentStatement.toString());
+						this.currentStatement = new StringBuilder();
 					}
-					continue;
+					return;
 				}
 				else if (c == '\n' || c == '\t') {
 					c = ' ';
 				}
 			}
-			sb.append(c);
+			this.currentStatement.append(c);
 		}
-		if (StringUtils.hasText(sb)) {
-			statements.add(sb.toString());
+
+		public void close() {
+			try {
+				this.reader.close();
+			}
+			catch (IOException ex) {
+				logger.debug("Could not close SQL script reader", ex);
+			}
 		}
 	}
 
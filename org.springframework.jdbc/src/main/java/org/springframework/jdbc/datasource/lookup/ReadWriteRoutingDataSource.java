@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.lookup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * DataSource that routes read-only work to a set of read replicas and
+ * everything else to the write (primary) DataSource, without any changes to
+ * data access code: a Connection goes to a replica if the current transaction
+ * is marked as read-only ({@link TransactionSynchronizationManager#isCurrentTransactionReadOnly()})
+ * or if the Connection handle itself has been set to read-only.
+ *
+ * <p>Connections are fetched lazily, as with {@link LazyConnectionDataSourceProxy}:
+ * a transaction manager such as
+ * {@link org.springframework.jdbc.datasource.DataSourceTransactionManager}
+ * obtains its Connection before the transaction's read-only flag is exposed,
+ * so the routing decision is deferred until the first Statement is created.
+ * Consequently, the transaction manager needs to work with this DataSource,
+ * not with the write DataSource underneath.
+ *
+ * <p>Replicas are balanced through smooth weighted round-robin. Each replica
+ * has a configured weight (1 by default); a replica that fails to provide a
+ * Connection gets its effective weight halved and is skipped for the
+ * {@link #setRetryInterval retry interval}, after which it is tried again and
+ * regains its full weight through successful Connections. If no replica is
+ * able to provide a Connection, read-only work falls back to the write
+ * DataSource (unless {@link #setFallbackToWriteDataSource disabled}).
+ *
+ * <pre>
+ * &lt;bean id="dataSource" class="org.springframework.jdbc.datasource.lookup.ReadWriteRoutingDataSource"&gt;
+ *   &lt;property name="writeDataSource" ref="primaryDataSource"/&gt;
+ *   &lt;property name="readDataSources"&gt;
+ *     &lt;list&gt;
+ *       &lt;ref bean="replicaDataSource1"/&gt;
+ *       &lt;ref bean="replicaDataSource2"/&gt;
+ *     &lt;/list&gt;
+ *   &lt;/property&gt;
+ * &lt;/bean&gt;</pre>
+ *
+ * <p><b>NOTE:</b> Replicas are typically updated asynchronously; read-only
+ * transactions may therefore not see the effect of a write transaction that
+ * has just been committed.
+ *
+ * @since 3.1
+ * @see #setReadDataSources
+ * @see #setWeightedReadDataSources
+ * @see org.springframework.transaction.annotation.Transactional#readOnly()
+ */
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy {
+
+	/** Default time to skip a failed replica: 5000 ms */
+	public static final long DEFAULT_RETRY_INTERVAL = 5000;
+
+	private static final Log logger = LogFactory.getLog(ReadWriteRoutingDataSource.class);
+
+	private final List<Replica> replicas = new ArrayList<Replica>();
+
+	private volatile long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+	private boolean fallbackToWriteDataSource = true;
+
+
+	/**
+	 * Create a new ReadWriteRoutingDataSource.
+	 * @see #setWriteDataSource
+	 * @see #setReadDataSources
+	 */
+	public ReadWriteRoutingDataSource() {
+	}
+
+	/**
+	 * Create a new ReadWriteRoutingDataSource.
+	 * @param writeDataSource the DataSource for read-write work
+	 * @param readDataSources the DataSources for read-only work
+	 */
+	public ReadWriteRoutingDataSource(DataSource writeDataSource, List<DataSource> readDataSources) {
+		setWriteDataSource(writeDataSource);
+		setReadDataSources(readDataSources);
+		afterPropertiesSet();
+	}
+
+
+	/**
+	 * Set the DataSource for read-write work, i.e. the primary database.
+	 * <p>This is an alias for {@link #setTargetDataSource}.
+	 */
+	public void setWriteDataSource(DataSource writeDataSource) {
+		setTargetDataSource(writeDataSource);
+	}
+
+	/**
+	 * Return the DataSource for read-write work.
+	 */
+	public DataSource getWriteDataSource() {
+		return getTargetDataSource();
+	}
+
+	/**
+	 * Set the DataSources for read-only work, i.e. the replicas, with equal weights.
+	 */
+	public void setReadDataSources(List<DataSource> readDataSources) {
+		Map<DataSource, Integer> weightedDataSources = new LinkedHashMap<DataSource, Integer>();
+		for (DataSource dataSource : readDataSources) {
+			weightedDataSources.put(dataSource, 1);
+		}
+		setWeightedReadDataSources(weightedDataSources);
+	}
+
+	/**
+	 * Set the DataSources for read-only work, i.e. the replicas, with the weight
+	 * for each of them: a replica with weight 2 receives twice as many Connection
+	 * requests as a replica with weight 1.
+	 */
+	public void setWeightedReadDataSources(Map<DataSource, Integer> weightedDataSources) {
+		Assert.notNull(weightedDataSources, "Read DataSources must not be null");
+		List<Replica> newReplicas = new ArrayList<Replica>(weightedDataSources.size());
+		for (Map.Entry<DataSource, Integer> entry : weightedDataSources.entrySet()) {
+			Assert.isTrue(entry.getValue() > 0, "Replica weight must be greater than 0");
+			newReplicas.add(new Replica(entry.getKey(), entry.getValue()));
+		}
+		synchronized (this.replicas) {
+			this.replicas.clear();
+			this.replicas.addAll(newReplicas);
+		}
+	}
+
+	/**
+	 * Set the time in milliseconds to skip a replica after it failed to
+	 * provide a Connection. Default is 5000.
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
+	}
+
+	/**
+	 * Set whether read-only work should go to the write DataSource if none
+	 * of the replicas is able to provide a Connection. Default is "true";
+	 * switch this to "false" to propagate the replica's exception instead.
+	 */
+	public void setFallbackToWriteDataSource(boolean fallbackToWriteDataSource) {
+		this.fallbackToWriteDataSource = fallbackToWriteDataSource;
+	}
+
+
+	/**
+	 * Route to a replica for read-only Connections and read-only transactions,
+	 * and to the write DataSource otherwise.
+	 */
+	@Override
+	protected Connection doGetTargetConnection(String username, String password, boolean readOnly)
+			throws SQLException {
+
+		if (readOnly || TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			Connection con = getReadConnection(username, password);
+			if (con != null) {
+				return con;
+			}
+		}
+		return super.doGetTargetConnection(username, password, readOnly);
+	}
+
+	/**
+	 * Obtain a Connection from one of the replicas, trying further replicas
+	 * if the chosen one fails.
+	 * @return the replica Connection, or <code>null</code> to fall back to the
+	 * write DataSource
+	 * @throws SQLException if no replica could provide a Connection and
+	 * falling back to the write DataSource is not allowed
+	 */
+	protected Connection getReadConnection(String username, String password) throws SQLException {
+		List<Replica> excluded = null;
+		SQLException lastException = null;
+		Replica replica;
+		while ((replica = selectReplica(excluded)) != null) {
+			try {
+				Connection con = (username != null ? replica.dataSource.getConnection(username, password) :
+						replica.dataSource.getConnection());
+				synchronized (this.replicas) {
+					replica.succeeded();
+				}
+				return con;
+			}
+			catch (SQLException ex) {
+				logger.warn("Could not obtain Connection from read DataSource [" + replica.dataSource + "]", ex);
+				synchronized (this.replicas) {
+					replica.failed();
+				}
+				lastException = ex;
+				if (excluded == null) {
+					excluded = new ArrayList<Replica>(2);
+				}
+				excluded.add(replica);
+			}
+		}
+		if (lastException != null && !this.fallbackToWriteDataSource) {
+			throw lastException;
+		}
+		if (!this.replicas.isEmpty() && logger.isDebugEnabled()) {
+			logger.debug("No read DataSource available - using write DataSource for read-only work");
+		}
+		return null;
+	}
+
+	/**
+	 * Select the next replica through smooth weighted round-robin among the
+	 * available replicas.
+	 */
+	private Replica selectReplica(List<Replica> excluded) {
+		long now = System.currentTimeMillis();
+		synchronized (this.replicas) {
+			Replica selected = null;
+			int totalWeight = 0;
+			for (Replica replica : this.replicas) {
+				if (replica.isAvailable(now, this.retryInterval) && (excluded == null || !excluded.contains(replica))) {
+					replica.currentWeight += replica.effectiveWeight;
+					totalWeight += replica.effectiveWeight;
+					if (selected == null || replica.currentWeight > selected.currentWeight) {
+						selected = replica;
+					}
+				}
+			}
+			if (selected != null) {
+				selected.currentWeight -= totalWeight;
+			}
+			return selected;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+		sb.append(": write DataSource [").append(getWriteDataSource()).append("], read DataSources ");
+		synchronized (this.replicas) {
+			sb.append(this.replicas);
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * A read DataSource with its weight and health state,
+	 * guarded by the lock on the list of replicas.
+	 */
+	private static class Replica {
+
+		private final DataSource dataSource;
+
+		private final int weight;
+
+		/** Weight adjusted for recent failures */
+		private int effectiveWeight;
+
+		/** Smooth weighted round-robin state */
+		private int currentWeight;
+
+		/** Time of the most recent failure, or 0 if the last attempt succeeded */
+		private long failedAt;
+
+		public Replica(DataSource dataSource, int weight) {
+			this.dataSource = dataSource;
+			this.weight = weight;
+			this.effectiveWeight = weight;
+		}
+
+		public boolean isAvailable(long now, long retryInterval) {
+			return (this.failedAt == 0 || now - this.failedAt >= retryInterval);
+		}
+
+		public void succeeded() {
+			// Regain weight gradually with each successful Connection.
+			this.failedAt = 0;
+			if (this.effectiveWeight < this.weight) {
+				this.effectiveWeight++;
+			}
+		}
+
+		public void failed() {
+			this.failedAt = System.currentTimeMillis();
+			this.effectiveWeight = Math.max(1, this.effectiveWeight / 2);
+		}
+
+		@Override
+		public String toString() {
+			return "[" + this.dataSource + "] (weight " + this.weight + ", effective " + this.effectiveWeight +
+					(this.failedAt != 0 ? ", failed" : "") + ")";
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.incrementer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.util.Assert;
+
+/**
+ * {@link DataFieldMaxValueIncrementer} decorator that allocates blocks of keys
+ * from a target incrementer and hands them out without database access and
+ * without locking: a single target value reserves a whole block of
+ * {@link #setBlockSize blockSize} keys, and concurrent callers draw keys from
+ * the current block through an atomic counter.
+ *
+ * <p>Two allocation strategies are supported:
+ * <ul>
+ * <li><b>hi/lo</b> (the default): each target value <i>hi</i> reserves the keys
+ * <code>hi * blockSize</code> to <code>hi * blockSize + blockSize - 1</code>.
+ * Works with any target incrementer that increments by 1, but the generated
+ * keys do not match the values of the database sequence.
+ * <li><b>pooled</b>: the database sequence increments by <code>blockSize</code>
+ * itself, and each target value <i>v</i> reserves the keys <code>v - blockSize + 1</code>
+ * to <code>v</code>. Keys stay in line with the sequence, so other applications
+ * can keep using the sequence directly.
+ * </ul>
+ *
+ * <p>Before the current block runs out, the next block is fetched in the
+ * background via the configured {@link #setTaskExecutor TaskExecutor}, so that
+ * callers normally never wait for the database. Only the thread that finds a
+ * block exhausted synchronizes on switching to the next block, falling back to
+ * fetching it directly if no prefetched block is available.
+ *
+ * <p>Note that keys reserved but not handed out before shutdown are lost,
+ * leaving gaps in the key sequence - as with any block-allocating strategy.
+ *
+ * @since 3.1
+ * @see #setTargetIncrementer
+ * @see #setPooled
+ */
+public class PooledMaxValueIncrementer implements DataFieldMaxValueIncrementer, InitializingBean {
+
+	/** Default number of keys per block: 100 */
+	public static final int DEFAULT_BLOCK_SIZE = 100;
+
+	private static final Log logger = LogFactory.getLog(PooledMaxValueIncrementer.class);
+
+	private DataFieldMaxValueIncrementer targetIncrementer;
+
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	private boolean pooled = false;
+
+	private int prefetchThreshold = -1;
+
+	private TaskExecutor taskExecutor;
+
+	private int paddingLength = 0;
+
+	/** The block that keys are currently drawn from */
+	private volatile Block currentBlock;
+
+	/** The next block being fetched in the background, if any (guarded by this) */
+	private FutureTask<Block> prefetchedBlock;
+
+
+	/**
+	 * Create a new PooledMaxValueIncrementer for bean-style configuration.
+	 * @see #setTargetIncrementer
+	 */
+	public PooledMaxValueIncrementer() {
+	}
+
+	/**
+	 * Create a new PooledMaxValueIncrementer using hi/lo allocation.
+	 * @param targetIncrementer the incrementer providing the block values
+	 * @param blockSize the number of keys per block
+	 */
+	public PooledMaxValueIncrementer(DataFieldMaxValueIncrementer targetIncrementer, int blockSize) {
+		setTargetIncrementer(targetIncrementer);
+		setBlockSize(blockSize);
+		afterPropertiesSet();
+	}
+
+
+	/**
+	 * Set the incrementer to obtain block values from, typically a sequence-based
+	 * incrementer such as {@link OracleSequenceMaxValueIncrementer}.
+	 */
+	public void setTargetIncrementer(DataFieldMaxValueIncrementer targetIncrementer) {
+		this.targetIncrementer = targetIncrementer;
+	}
+
+	/**
+	 * Return the incrementer to obtain block values from.
+	 */
+	public DataFieldMaxValueIncrementer getTargetIncrementer() {
+		return this.targetIncrementer;
+	}
+
+	/**
+	 * Set the number of keys reserved by each target value. Default is 100.
+	 * <p>With {@link #setPooled pooled} allocation, this needs to match the
+	 * increment of the database sequence.
+	 */
+	public void setBlockSize(int blockSize) {
+		Assert.isTrue(blockSize > 0, "blockSize must be greater than 0");
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Return the number of keys reserved by each target value.
+	 */
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	/**
+	 * Set whether target values denote the upper end of their block ("pooled",
+	 * for sequences incrementing by the block size) rather than a block number
+	 * ("hi/lo"). Default is "false", i.e. hi/lo allocation.
+	 */
+	public void setPooled(boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * Return whether target values denote the upper end of their block.
+	 */
+	public boolean isPooled() {
+		return this.pooled;
+	}
+
+	/**
+	 * Set the number of keys left in the current block at which to start
+	 * fetching the next block in the background. Default is a quarter of the
+	 * block size; 0 switches prefetching off.
+	 */
+	public void setPrefetchThreshold(int prefetchThreshold) {
+		Assert.isTrue(prefetchThreshold >= 0, "prefetchThreshold must not be negative");
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	/**
+	 * Set the TaskExecutor to fetch blocks in the background with.
+	 * <p>Default is a {@link SimpleAsyncTaskExecutor} with daemon threads,
+	 * starting one short-lived thread per block.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set the padding length, i.e. the length to which a string result
+	 * should be pre-pended with zeroes.
+	 */
+	public void setPaddingLength(int paddingLength) {
+		this.paddingLength = paddingLength;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.targetIncrementer == null) {
+			throw new IllegalArgumentException("Property 'targetIncrementer' is required");
+		}
+		if (this.prefetchThreshold < 0) {
+			this.prefetchThreshold = this.blockSize / 4;
+		}
+		if (this.taskExecutor == null) {
+			SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(getClass().getSimpleName() + "-");
+			executor.setDaemon(true);
+			this.taskExecutor = executor;
+		}
+	}
+
+
+	public int nextIntValue() throws DataAccessException {
+		return (int) getNextKey();
+	}
+
+	public long nextLongValue() throws DataAccessException {
+		return getNextKey();
+	}
+
+	public String nextStringValue() throws DataAccessException {
+		String s = Long.toString(getNextKey());
+		int len = s.length();
+		if (len < this.paddingLength) {
+			StringBuilder sb = new StringBuilder(this.paddingLength);
+			for (int i = 0; i < this.paddingLength - len; i++) {
+				sb.append('0');
+			}
+			sb.append(s);
+			s = sb.toString();
+		}
+		return s;
+	}
+
+	/**
+	 * Draw the next key from the current block, switching to the next
+	 * block when the current one is exhausted.
+	 */
+	protected long getNextKey() throws DataAccessException {
+		Block block = this.currentBlock;
+		while (true) {
+			if (block != null) {
+				long key = block.nextKey.getAndIncrement();
+				if (key <= block.lastKey) {
+					if (key == block.prefetchKey) {
+						prefetchBlock();
+					}
+					return key;
+				}
+			}
+			block = switchBlock(block);
+		}
+	}
+
+	/**
+	 * Replace the given exhausted block with the next one, unless another
+	 * thread did so already.
+	 */
+	private synchronized Block switchBlock(Block exhaustedBlock) {
+		if (this.currentBlock != exhaustedBlock) {
+			return this.currentBlock;
+		}
+		Block block = null;
+		FutureTask<Block> prefetched = this.prefetchedBlock;
+		this.prefetchedBlock = null;
+		if (prefetched != null) {
+			try {
+				block = prefetched.get();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				prefetched.cancel(true);
+			}
+			catch (ExecutionException ex) {
+				logger.debug("Prefetching of key block failed - fetching synchronously", ex.getCause());
+			}
+		}
+		if (block == null) {
+			block = fetchBlock();
+		}
+		this.currentBlock = block;
+		return block;
+	}
+
+	/**
+	 * Start fetching the next block in the background, if not done yet.
+	 */
+	private synchronized void prefetchBlock() {
+		if (this.prefetchedBlock != null) {
+			return;
+		}
+		FutureTask<Block> future = new FutureTask<Block>(new Callable<Block>() {
+			public Block call() {
+				return fetchBlock();
+			}
+		});
+		try {
+			this.taskExecutor.execute(future);
+			this.prefetchedBlock = future;
+		}
+		catch (TaskRejectedException ex) {
+			logger.debug("Could not prefetch key block - will fetch it once needed", ex);
+		}
+	}
+
+	/**
+	 * Obtain a value from the target incrementer and derive the block of keys it reserves.
+	 */
+	private Block fetchBlock() {
+		long value = this.targetIncrementer.nextLongValue();
+		long firstKey = (this.pooled ? value - this.blockSize + 1 : value * this.blockSize);
+		long lastKey = firstKey + this.blockSize - 1;
+		long prefetchKey = (this.prefetchThreshold > 0 ?
+				Math.max(firstKey, lastKey - this.prefetchThreshold + 1) : Long.MIN_VALUE);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Allocated key block [" + firstKey + ".." + lastKey + "] from target value " + value);
+		}
+		return new Block(firstKey, lastKey, prefetchKey);
+	}
+
+
+	/**
+	 * A block of reserved keys, handed out through an atomic counter.
+	 */
+	private static class Block {
+
+		private final AtomicLong nextKey;
+
+		private final long lastKey;
+
+		/** The key whose retrieval triggers prefetching of the next block */
+		private final long prefetchKey;
+
+		public Block(long firstKey, long lastKey, long prefetchKey) {
+			this.nextKey = new AtomicLong(firstKey);
+			this.lastKey = lastKey;
+			this.prefetchKey = prefetchKey;
+		}
+	}
+
+}
@@ -0,0 +1,1065 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.rowset;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.util.Assert;
+
+/**
+ * Memory-compact implementation of Spring's {@link SqlRowSet} interface,
+ * holding a disconnected copy of ResultSet data in column-oriented form.
+ *
+ * <p>Rather than keeping every cell as a boxed object in a per-row array (as a
+ * <code>javax.sql.rowset.CachedRowSet</code> does), each column is stored in a
+ * single array suitable for its JDBC type: integral and boolean columns in a
+ * <code>long[]</code>, floating-point columns in a <code>double[]</code>,
+ * date/time columns as <code>long[]</code> milliseconds, and character columns
+ * dictionary-encoded as <code>int[]</code> codes into a table of distinct values.
+ * Other types (such as <code>DECIMAL</code> or binary columns) are kept as objects.
+ * Null values are tracked in a bit set per column.
+ *
+ * <p>Values are accessed directly through the column index; column labels are
+ * resolved once through a label map. Typed getters on a column of matching type
+ * do not create any objects; other combinations are converted the way a JDBC
+ * driver would, throwing an {@link InvalidResultSetAccessException} for values
+ * that cannot be converted.
+ *
+ * <p>A ColumnarSqlRowSet can be built incrementally: create it for a
+ * ResultSetMetaData instance and append rows through {@link #addRow(ResultSet)}
+ * or {@link #addRows(ResultSet)}, possibly across several ResultSets of the same
+ * shape. Call {@link #trimToSize()} once complete to release unused capacity.
+ *
+ * <p>Note: This row set is not thread-safe while rows are being added, and its
+ * cursor is never thread-safe, like any ResultSet.
+ *
+ * @since 3.1
+ * @see org.springframework.jdbc.core.ColumnarSqlRowSetResultSetExtractor
+ */
+public class ColumnarSqlRowSet implements SqlRowSet {
+
+	private static final long serialVersionUID = 8262581337472386823L;
+
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+
+	private final SqlRowSetMetaData metaData;
+
+	private final Column[] columns;
+
+	private final Map<String, Integer> columnLabelMap;
+
+	private int rowCount = 0;
+
+	private int capacity;
+
+	/** 0 before the first row, rowCount + 1 after the last row */
+	private int cursor = 0;
+
+	private boolean wasNull = false;
+
+
+	/**
+	 * Create a new ColumnarSqlRowSet and copy all remaining rows of the given ResultSet into it.
+	 * @param resultSet the ResultSet to copy (it will not be closed)
+	 * @throws SQLException if thrown by JDBC methods
+	 */
+	public ColumnarSqlRowSet(ResultSet resultSet) throws SQLException {
+		this(resultSet.getMetaData());
+		addRows(resultSet);
+	}
+
+	/**
+	 * Create a new, empty ColumnarSqlRowSet for the given ResultSet structure.
+	 * @param rsmd the metadata describing the columns of the rows to add
+	 * @throws SQLException if thrown by JDBC methods
+	 * @see #addRow(ResultSet)
+	 * @see #addRows(ResultSet)
+	 */
+	public ColumnarSqlRowSet(ResultSetMetaData rsmd) throws SQLException {
+		this(rsmd, DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Create a new, empty ColumnarSqlRowSet for the given ResultSet structure.
+	 * @param rsmd the metadata describing the columns of the rows to add
+	 * @param initialCapacity the number of rows to reserve space for
+	 * @throws SQLException if thrown by JDBC methods
+	 */
+	public ColumnarSqlRowSet(ResultSetMetaData rsmd, int initialCapacity) throws SQLException {
+		Assert.notNull(rsmd, "ResultSetMetaData must not be null");
+		Assert.isTrue(initialCapacity >= 0, "initialCapacity must not be negative");
+		this.metaData = new DisconnectedSqlRowSetMetaData(rsmd);
+		int columnCount = rsmd.getColumnCount();
+		this.columns = new Column[columnCount];
+		this.columnLabelMap = new HashMap<String, Integer>(columnCount * 2);
+		this.capacity = initialCapacity;
+		for (int i = 1; i <= columnCount; i++) {
+			this.columns[i - 1] = createColumn(rsmd.getColumnType(i), rsmd.getColumnClassName(i), initialCapacity);
+			String label = rsmd.getColumnLabel(i);
+			if (label != null) {
+				if (!this.columnLabelMap.containsKey(label)) {
+					this.columnLabelMap.put(label, i);
+				}
+				String lowerCaseLabel = label.toLowerCase();
+				if (!this.columnLabelMap.containsKey(lowerCaseLabel)) {
+					this.columnLabelMap.put(lowerCaseLabel, i);
+				}
+			}
+		}
+	}
+
+	private static Column createColumn(int sqlType, String className, int capacity) {
+		switch (sqlType) {
+			case Types.BIGINT:
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+			case Types.BIT:
+			case Types.BOOLEAN:
+				return new LongColumn(sqlType, className, capacity);
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return new DoubleColumn(sqlType, className, capacity);
+			case Types.DATE:
+			case Types.TIME:
+			case Types.TIMESTAMP:
+				return new TemporalColumn(sqlType, capacity);
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return new StringColumn(capacity);
+			default:
+				return new ObjectColumn(capacity);
+		}
+	}
+
+
+	/**
+	 * Append the current row of the given ResultSet, which needs to have
+	 * the structure this row set was created for.
+	 * @param resultSet the ResultSet positioned on the row to copy
+	 * @throws SQLException if thrown by JDBC methods
+	 */
+	public void addRow(ResultSet resultSet) throws SQLException {
+		if (this.rowCount == this.capacity) {
+			this.capacity = Math.max(DEFAULT_INITIAL_CAPACITY, this.capacity + (this.capacity >> 1));
+			for (Column column : this.columns) {
+				column.resize(this.capacity);
+			}
+		}
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i].read(resultSet, i + 1, this.rowCount);
+		}
+		this.rowCount++;
+	}
+
+	/**
+	 * Append all remaining rows of the given ResultSet, which needs to have
+	 * the structure this row set was created for.
+	 * @param resultSet the ResultSet to copy (it will not be closed)
+	 * @return the number of rows added
+	 * @throws SQLException if thrown by JDBC methods
+	 */
+	public int addRows(ResultSet resultSet) throws SQLException {
+		int added = 0;
+		while (resultSet.next()) {
+			addRow(resultSet);
+			added++;
+		}
+		return added;
+	}
+
+	/**
+	 * Release any capacity reserved beyond the current number of rows.
+	 */
+	public void trimToSize() {
+		if (this.capacity > this.rowCount) {
+			this.capacity = this.rowCount;
+			for (Column column : this.columns) {
+				column.resize(this.capacity);
+			}
+		}
+		for (Column column : this.columns) {
+			column.trimToSize();
+		}
+	}
+
+	/**
+	 * Return the number of rows held by this row set.
+	 */
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+
+	public SqlRowSetMetaData getMetaData() {
+		return this.metaData;
+	}
+
+	public int findColumn(String columnLabel) throws InvalidResultSetAccessException {
+		Integer columnIndex = this.columnLabelMap.get(columnLabel);
+		if (columnIndex == null && columnLabel != null) {
+			columnIndex = this.columnLabelMap.get(columnLabel.toLowerCase());
+		}
+		if (columnIndex == null) {
+			throw new InvalidResultSetAccessException(new SQLException("Invalid column label: " + columnLabel));
+		}
+		return columnIndex;
+	}
+
+
+	// RowSet methods for extracting data values
+
+	public BigDecimal getBigDecimal(int columnIndex) throws InvalidResultSetAccessException {
+		Object value = getObject(columnIndex);
+		if (value == null || value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		if (value instanceof Boolean) {
+			return (((Boolean) value) ? BigDecimal.ONE : BigDecimal.ZERO);
+		}
+		return toBigDecimal(columnIndex, value, "BigDecimal");
+	}
+
+	public BigDecimal getBigDecimal(String columnLabel) throws InvalidResultSetAccessException {
+		return getBigDecimal(findColumn(columnLabel));
+	}
+
+	public boolean getBoolean(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof LongColumn) {
+			return (getLongValue((LongColumn) column) != 0);
+		}
+		Object value = getObject(columnIndex);
+		if (value == null) {
+			return false;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		if (value instanceof String) {
+			String str = ((String) value).trim();
+			return ("true".equalsIgnoreCase(str) || "1".equals(str));
+		}
+		return (convertToNumber(columnIndex, value, "boolean").doubleValue() != 0);
+	}
+
+	public boolean getBoolean(String columnLabel) throws InvalidResultSetAccessException {
+		return getBoolean(findColumn(columnLabel));
+	}
+
+	public byte getByte(int columnIndex) throws InvalidResultSetAccessException {
+		return (byte) getLong(columnIndex);
+	}
+
+	public byte getByte(String columnLabel) throws InvalidResultSetAccessException {
+		return getByte(findColumn(columnLabel));
+	}
+
+	public Date getDate(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof TemporalColumn) {
+			return (isNull(column) ? null : new Date(((TemporalColumn) column).millis[this.cursor - 1]));
+		}
+		Object value = getObject(columnIndex);
+		if (value == null || value instanceof Date) {
+			return (Date) value;
+		}
+		if (value instanceof java.util.Date) {
+			return new Date(((java.util.Date) value).getTime());
+		}
+		try {
+			return Date.valueOf(value.toString().trim());
+		}
+		catch (IllegalArgumentException ex) {
+			throw conversionFailure(columnIndex, value, "Date");
+		}
+	}
+
+	public Date getDate(int columnIndex, Calendar cal) throws InvalidResultSetAccessException {
+		Date date = getDate(columnIndex);
+		return (date != null ? new Date(applyCalendar(date.getTime(), cal)) : null);
+	}
+
+	public Date getDate(String columnLabel) throws InvalidResultSetAccessException {
+		return getDate(findColumn(columnLabel));
+	}
+
+	public Date getDate(String columnLabel, Calendar cal) throws InvalidResultSetAccessException {
+		return getDate(findColumn(columnLabel), cal);
+	}
+
+	public double getDouble(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof DoubleColumn) {
+			return (isNull(column) ? 0 : ((DoubleColumn) column).values[this.cursor - 1]);
+		}
+		if (column instanceof LongColumn) {
+			return getLongValue((LongColumn) column);
+		}
+		Object value = getObject(columnIndex);
+		return (value != null ? convertToNumber(columnIndex, value, "double").doubleValue() : 0);
+	}
+
+	public double getDouble(String columnLabel) throws InvalidResultSetAccessException {
+		return getDouble(findColumn(columnLabel));
+	}
+
+	public float getFloat(int columnIndex) throws InvalidResultSetAccessException {
+		return (float) getDouble(columnIndex);
+	}
+
+	public float getFloat(String columnLabel) throws InvalidResultSetAccessException {
+		return getFloat(findColumn(columnLabel));
+	}
+
+	public int getInt(int columnIndex) throws InvalidResultSetAccessException {
+		return (int) getLong(columnIndex);
+	}
+
+	public int getInt(String columnLabel) throws InvalidResultSetAccessException {
+		return getInt(findColumn(columnLabel));
+	}
+
+	public long getLong(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof LongColumn) {
+			return getLongValue((LongColumn) column);
+		}
+		if (column instanceof DoubleColumn) {
+			return (isNull(column) ? 0 : (long) ((DoubleColumn) column).values[this.cursor - 1]);
+		}
+		Object value = getObject(columnIndex);
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Boolean) {
+			return (((Boolean) value) ? 1 : 0);
+		}
+		return convertToNumber(columnIndex, value, "long").longValue();
+	}
+
+	public long getLong(String columnLabel) throws InvalidResultSetAccessException {
+		return getLong(findColumn(columnLabel));
+	}
+
+	public Object getObject(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		Object value = column.getObject(this.cursor - 1);
+		this.wasNull = (value == null);
+		return value;
+	}
+
+	public Object getObject(int columnIndex, Map<String, Class<?>> map) throws InvalidResultSetAccessException {
+		return getObject(columnIndex);
+	}
+
+	public Object getObject(String columnLabel) throws InvalidResultSetAccessException {
+		return getObject(findColumn(columnLabel));
+	}
+
+	public Object getObject(String columnLabel, Map<String, Class<?>> map) throws InvalidResultSetAccessException {
+		return getObject(findColumn(columnLabel), map);
+	}
+
+	public short getShort(int columnIndex) throws InvalidResultSetAccessException {
+		return (short) getLong(columnIndex);
+	}
+
+	public short getShort(String columnLabel) throws InvalidResultSetAccessException {
+		return getShort(findColumn(columnLabel));
+	}
+
+	public String getString(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof StringColumn) {
+			String value = ((StringColumn) column).getString(this.cursor - 1);
+			this.wasNull = (value == null);
+			return value;
+		}
+		Object value = getObject(columnIndex);
+		return (value != null ? value.toString() : null);
+	}
+
+	public String getString(String columnLabel) throws InvalidResultSetAccessException {
+		return getString(findColumn(columnLabel));
+	}
+
+	public Time getTime(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof TemporalColumn) {
+			return (isNull(column) ? null : new Time(((TemporalColumn) column).millis[this.cursor - 1]));
+		}
+		Object value = getObject(columnIndex);
+		if (value == null || value instanceof Time) {
+			return (Time) value;
+		}
+		if (value instanceof java.util.Date) {
+			return new Time(((java.util.Date) value).getTime());
+		}
+		try {
+			return Time.valueOf(value.toString().trim());
+		}
+		catch (IllegalArgumentException ex) {
+			throw conversionFailure(columnIndex, value, "Time");
+		}
+	}
+
+	public Time getTime(int columnIndex, Calendar cal) throws InvalidResultSetAccessException {
+		Time time = getTime(columnIndex);
+		return (time != null ? new Time(applyCalendar(time.getTime(), cal)) : null);
+	}
+
+	public Time getTime(String columnLabel) throws InvalidResultSetAccessException {
+		return getTime(findColumn(columnLabel));
+	}
+
+	public Time getTime(String columnLabel, Calendar cal) throws InvalidResultSetAccessException {
+		return getTime(findColumn(columnLabel), cal);
+	}
+
+	public Timestamp getTimestamp(int columnIndex) throws InvalidResultSetAccessException {
+		Column column = getColumn(columnIndex);
+		if (column instanceof TemporalColumn) {
+			return (isNull(column) ? null : ((TemporalColumn) column).getTimestamp(this.cursor - 1));
+		}
+		Object value = getObject(columnIndex);
+		if (value == null || value instanceof Timestamp) {
+			return (Timestamp) value;
+		}
+		if (value instanceof java.util.Date) {
+			return new Timestamp(((java.util.Date) value).getTime());
+		}
+		try {
+			return Timestamp.valueOf(value.toString().trim());
+		}
+		catch (IllegalArgumentException ex) {
+			throw conversionFailure(columnIndex, value, "Timestamp");
+		}
+	}
+
+	public Timestamp getTimestamp(int columnIndex, Calendar cal) throws InvalidResultSetAccessException {
+		Timestamp timestamp = getTimestamp(columnIndex);
+		if (timestamp == null) {
+			return null;
+		}
+		int nanos = timestamp.getNanos();
+		Timestamp result = new Timestamp(applyCalendar(timestamp.getTime(), cal));
+		result.setNanos(nanos);
+		return result;
+	}
+
+	public Timestamp getTimestamp(String columnLabel) throws InvalidResultSetAccessException {
+		return getTimestamp(findColumn(columnLabel));
+	}
+
+	public Timestamp getTimestamp(String columnLabel, Calendar cal) throws InvalidResultSetAccessException {
+		return getTimestamp(findColumn(columnLabel), cal);
+	}
+
+
+	// RowSet navigation methods
+
+	public boolean absolute(int row) throws InvalidResultSetAccessException {
+		if (row >= 0) {
+			this.cursor = Math.min(row, this.rowCount + 1);
+		}
+		else {
+			this.cursor = Math.max(this.rowCount + 1 + row, 0);
+		}
+		return isOnRow();
+	}
+
+	public void afterLast() throws InvalidResultSetAccessException {
+		this.cursor = this.rowCount + 1;
+	}
+
+	public void beforeFirst() throws InvalidResultSetAccessException {
+		this.cursor = 0;
+	}
+
+	public boolean first() throws InvalidResultSetAccessException {
+		return absolute(1);
+	}
+
+	public int getRow() throws InvalidResultSetAccessException {
+		return (isOnRow() ? this.cursor : 0);
+	}
+
+	public boolean isAfterLast() throws InvalidResultSetAccessException {
+		return (this.rowCount > 0 && this.cursor > this.rowCount);
+	}
+
+	public boolean isBeforeFirst() throws InvalidResultSetAccessException {
+		return (this.rowCount > 0 && this.cursor == 0);
+	}
+
+	public boolean isFirst() throws InvalidResultSetAccessException {
+		return (this.rowCount > 0 && this.cursor == 1);
+	}
+
+	public boolean isLast() throws InvalidResultSetAccessException {
+		return (this.rowCount > 0 && this.cursor == this.rowCount);
+	}
+
+	public boolean last() throws InvalidResultSetAccessException {
+		return absolute(-1);
+	}
+
+	public boolean next() throws InvalidResultSetAccessException {
+		if (this.cursor <= this.rowCount) {
+			this.cursor++;
+		}
+		return isOnRow();
+	}
+
+	public boolean previous() throws InvalidResultSetAccessException {
+		if (this.cursor > 0) {
+			this.cursor--;
+		}
+		return isOnRow();
+	}
+
+	public boolean relative(int rows) throws InvalidResultSetAccessException {
+		long target = (long) this.cursor + rows;
+		this.cursor = (int) Math.max(0, Math.min(target, this.rowCount + 1));
+		return isOnRow();
+	}
+
+	public boolean wasNull() throws InvalidResultSetAccessException {
+		return this.wasNull;
+	}
+
+
+	private boolean isOnRow() {
+		return (this.cursor > 0 && this.cursor <= this.rowCount);
+	}
+
+	/**
+	 * Return the given column, checking the column index and the cursor position.
+	 */
+	private Column getColumn(int columnIndex) {
+		if (columnIndex < 1 || columnIndex > this.columns.length) {
+			throw new InvalidResultSetAccessException(new SQLException("Invalid column index: " + columnIndex));
+		}
+		if (!isOnRow()) {
+			throw new InvalidResultSetAccessException(new SQLException("Cursor is not positioned on a row"));
+		}
+		return this.columns[columnIndex - 1];
+	}
+
+	private boolean isNull(Column column) {
+		this.wasNull = column.nulls.get(this.cursor - 1);
+		return this.wasNull;
+	}
+
+	private long getLongValue(LongColumn column) {
+		return (isNull(column) ? 0 : column.values[this.cursor - 1]);
+	}
+
+	private Number convertToNumber(int columnIndex, Object value, String targetType) {
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		return toBigDecimal(columnIndex, value, targetType);
+	}
+
+	private BigDecimal toBigDecimal(int columnIndex, Object value, String targetType) {
+		try {
+			return new BigDecimal(value.toString().trim());
+		}
+		catch (NumberFormatException ex) {
+			throw conversionFailure(columnIndex, value, targetType);
+		}
+	}
+
+	private InvalidResultSetAccessException conversionFailure(int columnIndex, Object value, String targetType) {
+		return new InvalidResultSetAccessException(new SQLException(
+				"Cannot convert value [" + value + "] of column " + columnIndex + " to " + targetType));
+	}
+
+	/**
+	 * Reinterpret the wall-clock time of the given millisecond value in the
+	 * default time zone as wall-clock time in the time zone of the given Calendar.
+	 */
+	private static long applyCalendar(long millis, Calendar cal) {
+		if (cal == null) {
+			return millis;
+		}
+		Calendar local = Calendar.getInstance();
+		local.setTimeInMillis(millis);
+		Calendar target = (Calendar) cal.clone();
+		target.clear();
+		target.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH), local.get(Calendar.DAY_OF_MONTH),
+				local.get(Calendar.HOUR_OF_DAY), local.get(Calendar.MINUTE), local.get(Calendar.SECOND));
+		target.set(Calendar.MILLISECOND, local.get(Calendar.MILLISECOND));
+		return target.getTimeInMillis();
+	}
+
+
+	/**
+	 * Storage for the values of a single column, with nulls tracked in a bit set.
+	 */
+	private static abstract class Column implements Serializable {
+
+		protected final BitSet nulls = new BitSet();
+
+		/**
+		 * Copy the value of the given column of the current ResultSet row to the given position.
+		 */
+		public abstract void read(ResultSet rs, int columnIndex, int row) throws SQLException;
+
+		/**
+		 * Change the capacity of the value arrays to the given number of rows.
+		 */
+		public abstract void resize(int capacity);
+
+		/**
+		 * Release any memory only needed while rows are being added.
+		 */
+		public void trimToSize() {
+		}
+
+		/**
+		 * Return the value at the given position as the object a JDBC driver would return.
+		 */
+		public abstract Object getObject(int row);
+	}
+
+
+	private static class LongColumn extends Column {
+
+		private final int sqlType;
+
+		private final String className;
+
+		private final boolean booleanValues;
+
+		private long[] values;
+
+		public LongColumn(int sqlType, String className, int capacity) {
+			this.sqlType = sqlType;
+			this.className = className;
+			this.booleanValues = ("java.lang.Boolean".equals(className) ||
+					(className == null && (sqlType == Types.BIT || sqlType == Types.BOOLEAN)));
+			this.values = new long[capacity];
+		}
+
+		public void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			if (this.booleanValues) {
+				// Some drivers reject getLong for BIT and BOOLEAN columns
+				this.values[row] = (rs.getBoolean(columnIndex) ? 1 : 0);
+			}
+			else {
+				this.values[row] = rs.getLong(columnIndex);
+			}
+			if (rs.wasNull()) {
+				this.nulls.set(row);
+			}
+		}
+
+		public void resize(int capacity) {
+			long[] newValues = new long[capacity];
+			System.arraycopy(this.values, 0, newValues, 0, Math.min(this.values.length, newValues.length));
+			this.values = newValues;
+		}
+
+		public Object getObject(int row) {
+			if (this.nulls.get(row)) {
+				return null;
+			}
+			long value = this.values[row];
+			if (this.booleanValues) {
+				return (value != 0);
+			}
+			else if ("java.lang.Long".equals(this.className) || (this.className == null && this.sqlType == Types.BIGINT)) {
+				return value;
+			}
+			else if ("java.lang.Short".equals(this.className)) {
+				return (short) value;
+			}
+			else if ("java.lang.Byte".equals(this.className)) {
+				return (byte) value;
+			}
+			else {
+				return (int) value;
+			}
+		}
+	}
+
+
+	private static class DoubleColumn extends Column {
+
+		private final boolean floatValues;
+
+		private double[] values;
+
+		public DoubleColumn(int sqlType, String className, int capacity) {
+			this.floatValues = ("java.lang.Float".equals(className) || (className == null && sqlType == Types.REAL));
+			this.values = new double[capacity];
+		}
+
+		public void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			this.values[row] = rs.getDouble(columnIndex);
+			if (rs.wasNull()) {
+				this.nulls.set(row);
+			}
+		}
+
+		public void resize(int capacity) {
+			double[] newValues = new double[capacity];
+			System.arraycopy(this.values, 0, newValues, 0, Math.min(this.values.length, newValues.length));
+			this.values = newValues;
+		}
+
+		public Object getObject(int row) {
+			if (this.nulls.get(row)) {
+				return null;
+			}
+			return (this.floatValues ? (Object) (float) this.values[row] : (Object) this.values[row]);
+		}
+	}
+
+
+	private static class TemporalColumn extends Column {
+
+		private final int sqlType;
+
+		private long[] millis;
+
+		/** Sub-millisecond nanos of TIMESTAMP values, allocated on first use */
+		private int[] nanos;
+
+		public TemporalColumn(int sqlType, int capacity) {
+			this.sqlType = sqlType;
+			this.millis = new long[capacity];
+		}
+
+		public void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			java.util.Date value;
+			switch (this.sqlType) {
+				case Types.DATE:
+					value = rs.getDate(columnIndex);
+					break;
+				case Types.TIME:
+					value = rs.getTime(columnIndex);
+					break;
+				default:
+					value = rs.getTimestamp(columnIndex);
+			}
+			if (value == null) {
+				this.nulls.set(row);
+				return;
+			}
+			this.millis[row] = value.getTime();
+			if (value instanceof Timestamp) {
+				int subMillis = ((Timestamp) value).getNanos() % 1000000;
+				if (subMillis != 0) {
+					if (this.nanos == null) {
+						this.nanos = new int[this.millis.length];
+					}
+					this.nanos[row] = subMillis;
+				}
+			}
+		}
+
+		public void resize(int capacity) {
+			long[] newMillis = new long[capacity];
+			System.arraycopy(this.millis, 0, newMillis, 0, Math.min(this.millis.length, newMillis.length));
+			this.millis = newMillis;
+			if (this.nanos != null) {
+				int[] newNanos = new int[capacity];
+				System.arraycopy(this.nanos, 0, newNanos, 0, Math.min(this.nanos.length, newNanos.length));
+				this.nanos = newNanos;
+			}
+		}
+
+		public Timestamp getTimestamp(int row) {
+			Timestamp timestamp = new Timestamp(this.millis[row]);
+			if (this.nanos != null && this.nanos[row] != 0) {
+				timestamp.setNanos(timestamp.getNanos() + this.nanos[row]);
+			}
+			return timestamp;
+		}
+
+		public Object getObject(int row) {
+			if (this.nulls.get(row)) {
+				return null;
+			}
+			switch (this.sqlType) {
+				case Types.DATE:
+					return new Date(this.millis[row]);
+				case Types.TIME:
+					return new Time(this.millis[row]);
+				default:
+					return getTimestamp(row);
+			}
+		}
+	}
+
+
+	private static class StringColumn extends Column {
+
+		private int[] codes;
+
+		private String[] dictionary = new String[DEFAULT_INITIAL_CAPACITY];
+
+		private int dictionarySize = 0;
+
+		/** Lookup of dictionary codes while rows are being added; rebuilt on demand */
+		private transient Map<String, Integer> codeMap;
+
+		public StringColumn(int capacity) {
+			this.codes = new int[capacity];
+		}
+
+		public void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			String value = rs.getString(columnIndex);
+			if (value == null) {
+				this.nulls.set(row);
+				return;
+			}
+			if (this.codeMap == null) {
+				this.codeMap = new HashMap<String, Integer>();
+				for (int i = 0; i < this.dictionarySize; i++) {
+					this.codeMap.put(this.dictionary[i], i);
+				}
+			}
+			Integer code = this.codeMap.get(value);
+			if (code == null) {
+				if (this.dictionarySize == this.dictionary.length) {
+					String[] newDictionary = new String[this.dictionarySize * 2];
+					System.arraycopy(this.dictionary, 0, newDictionary, 0, Math.min(this.dictionary.length, newDictionary.length));
+					this.dictionary = newDictionary;
+				}
+				code = this.dictionarySize++;
+				this.dictionary[code] = value;
+				this.codeMap.put(value, code);
+			}
+			this.codes[row] = code;
+		}
+
+		public void resize(int capacity) {
+			int[] newCodes = new int[capacity];
+			System.arraycopy(this.codes, 0, newCodes, 0, Math.min(this.codes.length, newCodes.length));
+			this.codes = newCodes;
+		}
+
+		public void trimToSize() {
+			String[] newDictionary = new String[Math.max(this.dictionarySize, 1)];
+			System.arraycopy(this.dictionary, 0, newDictionary, 0, Math.min(this.dictionary.length, newDictionary.length));
+			this.dictionary = newDictionary;
+			this.codeMap = null;
+		}
+
+		public String getString(int row) {
+			return (this.nulls.get(row) ? null : this.dictionary[this.codes[row]]);
+		}
+
+		public Object getObject(int row) {
+			return getString(row);
+		}
+	}
+
+
+	private static class ObjectColumn extends Column {
+
+		private Object[] values;
+
+		public ObjectColumn(int capacity) {
+			this.values = new Object[capacity];
+		}
+
+		public void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+			Object value = rs.getObject(columnIndex);
+			if (value == null) {
+				this.nulls.set(row);
+			}
+			this.values[row] = value;
+		}
+
+		public void resize(int capacity) {
+			Object[] newValues = new Object[capacity];
+			System.arraycopy(this.values, 0, newValues, 0, Math.min(this.values.length, newValues.length));
+			this.values = newValues;
+		}
+
+		public Object getObject(int row) {
+			return this.values[row];
+		}
+	}
+
+
+	/**
+	 * SqlRowSetMetaData implementation holding a copy of the column metadata.
+	 */
+	private static class DisconnectedSqlRowSetMetaData implements SqlRowSetMetaData, Serializable {
+
+		private final String[] catalogNames;
+
+		private final String[] columnClassNames;
+
+		private final int[] columnDisplaySizes;
+
+		private final String[] columnLabels;
+
+		private final String[] columnNames;
+
+		private final int[] columnTypes;
+
+		private final String[] columnTypeNames;
+
+		private final int[] precisions;
+
+		private final int[] scales;
+
+		private final String[] schemaNames;
+
+		private final String[] tableNames;
+
+		private final boolean[] caseSensitive;
+
+		private final boolean[] currency;
+
+		private final boolean[] signed;
+
+		public DisconnectedSqlRowSetMetaData(ResultSetMetaData rsmd) throws SQLException {
+			int columnCount = rsmd.getColumnCount();
+			this.catalogNames = new String[columnCount];
+			this.columnClassNames = new String[columnCount];
+			this.columnDisplaySizes = new int[columnCount];
+			this.columnLabels = new String[columnCount];
+			this.columnNames = new String[columnCount];
+			this.columnTypes = new int[columnCount];
+			this.columnTypeNames = new String[columnCount];
+			this.precisions = new int[columnCount];
+			this.scales = new int[columnCount];
+			this.schemaNames = new String[columnCount];
+			this.tableNames = new String[columnCount];
+			this.caseSensitive = new boolean[columnCount];
+			this.currency = new boolean[columnCount];
+			this.signed = new boolean[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				int column = i + 1;
+				this.catalogNames[i] = rsmd.getCatalogName(column);
+				this.columnClassNames[i] = rsmd.getColumnClassName(column);
+				this.columnDisplaySizes[i] = rsmd.getColumnDisplaySize(column);
+				this.columnLabels[i] = rsmd.getColumnLabel(column);
+				this.columnNames[i] = rsmd.getColumnName(column);
+				this.columnTypes[i] = rsmd.getColumnType(column);
+				this.columnTypeNames[i] = rsmd.getColumnTypeName(column);
+				this.precisions[i] = rsmd.getPrecision(column);
+				this.scales[i] = rsmd.getScale(column);
+				this.schemaNames[i] = rsmd.getSchemaName(column);
+				this.tableNames[i] = rsmd.getTableName(column);
+				this.caseSensitive[i] = rsmd.isCaseSensitive(column);
+				this.currency[i] = rsmd.isCurrency(column);
+				this.signed[i] = rsmd.isSigned(column);
+			}
+		}
+
+		private int index(int column) {
+			if (column < 1 || column > this.columnNames.length) {
+				throw new InvalidResultSetAccessException(new SQLException("Invalid column index: " + column));
+			}
+			return column - 1;
+		}
+
+		public String getCatalogName(int column) {
+			return this.catalogNames[index(column)];
+		}
+
+		public String getColumnClassName(int column) {
+			return this.columnClassNames[index(column)];
+		}
+
+		public int getColumnCount() {
+			return this.columnNames.length;
+		}
+
+		public String[] getColumnNames() {
+			return this.columnNames.clone();
+		}
+
+		public int getColumnDisplaySize(int column) {
+			return this.columnDisplaySizes[index(column)];
+		}
+
+		public String getColumnLabel(int column) {
+			return this.columnLabels[index(column)];
+		}
+
+		public String getColumnName(int column) {
+			return this.columnNames[index(column)];
+		}
+
+		public int getColumnType(int column) {
+			return this.columnTypes[index(column)];
+		}
+
+		public String getColumnTypeName(int column) {
+			return this.columnTypeNames[index(column)];
+		}
+
+		public int getPrecision(int column) {
+			return this.precisions[index(column)];
+		}
+
+		public int getScale(int column) {
+			return this.scales[index(column)];
+		}
+
+		public String getSchemaName(int column) {
+			return this.schemaNames[index(column)];
+		}
+
+		public String getTableName(int column) {
+			return this.tableNames[index(column)];
+		}
+
+		public boolean isCaseSensitive(int column) {
+			return this.caseSensitive[index(column)];
+		}
+
+		public boolean isCurrency(int column) {
+			return this.currency[index(column)];
+		}
+
+		public boolean isSigned(int column) {
+			return this.signed[index(column)];
+		}
+	}
+
+}
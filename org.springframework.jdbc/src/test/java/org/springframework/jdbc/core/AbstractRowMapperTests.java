@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -149,9 +149,9 @@ public abstract class AbstractRowMapperTests extends TestCase {
 		rsmd2.getColumnLabel(2);
 		rsmdControl2.setReturnValue("age", 2);
 		rsmd2.getColumnLabel(3);
-		rsmdControl2.setReturnValue("birth_date", 1);
+		rsmdControl2.setReturnValue("birth_date", 2);
 		rsmd2.getColumnLabel(4);
-		rsmdControl2.setReturnValue("balance", 1);
+		rsmdControl2.setReturnValue("balance", 2);
 		rsmdControl2.replay();
 
 		rsControl2 = MockControl.createControl(ResultSet.class);
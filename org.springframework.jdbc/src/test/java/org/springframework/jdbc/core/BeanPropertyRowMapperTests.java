@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,15 +16,24 @@
 
 package org.springframework.jdbc.core;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.BeanWrapper;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.jdbc.core.test.ConcretePerson;
 import org.springframework.jdbc.core.test.ExtendedPerson;
 import org.springframework.jdbc.core.test.Person;
 import org.springframework.jdbc.core.test.SpacePerson;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.beans.TypeMismatchException;
+import org.springframework.util.StopWatch;
 
 /**
  * @author Thomas Risberg
@@ -32,6 +41,8 @@ import org.springframework.beans.TypeMismatchException;
  */
 public class BeanPropertyRowMapperTests extends AbstractRowMapperTests {
 
+	private static final Log logger = LogFactory.getLog(BeanPropertyRowMapperTests.class);
+
 	public void testOverridingClassDefinedForMapping() {
 		BeanPropertyRowMapper mapper = new BeanPropertyRowMapper(Person.class);
 		try {
@@ -117,4 +128,75 @@ public class BeanPropertyRowMapperTests extends AbstractRowMapperTests {
 		verifySpacePerson(bean);
 	}
 
+	public void testMappingWithCustomizedBeanWrapper() throws SQLException {
+		final boolean[] initialized = new boolean[1];
+		List<Person> result = jdbcTemplate.query("select name, age, birth_date, balance from people",
+				new BeanPropertyRowMapper<Person>(Person.class) {
+					protected void initBeanWrapper(BeanWrapper bw) {
+						initialized[0] = true;
+					}
+				});
+		assertEquals(1, result.size());
+		verifyPerson(result.get(0));
+		assertTrue("BeanWrapper based mapping not used", initialized[0]);
+	}
+
+	public void testMappingPlanPerformance() {
+		int rows = 1000;
+		String sql = "select x as name, x as age, current_timestamp() as birth_date, " +
+				"cast(x as decimal(12,2)) as balance from system_range(1, " + rows + ")";
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		try {
+			JdbcTemplate template = new JdbcTemplate(database);
+			StopWatch sw = new StopWatch("Mapping " + rows + " rows from H2");
+			sw.start("BeanWrapper");
+			MappingCallbackHandler beanWrapperHandler = new MappingCallbackHandler(
+					new BeanPropertyRowMapper<Person>(Person.class) {
+						protected void initBeanWrapper(BeanWrapper bw) {
+						}
+					});
+			template.query(sql, beanWrapperHandler);
+			sw.stop();
+			sw.start("Mapping plan");
+			MappingCallbackHandler planHandler = new MappingCallbackHandler(
+					new BeanPropertyRowMapper<Person>(Person.class));
+			template.query(sql, planHandler);
+			sw.stop();
+			if (logger.isInfoEnabled()) {
+				logger.info(sw.prettyPrint());
+			}
+			assertEquals(rows, beanWrapperHandler.count);
+			assertEquals(rows, planHandler.count);
+			assertEquals(beanWrapperHandler.ageSum, planHandler.ageSum);
+			assertEquals(String.valueOf(rows), planHandler.last.getName());
+			assertEquals(rows, planHandler.last.getAge());
+			assertNotNull(planHandler.last.getBirth_date());
+			assertEquals(rows, planHandler.last.getBalance().intValue());
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+
+	private static class MappingCallbackHandler implements RowCallbackHandler {
+
+		private final RowMapper<Person> rowMapper;
+
+		private int count;
+
+		private long ageSum;
+
+		private Person last;
+
+		public MappingCallbackHandler(RowMapper<Person> rowMapper) {
+			this.rowMapper = rowMapper;
+		}
+
+		public void processRow(ResultSet rs) throws SQLException {
+			this.last = this.rowMapper.mapRow(rs, this.count++);
+			this.ageSum += this.last.getAge();
+		}
+	}
+
 }
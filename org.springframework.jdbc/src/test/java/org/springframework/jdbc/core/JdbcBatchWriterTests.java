@@ -0,0 +1,211 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @since 3.1
+ */
+public class JdbcBatchWriterTests {
+
+	private static final String INSERT_SQL = "INSERT INTO T (ID, NAME) VALUES (?, ?)";
+
+	private static final ParameterizedPreparedStatementSetter<Integer> SETTER =
+			new ParameterizedPreparedStatementSetter<Integer>() {
+				public void setValues(PreparedStatement ps, Integer id) throws SQLException {
+					ps.setInt(1, id);
+					ps.setString(2, "name" + id);
+				}
+			};
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate jdbcTemplate;
+
+
+	@Before
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE T (ID INTEGER PRIMARY KEY, NAME VARCHAR(20))");
+	}
+
+	@After
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	@Test
+	public void writeInBatches() {
+		BatchWriteResult result = jdbcTemplate.batchUpdate(INSERT_SQL, new RangeIterator(1, 2500), 1000, SETTER);
+		assertEquals(3, result.getBatchCount());
+		assertEquals(2500, result.getRowCount());
+		assertEquals(2500, result.getUpdateCount());
+		assertFalse(result.hasFailedBatches());
+		assertEquals(2500, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+		assertEquals("name2500", jdbcTemplate.queryForObject("SELECT NAME FROM T WHERE ID = 2500", String.class));
+	}
+
+	@Test
+	public void writeEmptyIterator() {
+		BatchWriteResult result = new JdbcBatchWriter<Integer>(database, INSERT_SQL, SETTER).write(
+				new ArrayList<Integer>());
+		assertEquals(0, result.getBatchCount());
+		assertEquals(0, result.getRowCount());
+	}
+
+	@Test
+	public void writeMultiRowStatements() {
+		JdbcBatchWriter<Integer> writer = new JdbcBatchWriter<Integer>(database, INSERT_SQL, SETTER);
+		writer.setBatchSize(10);
+		writer.setRowsPerStatement(4);
+		assertEquals("INSERT INTO T (ID, NAME) VALUES (?, ?), (?, ?), (?, ?)", writer.getSqlForRows(3));
+		BatchWriteResult result = writer.write(new RangeIterator(1, 25));
+		assertEquals(3, result.getBatchCount());
+		assertEquals(25, result.getRowCount());
+		assertEquals(25, result.getUpdateCount());
+		assertEquals(25, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+		assertEquals(325, jdbcTemplate.queryForInt("SELECT SUM(ID) FROM T"));
+		assertEquals("name17", jdbcTemplate.queryForObject("SELECT NAME FROM T WHERE ID = 17", String.class));
+	}
+
+	@Test(expected = InvalidDataAccessApiUsageException.class)
+	public void multiRowStatementsRequireValuesClause() {
+		new JdbcBatchWriter<Integer>(database, "UPDATE T SET NAME = ? WHERE ID = ?", SETTER).setRowsPerStatement(2);
+	}
+
+	@Test
+	public void failedBatchAborts() {
+		jdbcTemplate.update("INSERT INTO T (ID, NAME) VALUES (15, 'existing')");
+		JdbcBatchWriter<Integer> writer = new JdbcBatchWriter<Integer>(database, INSERT_SQL, SETTER);
+		writer.setBatchSize(10);
+		writer.setCommitPerBatch(true);
+		try {
+			writer.write(new RangeIterator(1, 30));
+			fail("Should have thrown DataIntegrityViolationException");
+		}
+		catch (DataIntegrityViolationException ex) {
+			// expected
+		}
+		assertEquals(11, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+	}
+
+	@Test
+	public void failedBatchSkippedWithCommitPerBatch() {
+		jdbcTemplate.update("INSERT INTO T (ID, NAME) VALUES (15, 'existing')");
+		JdbcBatchWriter<Integer> writer = new JdbcBatchWriter<Integer>(database, INSERT_SQL, SETTER);
+		writer.setBatchSize(10);
+		writer.setCommitPerBatch(true);
+		writer.setContinueOnError(true);
+		BatchWriteResult result = writer.write(new RangeIterator(1, 30));
+		assertEquals(3, result.getBatchCount());
+		assertEquals(20, result.getRowCount());
+		assertEquals(10, result.getFailedRowCount());
+		assertEquals(1, result.getFailedBatches().size());
+		BatchWriteResult.FailedBatch failedBatch = result.getFailedBatches().get(0);
+		assertEquals(1, failedBatch.getBatchIndex());
+		assertEquals(10, failedBatch.getFirstRow());
+		assertEquals(10, failedBatch.getRowCount());
+		assertTrue(failedBatch.getException() instanceof DataIntegrityViolationException);
+		assertEquals(21, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+		assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T WHERE ID BETWEEN 11 AND 20 AND ID <> 15"));
+	}
+
+	@Test
+	public void commitPerBatchNotAllowedWithinTransaction() {
+		final JdbcBatchWriter<Integer> writer = new JdbcBatchWriter<Integer>(database, INSERT_SQL, SETTER);
+		writer.setCommitPerBatch(true);
+		try {
+			new TransactionTemplate(new DataSourceTransactionManager(database)).execute(
+					new TransactionCallbackWithoutResult() {
+						protected void doInTransactionWithoutResult(TransactionStatus status) {
+							writer.write(Arrays.asList(1, 2, 3));
+						}
+					});
+			fail("Should have thrown InvalidDataAccessApiUsageException");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// expected
+		}
+		assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+	}
+
+	@Test
+	public void simpleJdbcInsertWithIterator() {
+		SimpleJdbcInsert insert = new SimpleJdbcInsert(database).withTableName("T");
+		List<SqlParameterSource> batch = new ArrayList<SqlParameterSource>();
+		for (int i = 1; i <= 12; i++) {
+			batch.add(new MapSqlParameterSource("id", i).addValue("name", "name" + i));
+		}
+		BatchWriteResult result = insert.executeBatch(batch.iterator(), 5);
+		assertEquals(3, result.getBatchCount());
+		assertEquals(12, result.getRowCount());
+		assertEquals(12, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+		assertEquals("name12", jdbcTemplate.queryForObject("SELECT NAME FROM T WHERE ID = 12", String.class));
+	}
+
+
+	private static class RangeIterator implements Iterator<Integer> {
+
+		private int next;
+
+		private final int last;
+
+		public RangeIterator(int first, int last) {
+			this.next = first;
+			this.last = last;
+		}
+
+		public boolean hasNext() {
+			return (this.next <= this.last);
+		}
+
+		public Integer next() {
+			return this.next++;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
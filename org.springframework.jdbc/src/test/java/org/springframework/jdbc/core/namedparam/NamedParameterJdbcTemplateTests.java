@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -101,6 +101,19 @@ public class NamedParameterJdbcTemplateTests extends AbstractJdbcTests {
 		} catch (IllegalArgumentException ex) { /* expected */ }
 	}
 
+	public void testParsedSqlCache() throws Exception {
+		NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(mockDataSource);
+		ParsedSql parsedSql = template.getParsedSql("select * from t where a = :a");
+		assertSame(parsedSql, template.getParsedSql("select * from t where a = :a"));
+		template.setCacheLimit(2);
+		template.getParsedSql("select * from t where b = :b");
+		template.getParsedSql("select * from t where c = :c");
+		assertNotSame(parsedSql, template.getParsedSql("select * from t where a = :a"));
+		template.setCacheLimit(0);
+		assertNotSame(template.getParsedSql("select * from t where d = :d"),
+				template.getParsedSql("select * from t where d = :d"));
+	}
+
 	public void testNullJdbcTemplateProvidedToCtor() throws Exception {
 		try {
 			new NamedParameterJdbcTemplate((JdbcOperations) null);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,6 +30,7 @@ import java.util.Map;
 import org.easymock.MockControl;
 
 import org.springframework.jdbc.AbstractJdbcTests;
+import org.springframework.jdbc.core.RowIterator;
 import org.springframework.jdbc.core.RowMapper;
 
 /**
@@ -324,6 +325,47 @@ public class NamedParameterQueryTests extends AbstractJdbcTests {
 		assertTrue("Correct result type", o instanceof Integer);
 	}
 
+	public void testQueryForIteratorWithParamMap() throws Exception {
+		String sql = "SELECT AGE FROM CUSTMR WHERE ID < :id";
+		String sqlToUse = "SELECT AGE FROM CUSTMR WHERE ID < ?";
+
+		mockResultSet.next();
+		ctrlResultSet.setReturnValue(true);
+		mockResultSet.getInt(1);
+		ctrlResultSet.setReturnValue(11);
+		mockResultSet.next();
+		ctrlResultSet.setReturnValue(false);
+		mockResultSet.close();
+		ctrlResultSet.setVoidCallable();
+
+		mockPreparedStatement.setObject(1, new Integer(3));
+		ctrlPreparedStatement.setVoidCallable();
+		mockPreparedStatement.executeQuery();
+		ctrlPreparedStatement.setReturnValue(mockResultSet);
+		mockPreparedStatement.getWarnings();
+		ctrlPreparedStatement.setReturnValue(null);
+		mockPreparedStatement.close();
+		ctrlPreparedStatement.setVoidCallable();
+
+		mockConnection.prepareStatement(sqlToUse);
+		ctrlConnection.setReturnValue(mockPreparedStatement);
+
+		replay();
+
+		NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(mockDataSource);
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("id", new Integer(3));
+
+		RowIterator<Integer> it = template.queryForIterator(sql, params, new RowMapper<Integer>() {
+			public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getInt(1);
+			}
+		});
+		assertTrue(it.hasNext());
+		assertEquals(11, it.next().intValue());
+		assertFalse(it.hasNext());
+	}
+
 	public void testQueryForObjectWithMapAndInteger() throws Exception {
 		String sql = "SELECT AGE FROM CUSTMR WHERE ID = :id";
 		String sqlToUse = "SELECT AGE FROM CUSTMR WHERE ID = ?";
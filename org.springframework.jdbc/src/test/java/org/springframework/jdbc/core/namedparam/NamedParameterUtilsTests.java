@@ -16,6 +16,7 @@
 
 package org.springframework.jdbc.core.namedparam;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -215,4 +216,36 @@ public class NamedParameterUtilsTests {
 		assertEquals(expectedSql, newSql);
 	}
 
+	@Test
+	public void substituteNamedParametersReusesExpandedSql() {
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement("select * from t where a = :a and b in (:b)");
+		MapSqlParameterSource params = new MapSqlParameterSource("a", "x").addValue("b", Arrays.asList(1, 2, 3));
+		String sql = NamedParameterUtils.substituteNamedParameters(parsedSql, params);
+		assertEquals("select * from t where a = ? and b in (?, ?, ?)", sql);
+		params.addValue("b", Arrays.asList(4, 5, 6));
+		assertSame(sql, NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+		params.addValue("b", Arrays.asList(7, 8));
+		assertEquals("select * from t where a = ? and b in (?, ?)",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+		params.addValue("b", 9);
+		String plainSql = NamedParameterUtils.substituteNamedParameters(parsedSql, params);
+		assertEquals("select * from t where a = ? and b in (?)", plainSql);
+		assertSame(plainSql, NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+		params.addValue("b", Collections.emptyList());
+		assertEquals("select * from t where a = ? and b in ()",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+	}
+
+	@Test
+	public void substituteNamedParametersWithExpressionList() {
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement("select * from t where (a, b) in (:list)");
+		MapSqlParameterSource params = new MapSqlParameterSource("list",
+				Arrays.asList(new Object[] {"x", 1}, new Object[] {"y", 2}));
+		assertEquals("select * from t where (a, b) in ((?, ?), (?, ?))",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+		params.addValue("list", Collections.singletonList(new Object[] {"z", 3}));
+		assertEquals("select * from t where (a, b) in ((?, ?))",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, params));
+	}
+
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * @since 3.1
+ */
+public class PoolingDataSourceTests {
+
+	private EmbeddedDatabase database;
+
+	private PoolingDataSource dataSource;
+
+
+	@Before
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		new JdbcTemplate(database).execute("CREATE TABLE T (ID INTEGER)");
+		dataSource = new PoolingDataSource(database);
+	}
+
+	@After
+	public void tearDown() {
+		dataSource.destroy();
+		database.shutdown();
+	}
+
+
+	@Test
+	public void reuseConnection() throws Exception {
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		assertTrue(dataSource.shouldClose(con));
+		assertEquals(1, dataSource.getActiveConnections());
+		con.close();
+		assertTrue(con.isClosed());
+		assertEquals(0, dataSource.getActiveConnections());
+		assertEquals(1, dataSource.getIdleConnections());
+
+		Connection con2 = dataSource.getConnection();
+		assertNotSame(con, con2);
+		assertSame(target, ((ConnectionProxy) con2).getTargetConnection());
+		assertFalse(target.isClosed());
+		con2.close();
+		assertEquals(2, dataSource.getBorrowCount());
+		assertEquals(1, dataSource.getCreatedCount());
+	}
+
+	@Test
+	public void closedHandleCannotBeUsed() throws Exception {
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		con.close();
+		con.close();
+		try {
+			con.createStatement();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+		assertEquals(1, dataSource.getIdleConnections());
+	}
+
+	@Test
+	public void rollbackOnReturn() throws Exception {
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		con.setAutoCommit(false);
+		con.createStatement().executeUpdate("INSERT INTO T VALUES (1)");
+		con.close();
+
+		con = dataSource.getConnection();
+		assertTrue(con.getAutoCommit());
+		con.close();
+		assertEquals(0, new JdbcTemplate(dataSource).queryForInt("SELECT COUNT(*) FROM T"));
+	}
+
+	@Test
+	public void resetConnectionStateOnReturn() throws Exception {
+		PoolingDataSource pooled = new PoolingDataSource(new StateTrackingDataSource(database));
+		pooled.afterPropertiesSet();
+		try {
+			Connection con = pooled.getConnection();
+			Connection target = ((ConnectionProxy) con).getTargetConnection();
+			int defaultIsolation = target.getTransactionIsolation();
+			String defaultCatalog = target.getCatalog();
+			con.setReadOnly(true);
+			con.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+			con.setCatalog("OTHER");
+			con.close();
+
+			con = pooled.getConnection();
+			assertSame(target, ((ConnectionProxy) con).getTargetConnection());
+			assertFalse(con.isReadOnly());
+			assertEquals(defaultIsolation, con.getTransactionIsolation());
+			assertEquals(defaultCatalog, con.getCatalog());
+			con.close();
+			assertEquals(1, pooled.getCreatedCount());
+		}
+		finally {
+			pooled.destroy();
+		}
+	}
+
+	@Test
+	public void discardConnectionWithUnresettableState() throws Exception {
+		StateTrackingDataSource target = new StateTrackingDataSource(database);
+		target.defaultCatalog = null;
+		PoolingDataSource pooled = new PoolingDataSource(target);
+		pooled.afterPropertiesSet();
+		try {
+			Connection con = pooled.getConnection();
+			con.setCatalog("OTHER");
+			con.close();
+			assertEquals(0, pooled.getTotalConnections());
+			assertEquals(1, pooled.getDiscardedCount());
+
+			con = pooled.getConnection();
+			assertNull(con.getCatalog());
+			con.close();
+			assertEquals(2, pooled.getCreatedCount());
+		}
+		finally {
+			pooled.destroy();
+		}
+	}
+
+	@Test
+	public void minPoolSize() throws Exception {
+		dataSource.setMinPoolSize(2);
+		dataSource.afterPropertiesSet();
+		assertEquals(2, dataSource.getTotalConnections());
+		assertEquals(2, dataSource.getIdleConnections());
+	}
+
+	@Test
+	public void timeoutWhenExhausted() throws Exception {
+		dataSource.setMaxPoolSize(1);
+		dataSource.setMaxWait(50);
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		try {
+			dataSource.getConnection();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+		con.close();
+		assertEquals(1, dataSource.getWaitTimeoutCount());
+		assertEquals(0, dataSource.getThreadsAwaitingConnection());
+	}
+
+	@Test
+	public void handOffToWaitingThread() throws Exception {
+		dataSource.setMaxPoolSize(1);
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		final Connection target = ((ConnectionProxy) con).getTargetConnection();
+		final AtomicReference<Connection> borrowed = new AtomicReference<Connection>();
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Connection con = dataSource.getConnection();
+					borrowed.set(((ConnectionProxy) con).getTargetConnection());
+					con.close();
+				}
+				catch (SQLException ex) {
+					throw new IllegalStateException(ex);
+				}
+				finally {
+					done.countDown();
+				}
+			}
+		};
+		thread.start();
+		while (dataSource.getThreadsAwaitingConnection() == 0) {
+			Thread.sleep(5);
+		}
+		con.close();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertSame(target, borrowed.get());
+		assertEquals(1, dataSource.getCreatedCount());
+		assertEquals(0, dataSource.getWaitTimeoutCount());
+	}
+
+	@Test
+	public void discardInvalidConnection() throws Exception {
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		con.close();
+		target.close();
+
+		con = dataSource.getConnection();
+		assertNotSame(target, ((ConnectionProxy) con).getTargetConnection());
+		con.close();
+		assertEquals(1, dataSource.getDiscardedCount());
+		assertEquals(1, dataSource.getTotalConnections());
+	}
+
+	@Test
+	public void evictIdleConnections() throws Exception {
+		dataSource.setIdleTimeout(1);
+		dataSource.setEvictionInterval(10);
+		dataSource.afterPropertiesSet();
+		Connection con = dataSource.getConnection();
+		Connection target = ((ConnectionProxy) con).getTargetConnection();
+		con.close();
+		for (int i = 0; i < 500 && dataSource.getTotalConnections() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, dataSource.getTotalConnections());
+		assertTrue(target.isClosed());
+	}
+
+	@Test
+	public void destroyClosesConnections() throws Exception {
+		dataSource.afterPropertiesSet();
+		Connection idle = dataSource.getConnection();
+		Connection active = dataSource.getConnection();
+		idle.close();
+		dataSource.destroy();
+		assertEquals(1, dataSource.getTotalConnections());
+		active.close();
+		assertEquals(0, dataSource.getTotalConnections());
+		try {
+			dataSource.getConnection();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void reuseConnectionForQueries() throws Exception {
+		dataSource.afterPropertiesSet();
+		runQueries(new JdbcTemplate(dataSource), 10);
+		assertEquals(1, dataSource.getCreatedCount());
+		assertEquals(10, dataSource.getBorrowCount());
+	}
+
+	private void runQueries(JdbcTemplate jdbcTemplate, int count) {
+		for (int i = 0; i < count; i++) {
+			assertEquals(0, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM T"));
+		}
+	}
+
+
+	/**
+	 * DataSource that keeps the read-only flag, transaction isolation and catalog
+	 * per Connection, independent from how the embedded database handles them.
+	 */
+	private static class StateTrackingDataSource extends DelegatingDataSource {
+
+		private String defaultCatalog = "TEST";
+
+		public StateTrackingDataSource(DataSource targetDataSource) {
+			super(targetDataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			final Connection target = super.getConnection();
+			final Object[] state = new Object[] {false, Connection.TRANSACTION_READ_COMMITTED, this.defaultCatalog};
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class},
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							String name = method.getName();
+							if (name.equals("isReadOnly")) {
+								return state[0];
+							}
+							else if (name.equals("setReadOnly")) {
+								state[0] = args[0];
+								return null;
+							}
+							else if (name.equals("getTransactionIsolation")) {
+								return state[1];
+							}
+							else if (name.equals("setTransactionIsolation")) {
+								state[1] = args[0];
+								return null;
+							}
+							else if (name.equals("getCatalog")) {
+								return state[2];
+							}
+							else if (name.equals("setCatalog")) {
+								state[2] = args[0];
+								return null;
+							}
+							try {
+								return method.invoke(target, args);
+							}
+							catch (InvocationTargetException ex) {
+								throw ex.getTargetException();
+							}
+						}
+					});
+		}
+	}
+
+}
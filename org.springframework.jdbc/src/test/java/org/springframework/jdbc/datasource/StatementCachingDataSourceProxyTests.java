@@ -0,0 +1,208 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * @since 3.1
+ */
+public class StatementCachingDataSourceProxyTests {
+
+	private EmbeddedDatabase database;
+
+
+	@Before
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		JdbcTemplate template = new JdbcTemplate(database);
+		template.execute("CREATE TABLE T (ID INTEGER)");
+		template.update("INSERT INTO T VALUES (1)");
+		template.update("INSERT INTO T VALUES (2)");
+	}
+
+	@After
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	@Test
+	public void reuseStatementWithinConnection() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		Connection con = dataSource.getConnection();
+		PreparedStatement ps = con.prepareStatement("SELECT ID FROM T WHERE ID = ?");
+		ps.setInt(1, 2);
+		assertEquals(2, queryForInt(ps));
+		ps.close();
+		assertTrue(ps.isClosed());
+		assertEquals(0, dataSource.getHitCount());
+		assertEquals(1, dataSource.getMissCount());
+
+		PreparedStatement ps2 = con.prepareStatement("SELECT ID FROM T WHERE ID = ?");
+		assertNotSame(ps, ps2);
+		assertSame(con, ps2.getConnection());
+		ps2.setInt(1, 1);
+		assertEquals(1, queryForInt(ps2));
+		ps2.close();
+		assertEquals(1, dataSource.getHitCount());
+		assertEquals(1, dataSource.getMissCount());
+		assertEquals(0.5, dataSource.getHitRatio(), 0);
+
+		con.prepareStatement("SELECT ID FROM T WHERE ID = ?", ResultSet.TYPE_SCROLL_INSENSITIVE,
+				ResultSet.CONCUR_READ_ONLY).close();
+		assertEquals(2, dataSource.getMissCount());
+		con.close();
+		assertTrue(con.isClosed());
+	}
+
+	@Test
+	public void concurrentlyOpenStatementsForSameSql() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		Connection con = dataSource.getConnection();
+		PreparedStatement ps = con.prepareStatement("SELECT COUNT(*) FROM T");
+		PreparedStatement ps2 = con.prepareStatement("SELECT COUNT(*) FROM T");
+		assertEquals(2, queryForInt(ps));
+		assertEquals(2, queryForInt(ps2));
+		ps.close();
+		ps2.close();
+		assertEquals(2, dataSource.getMissCount());
+		con.prepareStatement("SELECT COUNT(*) FROM T").close();
+		assertEquals(1, dataSource.getHitCount());
+		con.close();
+	}
+
+	@Test
+	public void resetStatementSettings() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		Connection con = dataSource.getConnection();
+		PreparedStatement ps = con.prepareStatement("SELECT ID FROM T ORDER BY ID");
+		ps.setMaxRows(1);
+		ResultSet rs = ps.executeQuery();
+		assertTrue(rs.next());
+		assertFalse(rs.next());
+		rs.close();
+		ps.close();
+
+		PreparedStatement ps2 = con.prepareStatement("SELECT ID FROM T ORDER BY ID");
+		assertEquals(1, dataSource.getHitCount());
+		assertEquals(0, ps2.getMaxRows());
+		rs = ps2.executeQuery();
+		assertTrue(rs.next());
+		assertTrue(rs.next());
+		rs.close();
+		ps2.close();
+		con.close();
+	}
+
+	@Test
+	public void closeOpenResultSetOnRelease() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		Connection con = dataSource.getConnection();
+		PreparedStatement ps = con.prepareStatement("SELECT ID FROM T ORDER BY ID");
+		ResultSet rs = ps.executeQuery();
+		assertTrue(rs.next());
+		ps.close();
+		assertTrue("ResultSet left open on cached statement", rs.isClosed());
+
+		PreparedStatement ps2 = con.prepareStatement("SELECT ID FROM T ORDER BY ID");
+		assertEquals(1, dataSource.getHitCount());
+		ResultSet rs2 = ps2.executeQuery();
+		assertTrue(rs2.next());
+		assertEquals(1, rs2.getInt(1));
+		ps2.close();
+		assertTrue(rs2.isClosed());
+		con.close();
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		dataSource.setCacheSize(2);
+		Connection con = dataSource.getConnection();
+		con.prepareStatement("SELECT 1 FROM T").close();
+		con.prepareStatement("SELECT 2 FROM T").close();
+		con.prepareStatement("SELECT 1 FROM T").close();
+		con.prepareStatement("SELECT 3 FROM T").close();
+		assertEquals(1, dataSource.getEvictionCount());
+		con.prepareStatement("SELECT 1 FROM T").close();
+		con.prepareStatement("SELECT 2 FROM T").close();
+		assertEquals(2, dataSource.getHitCount());
+		assertEquals(4, dataSource.getMissCount());
+		con.close();
+	}
+
+	@Test
+	public void reuseStatementsAcrossPooledConnections() throws Exception {
+		PoolingDataSource pool = new PoolingDataSource(database);
+		pool.setMaxPoolSize(1);
+		pool.afterPropertiesSet();
+		try {
+			StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(pool);
+			JdbcTemplate template = new JdbcTemplate(dataSource);
+			for (int i = 0; i < 10; i++) {
+				List<Integer> ids = template.queryForList("SELECT ID FROM T WHERE ID > ? ORDER BY ID", Integer.class, 0);
+				assertEquals(2, ids.size());
+			}
+			assertEquals(9, dataSource.getHitCount());
+			assertEquals(1, dataSource.getMissCount());
+			dataSource.resetStatistics();
+			assertEquals(0, dataSource.getHitCount());
+		}
+		finally {
+			pool.destroy();
+		}
+	}
+
+	@Test
+	public void discardCacheOnClose() throws SQLException {
+		StatementCachingDataSourceProxy dataSource = new StatementCachingDataSourceProxy(database);
+		JdbcTemplate template = new JdbcTemplate(dataSource);
+		template.queryForInt("SELECT COUNT(*) FROM T WHERE ID > ?", 0);
+		template.queryForInt("SELECT COUNT(*) FROM T WHERE ID > ?", 0);
+		// Each Connection from the embedded database is a new physical Connection.
+		assertEquals(0, dataSource.getHitCount());
+		assertEquals(2, dataSource.getMissCount());
+	}
+
+
+	private int queryForInt(PreparedStatement ps) throws SQLException {
+		ResultSet rs = ps.executeQuery();
+		try {
+			assertTrue(rs.next());
+			return rs.getInt(1);
+		}
+		finally {
+			rs.close();
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@
 package org.springframework.jdbc.datasource.init;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.sql.Connection;
 
@@ -25,7 +27,9 @@ import javax.sql.DataSource;
 import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassRelativeResourceLoader;
+import org.springframework.core.io.Resource;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
@@ -85,4 +89,73 @@ public class DatabasePopulatorTests {
 		assertUsersDatabaseCreated(db);
 	}
 
+	@Test
+	public void scriptWithLineBreakDelimiters() throws Exception {
+		databasePopulator.addScript(script("CREATE TABLE T_ITEM (id INT, name VARCHAR(50))\n" +
+				"-- a comment\n\nINSERT INTO T_ITEM VALUES (1, 'a;b')\nINSERT INTO T_ITEM VALUES (2, 'c')\n"));
+		databasePopulator.populate(db);
+
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from T_ITEM"));
+		assertEquals("a;b", jdbcTemplate.queryForObject("select name from T_ITEM where id = 1", String.class));
+	}
+
+	@Test
+	public void scriptWithBatchedInserts() throws Exception {
+		StringBuilder sql = new StringBuilder("CREATE TABLE T_ITEM (id INT, name VARCHAR(50));\n");
+		for (int i = 0; i < 25; i++) {
+			sql.append("INSERT INTO T_ITEM VALUES (").append(i).append(", 'item\n").append(i).append("');\n");
+		}
+		sql.append("UPDATE T_ITEM SET name = 'first' WHERE id = 0;\n");
+		databasePopulator.addScript(script(sql.toString()));
+		databasePopulator.setBatchSize(10);
+		databasePopulator.populate(db);
+
+		assertEquals(25, jdbcTemplate.queryForInt("select count(*) from T_ITEM"));
+		assertEquals("first", jdbcTemplate.queryForObject("select name from T_ITEM where id = 0", String.class));
+		assertEquals("item\n7", jdbcTemplate.queryForObject("select name from T_ITEM where id = 7", String.class));
+	}
+
+	@Test
+	public void scriptWithFailedBatchedInsert() throws Exception {
+		databasePopulator.addScript(script("CREATE TABLE T_ITEM (id INT PRIMARY KEY);\n" +
+				"INSERT INTO T_ITEM VALUES (1);\nINSERT INTO T_ITEM VALUES (1);\nINSERT INTO T_ITEM VALUES (2);"));
+		databasePopulator.setBatchSize(10);
+		try {
+			databasePopulator.populate(db);
+			fail("Should have thrown ScriptStatementFailedException");
+		}
+		catch (ScriptStatementFailedException ex) {
+			assertTrue(ex.getMessage().contains("line 3"));
+		}
+	}
+
+	@Test
+	public void scriptWithFailedBatchedInsertAndContinueOnError() throws Exception {
+		databasePopulator.addScript(script("CREATE TABLE T_ITEM (id INT PRIMARY KEY);\n" +
+				"INSERT INTO T_ITEM VALUES (1);\nINSERT INTO T_ITEM VALUES (1);\nINSERT INTO T_ITEM VALUES (2);"));
+		databasePopulator.setBatchSize(10);
+		databasePopulator.setContinueOnError(true);
+		databasePopulator.populate(db);
+
+		assertEquals(2, jdbcTemplate.queryForInt("select count(*) from T_ITEM"));
+	}
+
+	@Test
+	public void parallelScripts() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			databasePopulator.addScript(script("CREATE TABLE T_ITEM" + i + " (id INT);\n" +
+					"INSERT INTO T_ITEM" + i + " VALUES (" + i + ");"));
+		}
+		databasePopulator.setParallelism(2);
+		databasePopulator.populate(db);
+
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i, jdbcTemplate.queryForInt("select id from T_ITEM" + i));
+		}
+	}
+
+	private Resource script(String sql) {
+		return new ByteArrayResource(sql.getBytes());
+	}
+
 }
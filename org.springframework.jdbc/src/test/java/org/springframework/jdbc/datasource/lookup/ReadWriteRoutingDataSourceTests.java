@@ -0,0 +1,207 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.datasource.lookup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @since 3.1
+ */
+public class ReadWriteRoutingDataSourceTests {
+
+	private EmbeddedDatabase primary;
+
+	private EmbeddedDatabase replica1;
+
+	private EmbeddedDatabase replica2;
+
+	private CountingDataSource counting1;
+
+	private CountingDataSource counting2;
+
+
+	@Before
+	public void setUp() {
+		primary = createDatabase("primary");
+		replica1 = createDatabase("replica1");
+		replica2 = createDatabase("replica2");
+		counting1 = new CountingDataSource(replica1);
+		counting2 = new CountingDataSource(replica2);
+	}
+
+	private EmbeddedDatabase createDatabase(String name) {
+		EmbeddedDatabase database =
+				new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName(name).build();
+		JdbcTemplate template = new JdbcTemplate(database);
+		template.execute("CREATE TABLE T (NAME VARCHAR(20))");
+		template.update("INSERT INTO T VALUES (?)", name);
+		return database;
+	}
+
+	@After
+	public void tearDown() {
+		primary.shutdown();
+		replica1.shutdown();
+		replica2.shutdown();
+	}
+
+
+	@Test
+	public void routeReadOnlyTransactionsToReplica() {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+				primary, Arrays.<DataSource>asList(counting1));
+		TransactionTemplate tt = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		assertEquals("primary", queryName(tt, dataSource));
+		tt.setReadOnly(true);
+		assertEquals("replica1", queryName(tt, dataSource));
+		assertEquals(1, counting1.count);
+	}
+
+	@Test
+	public void routeReadOnlyConnectionsToReplica() throws SQLException {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+				primary, Arrays.<DataSource>asList(counting1));
+		assertEquals("primary", new JdbcTemplate(dataSource).queryForObject("SELECT NAME FROM T", String.class));
+		Connection con = dataSource.getConnection();
+		con.setReadOnly(true);
+		assertEquals(0, counting1.count);
+		con.createStatement().close();
+		assertEquals(1, counting1.count);
+		con.close();
+	}
+
+	@Test
+	public void balanceByWeight() throws SQLException {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource();
+		dataSource.setWriteDataSource(primary);
+		Map<DataSource, Integer> replicas = new LinkedHashMap<DataSource, Integer>();
+		replicas.put(counting1, 2);
+		replicas.put(counting2, 1);
+		dataSource.setWeightedReadDataSources(replicas);
+		dataSource.afterPropertiesSet();
+		for (int i = 0; i < 30; i++) {
+			openReadOnlyConnection(dataSource);
+		}
+		assertEquals(20, counting1.count);
+		assertEquals(10, counting2.count);
+	}
+
+	@Test
+	public void skipFailedReplica() throws SQLException {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+				primary, Arrays.<DataSource>asList(counting1, counting2));
+		counting1.fail = true;
+		for (int i = 0; i < 4; i++) {
+			openReadOnlyConnection(dataSource);
+		}
+		assertEquals(1, counting1.count);
+		assertEquals(4, counting2.count);
+
+		counting1.fail = false;
+		dataSource.setRetryInterval(0);
+		for (int i = 0; i < 4; i++) {
+			openReadOnlyConnection(dataSource);
+		}
+		assertTrue(counting1.count > 1);
+	}
+
+	@Test
+	public void fallBackToWriteDataSource() {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+				primary, Arrays.<DataSource>asList(counting1));
+		counting1.fail = true;
+		TransactionTemplate tt = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		tt.setReadOnly(true);
+		assertEquals("primary", queryName(tt, dataSource));
+	}
+
+	@Test
+	public void failWithoutFallback() throws SQLException {
+		ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(
+				primary, Arrays.<DataSource>asList(counting1));
+		dataSource.setFallbackToWriteDataSource(false);
+		counting1.fail = true;
+		Connection con = dataSource.getConnection();
+		con.setReadOnly(true);
+		try {
+			con.createStatement();
+			fail("Should have thrown SQLException");
+		}
+		catch (SQLException ex) {
+			// expected
+		}
+		con.close();
+	}
+
+
+	private String queryName(TransactionTemplate tt, final DataSource dataSource) {
+		return tt.execute(new TransactionCallback<String>() {
+			public String doInTransaction(TransactionStatus status) {
+				return new JdbcTemplate(dataSource).queryForObject("SELECT NAME FROM T", String.class);
+			}
+		});
+	}
+
+	private void openReadOnlyConnection(DataSource dataSource) throws SQLException {
+		Connection con = dataSource.getConnection();
+		con.setReadOnly(true);
+		con.createStatement().close();
+		con.close();
+	}
+
+
+	private static class CountingDataSource extends DelegatingDataSource {
+
+		private int count;
+
+		private boolean fail;
+
+		public CountingDataSource(DataSource targetDataSource) {
+			super(targetDataSource);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			this.count++;
+			if (this.fail) {
+				throw new SQLException("Replica down");
+			}
+			return super.getConnection();
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2005 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,15 +20,24 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
 import junit.framework.TestCase;
 import org.easymock.MockControl;
 
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
 import org.springframework.jdbc.support.incrementer.HsqlMaxValueIncrementer;
 import org.springframework.jdbc.support.incrementer.MySQLMaxValueIncrementer;
 import org.springframework.jdbc.support.incrementer.OracleSequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PooledMaxValueIncrementer;
 import org.springframework.jdbc.support.incrementer.PostgreSQLSequenceMaxValueIncrementer;
 
 /**
@@ -250,4 +259,139 @@ public class DataFieldMaxValueIncrementerTests extends TestCase {
 		rsControl.verify();
 	}
 
+	public void testPooledMaxValueIncrementerWithHiLo() {
+		CountingIncrementer target = new CountingIncrementer(0, 1);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer();
+		incrementer.setTargetIncrementer(target);
+		incrementer.setBlockSize(3);
+		incrementer.setPrefetchThreshold(0);
+		incrementer.setPaddingLength(3);
+		incrementer.afterPropertiesSet();
+
+		assertEquals(0, incrementer.nextIntValue());
+		assertEquals(1, incrementer.nextLongValue());
+		assertEquals("002", incrementer.nextStringValue());
+		assertEquals(1, target.getCount());
+		assertEquals(3, incrementer.nextIntValue());
+		assertEquals(2, target.getCount());
+	}
+
+	public void testPooledMaxValueIncrementerWithPooledSequence() {
+		CountingIncrementer target = new CountingIncrementer(10, 10);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer();
+		incrementer.setTargetIncrementer(target);
+		incrementer.setBlockSize(10);
+		incrementer.setPooled(true);
+		incrementer.setPrefetchThreshold(0);
+		incrementer.afterPropertiesSet();
+
+		for (int i = 1; i <= 20; i++) {
+			assertEquals(i, incrementer.nextLongValue());
+		}
+		assertEquals(2, target.getCount());
+	}
+
+	public void testPooledMaxValueIncrementerPrefetchesNextBlock() {
+		CountingIncrementer target = new CountingIncrementer(0, 1);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer();
+		incrementer.setTargetIncrementer(target);
+		incrementer.setBlockSize(4);
+		incrementer.setPrefetchThreshold(2);
+		incrementer.setTaskExecutor(new SyncTaskExecutor());
+		incrementer.afterPropertiesSet();
+
+		assertEquals(0, incrementer.nextLongValue());
+		assertEquals(1, incrementer.nextLongValue());
+		assertEquals(1, target.getCount());
+		assertEquals(2, incrementer.nextLongValue());
+		assertEquals(2, target.getCount());
+		assertEquals(3, incrementer.nextLongValue());
+		assertEquals(4, incrementer.nextLongValue());
+		assertEquals(2, target.getCount());
+	}
+
+	public void testPooledMaxValueIncrementerFallsBackWhenPrefetchFails() {
+		CountingIncrementer target = new CountingIncrementer(0, 1);
+		PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer();
+		incrementer.setTargetIncrementer(target);
+		incrementer.setBlockSize(2);
+		incrementer.setPrefetchThreshold(1);
+		incrementer.setTaskExecutor(new SyncTaskExecutor());
+		incrementer.afterPropertiesSet();
+
+		assertEquals(0, incrementer.nextLongValue());
+		target.setFailNext(true);
+		assertEquals(1, incrementer.nextLongValue());
+		assertEquals(2, incrementer.nextLongValue());
+		assertEquals(3, target.getCount());
+	}
+
+	public void testPooledMaxValueIncrementerWithConcurrentCallers() throws Exception {
+		CountingIncrementer target = new CountingIncrementer(0, 1);
+		final PooledMaxValueIncrementer incrementer = new PooledMaxValueIncrementer(target, 50);
+		final Set<Long> keys = Collections.synchronizedSet(new HashSet<Long>());
+		final int threadCount = 8;
+		final int keysPerThread = 5000;
+		final CountDownLatch latch = new CountDownLatch(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < keysPerThread; j++) {
+							keys.add(incrementer.nextLongValue());
+						}
+					}
+					finally {
+						latch.countDown();
+					}
+				}
+			}.start();
+		}
+		latch.await();
+		assertEquals(threadCount * keysPerThread, keys.size());
+		assertTrue(target.getCount() <= threadCount * keysPerThread / 50 + 1);
+	}
+
+
+	private static class CountingIncrementer implements DataFieldMaxValueIncrementer {
+
+		private final AtomicLong value;
+
+		private final long increment;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private volatile boolean failNext;
+
+		public CountingIncrementer(long initialValue, long increment) {
+			this.value = new AtomicLong(initialValue - increment);
+			this.increment = increment;
+		}
+
+		public void setFailNext(boolean failNext) {
+			this.failNext = failNext;
+		}
+
+		public long getCount() {
+			return this.count.get();
+		}
+
+		public int nextIntValue() {
+			return (int) nextLongValue();
+		}
+
+		public long nextLongValue() {
+			this.count.incrementAndGet();
+			if (this.failNext) {
+				this.failNext = false;
+				throw new DataRetrievalFailureException("Sequence not available");
+			}
+			return this.value.addAndGet(this.increment);
+		}
+
+		public String nextStringValue() {
+			return Long.toString(nextLongValue());
+		}
+	}
+
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.support.rowset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.jdbc.core.ColumnarSqlRowSetResultSetExtractor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 3.1
+ */
+public class ColumnarSqlRowSetTests {
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate jdbcTemplate;
+
+
+	@Before
+	public void setUp() {
+		this.database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		this.jdbcTemplate = new JdbcTemplate(this.database);
+		this.jdbcTemplate.execute("create table item (id bigint, qty int, price double, amount decimal(10,2), " +
+				"name varchar(50), active boolean, created timestamp)");
+		this.jdbcTemplate.update("insert into item values (1, 10, 1.5, 12.50, 'apple', true, '2011-01-02 03:04:05.123456789')");
+		this.jdbcTemplate.update("insert into item values (2, null, null, null, null, null, null)");
+		this.jdbcTemplate.update("insert into item values (3, 30, 3.5, 7.25, 'apple', false, '2011-02-03 04:05:06.0')");
+	}
+
+	@After
+	public void tearDown() {
+		this.database.shutdown();
+	}
+
+
+	@Test
+	public void typedAccess() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select * from item order by id", new ColumnarSqlRowSetResultSetExtractor());
+		assertTrue(rowSet.next());
+		assertEquals(1L, rowSet.getLong(1));
+		assertEquals(10, rowSet.getInt("QTY"));
+		assertEquals(1.5, rowSet.getDouble("price"), 0);
+		assertEquals(new BigDecimal("12.50"), rowSet.getBigDecimal("amount"));
+		assertEquals("apple", rowSet.getString("name"));
+		assertTrue(rowSet.getBoolean("active"));
+		assertEquals(Timestamp.valueOf("2011-01-02 03:04:05.123456789"), rowSet.getTimestamp("created"));
+		assertFalse(rowSet.wasNull());
+
+		assertEquals(Long.valueOf(1), rowSet.getObject(1));
+		assertEquals(Integer.valueOf(10), rowSet.getObject(2));
+		assertEquals(Double.valueOf(1.5), rowSet.getObject(3));
+		assertEquals(Boolean.TRUE, rowSet.getObject(6));
+		assertEquals("1", rowSet.getString(1));
+		assertEquals(1L, rowSet.getLong("price"));
+	}
+
+	@Test
+	public void nullValues() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select * from item where id = 2", new ColumnarSqlRowSetResultSetExtractor());
+		assertTrue(rowSet.next());
+		assertEquals(0, rowSet.getInt("qty"));
+		assertTrue(rowSet.wasNull());
+		assertEquals(2, rowSet.getInt("id"));
+		assertFalse(rowSet.wasNull());
+		assertEquals(0, rowSet.getDouble("price"), 0);
+		assertTrue(rowSet.wasNull());
+		assertNull(rowSet.getString("name"));
+		assertTrue(rowSet.wasNull());
+		assertNull(rowSet.getBigDecimal("amount"));
+		assertNull(rowSet.getTimestamp("created"));
+		assertFalse(rowSet.getBoolean("active"));
+		assertNull(rowSet.getObject("qty"));
+	}
+
+	@Test
+	public void navigation() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select id from item order by id", new ColumnarSqlRowSetResultSetExtractor());
+		assertTrue(rowSet.isBeforeFirst());
+		assertTrue(rowSet.last());
+		assertTrue(rowSet.isLast());
+		assertEquals(3, rowSet.getRow());
+		assertEquals(3, rowSet.getInt(1));
+		assertTrue(rowSet.previous());
+		assertEquals(2, rowSet.getInt(1));
+		assertTrue(rowSet.first());
+		assertTrue(rowSet.isFirst());
+		assertTrue(rowSet.relative(2));
+		assertEquals(3, rowSet.getInt(1));
+		assertFalse(rowSet.next());
+		assertTrue(rowSet.isAfterLast());
+		assertEquals(0, rowSet.getRow());
+		assertTrue(rowSet.absolute(-2));
+		assertEquals(2, rowSet.getInt(1));
+		assertFalse(rowSet.absolute(4));
+		rowSet.beforeFirst();
+		assertTrue(rowSet.next());
+		assertEquals(1, rowSet.getInt(1));
+	}
+
+	@Test
+	public void metaData() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select id as item_id, name from item", new ColumnarSqlRowSetResultSetExtractor());
+		SqlRowSetMetaData metaData = rowSet.getMetaData();
+		assertEquals(2, metaData.getColumnCount());
+		assertEquals("ITEM_ID", metaData.getColumnLabel(1));
+		assertEquals(Types.BIGINT, metaData.getColumnType(1));
+		assertEquals(Types.VARCHAR, metaData.getColumnType(2));
+		assertEquals(1, rowSet.findColumn("item_id"));
+		assertEquals(2, rowSet.findColumn("NAME"));
+	}
+
+	@Test(expected = InvalidResultSetAccessException.class)
+	public void invalidColumnLabel() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select id from item", new ColumnarSqlRowSetResultSetExtractor());
+		rowSet.next();
+		rowSet.getInt("bogus");
+	}
+
+	@Test(expected = InvalidResultSetAccessException.class)
+	public void accessBeforeFirstRow() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select id from item", new ColumnarSqlRowSetResultSetExtractor());
+		rowSet.getInt(1);
+	}
+
+	@Test(expected = InvalidResultSetAccessException.class)
+	public void unconvertibleValue() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select name from item where id = 1", new ColumnarSqlRowSetResultSetExtractor());
+		rowSet.next();
+		rowSet.getInt(1);
+	}
+
+	@Test
+	public void booleanColumnsReadWithoutGetLong() {
+		SqlRowSet rowSet = this.jdbcTemplate.query("select id, active from item order by id",
+				new ResultSetExtractor<SqlRowSet>() {
+					public SqlRowSet extractData(final ResultSet rs) throws SQLException {
+						// Simulate a driver that rejects getLong for BOOLEAN columns
+						ResultSet strictResultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+								new Class[] {ResultSet.class}, new InvocationHandler() {
+									public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+										if (method.getName().equals("getLong") && Integer.valueOf(2).equals(args[0])) {
+											throw new SQLException("getLong not supported for BOOLEAN column");
+										}
+										try {
+											return method.invoke(rs, args);
+										}
+										catch (InvocationTargetException ex) {
+											throw ex.getTargetException();
+										}
+									}
+								});
+						return new ColumnarSqlRowSet(strictResultSet);
+					}
+				});
+		assertTrue(rowSet.next());
+		assertTrue(rowSet.getBoolean("active"));
+		assertEquals(Boolean.TRUE, rowSet.getObject(2));
+		assertTrue(rowSet.next());
+		assertNull(rowSet.getObject(2));
+		assertTrue(rowSet.next());
+		assertFalse(rowSet.getBoolean("active"));
+	}
+
+	@Test
+	public void incrementalBuildAndSerialization() throws Exception {
+		final ColumnarSqlRowSet rowSet = this.jdbcTemplate.query("select id, name from item where id = 1",
+				new ResultSetExtractor<ColumnarSqlRowSet>() {
+					public ColumnarSqlRowSet extractData(ResultSet rs) throws SQLException {
+						return new ColumnarSqlRowSet(rs.getMetaData(), 0);
+					}
+				});
+		for (int id = 1; id <= 3; id++) {
+			this.jdbcTemplate.query("select id, name from item where id = ?", new ResultSetExtractor<Object>() {
+				public Object extractData(ResultSet rs) throws SQLException {
+					return rowSet.addRows(rs);
+				}
+			}, id);
+		}
+		rowSet.trimToSize();
+		assertEquals(3, rowSet.getRowCount());
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(rowSet);
+		oos.close();
+		SqlRowSet copy = (SqlRowSet) new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+
+		assertTrue(copy.last());
+		assertEquals("apple", copy.getString("name"));
+		assertTrue(copy.absolute(2));
+		assertNull(copy.getString("name"));
+		assertEquals("NAME", copy.getMetaData().getColumnName(2));
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,12 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
@@ -49,7 +55,12 @@ import org.springframework.util.ObjectUtils;
  * <p>By default, only one single Session will be cached, with further requested
  * Sessions being created and disposed on demand. Consider raising the
  * {@link #setSessionCacheSize "sessionCacheSize" value} in case of a
- * high-concurrency environment.
+ * high-concurrency environment. Cached Sessions are checked out and returned
+ * without any locking, optionally preferring the Session that the calling thread
+ * returned last (see {@link #setSessionThreadAffinity "sessionThreadAffinity"}).
+ * Idle Sessions may be closed after a {@link #setSessionIdleTimeout timeout},
+ * and the cache usage is exposed through statistics getters such as
+ * {@link #getSessionCacheHitCount()}.
  *
  * <p><b>NOTE: This ConnectionFactory decorator requires JMS 1.1 or higher.</b>
  * You may use it through the JMS 1.0.2 API; however, the target JMS driver
@@ -84,10 +95,24 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 
 	private boolean cacheConsumers = true;
 
-	private volatile boolean active = true;
+	private boolean sessionThreadAffinity = false;
 
-	private final Map<Integer, LinkedList<Session>> cachedSessions =
-			new HashMap<Integer, LinkedList<Session>>();
+	private long sessionIdleTimeout = 0;
+
+	private final ConcurrentMap<Integer, SessionPool> cachedSessions =
+			new ConcurrentHashMap<Integer, SessionPool>();
+
+	private final AtomicLong sessionCreationCount = new AtomicLong();
+
+	private final AtomicLong sessionCacheHitCount = new AtomicLong();
+
+	private final AtomicLong sessionAffinityHitCount = new AtomicLong();
+
+	private final AtomicLong sessionEvictionCount = new AtomicLong();
+
+	private final AtomicLong producerCreationCount = new AtomicLong();
+
+	private final AtomicLong producerCacheHitCount = new AtomicLong();
 
 
 	/**
@@ -170,28 +195,108 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		return this.cacheConsumers;
 	}
 
+	/**
+	 * Specify whether to hand out the cached Session that the calling thread
+	 * returned last, if still available, instead of the most recently returned
+	 * Session of any thread. This keeps a Session and its cached MessageProducers
+	 * with the thread that keeps using them.
+	 * <p>Default is "false".
+	 */
+	public void setSessionThreadAffinity(boolean sessionThreadAffinity) {
+		this.sessionThreadAffinity = sessionThreadAffinity;
+	}
+
+	/**
+	 * Return whether to prefer the cached Session that the calling thread returned last.
+	 */
+	public boolean isSessionThreadAffinity() {
+		return this.sessionThreadAffinity;
+	}
+
+	/**
+	 * Specify the time after which an unused cached Session gets closed, in milliseconds.
+	 * Idle Sessions are checked for at most once per timeout period, whenever a
+	 * Session is returned to the cache.
+	 * <p>Default is 0: keeping cached Sessions open until the Connection gets reset.
+	 */
+	public void setSessionIdleTimeout(long sessionIdleTimeout) {
+		Assert.isTrue(sessionIdleTimeout >= 0, "Session idle timeout must not be negative");
+		this.sessionIdleTimeout = sessionIdleTimeout;
+	}
+
+	/**
+	 * Return the time after which an unused cached Session gets closed, in milliseconds.
+	 */
+	public long getSessionIdleTimeout() {
+		return this.sessionIdleTimeout;
+	}
+
+
+	/**
+	 * Return the number of Sessions currently waiting in the cache (for all Session types).
+	 */
+	public int getIdleSessionCount() {
+		int count = 0;
+		for (SessionPool pool : this.cachedSessions.values()) {
+			count += pool.idleCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of Sessions created for caching so far.
+	 */
+	public long getSessionCreationCount() {
+		return this.sessionCreationCount.get();
+	}
+
+	/**
+	 * Return the number of Session requests served from the cache so far.
+	 */
+	public long getSessionCacheHitCount() {
+		return this.sessionCacheHitCount.get();
+	}
+
+	/**
+	 * Return the number of Session requests served with the Session that the
+	 * calling thread returned last. Included in the {@link #getSessionCacheHitCount()}.
+	 * @see #setSessionThreadAffinity
+	 */
+	public long getSessionAffinityHitCount() {
+		return this.sessionAffinityHitCount.get();
+	}
+
+	/**
+	 * Return the number of cached Sessions closed for exceeding the idle timeout so far.
+	 * @see #setSessionIdleTimeout
+	 */
+	public long getSessionEvictionCount() {
+		return this.sessionEvictionCount.get();
+	}
+
+	/**
+	 * Return the number of MessageProducers created for caching so far.
+	 */
+	public long getProducerCreationCount() {
+		return this.producerCreationCount.get();
+	}
+
+	/**
+	 * Return the number of MessageProducer requests served from the cache so far.
+	 */
+	public long getProducerCacheHitCount() {
+		return this.producerCacheHitCount.get();
+	}
+
 
 	/**
 	 * Resets the Session cache as well.
 	 */
 	public void resetConnection() {
-		this.active = false;
-		synchronized (this.cachedSessions) {
-			for (LinkedList<Session> sessionList : this.cachedSessions.values()) {
-				synchronized (sessionList) {
-					for (Session session : sessionList) {
-						try {
-							session.close();
-						}
-						catch (Throwable ex) {
-							logger.trace("Could not close cached JMS Session", ex);
-						}
-					}
-				}
-			}
-			this.cachedSessions.clear();
+		for (SessionPool pool : this.cachedSessions.values()) {
+			pool.close();
 		}
-		this.active = true;
+		this.cachedSessions.clear();
 
 		// Now proceed with actual closing of the shared Connection...
 		super.resetConnection();
@@ -201,32 +306,32 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	 * Checks for a cached Session for the given mode.
 	 */
 	protected Session getSession(Connection con, Integer mode) throws JMSException {
-		LinkedList<Session> sessionList;
-		synchronized (this.cachedSessions) {
-			sessionList = this.cachedSessions.get(mode);
-			if (sessionList == null) {
-				sessionList = new LinkedList<Session>();
-				this.cachedSessions.put(mode, sessionList);
+		SessionPool pool = this.cachedSessions.get(mode);
+		if (pool == null) {
+			pool = new SessionPool();
+			SessionPool existingPool = this.cachedSessions.putIfAbsent(mode, pool);
+			if (existingPool != null) {
+				pool = existingPool;
 			}
 		}
-		Session session = null;
-		synchronized (sessionList) {
-			if (!sessionList.isEmpty()) {
-				session = sessionList.removeFirst();
-			}
-		}
-		if (session != null) {
+		CachedSessionInvocationHandler handler = pool.acquire();
+		if (handler != null) {
 			if (logger.isTraceEnabled()) {
-				logger.trace("Found cached JMS Session for mode " + mode + ": " +
-						(session instanceof SessionProxy ? ((SessionProxy) session).getTargetSession() : session));
+				logger.trace("Found cached JMS Session for mode " + mode + ": " + handler.target);
 			}
+			return handler.proxy;
 		}
-		else {
-			Session targetSession = createSession(con, mode);
-			if (logger.isDebugEnabled()) {
-				logger.debug("Creating cached JMS Session for mode " + mode + ": " + targetSession);
-			}
-			session = getCachedSessionProxy(targetSession, sessionList);
+		Session targetSession = createSession(con, mode);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Creating cached JMS Session for mode " + mode + ": " + targetSession);
+		}
+		this.sessionCreationCount.incrementAndGet();
+		SessionPoolHandle poolHandle = new SessionPoolHandle(pool);
+		Session session = getCachedSessionProxy(targetSession, poolHandle);
+		if (poolHandle.handler != null) {
+			// Hand out the Session as returned by the (possibly overridden) hook
+			// whenever it gets acquired from the pool again.
+			poolHandle.handler.proxy = session;
 		}
 		return session;
 	}
@@ -235,11 +340,18 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	 * Wrap the given Session with a proxy that delegates every method call to it
 	 * but adapts close calls. This is useful for allowing application code to
 	 * handle a special framework Session just like an ordinary Session.
+	 * <p>As of Spring 3.1, the given List does not contain the cached Sessions
+	 * anymore: It merely serves as a handle on the internal Session pool and
+	 * needs to be passed on as-is when delegating to this implementation.
 	 * @param target the original Session to wrap
-	 * @param sessionList the List of cached Sessions that the given Session belongs to
+	 * @param sessionList the handle on the pool of cached Sessions that the
+	 * given Session belongs to
 	 * @return the wrapped Session
 	 */
 	protected Session getCachedSessionProxy(Session target, LinkedList<Session> sessionList) {
+		Assert.isInstanceOf(SessionPoolHandle.class, sessionList,
+				"Session list needs to be the handle passed in by CachingConnectionFactory");
+		SessionPoolHandle poolHandle = (SessionPoolHandle) sessionList;
 		List<Class> classes = new ArrayList<Class>(3);
 		classes.add(SessionProxy.class);
 		if (target instanceof QueueSession) {
@@ -248,10 +360,191 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		if (target instanceof TopicSession) {
 			classes.add(TopicSession.class);
 		}
-		return (Session) Proxy.newProxyInstance(
+		CachedSessionInvocationHandler handler = new CachedSessionInvocationHandler(target, poolHandle.pool);
+		handler.proxy = (Session) Proxy.newProxyInstance(
 				SessionProxy.class.getClassLoader(),
-				classes.toArray(new Class[classes.size()]),
-				new CachedSessionInvocationHandler(target, sessionList));
+				classes.toArray(new Class[classes.size()]), handler);
+		poolHandle.handler = handler;
+		return handler.proxy;
+	}
+
+
+	/**
+	 * Handle on a {@link SessionPool}, passed to {@link #getCachedSessionProxy}
+	 * in place of the List of cached Sessions used before Spring 3.1.
+	 */
+	@SuppressWarnings("serial")
+	private static class SessionPoolHandle extends LinkedList<Session> {
+
+		private final SessionPool pool;
+
+		private CachedSessionInvocationHandler handler;
+
+		public SessionPoolHandle(SessionPool pool) {
+			this.pool = pool;
+		}
+	}
+
+
+	/**
+	 * Lock-free pool of cached Sessions for one acknowledgement mode:
+	 * a stack of idle Sessions, handing out the most recently returned one
+	 * first so that surplus Sessions age and may get evicted.
+	 * <p>A Session may be referenced by more than one stack node (or by the
+	 * thread affinity slot); the Session's own "available" flag decides which
+	 * caller actually checks it out, with stale nodes being discarded.
+	 */
+	private class SessionPool {
+
+		private final AtomicReference<PoolNode> top = new AtomicReference<PoolNode>();
+
+		private final AtomicInteger idleCount = new AtomicInteger();
+
+		private final ThreadLocal<CachedSessionInvocationHandler> lastReturned =
+				new ThreadLocal<CachedSessionInvocationHandler>();
+
+		private final AtomicLong lastEvictionTime = new AtomicLong(System.currentTimeMillis());
+
+		private volatile boolean closed = false;
+
+		public CachedSessionInvocationHandler acquire() {
+			if (sessionThreadAffinity) {
+				CachedSessionInvocationHandler handler = this.lastReturned.get();
+				if (handler != null && handler.available.compareAndSet(true, false)) {
+					this.idleCount.decrementAndGet();
+					sessionCacheHitCount.incrementAndGet();
+					sessionAffinityHitCount.incrementAndGet();
+					return handler;
+				}
+			}
+			PoolNode node;
+			while ((node = pop()) != null) {
+				CachedSessionInvocationHandler handler = node.handler;
+				handler.queued.set(false);
+				if (handler.available.compareAndSet(true, false)) {
+					this.idleCount.decrementAndGet();
+					sessionCacheHitCount.incrementAndGet();
+					return handler;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Reserve a place in the pool for a Session about to be returned.
+		 * @return whether the Session may be returned ("false" if the pool
+		 * has been closed or the cache size has been reached)
+		 */
+		public boolean reserve() {
+			while (!this.closed) {
+				int count = this.idleCount.get();
+				if (count >= getSessionCacheSize()) {
+					return false;
+				}
+				if (this.idleCount.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void cancelReservation() {
+			this.idleCount.decrementAndGet();
+		}
+
+		public void release(CachedSessionInvocationHandler handler) {
+			handler.lastReleaseTime = System.currentTimeMillis();
+			if (sessionThreadAffinity) {
+				this.lastReturned.set(handler);
+			}
+			handler.available.set(true);
+			if (handler.queued.compareAndSet(false, true)) {
+				push(new PoolNode(handler));
+			}
+			if (this.closed) {
+				// Closed concurrently: make sure the Session doesn't remain in the pool.
+				closeIdleSessions(0);
+			}
+			else if (sessionIdleTimeout > 0) {
+				long lastEviction = this.lastEvictionTime.get();
+				if (handler.lastReleaseTime - lastEviction >= sessionIdleTimeout &&
+						this.lastEvictionTime.compareAndSet(lastEviction, handler.lastReleaseTime)) {
+					closeIdleSessions(sessionIdleTimeout);
+				}
+			}
+		}
+
+		public void close() {
+			this.closed = true;
+			closeIdleSessions(0);
+		}
+
+		/**
+		 * Physically close all idle Sessions that have been returned longer
+		 * than the given time ago, keeping the remaining ones in their order.
+		 * @param idleTime the minimum idle time in milliseconds (0 for all)
+		 */
+		private void closeIdleSessions(long idleTime) {
+			PoolNode node = this.top.getAndSet(null);
+			List<CachedSessionInvocationHandler> remaining = new ArrayList<CachedSessionInvocationHandler>();
+			long now = System.currentTimeMillis();
+			for (; node != null; node = node.next) {
+				CachedSessionInvocationHandler handler = node.handler;
+				handler.queued.set(false);
+				if (now - handler.lastReleaseTime >= idleTime) {
+					if (handler.available.compareAndSet(true, false)) {
+						this.idleCount.decrementAndGet();
+						if (idleTime > 0) {
+							sessionEvictionCount.incrementAndGet();
+						}
+						handler.physicalCloseQuietly();
+					}
+				}
+				else if (handler.available.get()) {
+					remaining.add(handler);
+				}
+			}
+			for (int i = remaining.size() - 1; i >= 0; i--) {
+				CachedSessionInvocationHandler handler = remaining.get(i);
+				if (handler.queued.compareAndSet(false, true)) {
+					push(new PoolNode(handler));
+				}
+			}
+		}
+
+		private void push(PoolNode node) {
+			do {
+				node.next = this.top.get();
+			}
+			while (!this.top.compareAndSet(node.next, node));
+		}
+
+		private PoolNode pop() {
+			PoolNode node;
+			do {
+				node = this.top.get();
+				if (node == null) {
+					return null;
+				}
+			}
+			while (!this.top.compareAndSet(node, node.next));
+			return node;
+		}
+	}
+
+
+	/**
+	 * Stack node of a {@link SessionPool}.
+	 */
+	private static class PoolNode {
+
+		private final CachedSessionInvocationHandler handler;
+
+		private PoolNode next;
+
+		public PoolNode(CachedSessionInvocationHandler handler) {
+			this.handler = handler;
+		}
 	}
 
 
@@ -262,7 +555,15 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 
 		private final Session target;
 
-		private final LinkedList<Session> sessionList;
+		private final SessionPool pool;
+
+		private Session proxy;
+
+		private final AtomicBoolean available = new AtomicBoolean(false);
+
+		private final AtomicBoolean queued = new AtomicBoolean(false);
+
+		private volatile long lastReleaseTime;
 
 		private final Map<DestinationCacheKey, MessageProducer> cachedProducers =
 				new HashMap<DestinationCacheKey, MessageProducer>();
@@ -272,9 +573,9 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 
 		private boolean transactionOpen = false;
 
-		public CachedSessionInvocationHandler(Session target, LinkedList<Session> sessionList) {
+		public CachedSessionInvocationHandler(Session target, SessionPool pool) {
 			this.target = target;
-			this.sessionList = sessionList;
+			this.pool = pool;
 		}
 
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -292,14 +593,24 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 			}
 			else if (methodName.equals("close")) {
 				// Handle close method: don't pass the call on.
-				if (active) {
-					synchronized (this.sessionList) {
-						if (this.sessionList.size() < getSessionCacheSize()) {
-							logicalClose((Session) proxy);
-							// Remain open in the session list.
-							return null;
+				if (this.available.get()) {
+					// Allow for multiple close calls...
+					return null;
+				}
+				if (this.pool.reserve()) {
+					boolean returned = false;
+					try {
+						logicalClose();
+						this.pool.release(this);
+						returned = true;
+					}
+					finally {
+						if (!returned) {
+							this.pool.cancelReservation();
 						}
 					}
+					// Remain open in the session pool.
+					return null;
 				}
 				// If we get here, we're supposed to shut down.
 				physicalClose();
@@ -355,12 +666,14 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 				if (logger.isTraceEnabled()) {
 					logger.trace("Found cached JMS MessageProducer for destination [" + dest + "]: " + producer);
 				}
+				producerCacheHitCount.incrementAndGet();
 			}
 			else {
 				producer = this.target.createProducer(dest);
 				if (logger.isDebugEnabled()) {
 					logger.debug("Creating cached JMS MessageProducer for destination [" + dest + "]: " + producer);
 				}
+				producerCreationCount.incrementAndGet();
 				this.cachedProducers.put(cacheKey, producer);
 			}
 			return new CachedMessageProducer(producer);
@@ -393,7 +706,7 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 			return new CachedMessageConsumer(consumer);
 		}
 
-		private void logicalClose(Session proxy) throws JMSException {
+		private void logicalClose() throws JMSException {
 			// Preserve rollback-on-close semantics.
 			if (this.transactionOpen && this.target.getTransacted()) {
 				this.transactionOpen = false;
@@ -407,12 +720,8 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 					it.remove();
 				}
 			}
-			// Allow for multiple close calls...
-			if (!this.sessionList.contains(proxy)) {
-				if (logger.isTraceEnabled()) {
-					logger.trace("Returning cached Session: " + this.target);
-				}
-				this.sessionList.addLast(proxy);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Returning cached Session: " + this.target);
 			}
 		}
 
@@ -437,6 +746,15 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 				this.target.close();
 			}
 		}
+
+		private void physicalCloseQuietly() {
+			try {
+				physicalClose();
+			}
+			catch (Throwable ex) {
+				logger.trace("Could not close cached JMS Session", ex);
+			}
+		}
 	}
 
 
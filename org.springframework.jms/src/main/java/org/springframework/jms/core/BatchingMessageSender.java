@@ -0,0 +1,541 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.util.Assert;
+
+/**
+ * Asynchronous sender that accumulates messages per destination and sends each
+ * batch through the given {@link JmsTemplate} in one go, sparing high-volume
+ * publishers a broker round trip per message.
+ *
+ * <p>A batch gets sent once it reaches the {@link #setBatchSize "batchSize"},
+ * once its first message has been waiting for the {@link #setFlushInterval
+ * "flushInterval"}, or on an explicit {@link #flush()} call. Batches are sent
+ * by a background flusher running on the {@link #setTaskExecutor "taskExecutor"};
+ * messages for the same destination are sent in the order of their submission.
+ *
+ * <p>Each batch is sent with a single JMS Session and MessageProducer. If the
+ * JmsTemplate has been configured with {@link JmsTemplate#setSessionTransacted
+ * "sessionTransacted"}, the batch is sent within one local transaction, with a
+ * single commit at the end; a failure rolls back the entire batch. Otherwise,
+ * each message is sent individually on that Session.
+ *
+ * <p>The outcome of each send operation is reported through the returned
+ * {@link Future}, completing once the message has been sent (and committed),
+ * or failing with the {@link org.springframework.jms.JmsException} that the
+ * send attempt resulted in.
+ *
+ * @since 3.1
+ * @see JmsTemplate
+ */
+public class BatchingMessageSender implements InitializingBean, DisposableBean {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final JmsTemplate jmsTemplate;
+
+	private int batchSize = 100;
+
+	private long flushInterval = 100;
+
+	private TaskExecutor taskExecutor;
+
+	private final ConcurrentMap<Object, PendingBatch> pendingBatches = new ConcurrentHashMap<Object, PendingBatch>();
+
+	private final Object flushMonitor = new Object();
+
+	private boolean flushRequested = false;
+
+	private volatile boolean running = false;
+
+
+	/**
+	 * Create a new BatchingMessageSender for the given JmsTemplate.
+	 * @param jmsTemplate the JmsTemplate to send batches with
+	 */
+	public BatchingMessageSender(JmsTemplate jmsTemplate) {
+		Assert.notNull(jmsTemplate, "JmsTemplate must not be null");
+		this.jmsTemplate = jmsTemplate;
+	}
+
+
+	/**
+	 * Return the JmsTemplate that batches are sent with.
+	 */
+	public JmsTemplate getJmsTemplate() {
+		return this.jmsTemplate;
+	}
+
+	/**
+	 * Specify the number of messages to send in one batch per destination.
+	 * A batch gets sent as soon as it reaches this size.
+	 * <p>Default is 100.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be 1 or higher");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the number of messages to send in one batch per destination.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Specify the maximum time that a message waits for its batch to fill up,
+	 * in milliseconds, before the batch gets sent anyway.
+	 * <p>Default is 100. Specify 0 for sending incomplete batches on explicit
+	 * {@link #flush()} calls only.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		Assert.isTrue(flushInterval >= 0, "'flushInterval' must not be negative");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Return the maximum time that a message waits for its batch to fill up.
+	 */
+	public long getFlushInterval() {
+		return this.flushInterval;
+	}
+
+	/**
+	 * Set the Spring TaskExecutor to run the background flusher on.
+	 * The flusher is a long-lived task, occupying one thread for the
+	 * lifetime of this sender.
+	 * <p>Default is a {@link SimpleAsyncTaskExecutor}, creating a new thread.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+
+	public void afterPropertiesSet() {
+		if (this.taskExecutor == null) {
+			SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(getClass().getSimpleName() + "-");
+			executor.setDaemon(true);
+			this.taskExecutor = executor;
+		}
+		this.running = true;
+		this.taskExecutor.execute(new Flusher());
+	}
+
+	/**
+	 * Stop the background flusher and send all pending messages.
+	 * Messages submitted once shutdown has started will fail with an
+	 * IllegalStateException instead of being sent.
+	 */
+	public void destroy() {
+		this.running = false;
+		synchronized (this.flushMonitor) {
+			this.flushMonitor.notifyAll();
+		}
+		flush();
+	}
+
+
+	/**
+	 * Send a message to the given destination as part of the current batch.
+	 * @param destination the destination to send the message to
+	 * @param messageCreator callback to create the message
+	 * @return a Future completing once the message has been sent
+	 */
+	public Future<Void> send(Destination destination, MessageCreator messageCreator) {
+		Assert.notNull(destination, "Destination must not be null");
+		return addMessage(destination, messageCreator);
+	}
+
+	/**
+	 * Send a message to the given destination as part of the current batch.
+	 * @param destinationName the name of the destination to send the message to
+	 * (to be resolved to an actual destination by the JmsTemplate's DestinationResolver)
+	 * @param messageCreator callback to create the message
+	 * @return a Future completing once the message has been sent
+	 */
+	public Future<Void> send(String destinationName, MessageCreator messageCreator) {
+		Assert.notNull(destinationName, "Destination name must not be null");
+		return addMessage(destinationName, messageCreator);
+	}
+
+	/**
+	 * Send the given object to the given destination as part of the current batch,
+	 * converting the object to a JMS message with the JmsTemplate's MessageConverter.
+	 * @param destination the destination to send the message to
+	 * @param message the object to convert to a message
+	 * @return a Future completing once the message has been sent
+	 */
+	public Future<Void> convertAndSend(Destination destination, Object message) {
+		return send(destination, new ConvertingMessageCreator(message));
+	}
+
+	/**
+	 * Send the given object to the given destination as part of the current batch,
+	 * converting the object to a JMS message with the JmsTemplate's MessageConverter.
+	 * @param destinationName the name of the destination to send the message to
+	 * (to be resolved to an actual destination by the JmsTemplate's DestinationResolver)
+	 * @param message the object to convert to a message
+	 * @return a Future completing once the message has been sent
+	 */
+	public Future<Void> convertAndSend(String destinationName, Object message) {
+		return send(destinationName, new ConvertingMessageCreator(message));
+	}
+
+	/**
+	 * Send all pending messages for all destinations, returning once
+	 * the corresponding batches have been sent.
+	 */
+	public void flush() {
+		for (PendingBatch batch : this.pendingBatches.values()) {
+			batch.flush(true);
+		}
+	}
+
+	/**
+	 * Return the number of messages waiting to be sent, across all destinations.
+	 */
+	public int getPendingMessageCount() {
+		int count = 0;
+		for (PendingBatch batch : this.pendingBatches.values()) {
+			count += batch.size();
+		}
+		return count;
+	}
+
+
+	private Future<Void> addMessage(Object destination, MessageCreator messageCreator) {
+		Assert.notNull(messageCreator, "MessageCreator must not be null");
+		if (!this.running) {
+			throw new IllegalStateException("BatchingMessageSender not running - call afterPropertiesSet() first");
+		}
+		PendingMessage message = new PendingMessage(messageCreator);
+		PendingBatch batch;
+		int size;
+		do {
+			batch = this.pendingBatches.get(destination);
+			if (batch == null) {
+				batch = new PendingBatch(destination);
+				PendingBatch existingBatch = this.pendingBatches.putIfAbsent(destination, batch);
+				if (existingBatch != null) {
+					batch = existingBatch;
+				}
+			}
+			size = batch.add(message);
+		}
+		while (size < 0);
+		if (!this.running) {
+			// Shutdown started concurrently: its final flush may have missed this message.
+			if (batch.remove(message)) {
+				message.result.fail(new IllegalStateException("BatchingMessageSender has been shut down"));
+			}
+			return message.result;
+		}
+		if (size == 1 || size == this.batchSize) {
+			// New flush deadline or full batch: wake up the flusher.
+			synchronized (this.flushMonitor) {
+				this.flushRequested = true;
+				this.flushMonitor.notifyAll();
+			}
+		}
+		return message.result;
+	}
+
+	/**
+	 * Send the given messages with one Session and MessageProducer,
+	 * committing once at the end in case of a locally transacted Session.
+	 * @param destination the destination (or destination name) to send to
+	 * @param messages the messages to send
+	 */
+	private void sendBatch(Object destination, final List<PendingMessage> messages) {
+		ProducerCallback<Object> action = new ProducerCallback<Object>() {
+			public Object doInJms(Session session, MessageProducer producer) throws JMSException {
+				boolean transacted = (session.getTransacted() && jmsTemplate.isSessionLocallyTransacted(session));
+				for (PendingMessage message : messages) {
+					jmsTemplate.doSend(producer, message.messageCreator.createMessage(session));
+					if (!transacted) {
+						message.result.succeed();
+					}
+				}
+				if (transacted) {
+					JmsUtils.commitIfNecessary(session);
+					for (PendingMessage message : messages) {
+						message.result.succeed();
+					}
+				}
+				return null;
+			}
+		};
+		try {
+			if (destination instanceof Destination) {
+				this.jmsTemplate.execute((Destination) destination, action);
+			}
+			else {
+				this.jmsTemplate.execute((String) destination, action);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sent batch of " + messages.size() + " messages to destination [" + destination + "]");
+			}
+		}
+		catch (Throwable ex) {
+			// Complete the futures in any case, keeping the flusher alive.
+			logger.warn("Failed to send batch of " + messages.size() + " messages to destination [" +
+					destination + "]", ex);
+			for (PendingMessage message : messages) {
+				// Messages sent already (without transaction) remain successful.
+				message.result.fail(ex);
+			}
+		}
+	}
+
+
+	/**
+	 * Background task sending full batches and batches that reached their
+	 * flush interval, waiting for the next deadline in between.
+	 */
+	private class Flusher implements Runnable {
+
+		public void run() {
+			while (running) {
+				long now = System.currentTimeMillis();
+				long nextDueTime = Long.MAX_VALUE;
+				boolean flushed = false;
+				for (PendingBatch batch : pendingBatches.values()) {
+					long dueTime = batch.getDueTime();
+					if (dueTime <= now) {
+						batch.flush(false);
+						flushed = true;
+					}
+					else {
+						nextDueTime = Math.min(nextDueTime, dueTime);
+					}
+				}
+				if (!flushed) {
+					synchronized (flushMonitor) {
+						if (!flushRequested && running) {
+							try {
+								flushMonitor.wait(nextDueTime == Long.MAX_VALUE ? 0 : nextDueTime - now);
+							}
+							catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+								return;
+							}
+						}
+						flushRequested = false;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * The messages pending for one destination.
+	 */
+	private class PendingBatch {
+
+		private final Object destination;
+
+		private List<PendingMessage> messages = new ArrayList<PendingMessage>();
+
+		private long firstMessageTime;
+
+		/** Whether this batch has been drained and removed from "pendingBatches" */
+		private boolean retired = false;
+
+		/** Serializes sending, preserving the order of messages */
+		private final Object sendMonitor = new Object();
+
+		public PendingBatch(Object destination) {
+			this.destination = destination;
+		}
+
+		/**
+		 * Add the given message to this batch.
+		 * @return the number of pending messages, or -1 if this batch has been
+		 * retired already (to be retried with a new batch for the destination)
+		 */
+		public synchronized int add(PendingMessage message) {
+			if (this.retired) {
+				return -1;
+			}
+			if (this.messages.isEmpty()) {
+				this.firstMessageTime = System.currentTimeMillis();
+			}
+			this.messages.add(message);
+			return this.messages.size();
+		}
+
+		public synchronized boolean remove(PendingMessage message) {
+			return this.messages.remove(message);
+		}
+
+		public synchronized int size() {
+			return this.messages.size();
+		}
+
+		public synchronized long getDueTime() {
+			if (this.messages.size() >= batchSize) {
+				return 0;
+			}
+			if (this.messages.isEmpty() || flushInterval == 0) {
+				return Long.MAX_VALUE;
+			}
+			return this.firstMessageTime + flushInterval;
+		}
+
+		/**
+		 * Take the next batch of messages, if due.
+		 * @param all whether to take any pending messages, even if not due yet
+		 * @return the messages to send (empty if none due)
+		 */
+		private synchronized List<PendingMessage> drain(boolean all) {
+			if (!all && getDueTime() > System.currentTimeMillis()) {
+				return new ArrayList<PendingMessage>(0);
+			}
+			if (this.messages.size() <= batchSize) {
+				List<PendingMessage> drained = this.messages;
+				this.messages = new ArrayList<PendingMessage>();
+				return drained;
+			}
+			List<PendingMessage> head = this.messages.subList(0, batchSize);
+			List<PendingMessage> drained = new ArrayList<PendingMessage>(head);
+			head.clear();
+			return drained;
+		}
+
+		/**
+		 * Send pending messages in batches of up to "batchSize" messages.
+		 * @param all whether to send all pending messages, or only full
+		 * batches and batches that reached their flush interval
+		 */
+		public void flush(boolean all) {
+			synchronized (this.sendMonitor) {
+				List<PendingMessage> drained;
+				while (!(drained = drain(all)).isEmpty()) {
+					sendBatch(this.destination, drained);
+				}
+				retireIfEmpty();
+			}
+		}
+
+		/**
+		 * Remove this batch from "pendingBatches" once all of its messages have
+		 * been sent, with any further messages going into a new batch.
+		 */
+		private synchronized void retireIfEmpty() {
+			if (this.messages.isEmpty()) {
+				this.retired = true;
+				pendingBatches.remove(this.destination, this);
+			}
+		}
+	}
+
+
+	/**
+	 * A message waiting to be sent, along with its result.
+	 */
+	private static class PendingMessage {
+
+		private final MessageCreator messageCreator;
+
+		private final SendResult result = new SendResult();
+
+		public PendingMessage(MessageCreator messageCreator) {
+			this.messageCreator = messageCreator;
+		}
+	}
+
+
+	/**
+	 * Future for the outcome of a send operation, completed by the sender.
+	 */
+	private static class SendResult extends FutureTask<Void> {
+
+		private static final Runnable NO_OP = new Runnable() {
+			public void run() {
+			}
+		};
+
+		public SendResult() {
+			super(NO_OP, null);
+		}
+
+		public void succeed() {
+			set(null);
+		}
+
+		public void fail(Throwable ex) {
+			setException(ex);
+		}
+
+		@Override
+		public void run() {
+			// Completed by the sender only.
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			// The message may have been handed to the JMS provider already.
+			return false;
+		}
+	}
+
+
+	/**
+	 * MessageCreator converting an object with the JmsTemplate's MessageConverter.
+	 */
+	private class ConvertingMessageCreator implements MessageCreator {
+
+		private final Object object;
+
+		public ConvertingMessageCreator(Object object) {
+			this.object = object;
+		}
+
+		public Message createMessage(Session session) throws JMSException {
+			MessageConverter converter = jmsTemplate.getMessageConverter();
+			if (converter == null) {
+				throw new IllegalStateException("No 'messageConverter' specified. Check configuration of JmsTemplate.");
+			}
+			return converter.toMessage(this.object, session);
+		}
+	}
+
+}
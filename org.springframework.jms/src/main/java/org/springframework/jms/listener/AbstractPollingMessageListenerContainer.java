@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,8 @@
 
 package org.springframework.jms.listener;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -35,6 +37,7 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.ResourceTransactionManager;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.util.Assert;
 
 /**
  * Base class for listener container implementations which are based on polling.
@@ -47,6 +50,11 @@ import org.springframework.transaction.support.TransactionSynchronizationUtils;
  * to the concrete implementation. The receive timeout for each attempt can be
  * configured through the {@link #setReceiveTimeout "receiveTimeout"} property.
  *
+ * <p>Each attempt may also drain a batch of several messages, to be processed
+ * and committed together: see the {@link #setBatchSize "batchSize"} and
+ * {@link #setBatchTimeout "batchTimeout"} properties. A {@link BatchMessageListener}
+ * receives such a batch in a single invocation.
+ *
  * <p>The underlying mechanism is based on standard JMS MessageConsumer handling,
  * which is perfectly compatible with both native JMS and JMS in a J2EE environment.
  * Neither the JMS <code>MessageConsumer.setMessageListener</code> facility
@@ -97,6 +105,10 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 
 	private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
 
+	private int batchSize = 1;
+
+	private long batchTimeout = 0;
+
 	private volatile Boolean commitAfterNoMessageReceived;
 
 
@@ -187,6 +199,44 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 		this.receiveTimeout = receiveTimeout;
 	}
 
+	/**
+	 * Set the maximum number of messages to receive per attempt, to be processed
+	 * within the same transaction. Default is 1.
+	 * <p>Once a first message has been received, further messages are received
+	 * until the batch is complete or no further message arrives within the
+	 * {@link #setBatchTimeout "batchTimeout"}. A {@link BatchMessageListener} gets
+	 * invoked once for the entire batch; any other listener gets invoked for each
+	 * message in turn. The batch is committed (or acknowledged) as a whole, and a
+	 * listener exception rolls back the entire batch.
+	 * <p>Consider a higher batch size to reduce the commit overhead for
+	 * high-volume destinations, in particular with external transactions.
+	 * Note that the batch needs to fit into the transaction timeout, if any.
+	 * @see #setBatchTimeout
+	 * @see BatchMessageListener
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be 1 or higher");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the maximum number of messages to receive per attempt.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the time to wait for a batch to fill up once its first message has been
+	 * received, in <b>milliseconds</b>. Default is 0, just draining the messages
+	 * that are immediately available.
+	 * @see #setBatchSize
+	 */
+	public void setBatchTimeout(long batchTimeout) {
+		Assert.isTrue(batchTimeout >= 0, "'batchTimeout' must not be negative");
+		this.batchTimeout = batchTimeout;
+	}
+
 
 	public void initialize() {
 		// Set sessionTransacted=true in case of a non-JTA transaction manager.
@@ -309,10 +359,21 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 			}
 			Message message = receiveMessage(consumerToUse);
 			if (message != null) {
+				List<Message> batch = null;
+				if (this.batchSize > 1) {
+					batch = receiveBatch(consumerToUse, message);
+				}
 				if (logger.isDebugEnabled()) {
-					logger.debug("Received message of type [" + message.getClass() + "] from consumer [" +
-							consumerToUse + "] of " + (transactional ? "transactional " : "") + "session [" +
-							sessionToUse + "]");
+					if (batch != null && batch.size() > 1) {
+						logger.debug("Received batch of " + batch.size() + " messages from consumer [" +
+								consumerToUse + "] of " + (transactional ? "transactional " : "") + "session [" +
+								sessionToUse + "]");
+					}
+					else {
+						logger.debug("Received message of type [" + message.getClass() + "] from consumer [" +
+								consumerToUse + "] of " + (transactional ? "transactional " : "") + "session [" +
+								sessionToUse + "]");
+					}
 				}
 				messageReceived(invoker, sessionToUse);
 				boolean exposeResource = (!transactional && isExposeListenerSession() &&
@@ -322,7 +383,12 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 							getConnectionFactory(), new LocallyExposedJmsResourceHolder(sessionToUse));
 				}
 				try {
-					doExecuteListener(sessionToUse, message);
+					if (batch != null) {
+						doExecuteListener(sessionToUse, batch);
+					}
+					else {
+						doExecuteListener(sessionToUse, message);
+					}
 				}
 				catch (Throwable ex) {
 					if (status != null) {
@@ -429,6 +495,31 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 		return (this.receiveTimeout < 0 ? consumer.receive() : consumer.receive(this.receiveTimeout));
 	}
 
+	/**
+	 * Receive further messages from the given consumer, completing a batch
+	 * that starts with the given message.
+	 * @param consumer the MessageConsumer to use
+	 * @param firstMessage the first message of the batch, already received
+	 * @return the batch of messages, in the order of reception
+	 * @throws JMSException if thrown by JMS methods
+	 * @see #setBatchSize
+	 * @see #setBatchTimeout
+	 */
+	protected List<Message> receiveBatch(MessageConsumer consumer, Message firstMessage) throws JMSException {
+		List<Message> messages = new ArrayList<Message>(Math.min(this.batchSize, 256));
+		messages.add(firstMessage);
+		long deadline = System.currentTimeMillis() + this.batchTimeout;
+		while (messages.size() < this.batchSize && isRunning()) {
+			long remaining = deadline - System.currentTimeMillis();
+			Message message = (remaining > 0 ? consumer.receive(remaining) : consumer.receiveNoWait());
+			if (message == null) {
+				break;
+			}
+			messages.add(message);
+		}
+		return messages;
+	}
+
 	/**
 	 * Template method that gets called right when a new message has been received,
 	 * before attempting to process it. Allows subclasses to react to the event
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link ConsumerScalingPolicy} implementation that sizes the number of consumers
+ * according to the observed load, scaling up quickly on bursts and scaling down
+ * gradually once the load has decreased.
+ *
+ * <p>The number of consumers required for the current load is estimated from the
+ * receive rate and the average processing time (following Little's law), divided by
+ * the {@link #setTargetUtilization "targetUtilization"} to leave some headroom.
+ * On top of that, a receive hit ratio of at least {@link #setScaleUpHitRatio
+ * "scaleUpHitRatio"} indicates a backlog of messages, in which case the number of
+ * consumers grows by the {@link #setScaleUpFactor "scaleUpFactor"} at once rather
+ * than one consumer at a time. As with the container's default scaling, one
+ * consumer gets added whenever a message arrives and there is no idle consumer left.
+ *
+ * <p>Consumers are released one at a time, at most once per
+ * {@link #setScaleDownInterval "scaleDownInterval"}, and only if the hit ratio has
+ * dropped to {@link #setScaleDownHitRatio "scaleDownHitRatio"} or below and more
+ * consumers are scheduled than currently required. This avoids oscillation under
+ * steady load.
+ *
+ * @since 3.1
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ */
+public class AdaptiveConsumerScalingPolicy implements ConsumerScalingPolicy {
+
+	private double scaleUpHitRatio = 0.9;
+
+	private double scaleUpFactor = 1.0;
+
+	private double targetUtilization = 0.8;
+
+	private double scaleDownHitRatio = 0.5;
+
+	private int minIdleTaskExecutions = 1;
+
+	private long scaleDownInterval = 1000;
+
+	private final AtomicLong lastScaleDown = new AtomicLong();
+
+
+	/**
+	 * Set the receive hit ratio at which to assume a backlog of messages,
+	 * scaling up by the "scaleUpFactor". Default is 0.9.
+	 * @see #setScaleUpFactor
+	 */
+	public void setScaleUpHitRatio(double scaleUpHitRatio) {
+		Assert.isTrue(scaleUpHitRatio >= 0 && scaleUpHitRatio <= 1, "'scaleUpHitRatio' must be between 0 and 1");
+		this.scaleUpHitRatio = scaleUpHitRatio;
+	}
+
+	/**
+	 * Set the fraction of the currently scheduled consumers to add when
+	 * facing a backlog. Default is 1.0, doubling the number of consumers.
+	 */
+	public void setScaleUpFactor(double scaleUpFactor) {
+		Assert.isTrue(scaleUpFactor >= 0, "'scaleUpFactor' must not be negative");
+		this.scaleUpFactor = scaleUpFactor;
+	}
+
+	/**
+	 * Set the intended utilization of the consumers, used to derive the number
+	 * of required consumers from the current load. Default is 0.8.
+	 */
+	public void setTargetUtilization(double targetUtilization) {
+		Assert.isTrue(targetUtilization > 0 && targetUtilization <= 1, "'targetUtilization' must be between 0 and 1");
+		this.targetUtilization = targetUtilization;
+	}
+
+	/**
+	 * Set the receive hit ratio that needs to be reached (or undercut)
+	 * before releasing consumers. Default is 0.5.
+	 */
+	public void setScaleDownHitRatio(double scaleDownHitRatio) {
+		Assert.isTrue(scaleDownHitRatio >= 0 && scaleDownHitRatio <= 1, "'scaleDownHitRatio' must be between 0 and 1");
+		this.scaleDownHitRatio = scaleDownHitRatio;
+	}
+
+	/**
+	 * Set the number of task executions in a row without any message received
+	 * after which a consumer may be released. Default is 1.
+	 * @see DefaultMessageListenerContainer#setIdleTaskExecutionLimit
+	 */
+	public void setMinIdleTaskExecutions(int minIdleTaskExecutions) {
+		Assert.isTrue(minIdleTaskExecutions > 0, "'minIdleTaskExecutions' must be 1 or higher");
+		this.minIdleTaskExecutions = minIdleTaskExecutions;
+	}
+
+	/**
+	 * Set the minimum interval between the release of two consumers,
+	 * in milliseconds. Default is 1000.
+	 */
+	public void setScaleDownInterval(long scaleDownInterval) {
+		Assert.isTrue(scaleDownInterval >= 0, "'scaleDownInterval' must not be negative");
+		this.scaleDownInterval = scaleDownInterval;
+	}
+
+
+	public int getConsumersToAdd(ConsumerMetrics metrics) {
+		if (metrics.getIdleConsumerCount() > 0) {
+			return 0;
+		}
+		int scheduled = metrics.getScheduledConsumerCount();
+		int target = Math.max(scheduled + 1, getRequiredConsumers(metrics));
+		if (metrics.getReceiveHitRatio() >= this.scaleUpHitRatio) {
+			target = Math.max(target, scheduled + (int) Math.ceil(scheduled * this.scaleUpFactor));
+		}
+		return target - scheduled;
+	}
+
+	public boolean shouldReleaseConsumer(ConsumerMetrics metrics, int idleTaskExecutionCount) {
+		if (idleTaskExecutionCount < this.minIdleTaskExecutions || metrics.getIdleConsumerCount() <= 1 ||
+				metrics.getReceiveHitRatio() > this.scaleDownHitRatio ||
+				metrics.getScheduledConsumerCount() <= getRequiredConsumers(metrics)) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		long last = this.lastScaleDown.get();
+		return (now - last >= this.scaleDownInterval && this.lastScaleDown.compareAndSet(last, now));
+	}
+
+	/**
+	 * Estimate the number of consumers required for the current load:
+	 * receive rate times average processing time, divided by the target utilization.
+	 * @param metrics the current metrics of the listener container
+	 * @return the estimated number of consumers
+	 */
+	protected int getRequiredConsumers(ConsumerMetrics metrics) {
+		double busyConsumers = metrics.getReceiveRate() * metrics.getAverageProcessingTime() / 1000;
+		return (int) Math.ceil(busyConsumers / this.targetUtilization);
+	}
+
+}
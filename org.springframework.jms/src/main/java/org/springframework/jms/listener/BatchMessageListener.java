@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.List;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Variant of the standard JMS {@link javax.jms.MessageListener} interface,
+ * receiving a batch of messages at once instead of one message at a time.
+ * This allows the listener to process the messages in bulk, for example
+ * writing them to a database in a single JDBC batch.
+ *
+ * <p>Supported by Spring's {@link DefaultMessageListenerContainer}, which
+ * drains up to its configured {@link AbstractPollingMessageListenerContainer#setBatchSize
+ * "batchSize"} messages per receive attempt and commits the entire batch in one
+ * local or external transaction. Other listener containers invoke a batch
+ * listener with one message at a time.
+ *
+ * @since 3.1
+ * @see AbstractPollingMessageListenerContainer#setBatchSize
+ * @see AbstractPollingMessageListenerContainer#setBatchTimeout
+ * @see AbstractMessageListenerContainer#setMessageListener
+ */
+public interface BatchMessageListener {
+
+	/**
+	 * Callback for processing a batch of received JMS messages.
+	 * <p>Any exception thrown leads to a rollback of the entire batch, if
+	 * transactional, with all its messages getting redelivered.
+	 * @param messages the received JMS messages, in the order of reception
+	 * (never <code>null</code> or empty)
+	 * @throws JMSException if thrown by JMS methods
+	 */
+	void onMessages(List<Message> messages) throws JMSException;
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the consumer state and throughput of a
+ * {@link DefaultMessageListenerContainer}, as exposed for monitoring purposes
+ * and as input for a {@link ConsumerScalingPolicy}.
+ *
+ * <p>Receive attempts count each <code>MessageConsumer.receive</code> attempt
+ * of the container's consumers; an attempt that returned a message (or a batch
+ * of messages, with batch reception) is counted as a successful receive.
+ * Hit ratio, processing time and receive rate are smoothed averages,
+ * giving more weight to recent activity.
+ *
+ * @since 3.1
+ * @see DefaultMessageListenerContainer#getConsumerMetrics()
+ */
+public class ConsumerMetrics implements Serializable {
+
+	private final int concurrentConsumers;
+
+	private final int maxConcurrentConsumers;
+
+	private final int scheduledConsumerCount;
+
+	private final int activeConsumerCount;
+
+	private final int idleConsumerCount;
+
+	private final long receiveAttemptCount;
+
+	private final long successfulReceiveCount;
+
+	private final double receiveHitRatio;
+
+	private final double averageProcessingTime;
+
+	private final double receiveRate;
+
+
+	/**
+	 * Create a new ConsumerMetrics snapshot.
+	 * @param concurrentConsumers the configured minimum number of consumers
+	 * @param maxConcurrentConsumers the configured maximum number of consumers
+	 * @param scheduledConsumerCount the number of currently scheduled consumers
+	 * @param activeConsumerCount the number of currently active consumers
+	 * @param idleConsumerCount the number of scheduled consumers that did not receive
+	 * a message in their latest receive attempt
+	 * @param receiveAttemptCount the total number of receive attempts
+	 * @param successfulReceiveCount the total number of receive attempts that returned a message
+	 * @param receiveHitRatio the recent ratio of successful receive attempts (0.0 to 1.0)
+	 * @param averageProcessingTime the recent average time to process a received
+	 * message, in milliseconds
+	 * @param receiveRate the recent number of successful receive attempts per second
+	 */
+	public ConsumerMetrics(int concurrentConsumers, int maxConcurrentConsumers, int scheduledConsumerCount,
+			int activeConsumerCount, int idleConsumerCount, long receiveAttemptCount, long successfulReceiveCount,
+			double receiveHitRatio, double averageProcessingTime, double receiveRate) {
+
+		this.concurrentConsumers = concurrentConsumers;
+		this.maxConcurrentConsumers = maxConcurrentConsumers;
+		this.scheduledConsumerCount = scheduledConsumerCount;
+		this.activeConsumerCount = activeConsumerCount;
+		this.idleConsumerCount = idleConsumerCount;
+		this.receiveAttemptCount = receiveAttemptCount;
+		this.successfulReceiveCount = successfulReceiveCount;
+		this.receiveHitRatio = receiveHitRatio;
+		this.averageProcessingTime = averageProcessingTime;
+		this.receiveRate = receiveRate;
+	}
+
+
+	/**
+	 * Return the configured minimum number of consumers.
+	 */
+	public int getConcurrentConsumers() {
+		return this.concurrentConsumers;
+	}
+
+	/**
+	 * Return the configured maximum number of consumers.
+	 */
+	public int getMaxConcurrentConsumers() {
+		return this.maxConcurrentConsumers;
+	}
+
+	/**
+	 * Return the number of currently scheduled consumers.
+	 */
+	public int getScheduledConsumerCount() {
+		return this.scheduledConsumerCount;
+	}
+
+	/**
+	 * Return the number of currently active consumers.
+	 */
+	public int getActiveConsumerCount() {
+		return this.activeConsumerCount;
+	}
+
+	/**
+	 * Return the number of scheduled consumers that did not receive
+	 * a message in their latest receive attempt.
+	 */
+	public int getIdleConsumerCount() {
+		return this.idleConsumerCount;
+	}
+
+	/**
+	 * Return the total number of receive attempts.
+	 */
+	public long getReceiveAttemptCount() {
+		return this.receiveAttemptCount;
+	}
+
+	/**
+	 * Return the total number of receive attempts that returned a message.
+	 */
+	public long getSuccessfulReceiveCount() {
+		return this.successfulReceiveCount;
+	}
+
+	/**
+	 * Return the recent ratio of receive attempts that returned a message,
+	 * between 0.0 and 1.0. A ratio close to 1 indicates a backlog of messages.
+	 */
+	public double getReceiveHitRatio() {
+		return this.receiveHitRatio;
+	}
+
+	/**
+	 * Return the recent average time to process a received message
+	 * (or batch of messages), in milliseconds.
+	 */
+	public double getAverageProcessingTime() {
+		return this.averageProcessingTime;
+	}
+
+	/**
+	 * Return the recent number of successful receive attempts per second.
+	 */
+	public double getReceiveRate() {
+		return this.receiveRate;
+	}
+
+
+	@Override
+	public String toString() {
+		return "ConsumerMetrics: scheduled=" + this.scheduledConsumerCount + ", active=" +
+				this.activeConsumerCount + ", idle=" + this.idleConsumerCount + ", receiveAttempts=" +
+				this.receiveAttemptCount + ", successfulReceives=" + this.successfulReceiveCount +
+				", hitRatio=" + this.receiveHitRatio + ", averageProcessingTime=" + this.averageProcessingTime +
+				"ms, receiveRate=" + this.receiveRate + "/s";
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+/**
+ * Strategy interface for dynamic scaling of the number of concurrent consumers
+ * in a {@link DefaultMessageListenerContainer}, between its
+ * {@link DefaultMessageListenerContainer#setConcurrentConsumers "concurrentConsumers"}
+ * and {@link DefaultMessageListenerContainer#setMaxConcurrentConsumers "maxConcurrentConsumers"}
+ * settings, based on the container's current {@link ConsumerMetrics}.
+ *
+ * <p>The container enforces the configured limits itself; a policy just
+ * indicates the desired direction and magnitude of scaling. Implementations
+ * need to be thread-safe, since they will be called by all consumer threads.
+ *
+ * @since 3.1
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ * @see AdaptiveConsumerScalingPolicy
+ */
+public interface ConsumerScalingPolicy {
+
+	/**
+	 * Determine the number of consumers to add, called whenever a consumer
+	 * has received a message (or batch of messages), before processing it.
+	 * @param metrics the current metrics of the listener container
+	 * @return the number of consumers to schedule in addition
+	 * to the currently scheduled ones (0 for none)
+	 */
+	int getConsumersToAdd(ConsumerMetrics metrics);
+
+	/**
+	 * Determine whether a consumer may be released, called whenever a consumer
+	 * has completed a task execution without receiving any message - or, for
+	 * long-lived consumer tasks, whenever a receive attempt returned no message.
+	 * @param metrics the current metrics of the listener container
+	 * @param idleTaskExecutionCount the number of task executions (or receive
+	 * attempts, for long-lived tasks) in a row that the consumer in question
+	 * has not received any message in
+	 * @return whether to release the consumer (if more than
+	 * "concurrentConsumers" consumers are currently scheduled)
+	 */
+	boolean shouldReleaseConsumer(ConsumerMetrics metrics, int idleTaskExecutionCount);
+
+}
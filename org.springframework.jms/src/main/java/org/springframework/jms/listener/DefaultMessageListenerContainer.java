@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -89,6 +89,10 @@ import org.springframework.util.ClassUtils;
  * setting to control the lifespan of each new task, to avoid frequent scaling up
  * and down, in particular if the ConnectionFactory does not pool JMS Sessions
  * and/or the TaskExecutor does not pool threads (check your configuration!).
+ * For faster and smoother adaptation to the actual load, specify a
+ * {@link #setConsumerScalingPolicy "consumerScalingPolicy"} such as
+ * {@link AdaptiveConsumerScalingPolicy}; current {@link #getConsumerMetrics() metrics}
+ * are available for monitoring in any case.
  * Note that dynamic scaling only really makes sense for a queue in the first
  * place; for a topic, you will typically stick with the default number of 1
  * consumer, else you'd receive the same message multiple times on the same node.
@@ -176,6 +180,10 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 
 	private int idleTaskExecutionLimit = 1;
 
+	private ConsumerScalingPolicy consumerScalingPolicy;
+
+	private final ReceiveStatistics receiveStatistics = new ReceiveStatistics();
+
 	private final Set<AsyncMessageListenerInvoker> scheduledInvokers = new HashSet<AsyncMessageListenerInvoker>();
 
 	private int activeInvokerCount = 0;
@@ -469,6 +477,34 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		}
 	}
 
+	/**
+	 * Specify a policy for dynamic scaling of the number of consumers,
+	 * between "concurrentConsumers" and "maxConcurrentConsumers".
+	 * <p>Default is none, scheduling one new consumer when a message arrives and no
+	 * consumer is idle (see {@link #setIdleConsumerLimit "idleConsumerLimit"}), and
+	 * releasing consumers according to the {@link #setIdleTaskExecutionLimit
+	 * "idleTaskExecutionLimit"}. A policy replaces both of these rules, basing its
+	 * decisions on the {@link #getConsumerMetrics() consumer metrics}. With a policy,
+	 * long-lived consumer tasks (see {@link #setMaxMessagesPerTask "maxMessagesPerTask"})
+	 * get released as well.
+	 * <p><b>This setting can be modified at runtime, for example through JMX.</b>
+	 * @see AdaptiveConsumerScalingPolicy
+	 */
+	public void setConsumerScalingPolicy(ConsumerScalingPolicy consumerScalingPolicy) {
+		synchronized (this.lifecycleMonitor) {
+			this.consumerScalingPolicy = consumerScalingPolicy;
+		}
+	}
+
+	/**
+	 * Return the policy for dynamic scaling of the number of consumers, if any.
+	 */
+	public final ConsumerScalingPolicy getConsumerScalingPolicy() {
+		synchronized (this.lifecycleMonitor) {
+			return this.consumerScalingPolicy;
+		}
+	}
+
 	protected void validateConfiguration() {
 		super.validateConfiguration();
 		synchronized (this.lifecycleMonitor) {
@@ -606,6 +642,18 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		}
 	}
 
+	/**
+	 * Return a snapshot of the current consumer counts, receive statistics
+	 * and processing times of this listener container.
+	 * @see #setConsumerScalingPolicy
+	 */
+	public ConsumerMetrics getConsumerMetrics() {
+		synchronized (this.lifecycleMonitor) {
+			return this.receiveStatistics.createMetrics(this.concurrentConsumers, this.maxConcurrentConsumers,
+					this.scheduledInvokers.size(), this.activeInvokerCount, getIdleInvokerCount());
+		}
+	}
+
 	/**
 	 * Return whether at lease one consumer has entered a fixed registration with the
 	 * target destination. This is particularly interesting for the pub-sub case where
@@ -675,6 +723,7 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 */
 	protected void messageReceived(Object invoker, Session session) {
 		((AsyncMessageListenerInvoker) invoker).setIdle(false);
+		this.receiveStatistics.recordReceiveAttempt(true);
 		scheduleNewInvokerIfAppropriate();
 	}
 
@@ -683,6 +732,7 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 */
 	protected void noMessageReceived(Object invoker, Session session) {
 		((AsyncMessageListenerInvoker) invoker).setIdle(true);
+		this.receiveStatistics.recordReceiveAttempt(false);
 	}
 
 	/**
@@ -690,22 +740,33 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 * invokers for this listener container, but only if the specified
 	 * "maxConcurrentConsumers" limit has not been reached yet, and only
 	 * if the specified "idleConsumerLimit" has not been reached either.
+	 * If a "consumerScalingPolicy" has been specified, it determines the
+	 * number of invokers to schedule instead of the "idleConsumerLimit".
 	 * <p>Called once a message has been received, in order to scale up while
 	 * processing the message in the invoker that originally received it.
 	 * @see #setTaskExecutor
 	 * @see #getMaxConcurrentConsumers()
 	 * @see #getIdleConsumerLimit()
+	 * @see #setConsumerScalingPolicy
 	 */
 	protected void scheduleNewInvokerIfAppropriate() {
 		if (isRunning()) {
 			resumePausedTasks();
 			synchronized (this.lifecycleMonitor) {
-				if (this.scheduledInvokers.size() < this.maxConcurrentConsumers &&
-						getIdleInvokerCount() < this.idleConsumerLimit) {
+				int invokersToAdd;
+				if (this.consumerScalingPolicy != null) {
+					invokersToAdd = Math.min(this.consumerScalingPolicy.getConsumersToAdd(getConsumerMetrics()),
+							this.maxConcurrentConsumers - this.scheduledInvokers.size());
+				}
+				else {
+					invokersToAdd = (this.scheduledInvokers.size() < this.maxConcurrentConsumers &&
+							getIdleInvokerCount() < this.idleConsumerLimit ? 1 : 0);
+				}
+				for (int i = 0; i < invokersToAdd; i++) {
 					scheduleNewInvoker();
-					if (logger.isDebugEnabled()) {
-						logger.debug("Raised scheduled invoker count: " + this.scheduledInvokers.size());
-					}
+				}
+				if (invokersToAdd > 0 && logger.isDebugEnabled()) {
+					logger.debug("Raised scheduled invoker count: " + this.scheduledInvokers.size());
 				}
 			}
 		}
@@ -718,12 +779,29 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 * that this invoker task has already accumulated (in a row)
 	 */
 	private boolean shouldRescheduleInvoker(int idleTaskExecutionCount) {
-		boolean superfluous =
-				(idleTaskExecutionCount >= this.idleTaskExecutionLimit && getIdleInvokerCount() > 1);
+		boolean superfluous;
+		if (this.consumerScalingPolicy != null) {
+			superfluous = (idleTaskExecutionCount > 0 && shouldReleaseInvoker(idleTaskExecutionCount));
+		}
+		else {
+			superfluous = (idleTaskExecutionCount >= this.idleTaskExecutionLimit && getIdleInvokerCount() > 1);
+		}
 		return (this.scheduledInvokers.size() <=
 				(superfluous ? this.concurrentConsumers : this.maxConcurrentConsumers));
 	}
 
+	/**
+	 * Ask the "consumerScalingPolicy" whether an idle invoker should be released,
+	 * provided that more than "concurrentConsumers" invokers are scheduled.
+	 * @param idleCount the number of idle task executions or receive attempts in a row
+	 */
+	private boolean shouldReleaseInvoker(int idleCount) {
+		synchronized (this.lifecycleMonitor) {
+			return (this.consumerScalingPolicy != null && this.scheduledInvokers.size() > this.concurrentConsumers &&
+					this.consumerScalingPolicy.shouldReleaseConsumer(getConsumerMetrics(), idleCount));
+		}
+	}
+
 	/**
 	 * Determine whether this listener container currently has more
 	 * than one idle instance among its scheduled invokers.
@@ -936,6 +1014,10 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 
 		private volatile boolean idle = true;
 
+		private boolean released = false;
+
+		private long messageReceivedTime;
+
 		public void run() {
 			synchronized (lifecycleMonitor) {
 				activeInvokerCount++;
@@ -989,7 +1071,13 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 					this.idleTaskExecutionCount = 0;
 				}
 				synchronized (lifecycleMonitor) {
-					if (!shouldRescheduleInvoker(this.idleTaskExecutionCount) || !rescheduleTaskIfNecessary(this)) {
+					if (this.released && scheduledInvokers.size() <= concurrentConsumers) {
+						// Other invokers have been released in the meantime:
+						// keep this one, in order to not drop below "concurrentConsumers".
+						this.released = false;
+					}
+					if (this.released || !shouldRescheduleInvoker(this.idleTaskExecutionCount) ||
+							!rescheduleTaskIfNecessary(this)) {
 						// We're shutting down completely.
 						scheduledInvokers.remove(this);
 						if (logger.isDebugEnabled()) {
@@ -1017,6 +1105,7 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		private boolean executeOngoingLoop() throws JMSException {
 			boolean messageReceived = false;
 			boolean active = true;
+			int idleReceiveCount = 0;
 			while (active) {
 				synchronized (lifecycleMonitor) {
 					boolean interrupted = false;
@@ -1047,7 +1136,15 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 					}
 				}
 				if (active) {
-					messageReceived = (invokeListener() || messageReceived);
+					if (invokeListener()) {
+						messageReceived = true;
+						idleReceiveCount = 0;
+					}
+					else if (consumerScalingPolicy != null && shouldReleaseInvoker(++idleReceiveCount)) {
+						// Long-lived invoker released by the scaling policy.
+						this.released = true;
+						active = false;
+					}
 				}
 			}
 			return messageReceived;
@@ -1056,6 +1153,9 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		private boolean invokeListener() throws JMSException {
 			initResourcesIfNecessary();
 			boolean messageReceived = receiveAndExecute(this, this.session, this.consumer);
+			if (messageReceived) {
+				receiveStatistics.recordProcessingTime(System.nanoTime() - this.messageReceivedTime);
+			}
 			this.lastMessageSucceeded = true;
 			return messageReceived;
 		}
@@ -1118,6 +1218,9 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 
 		public void setIdle(boolean idle) {
 			this.idle = idle;
+			if (!idle) {
+				this.messageReceivedTime = System.nanoTime();
+			}
 		}
 
 		public boolean isIdle() {
@@ -1125,4 +1228,68 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		}
 	}
 
+
+	/**
+	 * Collects receive statistics across all invokers,
+	 * as exposed through {@link ConsumerMetrics}.
+	 */
+	private static class ReceiveStatistics {
+
+		/** Weight of a new sample in the smoothed averages */
+		private static final double SMOOTHING_FACTOR = 0.1;
+
+		/** Interval to measure the receive rate over, in milliseconds */
+		private static final long RATE_INTERVAL = 1000;
+
+		private long receiveAttemptCount;
+
+		private long successfulReceiveCount;
+
+		private double receiveHitRatio;
+
+		private double averageProcessingTime = -1;
+
+		private double receiveRate = -1;
+
+		private long rateIntervalStart = System.currentTimeMillis();
+
+		private int rateIntervalCount;
+
+		public synchronized void recordReceiveAttempt(boolean successful) {
+			this.receiveAttemptCount++;
+			if (successful) {
+				this.successfulReceiveCount++;
+				this.rateIntervalCount++;
+			}
+			this.receiveHitRatio += SMOOTHING_FACTOR * ((successful ? 1 : 0) - this.receiveHitRatio);
+			updateReceiveRate();
+		}
+
+		public synchronized void recordProcessingTime(long nanos) {
+			double millis = nanos / 1000000.0;
+			this.averageProcessingTime = (this.averageProcessingTime < 0 ? millis :
+					this.averageProcessingTime + SMOOTHING_FACTOR * (millis - this.averageProcessingTime));
+		}
+
+		private void updateReceiveRate() {
+			long now = System.currentTimeMillis();
+			long elapsed = now - this.rateIntervalStart;
+			if (elapsed >= RATE_INTERVAL) {
+				double currentRate = this.rateIntervalCount * 1000.0 / elapsed;
+				this.receiveRate = (this.receiveRate < 0 ? currentRate : (this.receiveRate + currentRate) / 2);
+				this.rateIntervalStart = now;
+				this.rateIntervalCount = 0;
+			}
+		}
+
+		public synchronized ConsumerMetrics createMetrics(int concurrentConsumers, int maxConcurrentConsumers,
+				int scheduledConsumerCount, int activeConsumerCount, int idleConsumerCount) {
+
+			updateReceiveRate();
+			return new ConsumerMetrics(concurrentConsumers, maxConcurrentConsumers, scheduledConsumerCount,
+					activeConsumerCount, idleConsumerCount, this.receiveAttemptCount, this.successfulReceiveCount,
+					this.receiveHitRatio, Math.max(this.averageProcessingTime, 0), Math.max(this.receiveRate, 0));
+		}
+	}
+
 }
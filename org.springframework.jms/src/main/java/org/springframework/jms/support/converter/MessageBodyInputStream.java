@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageEOFException;
+import javax.jms.StreamMessage;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link InputStream} that reads directly from the body of a {@link BytesMessage}
+ * or {@link StreamMessage}, without copying the content into an intermediate
+ * byte array of the full message size first.
+ *
+ * <p>Content is read in chunks into a pooled buffer. A StreamMessage is expected
+ * to consist of byte array fields only, as written by a {@link MessageBodyOutputStream};
+ * their content is read as one continuous stream. The stream needs to be closed
+ * once done, returning the buffer to the pool.
+ *
+ * @since 3.1
+ * @see MessageBodyOutputStream
+ */
+public class MessageBodyInputStream extends InputStream {
+
+	private final BytesMessage bytesMessage;
+
+	private final StreamMessage streamMessage;
+
+	private byte[] buffer = MessageBufferPool.obtain();
+
+	private int position = 0;
+
+	private int count = 0;
+
+	private boolean endReached = false;
+
+
+	/**
+	 * Create a new MessageBodyInputStream for the given BytesMessage.
+	 * @param message the message to read from (in read-only mode)
+	 */
+	public MessageBodyInputStream(BytesMessage message) {
+		Assert.notNull(message, "Message must not be null");
+		this.bytesMessage = message;
+		this.streamMessage = null;
+	}
+
+	/**
+	 * Create a new MessageBodyInputStream for the given StreamMessage.
+	 * @param message the message to read from (in read-only mode)
+	 */
+	public MessageBodyInputStream(StreamMessage message) {
+		Assert.notNull(message, "Message must not be null");
+		this.bytesMessage = null;
+		this.streamMessage = message;
+	}
+
+
+	@Override
+	public int read() throws IOException {
+		if (this.position == this.count && !fillBuffer()) {
+			return -1;
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (this.position == this.count && !fillBuffer()) {
+			return -1;
+		}
+		int n = Math.min(len, this.count - this.position);
+		System.arraycopy(this.buffer, this.position, b, off, n);
+		this.position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return this.count - this.position;
+	}
+
+	@Override
+	public void close() {
+		if (this.buffer != null) {
+			MessageBufferPool.release(this.buffer);
+			this.buffer = null;
+		}
+	}
+
+
+	private boolean fillBuffer() throws IOException {
+		if (this.buffer == null) {
+			throw new IOException("Stream closed");
+		}
+		this.position = 0;
+		this.count = 0;
+		while (!this.endReached) {
+			int n = readFromMessage(this.buffer);
+			if (n > 0) {
+				this.count = n;
+				return true;
+			}
+			if (n < 0 && this.bytesMessage != null) {
+				this.endReached = true;
+			}
+			// An exhausted StreamMessage field: proceed with the next one.
+		}
+		return false;
+	}
+
+	private int readFromMessage(byte[] b) throws IOException {
+		try {
+			if (this.bytesMessage != null) {
+				return this.bytesMessage.readBytes(b);
+			}
+			return this.streamMessage.readBytes(b);
+		}
+		catch (MessageEOFException ex) {
+			this.endReached = true;
+			return -1;
+		}
+		catch (JMSException ex) {
+			IOException ioEx = new IOException("Could not read from JMS message body: " + ex.getMessage());
+			ioEx.initCause(ex);
+			throw ioEx;
+		}
+	}
+
+}
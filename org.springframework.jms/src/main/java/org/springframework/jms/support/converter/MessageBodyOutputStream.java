@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.StreamMessage;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link OutputStream} that writes directly into the body of a {@link BytesMessage}
+ * or {@link StreamMessage}, without collecting the content in an intermediate
+ * byte array first.
+ *
+ * <p>Writes are gathered in a pooled buffer and handed to the message in chunks.
+ * For a StreamMessage, each chunk becomes a byte array field, to be read back
+ * through a {@link MessageBodyInputStream}. The stream needs to be closed once
+ * done, flushing any remaining content and returning the buffer to the pool.
+ *
+ * @since 3.1
+ * @see MessageBodyInputStream
+ */
+public class MessageBodyOutputStream extends OutputStream {
+
+	private final BytesMessage bytesMessage;
+
+	private final StreamMessage streamMessage;
+
+	private byte[] buffer = MessageBufferPool.obtain();
+
+	private int count = 0;
+
+
+	/**
+	 * Create a new MessageBodyOutputStream for the given BytesMessage.
+	 * @param message the message to write to
+	 */
+	public MessageBodyOutputStream(BytesMessage message) {
+		Assert.notNull(message, "Message must not be null");
+		this.bytesMessage = message;
+		this.streamMessage = null;
+	}
+
+	/**
+	 * Create a new MessageBodyOutputStream for the given StreamMessage.
+	 * @param message the message to write to
+	 */
+	public MessageBodyOutputStream(StreamMessage message) {
+		Assert.notNull(message, "Message must not be null");
+		this.bytesMessage = null;
+		this.streamMessage = message;
+	}
+
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.count == getBuffer().length) {
+			flushBuffer();
+		}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		byte[] buf = getBuffer();
+		if (len >= buf.length) {
+			// Larger than the buffer: write through.
+			flushBuffer();
+			writeToMessage(b, off, len);
+			return;
+		}
+		if (len > buf.length - this.count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buf, this.count, len);
+		this.count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.buffer != null) {
+			try {
+				flushBuffer();
+			}
+			finally {
+				MessageBufferPool.release(this.buffer);
+				this.buffer = null;
+			}
+		}
+	}
+
+
+	private byte[] getBuffer() throws IOException {
+		if (this.buffer == null) {
+			throw new IOException("Stream closed");
+		}
+		return this.buffer;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.count > 0) {
+			writeToMessage(getBuffer(), 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	private void writeToMessage(byte[] b, int off, int len) throws IOException {
+		try {
+			if (this.bytesMessage != null) {
+				this.bytesMessage.writeBytes(b, off, len);
+			}
+			else {
+				this.streamMessage.writeBytes(b, off, len);
+			}
+		}
+		catch (JMSException ex) {
+			IOException ioEx = new IOException("Could not write to JMS message body: " + ex.getMessage());
+			ioEx.initCause(ex);
+			throw ioEx;
+		}
+	}
+
+}
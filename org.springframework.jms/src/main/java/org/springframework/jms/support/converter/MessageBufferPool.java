@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+/**
+ * Per-thread pool of transfer buffers for streaming message bodies,
+ * sparing the allocation of a fresh buffer for every message converted.
+ *
+ * <p>Each thread keeps at most one buffer of the default size; a buffer is
+ * removed from the pool while in use, so nested conversions on the same
+ * thread simply allocate a buffer of their own.
+ *
+ * @since 3.1
+ * @see MessageBodyOutputStream
+ * @see MessageBodyInputStream
+ */
+abstract class MessageBufferPool {
+
+	/** Default size of the pooled buffers */
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final ThreadLocal<byte[]> cachedBuffer = new ThreadLocal<byte[]>();
+
+
+	/**
+	 * Obtain a buffer of the default size, reusing the current thread's
+	 * buffer if available.
+	 * @return the buffer, to be released after use
+	 */
+	static byte[] obtain() {
+		byte[] buffer = cachedBuffer.get();
+		if (buffer != null) {
+			cachedBuffer.set(null);
+			return buffer;
+		}
+		return new byte[DEFAULT_BUFFER_SIZE];
+	}
+
+	/**
+	 * Return the given buffer to the current thread's pool.
+	 * @param buffer the buffer obtained through {@link #obtain()}
+	 */
+	static void release(byte[] buffer) {
+		if (buffer.length == DEFAULT_BUFFER_SIZE) {
+			cachedBuffer.set(buffer);
+		}
+	}
+
+}
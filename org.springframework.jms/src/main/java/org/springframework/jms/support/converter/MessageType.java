@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,7 +19,8 @@ package org.springframework.jms.support.converter;
 /**
  * Constants that indicate a target message type to convert to: a
  * {@link javax.jms.TextMessage}, a {@link javax.jms.BytesMessage},
- * a {@link javax.jms.MapMessage} or an {@link ObjectMessage}.
+ * a {@link javax.jms.MapMessage}, an {@link javax.jms.ObjectMessage}
+ * or a {@link javax.jms.StreamMessage}.
  *
  * @author Juergen Hoeller
  * @since 3.0
@@ -27,6 +28,6 @@ package org.springframework.jms.support.converter;
  */
 public enum MessageType {
 
-	TEXT, BYTES, MAP, OBJECT
+	TEXT, BYTES, MAP, OBJECT, STREAM
 
 }
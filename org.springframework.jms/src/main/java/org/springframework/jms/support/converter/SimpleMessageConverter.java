@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,8 @@
 
 package org.springframework.jms.support.converter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -39,6 +41,7 @@ import org.springframework.util.ObjectUtils;
  * <p>Converts a String to a {@link javax.jms.TextMessage}, a byte array to a
  * {@link javax.jms.BytesMessage}, a Map to a {@link javax.jms.MapMessage}, and
  * a Serializable object to a {@link javax.jms.ObjectMessage} (or vice versa).
+ * An InputStream gets streamed into a {@link javax.jms.BytesMessage}.
  *
  * @author Juergen Hoeller
  * @since 1.1
@@ -49,10 +52,11 @@ public class SimpleMessageConverter implements MessageConverter {
 
 	/**
 	 * This implementation creates a TextMessage for a String, a
-	 * BytesMessage for a byte array, a MapMessage for a Map,
+	 * BytesMessage for a byte array or InputStream, a MapMessage for a Map,
 	 * and an ObjectMessage for a Serializable object.
 	 * @see #createMessageForString
 	 * @see #createMessageForByteArray
+	 * @see #createMessageForInputStream
 	 * @see #createMessageForMap
 	 * @see #createMessageForSerializable
 	 */
@@ -66,6 +70,9 @@ public class SimpleMessageConverter implements MessageConverter {
 		else if (object instanceof byte[]) {
 			return createMessageForByteArray((byte[]) object, session);
 		}
+		else if (object instanceof InputStream) {
+			return createMessageForInputStream((InputStream) object, session);
+		}
 		else if (object instanceof Map) {
 			return createMessageForMap((Map) object, session);
 		}
@@ -75,7 +82,7 @@ public class SimpleMessageConverter implements MessageConverter {
 		else {
 			throw new MessageConversionException("Cannot convert object of type [" +
 					ObjectUtils.nullSafeClassName(object) + "] to JMS message. Supported message " +
-					"payloads are: String, byte array, Map<String,?>, Serializable object.");
+					"payloads are: String, byte array, InputStream, Map<String,?>, Serializable object.");
 		}
 	}
 
@@ -134,6 +141,42 @@ public class SimpleMessageConverter implements MessageConverter {
 		return message;
 	}
 
+	/**
+	 * Create a JMS BytesMessage for the given InputStream, streaming its content
+	 * into the message body through a pooled buffer. The stream gets closed
+	 * afterwards.
+	 * @param inputStream the InputStream to convert
+	 * @param session current JMS session
+	 * @return the resulting message
+	 * @throws JMSException if thrown by JMS methods
+	 * @see javax.jms.Session#createBytesMessage
+	 */
+	protected BytesMessage createMessageForInputStream(InputStream inputStream, Session session)
+			throws JMSException {
+
+		BytesMessage message = session.createBytesMessage();
+		byte[] buffer = MessageBufferPool.obtain();
+		try {
+			int n;
+			while ((n = inputStream.read(buffer)) != -1) {
+				message.writeBytes(buffer, 0, n);
+			}
+		}
+		catch (IOException ex) {
+			throw new MessageConversionException("Could not stream content into JMS BytesMessage", ex);
+		}
+		finally {
+			MessageBufferPool.release(buffer);
+			try {
+				inputStream.close();
+			}
+			catch (IOException ex) {
+				// ignore - content has been read already
+			}
+		}
+		return message;
+	}
+
 	/**
 	 * Create a JMS MapMessage for the given Map.
 	 * @param map the Map to convert
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+import java.io.IOException;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.springframework.oxm.Marshaller;
+import org.springframework.oxm.Unmarshaller;
+import org.springframework.oxm.XmlMappingException;
+
+/**
+ * Variant of {@link MarshallingMessageConverter} that streams marshalled content
+ * directly into the message body and unmarshals directly from it, instead of
+ * going through a full-size byte array per message in each direction.
+ * Transfer buffers are pooled per thread.
+ *
+ * <p>Supports {@link MessageType#STREAM} as target type in addition to
+ * {@link MessageType#TEXT} and {@link MessageType#BYTES}, marshalling to a
+ * {@link StreamMessage} that consists of byte array fields.
+ *
+ * @since 3.1
+ * @see MessageBodyOutputStream
+ * @see MessageBodyInputStream
+ */
+public class StreamingMarshallingMessageConverter extends MarshallingMessageConverter {
+
+	/**
+	 * Construct a new <code>StreamingMarshallingMessageConverter</code> with no
+	 * {@link Marshaller} or {@link Unmarshaller} set.
+	 * @see #setMarshaller
+	 * @see #setUnmarshaller
+	 */
+	public StreamingMarshallingMessageConverter() {
+	}
+
+	/**
+	 * Construct a new <code>StreamingMarshallingMessageConverter</code> with the given
+	 * {@link Marshaller} set, also to be used as {@link Unmarshaller}.
+	 * @param marshaller object used as marshaller and unmarshaller
+	 * @see MarshallingMessageConverter#MarshallingMessageConverter(Marshaller)
+	 */
+	public StreamingMarshallingMessageConverter(Marshaller marshaller) {
+		super(marshaller);
+	}
+
+	/**
+	 * Construct a new <code>StreamingMarshallingMessageConverter</code> with the
+	 * given Marshaller and Unmarshaller.
+	 * @param marshaller the Marshaller to use
+	 * @param unmarshaller the Unmarshaller to use
+	 */
+	public StreamingMarshallingMessageConverter(Marshaller marshaller, Unmarshaller unmarshaller) {
+		super(marshaller, unmarshaller);
+	}
+
+
+	@Override
+	protected BytesMessage marshalToBytesMessage(Object object, Session session, Marshaller marshaller)
+			throws JMSException, IOException, XmlMappingException {
+
+		BytesMessage message = session.createBytesMessage();
+		MessageBodyOutputStream out = new MessageBodyOutputStream(message);
+		try {
+			marshaller.marshal(object, new StreamResult(out));
+		}
+		finally {
+			out.close();
+		}
+		return message;
+	}
+
+	/**
+	 * This implementation marshals to a {@link StreamMessage} for
+	 * {@link MessageType#STREAM}, delegating to the superclass otherwise.
+	 */
+	@Override
+	protected Message marshalToMessage(Object object, Session session, Marshaller marshaller, MessageType targetType)
+			throws JMSException, IOException, XmlMappingException {
+
+		if (targetType != MessageType.STREAM) {
+			return super.marshalToMessage(object, session, marshaller, targetType);
+		}
+		StreamMessage message = session.createStreamMessage();
+		MessageBodyOutputStream out = new MessageBodyOutputStream(message);
+		try {
+			marshaller.marshal(object, new StreamResult(out));
+		}
+		finally {
+			out.close();
+		}
+		return message;
+	}
+
+	@Override
+	protected Object unmarshalFromBytesMessage(BytesMessage message, Unmarshaller unmarshaller)
+			throws JMSException, IOException, XmlMappingException {
+
+		MessageBodyInputStream in = new MessageBodyInputStream(message);
+		try {
+			return unmarshaller.unmarshal(new StreamSource(in));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This implementation unmarshals from a {@link StreamMessage},
+	 * delegating to the superclass for other message types.
+	 */
+	@Override
+	protected Object unmarshalFromMessage(Message message, Unmarshaller unmarshaller)
+			throws JMSException, IOException, XmlMappingException {
+
+		if (!(message instanceof StreamMessage)) {
+			return super.unmarshalFromMessage(message, unmarshaller);
+		}
+		MessageBodyInputStream in = new MessageBodyInputStream((StreamMessage) message);
+		try {
+			return unmarshaller.unmarshal(new StreamSource(in));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+}
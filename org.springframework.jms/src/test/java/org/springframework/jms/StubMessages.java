@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms;
+
+import static org.easymock.EasyMock.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageEOFException;
+import javax.jms.StreamMessage;
+
+import org.easymock.IAnswer;
+
+/**
+ * Factory for mock {@link BytesMessage} and {@link StreamMessage} instances
+ * that keep their body in memory: content written to the message can be read
+ * back afterwards, as from a message that has been reset to read-only mode.
+ *
+ * @since 3.1
+ */
+public abstract class StubMessages {
+
+	/**
+	 * Create a BytesMessage with an in-memory body.
+	 */
+	public static BytesMessage createBytesMessage() throws JMSException {
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final int[] position = new int[1];
+		BytesMessage message = createNiceMock(BytesMessage.class);
+		message.writeBytes(isA(byte[].class));
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				byte[] b = (byte[]) getCurrentArguments()[0];
+				body.write(b, 0, b.length);
+				return null;
+			}
+		});
+		message.writeBytes(isA(byte[].class), anyInt(), anyInt());
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				Object[] args = getCurrentArguments();
+				body.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+				return null;
+			}
+		});
+		expect(message.readBytes(isA(byte[].class))).andStubAnswer(new IAnswer<Integer>() {
+			public Integer answer() {
+				byte[] content = body.toByteArray();
+				if (position[0] == content.length) {
+					return -1;
+				}
+				byte[] b = (byte[]) getCurrentArguments()[0];
+				int n = Math.min(b.length, content.length - position[0]);
+				System.arraycopy(content, position[0], b, 0, n);
+				position[0] += n;
+				return n;
+			}
+		});
+		expect(message.getBodyLength()).andStubAnswer(new IAnswer<Long>() {
+			public Long answer() {
+				return (long) body.size();
+			}
+		});
+		replay(message);
+		return message;
+	}
+
+	/**
+	 * Create a StreamMessage with an in-memory body, supporting byte array fields only.
+	 */
+	public static StreamMessage createStreamMessage() throws JMSException {
+		final List<byte[]> fields = new ArrayList<byte[]>();
+		// Index of the current field and position within that field
+		final int[] position = new int[2];
+		StreamMessage message = createNiceMock(StreamMessage.class);
+		message.writeBytes(isA(byte[].class), anyInt(), anyInt());
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				Object[] args = getCurrentArguments();
+				byte[] field = new byte[(Integer) args[2]];
+				System.arraycopy(args[0], (Integer) args[1], field, 0, field.length);
+				fields.add(field);
+				return null;
+			}
+		});
+		expect(message.readBytes(isA(byte[].class))).andStubAnswer(new IAnswer<Integer>() {
+			public Integer answer() throws JMSException {
+				if (position[0] == fields.size()) {
+					throw new MessageEOFException("End of message reached");
+				}
+				byte[] field = fields.get(position[0]);
+				if (position[1] == field.length) {
+					// Field exhausted: signal its end, proceeding with the next field.
+					position[0]++;
+					position[1] = 0;
+					return -1;
+				}
+				byte[] b = (byte[]) getCurrentArguments()[0];
+				int n = Math.min(b.length, field.length - position[1]);
+				System.arraycopy(field, position[1], b, 0, n);
+				position[1] += n;
+				return n;
+			}
+		});
+		replay(message);
+		return message;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,21 +16,35 @@
 
 package org.springframework.jms.connection;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
 import javax.jms.QueueConnection;
 import javax.jms.QueueConnectionFactory;
 import javax.jms.QueueSession;
 import javax.jms.Session;
 import javax.jms.TopicConnection;
 import javax.jms.TopicConnectionFactory;
+import javax.jms.TextMessage;
 import javax.jms.TopicSession;
 
 import junit.framework.TestCase;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.easymock.MockControl;
 
+import org.springframework.jms.StubQueue;
+
 /**
  * @author Juergen Hoeller
  * @since 26.07.2004
@@ -648,4 +662,199 @@ public class SingleConnectionFactoryTests extends TestCase {
 		nonTxSessionControl.verify();
 	}
 
+	public void testCachingConnectionFactoryWithConcurrentSessions() throws Exception {
+		final CachingConnectionFactory scf = new CachingConnectionFactory(createMockConnectionFactory());
+		scf.setSessionCacheSize(4);
+		final Connection con = scf.createConnection();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 200; j++) {
+							Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+							session.createTextMessage("message");
+							session.close();
+						}
+					}
+					catch (Throwable ex) {
+						synchronized (failures) {
+							failures.add(ex);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		try {
+			assertTrue(failures.toString(), failures.isEmpty());
+			assertEquals(1600, scf.getSessionCacheHitCount() + scf.getSessionCreationCount());
+			assertTrue(scf.getSessionCreationCount() >= 1);
+			assertTrue(scf.getIdleSessionCount() >= 1);
+			assertTrue(scf.getIdleSessionCount() <= 4);
+		}
+		finally {
+			scf.destroy();
+		}
+		assertEquals(0, scf.getIdleSessionCount());
+	}
+
+	public void testCachingConnectionFactoryWithSessionThreadAffinity() throws Exception {
+		CachingConnectionFactory scf = new CachingConnectionFactory(createMockConnectionFactory());
+		scf.setSessionCacheSize(2);
+		scf.setSessionThreadAffinity(true);
+		final Connection con = scf.createConnection();
+		try {
+			Session session1 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			final Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			session1.close();
+			Thread otherThread = new Thread() {
+				public void run() {
+					try {
+						session2.close();
+					}
+					catch (JMSException ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+			};
+			otherThread.start();
+			otherThread.join();
+			// Most recently returned is session2, but this thread returned session1.
+			assertSame(session1, con.createSession(false, Session.AUTO_ACKNOWLEDGE));
+			assertSame(session2, con.createSession(false, Session.AUTO_ACKNOWLEDGE));
+			assertEquals(2, scf.getSessionCacheHitCount());
+			assertEquals(1, scf.getSessionAffinityHitCount());
+		}
+		finally {
+			scf.destroy();
+		}
+	}
+
+	public void testCachingConnectionFactoryWithSessionIdleTimeout() throws Exception {
+		CachingConnectionFactory scf = new CachingConnectionFactory(createMockConnectionFactory());
+		scf.setSessionCacheSize(4);
+		scf.setSessionIdleTimeout(50);
+		Connection con = scf.createConnection();
+		try {
+			Session session1 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			Session session3 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			session1.close();
+			session2.close();
+			session3.close();
+			assertEquals(3, scf.getIdleSessionCount());
+			Thread.sleep(100);
+			Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			assertSame(session3, session);
+			session.close();
+			assertEquals(2, scf.getSessionEvictionCount());
+			assertEquals(1, scf.getIdleSessionCount());
+		}
+		finally {
+			scf.destroy();
+		}
+	}
+
+	public void testCachingConnectionFactoryWithProducerStatistics() throws Exception {
+		CachingConnectionFactory scf = new CachingConnectionFactory(createMockConnectionFactory());
+		Connection con = scf.createConnection();
+		try {
+			for (int i = 0; i < 3; i++) {
+				Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+				Queue queue = session.createQueue("statistics.queue");
+				MessageProducer producer = session.createProducer(queue);
+				producer.send(session.createTextMessage("message" + i));
+				producer.close();
+				session.close();
+			}
+			assertEquals(1, scf.getSessionCreationCount());
+			assertEquals(2, scf.getSessionCacheHitCount());
+			assertEquals(1, scf.getProducerCreationCount());
+			assertEquals(2, scf.getProducerCacheHitCount());
+		}
+		finally {
+			scf.destroy();
+		}
+	}
+
+	public void testCachingConnectionFactoryWithCustomSessionProxy() throws Exception {
+		final List<Session> decorated = new ArrayList<Session>();
+		CachingConnectionFactory scf = new CachingConnectionFactory(createMockConnectionFactory()) {
+			protected Session getCachedSessionProxy(Session target, LinkedList<Session> sessionList) {
+				final Session proxy = super.getCachedSessionProxy(target, sessionList);
+				Session session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class[] {Session.class}, new InvocationHandler() {
+							public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+								try {
+									return method.invoke(proxy, args);
+								}
+								catch (InvocationTargetException ex) {
+									throw ex.getTargetException();
+								}
+							}
+						});
+				decorated.add(session);
+				return session;
+			}
+		};
+		Connection con = scf.createConnection();
+		try {
+			Session session1 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			session1.close();
+			Session session2 = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			assertSame(session1, session2);
+			session2.close();
+			assertEquals(1, decorated.size());
+			assertSame(session1, decorated.get(0));
+			assertEquals(1, scf.getSessionCreationCount());
+			assertEquals(1, scf.getIdleSessionCount());
+		}
+		finally {
+			scf.destroy();
+		}
+	}
+
+
+	/**
+	 * Create a ConnectionFactory whose Connection hands out a new mock Session
+	 * per createSession call, each creating new mock MessageProducers.
+	 */
+	private ConnectionFactory createMockConnectionFactory() throws JMSException {
+		final Queue queue = new StubQueue("statistics.queue");
+		Connection con = EasyMock.createNiceMock(Connection.class);
+		EasyMock.expect(con.createSession(EasyMock.anyBoolean(), EasyMock.anyInt())).andStubAnswer(new IAnswer<Session>() {
+			public Session answer() throws JMSException {
+				Session session = EasyMock.createNiceMock(Session.class);
+				EasyMock.expect(session.createQueue("statistics.queue")).andStubReturn(queue);
+				EasyMock.expect(session.createProducer(queue)).andStubAnswer(new IAnswer<MessageProducer>() {
+					public MessageProducer answer() {
+						MessageProducer producer = EasyMock.createNiceMock(MessageProducer.class);
+						EasyMock.replay(producer);
+						return producer;
+					}
+				});
+				EasyMock.expect(session.createTextMessage(EasyMock.isA(String.class))).andStubAnswer(new IAnswer<TextMessage>() {
+					public TextMessage answer() {
+						TextMessage message = EasyMock.createNiceMock(TextMessage.class);
+						EasyMock.replay(message);
+						return message;
+					}
+				});
+				EasyMock.replay(session);
+				return session;
+			}
+		});
+		EasyMock.replay(con);
+		ConnectionFactory cf = EasyMock.createMock(ConnectionFactory.class);
+		EasyMock.expect(cf.createConnection()).andStubReturn(con);
+		EasyMock.replay(cf);
+		return cf;
+	}
+
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.jms.StubQueue;
+import org.springframework.jms.UncategorizedJmsException;
+
+/**
+ * Tests for {@link BatchingMessageSender}, sending through mock JMS resources
+ * that record the text of each message sent and committed.
+ *
+ * @since 3.1
+ */
+public class BatchingMessageSenderTests {
+
+	private static final String QUEUE_NAME = "batching.queue";
+
+	private final List<String> sentTexts = new ArrayList<String>();
+
+	private final List<String> committedTexts = new ArrayList<String>();
+
+	private int commitCount;
+
+	private BatchingMessageSender sender;
+
+
+	@Before
+	public void setUp() throws JMSException {
+		Queue queue = new StubQueue(QUEUE_NAME);
+
+		MessageProducer producer = createNiceMock(MessageProducer.class);
+		producer.send(isA(Message.class));
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() throws Throwable {
+				synchronized (sentTexts) {
+					sentTexts.add(((TextMessage) getCurrentArguments()[0]).getText());
+				}
+				return null;
+			}
+		});
+		replay(producer);
+
+		Session session = createNiceMock(Session.class);
+		expect(session.getTransacted()).andStubReturn(true);
+		expect(session.createQueue(QUEUE_NAME)).andStubReturn(queue);
+		expect(session.createProducer(queue)).andStubReturn(producer);
+		expect(session.createTextMessage(isA(String.class))).andStubAnswer(new IAnswer<TextMessage>() {
+			public TextMessage answer() throws Throwable {
+				TextMessage message = createNiceMock(TextMessage.class);
+				expect(message.getText()).andStubReturn((String) getCurrentArguments()[0]);
+				replay(message);
+				return message;
+			}
+		});
+		session.commit();
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				synchronized (sentTexts) {
+					committedTexts.addAll(sentTexts);
+					sentTexts.clear();
+					commitCount++;
+				}
+				return null;
+			}
+		});
+		replay(session);
+
+		Connection connection = createNiceMock(Connection.class);
+		expect(connection.createSession(true, Session.AUTO_ACKNOWLEDGE)).andStubReturn(session);
+		replay(connection);
+
+		ConnectionFactory connectionFactory = createMock(ConnectionFactory.class);
+		expect(connectionFactory.createConnection()).andStubReturn(connection);
+		replay(connectionFactory);
+
+		JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+		jmsTemplate.setSessionTransacted(true);
+		this.sender = new BatchingMessageSender(jmsTemplate);
+	}
+
+	@After
+	public void tearDown() {
+		this.sender.destroy();
+	}
+
+
+	@Test
+	public void sendFullBatchesAndFlush() throws Exception {
+		this.sender.setBatchSize(10);
+		this.sender.setFlushInterval(0);
+		this.sender.afterPropertiesSet();
+
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < 25; i++) {
+			results.add(this.sender.convertAndSend(QUEUE_NAME, "message" + i));
+		}
+		for (int i = 0; i < 20; i++) {
+			results.get(i).get(5, TimeUnit.SECONDS);
+		}
+		assertEquals(5, this.sender.getPendingMessageCount());
+		assertFalse(results.get(24).isDone());
+
+		this.sender.flush();
+		assertEquals(0, this.sender.getPendingMessageCount());
+		assertTrue(results.get(24).isDone());
+		synchronized (this.sentTexts) {
+			assertEquals(3, this.commitCount);
+			assertEquals(25, this.committedTexts.size());
+			for (int i = 0; i < 25; i++) {
+				assertEquals("message" + i, this.committedTexts.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void sendOnFlushInterval() throws Exception {
+		this.sender.setFlushInterval(50);
+		this.sender.afterPropertiesSet();
+
+		Future<Void> result = this.sender.convertAndSend(QUEUE_NAME, "message");
+		result.get(5, TimeUnit.SECONDS);
+		synchronized (this.sentTexts) {
+			assertEquals("message", this.committedTexts.get(0));
+		}
+	}
+
+	@Test
+	public void failedBatchRolledBack() throws Exception {
+		this.sender.setFlushInterval(0);
+		this.sender.afterPropertiesSet();
+
+		Future<Void> result1 = this.sender.convertAndSend(QUEUE_NAME, "message");
+		Future<Void> result2 = this.sender.send(QUEUE_NAME, new MessageCreator() {
+			public Message createMessage(Session session) throws JMSException {
+				throw new JMSException("failure");
+			}
+		});
+		this.sender.flush();
+		assertTrue(getFailureCause(result1) instanceof UncategorizedJmsException);
+		assertTrue(getFailureCause(result2) instanceof UncategorizedJmsException);
+		synchronized (this.sentTexts) {
+			assertEquals(0, this.commitCount);
+			assertTrue(this.committedTexts.isEmpty());
+		}
+	}
+
+	@Test
+	public void errorFailsBatchAndKeepsFlusherRunning() throws Exception {
+		this.sender.setFlushInterval(10);
+		this.sender.afterPropertiesSet();
+
+		final Error error = new Error("failure");
+		Future<Void> result1 = this.sender.send(QUEUE_NAME, new MessageCreator() {
+			public Message createMessage(Session session) {
+				throw error;
+			}
+		});
+		assertSame(error, getFailureCause(result1));
+
+		Future<Void> result2 = this.sender.convertAndSend(QUEUE_NAME, "message");
+		result2.get(5, TimeUnit.SECONDS);
+		synchronized (this.sentTexts) {
+			assertEquals("message", this.committedTexts.get(0));
+		}
+	}
+
+	@Test
+	public void drainedBatchRemoved() throws Exception {
+		this.sender.setFlushInterval(0);
+		this.sender.afterPropertiesSet();
+
+		Map<?, ?> pendingBatches = (Map<?, ?>) new DirectFieldAccessor(this.sender).getPropertyValue("pendingBatches");
+		Future<Void> result1 = this.sender.convertAndSend(QUEUE_NAME, "message1");
+		assertEquals(1, pendingBatches.size());
+		this.sender.flush();
+		result1.get(5, TimeUnit.SECONDS);
+		assertTrue(pendingBatches.isEmpty());
+
+		Future<Void> result2 = this.sender.convertAndSend(QUEUE_NAME, "message2");
+		assertEquals(1, pendingBatches.size());
+		this.sender.flush();
+		result2.get(5, TimeUnit.SECONDS);
+		assertTrue(pendingBatches.isEmpty());
+		synchronized (this.sentTexts) {
+			assertEquals(2, this.committedTexts.size());
+			assertEquals("message2", this.committedTexts.get(1));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void sendBeforeInitialization() {
+		this.sender.convertAndSend(QUEUE_NAME, "message");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void sendAfterShutdown() {
+		this.sender.afterPropertiesSet();
+		this.sender.destroy();
+		this.sender.convertAndSend(QUEUE_NAME, "message");
+	}
+
+
+	private Throwable getFailureCause(Future<Void> result) throws Exception {
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			fail("Should have thrown ExecutionException");
+			return null;
+		}
+		catch (ExecutionException ex) {
+			return ex.getCause();
+		}
+	}
+
+}
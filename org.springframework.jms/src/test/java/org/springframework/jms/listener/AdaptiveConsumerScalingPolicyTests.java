@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @since 3.1
+ */
+public class AdaptiveConsumerScalingPolicyTests {
+
+	private final AdaptiveConsumerScalingPolicy policy = new AdaptiveConsumerScalingPolicy();
+
+
+	@Test
+	public void noScaleUpWithIdleConsumer() {
+		assertEquals(0, this.policy.getConsumersToAdd(metrics(4, 1, 1.0, 50, 100)));
+	}
+
+	@Test
+	public void scaleUpByOneWithoutBacklog() {
+		assertEquals(1, this.policy.getConsumersToAdd(metrics(4, 0, 0.5, 0, 0)));
+	}
+
+	@Test
+	public void scaleUpGeometricallyOnBacklog() {
+		assertEquals(4, this.policy.getConsumersToAdd(metrics(4, 0, 0.95, 0, 0)));
+		this.policy.setScaleUpFactor(0.5);
+		assertEquals(2, this.policy.getConsumersToAdd(metrics(4, 0, 0.95, 0, 0)));
+	}
+
+	@Test
+	public void scaleUpToRequiredConsumers() {
+		// 200 messages/s * 40 ms = 8 busy consumers, at 80% utilization -> 10 consumers
+		assertEquals(8, this.policy.getConsumersToAdd(metrics(2, 0, 0.5, 40, 200)));
+	}
+
+	@Test
+	public void releaseIdleConsumer() {
+		this.policy.setScaleDownInterval(0);
+		assertTrue(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.1, 10, 100), 1));
+	}
+
+	@Test
+	public void noReleaseOfLastIdleConsumer() {
+		this.policy.setScaleDownInterval(0);
+		assertFalse(this.policy.shouldReleaseConsumer(metrics(8, 1, 0.1, 10, 100), 1));
+	}
+
+	@Test
+	public void noReleaseOnHighHitRatio() {
+		this.policy.setScaleDownInterval(0);
+		assertFalse(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.8, 10, 100), 1));
+	}
+
+	@Test
+	public void noReleaseBelowRequiredConsumers() {
+		this.policy.setScaleDownInterval(0);
+		assertFalse(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.1, 40, 200), 1));
+	}
+
+	@Test
+	public void noReleaseBeforeMinIdleTaskExecutions() {
+		this.policy.setScaleDownInterval(0);
+		this.policy.setMinIdleTaskExecutions(3);
+		assertFalse(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.1, 10, 100), 2));
+		assertTrue(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.1, 10, 100), 3));
+	}
+
+	@Test
+	public void releaseRateLimited() {
+		this.policy.setScaleDownInterval(60000);
+		assertTrue(this.policy.shouldReleaseConsumer(metrics(8, 4, 0.1, 10, 100), 1));
+		assertFalse(this.policy.shouldReleaseConsumer(metrics(7, 3, 0.1, 10, 100), 1));
+	}
+
+
+	private ConsumerMetrics metrics(int scheduled, int idle, double hitRatio,
+			double averageProcessingTime, double receiveRate) {
+
+		return new ConsumerMetrics(1, 16, scheduled, scheduled, idle, 1000, 500,
+				hitRatio, averageProcessingTime, receiveRate);
+	}
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jms.StubQueue;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link DefaultMessageListenerContainer} batch reception and
+ * consumer scaling, running against mock JMS resources: each Session's
+ * MessageConsumer receives from a shared in-memory queue, with a rollback
+ * returning the Session's uncommitted messages to the queue as redelivered.
+ *
+ * @since 3.1
+ */
+public class DefaultMessageListenerContainerTests {
+
+	private static final String QUEUE_NAME = "batch.queue";
+
+	private final Queue destination = new StubQueue(QUEUE_NAME);
+
+	/** Messages waiting to be received, guarded by itself */
+	private final LinkedList<Message> queue = new LinkedList<Message>();
+
+	private final Set<Message> redeliveredMessages = Collections.synchronizedSet(new HashSet<Message>());
+
+	private DefaultMessageListenerContainer container;
+
+
+	@Before
+	public void setUp() throws JMSException {
+		this.container = new DefaultMessageListenerContainer();
+		this.container.setConnectionFactory(createConnectionFactory());
+		this.container.setDestinationName(QUEUE_NAME);
+		this.container.setSessionTransacted(true);
+		this.container.setReceiveTimeout(100);
+	}
+
+	@After
+	public void tearDown() {
+		this.container.shutdown();
+	}
+
+
+	@Test
+	public void batchListener() throws Exception {
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		final List<String> received = new ArrayList<String>();
+		final CountDownLatch latch = new CountDownLatch(50);
+		sendMessages(50);
+		this.container.setMessageListener(new BatchMessageListener() {
+			public void onMessages(List<Message> messages) throws JMSException {
+				synchronized (batchSizes) {
+					batchSizes.add(messages.size());
+					for (Message message : messages) {
+						received.add(((TextMessage) message).getText());
+						latch.countDown();
+					}
+				}
+			}
+		});
+		this.container.setBatchSize(10);
+		this.container.setBatchTimeout(500);
+		startContainer();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		synchronized (batchSizes) {
+			assertEquals(50, received.size());
+			assertEquals("message0", received.get(0));
+			assertEquals("message49", received.get(49));
+			for (int batchSize : batchSizes) {
+				assertTrue(batchSize <= 10);
+			}
+			assertTrue("Expected messages to be batched: " + batchSizes, batchSizes.size() < 50);
+		}
+	}
+
+	@Test
+	public void batchRolledBackAsWhole() throws Exception {
+		final AtomicBoolean failed = new AtomicBoolean();
+		final List<Message> received = new ArrayList<Message>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		sendMessages(5);
+		this.container.setMessageListener(new BatchMessageListener() {
+			public void onMessages(List<Message> messages) throws JMSException {
+				if (failed.compareAndSet(false, true)) {
+					throw new IllegalStateException("first attempt fails");
+				}
+				received.addAll(messages);
+				latch.countDown();
+			}
+		});
+		this.container.setBatchSize(5);
+		this.container.setBatchTimeout(1000);
+		startContainer();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(5, received.size());
+		for (Message message : received) {
+			assertTrue(message.getJMSRedelivered());
+		}
+	}
+
+	@Test
+	public void messageListenerWithBatchSize() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(20);
+		sendMessages(20);
+		this.container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+				latch.countDown();
+			}
+		});
+		this.container.setBatchSize(8);
+		startContainer();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void consumerMetrics() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(10);
+		sendMessages(10);
+		this.container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+				latch.countDown();
+			}
+		});
+		startContainer();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		ConsumerMetrics metrics = this.container.getConsumerMetrics();
+		assertEquals(1, metrics.getConcurrentConsumers());
+		assertEquals(1, metrics.getScheduledConsumerCount());
+		assertEquals(10, metrics.getSuccessfulReceiveCount());
+		assertTrue(metrics.getReceiveAttemptCount() >= 10);
+		assertTrue(metrics.getReceiveHitRatio() > 0);
+	}
+
+	@Test
+	public void scalingPolicy() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(40);
+		sendMessages(40);
+		this.container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+				try {
+					Thread.sleep(20);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				latch.countDown();
+			}
+		});
+		this.container.setMaxConcurrentConsumers(8);
+		AdaptiveConsumerScalingPolicy policy = new AdaptiveConsumerScalingPolicy();
+		policy.setScaleDownInterval(0);
+		this.container.setConsumerScalingPolicy(policy);
+		startContainer();
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(this.container.getConsumerMetrics().getScheduledConsumerCount() > 1);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.container.getScheduledConsumerCount() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, this.container.getScheduledConsumerCount());
+	}
+
+	@Test
+	public void concurrentReleasesKeepConcurrentConsumers() throws Exception {
+		this.container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+			}
+		});
+		this.container.setConcurrentConsumers(4);
+		this.container.setMaxConcurrentConsumers(4);
+		// Lets three idle consumers pass the release check at the same time.
+		this.container.setConsumerScalingPolicy(new ConsumerScalingPolicy() {
+			private int approvals = 0;
+			public int getConsumersToAdd(ConsumerMetrics metrics) {
+				return 0;
+			}
+			public boolean shouldReleaseConsumer(ConsumerMetrics metrics, int idleTaskExecutionCount) {
+				// Called while holding the lifecycle monitor: waiting releases it.
+				Object monitor = container.lifecycleMonitor;
+				if (this.approvals >= 3) {
+					return false;
+				}
+				this.approvals++;
+				monitor.notifyAll();
+				long deadline = System.currentTimeMillis() + 5000;
+				while (this.approvals < 3 && System.currentTimeMillis() < deadline) {
+					try {
+						monitor.wait(100);
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+		startContainer();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.container.getScheduledConsumerCount() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(4, this.container.getScheduledConsumerCount());
+		this.container.setConcurrentConsumers(2);
+
+		deadline = System.currentTimeMillis() + 10000;
+		while (this.container.getScheduledConsumerCount() > 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		// Give further (erroneous) releases a chance to happen.
+		Thread.sleep(500);
+		assertEquals(2, this.container.getScheduledConsumerCount());
+	}
+
+
+	private ConnectionFactory createConnectionFactory() throws JMSException {
+		Connection connection = createNiceMock(Connection.class);
+		expect(connection.createSession(anyBoolean(), anyInt())).andStubAnswer(new IAnswer<Session>() {
+			public Session answer() throws JMSException {
+				return createSession();
+			}
+		});
+		replay(connection);
+		ConnectionFactory connectionFactory = createMock(ConnectionFactory.class);
+		expect(connectionFactory.createConnection()).andStubReturn(connection);
+		replay(connectionFactory);
+		return connectionFactory;
+	}
+
+	private Session createSession() throws JMSException {
+		final List<Message> uncommitted = new ArrayList<Message>();
+		MessageConsumer consumer = createNiceMock(MessageConsumer.class);
+		expect(consumer.receive(anyLong())).andStubAnswer(new IAnswer<Message>() {
+			public Message answer() throws InterruptedException {
+				return receiveMessage((Long) getCurrentArguments()[0], uncommitted);
+			}
+		});
+		expect(consumer.receiveNoWait()).andStubAnswer(new IAnswer<Message>() {
+			public Message answer() throws InterruptedException {
+				return receiveMessage(-1, uncommitted);
+			}
+		});
+		replay(consumer);
+
+		Session session = createNiceMock(Session.class);
+		expect(session.getTransacted()).andStubReturn(true);
+		expect(session.createQueue(QUEUE_NAME)).andStubReturn(this.destination);
+		expect(session.createConsumer(isA(Destination.class), (String) isNull())).andStubReturn(consumer);
+		session.commit();
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				uncommitted.clear();
+				return null;
+			}
+		});
+		session.rollback();
+		expectLastCall().andStubAnswer(new IAnswer<Object>() {
+			public Object answer() {
+				synchronized (queue) {
+					redeliveredMessages.addAll(uncommitted);
+					queue.addAll(0, uncommitted);
+					queue.notifyAll();
+				}
+				uncommitted.clear();
+				return null;
+			}
+		});
+		replay(session);
+		return session;
+	}
+
+	private Message receiveMessage(long timeout, List<Message> uncommitted) throws InterruptedException {
+		synchronized (this.queue) {
+			long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (this.queue.isEmpty() && remaining > 0) {
+				this.queue.wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			if (this.queue.isEmpty()) {
+				return null;
+			}
+			Message message = this.queue.removeFirst();
+			uncommitted.add(message);
+			return message;
+		}
+	}
+
+	private void sendMessages(int count) throws JMSException {
+		synchronized (this.queue) {
+			for (int i = 0; i < count; i++) {
+				final TextMessage message = createNiceMock(TextMessage.class);
+				expect(message.getText()).andStubReturn("message" + i);
+				expect(message.getJMSRedelivered()).andStubAnswer(new IAnswer<Boolean>() {
+					public Boolean answer() {
+						return redeliveredMessages.contains(message);
+					}
+				});
+				replay(message);
+				this.queue.add(message);
+			}
+			this.queue.notifyAll();
+		}
+	}
+
+	private void startContainer() {
+		this.container.afterPropertiesSet();
+		this.container.start();
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2006 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.jms.support;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +35,7 @@ import javax.jms.TextMessage;
 import org.easymock.ArgumentsMatcher;
 import org.easymock.MockControl;
 import org.junit.Test;
+import org.springframework.jms.StubMessages;
 import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.jms.support.converter.SimpleMessageConverter;
 
@@ -169,6 +171,29 @@ public final class SimpleMessageConverterTests {
 		messageControl.verify();
 	}
 
+	@Test
+	public void testInputStreamConversion() throws JMSException {
+		MockControl sessionControl = MockControl.createControl(Session.class);
+		Session session = (Session) sessionControl.getMock();
+		BytesMessage message = StubMessages.createBytesMessage();
+
+		byte[] content = new byte[20000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+
+		session.createBytesMessage();
+		sessionControl.setReturnValue(message, 1);
+		sessionControl.replay();
+
+		SimpleMessageConverter converter = new SimpleMessageConverter();
+		Message msg = converter.toMessage(new ByteArrayInputStream(content), session);
+		assertSame(message, msg);
+		assertTrue(Arrays.equals(content, (byte[]) converter.fromMessage(msg)));
+
+		sessionControl.verify();
+	}
+
 	@Test(expected=MessageConversionException.class)
 	public void testToMessageThrowsExceptionIfGivenNullObjectToConvert() throws Exception {
 		new SimpleMessageConverter().toMessage(null, null);
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jms.StubMessages;
+import org.springframework.oxm.Marshaller;
+import org.springframework.oxm.Unmarshaller;
+import org.springframework.oxm.XmlMappingException;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @since 3.1
+ */
+public class StreamingMarshallingMessageConverterTests {
+
+	private StreamingMarshallingMessageConverter converter;
+
+	private Session sessionMock;
+
+	private String content;
+
+
+	@Before
+	public void setUp() {
+		this.converter = new StreamingMarshallingMessageConverter(new StringMarshaller());
+		this.sessionMock = createMock(Session.class);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; builder.length() < 3 * MessageBufferPool.DEFAULT_BUFFER_SIZE; i++) {
+			builder.append("content").append(i).append(' ');
+		}
+		this.content = builder.toString();
+	}
+
+
+	@Test
+	public void bytesMessageRoundTrip() throws Exception {
+		BytesMessage message = StubMessages.createBytesMessage();
+		expect(this.sessionMock.createBytesMessage()).andReturn(message);
+		replay(this.sessionMock);
+
+		Message result = this.converter.toMessage(this.content, this.sessionMock);
+		assertSame(message, result);
+		assertEquals(this.content.length(), message.getBodyLength());
+		assertEquals(this.content, this.converter.fromMessage(message));
+		verify(this.sessionMock);
+	}
+
+	@Test
+	public void streamMessageRoundTrip() throws Exception {
+		StreamMessage message = StubMessages.createStreamMessage();
+		expect(this.sessionMock.createStreamMessage()).andReturn(message);
+		replay(this.sessionMock);
+
+		this.converter.setTargetType(MessageType.STREAM);
+		Message result = this.converter.toMessage(this.content, this.sessionMock);
+		assertSame(message, result);
+		assertEquals(this.content, this.converter.fromMessage(message));
+		verify(this.sessionMock);
+	}
+
+	@Test
+	public void emptyBytesMessage() throws Exception {
+		BytesMessage message = StubMessages.createBytesMessage();
+		assertEquals("", this.converter.fromMessage(message));
+	}
+
+	@Test
+	public void bufferReusedAfterClose() throws Exception {
+		MessageBodyOutputStream out = new MessageBodyOutputStream(StubMessages.createBytesMessage());
+		out.write(1);
+		out.close();
+		byte[] buffer = MessageBufferPool.obtain();
+		MessageBufferPool.release(buffer);
+		assertSame(buffer, MessageBufferPool.obtain());
+		assertNotSame(buffer, MessageBufferPool.obtain());
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterClose() throws Exception {
+		OutputStream out = new MessageBodyOutputStream(StubMessages.createBytesMessage());
+		out.close();
+		out.write(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedMessageType() throws Exception {
+		this.converter.fromMessage(createMock(Message.class));
+	}
+
+
+	/**
+	 * Marshals Strings as plain UTF-8 content.
+	 */
+	private static class StringMarshaller implements Marshaller, Unmarshaller {
+
+		public boolean supports(Class<?> clazz) {
+			return String.class.equals(clazz);
+		}
+
+		public void marshal(Object graph, Result result) throws IOException, XmlMappingException {
+			OutputStream out = ((StreamResult) result).getOutputStream();
+			byte[] bytes = ((String) graph).getBytes("UTF-8");
+			// Write in small portions, as an XML writer would.
+			for (int i = 0; i < bytes.length; i += 100) {
+				out.write(bytes, i, Math.min(100, bytes.length - i));
+			}
+		}
+
+		public Object unmarshal(Source source) throws IOException, XmlMappingException {
+			InputStream in = ((StreamSource) source).getInputStream();
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1000];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				bos.write(buffer, 0, n);
+			}
+			return bos.toString("UTF-8");
+		}
+	}
+
+}
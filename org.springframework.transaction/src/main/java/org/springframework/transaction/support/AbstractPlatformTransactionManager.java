@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -527,13 +527,10 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	 */
 	protected void prepareSynchronization(DefaultTransactionStatus status, TransactionDefinition definition) {
 		if (status.isNewSynchronization()) {
-			TransactionSynchronizationManager.setActualTransactionActive(status.hasTransaction());
-			TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(
+			TransactionSynchronizationManager.initSynchronization(definition.getName(), definition.isReadOnly(),
 					(definition.getIsolationLevel() != TransactionDefinition.ISOLATION_DEFAULT) ?
-							definition.getIsolationLevel() : null);
-			TransactionSynchronizationManager.setCurrentTransactionReadOnly(definition.isReadOnly());
-			TransactionSynchronizationManager.setCurrentTransactionName(definition.getName());
-			TransactionSynchronizationManager.initSynchronization();
+							definition.getIsolationLevel() : null,
+					status.hasTransaction());
 		}
 	}
 
@@ -573,13 +570,10 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 					suspendedResources = doSuspend(transaction);
 				}
 				String name = TransactionSynchronizationManager.getCurrentTransactionName();
-				TransactionSynchronizationManager.setCurrentTransactionName(null);
 				boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
-				TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
 				Integer isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
-				TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(null);
 				boolean wasActive = TransactionSynchronizationManager.isActualTransactionActive();
-				TransactionSynchronizationManager.setActualTransactionActive(false);
+				TransactionSynchronizationManager.setCurrentTransactionCharacteristics(null, false, null, false);
 				return new SuspendedResourcesHolder(
 						suspendedResources, suspendedSynchronizations, name, readOnly, isolationLevel, wasActive);
 			}
@@ -625,10 +619,8 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			}
 			List<TransactionSynchronization> suspendedSynchronizations = resourcesHolder.suspendedSynchronizations;
 			if (suspendedSynchronizations != null) {
-				TransactionSynchronizationManager.setActualTransactionActive(resourcesHolder.wasActive);
-				TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(resourcesHolder.isolationLevel);
-				TransactionSynchronizationManager.setCurrentTransactionReadOnly(resourcesHolder.readOnly);
-				TransactionSynchronizationManager.setCurrentTransactionName(resourcesHolder.name);
+				TransactionSynchronizationManager.setCurrentTransactionCharacteristics(resourcesHolder.name,
+						resourcesHolder.readOnly, resourcesHolder.isolationLevel, resourcesHolder.wasActive);
 				doResumeSynchronization(suspendedSynchronizations);
 			}
 		}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holder for the transaction state that {@link TransactionSynchronizationManager}
+ * binds to a thread: transactional resources, transaction synchronizations and
+ * the characteristics of the current transaction, kept in a single object
+ * rather than in a separate ThreadLocal each.
+ *
+ * <p>A snapshot of the current thread's context can be obtained via
+ * {@link TransactionSynchronizationManager#getCurrentTransactionContext()}
+ * and bound to a different thread via
+ * {@link TransactionSynchronizationManager#setCurrentTransactionContext},
+ * e.g. for handing the current transaction's resources to an executor thread.
+ *
+ * @since 3.1
+ * @see TransactionSynchronizationManager
+ */
+public class TransactionContext {
+
+	/** Package-visible field for the bound resources; <code>null</code> if none */
+	Map<Object, Object> resources;
+
+	/** Package-visible field for the registered synchronizations; <code>null</code> if not active */
+	List<TransactionSynchronization> synchronizations;
+
+	/** Package-visible field for the current transaction name */
+	String transactionName;
+
+	/** Package-visible field for the current read-only flag */
+	boolean readOnly;
+
+	/** Package-visible field for the current isolation level */
+	Integer isolationLevel;
+
+	/** Package-visible field for the actual transaction active flag */
+	boolean actualTransactionActive;
+
+
+	/**
+	 * Create a new, empty TransactionContext.
+	 */
+	TransactionContext() {
+	}
+
+	/**
+	 * Create a new TransactionContext as a copy of the given context.
+	 * @param original the context to copy
+	 * @param includeSynchronizations whether to copy the registered
+	 * transaction synchronizations as well
+	 */
+	TransactionContext(TransactionContext original, boolean includeSynchronizations) {
+		if (original.resources != null) {
+			this.resources = new HashMap<Object, Object>(original.resources);
+		}
+		if (includeSynchronizations && original.synchronizations != null) {
+			this.synchronizations = new LinkedList<TransactionSynchronization>(original.synchronizations);
+		}
+		this.transactionName = original.transactionName;
+		this.readOnly = original.readOnly;
+		this.isolationLevel = original.isolationLevel;
+		this.actualTransactionActive = original.actualTransactionActive;
+	}
+
+
+	/**
+	 * Return the resources held by this context.
+	 * @return an unmodifiable Map with resource keys and resource values,
+	 * or an empty Map if there are no resources
+	 */
+	public Map<Object, Object> getResourceMap() {
+		return (this.resources != null ? Collections.unmodifiableMap(this.resources) :
+				Collections.<Object, Object>emptyMap());
+	}
+
+	/**
+	 * Return whether this context has transaction synchronization active.
+	 */
+	public boolean isSynchronizationActive() {
+		return (this.synchronizations != null);
+	}
+
+	/**
+	 * Return the name of the transaction, or <code>null</code> if none set.
+	 */
+	public String getTransactionName() {
+		return this.transactionName;
+	}
+
+	/**
+	 * Return whether the transaction is marked as read-only.
+	 */
+	public boolean isReadOnly() {
+		return this.readOnly;
+	}
+
+	/**
+	 * Return the isolation level of the transaction, or <code>null</code> if none.
+	 */
+	public Integer getIsolationLevel() {
+		return this.isolationLevel;
+	}
+
+	/**
+	 * Return whether there is an actual transaction active.
+	 */
+	public boolean isActualTransactionActive() {
+		return this.actualTransactionActive;
+	}
+
+	/**
+	 * Return whether this context does not hold any transaction state,
+	 * i.e. does not need to remain bound to its thread.
+	 */
+	boolean isEmpty() {
+		return (this.resources == null && this.synchronizations == null && this.transactionName == null &&
+				!this.readOnly && this.isolationLevel == null && !this.actualTransactionActive);
+	}
+
+}
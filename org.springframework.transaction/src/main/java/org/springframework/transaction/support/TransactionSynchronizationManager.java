@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -62,6 +62,10 @@ import org.springframework.util.Assert;
  * within a JTA transaction, e.g. a JDBC Connection or a Hibernate Session for
  * any given DataSource or SessionFactory, respectively.
  *
+ * <p>As of Spring 3.1, all of this state is kept in a single {@link TransactionContext}
+ * per thread, which can also be propagated to other threads: see
+ * {@link #getCurrentTransactionContext()} and {@link #setCurrentTransactionContext}.
+ *
  * @author Juergen Hoeller
  * @since 02.06.2003
  * @see #isSynchronizationActive
@@ -76,23 +80,37 @@ public abstract class TransactionSynchronizationManager {
 
 	private static final Log logger = LogFactory.getLog(TransactionSynchronizationManager.class);
 
-	private static final ThreadLocal<Map<Object, Object>> resources =
-			new NamedThreadLocal<Map<Object, Object>>("Transactional resources");
-
-	private static final ThreadLocal<List<TransactionSynchronization>> synchronizations =
-			new NamedThreadLocal<List<TransactionSynchronization>>("Transaction synchronizations");
-
-	private static final ThreadLocal<String> currentTransactionName =
-			new NamedThreadLocal<String>("Current transaction name");
+	private static final ThreadLocal<TransactionContext> transactionContext =
+			new NamedThreadLocal<TransactionContext>("Transaction context");
 
-	private static final ThreadLocal<Boolean> currentTransactionReadOnly =
-			new NamedThreadLocal<Boolean>("Current transaction read-only status");
 
-	private static final ThreadLocal<Integer> currentTransactionIsolationLevel =
-			new NamedThreadLocal<Integer>("Current transaction isolation level");
+	/**
+	 * Return the TransactionContext bound to the current thread.
+	 * @param create whether to create and bind a new context if none bound yet
+	 * @return the current context, or <code>null</code> if none bound
+	 * and <code>create</code> is <code>false</code>
+	 */
+	private static TransactionContext getContext(boolean create) {
+		TransactionContext context = transactionContext.get();
+		if (context == null && create) {
+			context = new TransactionContext();
+			transactionContext.set(context);
+		}
+		return context;
+	}
 
-	private static final ThreadLocal<Boolean> actualTransactionActive =
-			new NamedThreadLocal<Boolean>("Actual transaction active");
+	/**
+	 * Remove the given context from the current thread if it does not
+	 * hold any transaction state anymore.
+	 * <p>An empty context is deliberately not kept around for reuse by the next
+	 * transaction: A pooled thread would otherwise hold on to it indefinitely,
+	 * preventing the Spring class loader from being garbage-collected.
+	 */
+	private static void releaseContextIfEmpty(TransactionContext context) {
+		if (context.isEmpty()) {
+			transactionContext.remove();
+		}
+	}
 
 
 	//-------------------------------------------------------------------------
@@ -109,8 +127,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #hasResource
 	 */
 	public static Map<Object, Object> getResourceMap() {
-		Map<Object, Object> map = resources.get();
-		return (map != null ? Collections.unmodifiableMap(map) : Collections.emptyMap());
+		TransactionContext context = getContext(false);
+		return (context != null ? context.getResourceMap() : Collections.<Object, Object>emptyMap());
 	}
 
 	/**
@@ -146,7 +164,8 @@ public abstract class TransactionSynchronizationManager {
 	 * Actually check the value of the resource that is bound for the given key.
 	 */
 	private static Object doGetResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
+		TransactionContext context = getContext(false);
+		Map<Object, Object> map = (context != null ? context.resources : null);
 		if (map == null) {
 			return null;
 		}
@@ -169,11 +188,12 @@ public abstract class TransactionSynchronizationManager {
 	public static void bindResource(Object key, Object value) throws IllegalStateException {
 		Object actualKey = TransactionSynchronizationUtils.unwrapResourceIfNecessary(key);
 		Assert.notNull(value, "Value must not be null");
-		Map<Object, Object> map = resources.get();
-		// set ThreadLocal Map if none found
+		TransactionContext context = getContext(true);
+		Map<Object, Object> map = context.resources;
+		// set resource Map if none found
 		if (map == null) {
 			map = new HashMap<Object, Object>();
-			resources.set(map);
+			context.resources = map;
 		}
 		if (map.put(actualKey, value) != null) {
 			throw new IllegalStateException("Already value [" + map.get(actualKey) + "] for key [" +
@@ -216,14 +236,16 @@ public abstract class TransactionSynchronizationManager {
 	 * Actually remove the value of the resource that is bound for the given key.
 	 */
 	private static Object doUnbindResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
+		TransactionContext context = getContext(false);
+		Map<Object, Object> map = (context != null ? context.resources : null);
 		if (map == null) {
 			return null;
 		}
 		Object value = map.remove(actualKey);
-		// Remove entire ThreadLocal if empty...
+		// Remove entire resource Map if empty...
 		if (map.isEmpty()) {
-			resources.remove();
+			context.resources = null;
+			releaseContextIfEmpty(context);
 		}
 		if (value != null && logger.isTraceEnabled()) {
 			logger.trace("Removed value [" + value + "] for key [" + actualKey + "] from thread [" +
@@ -243,7 +265,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #registerSynchronization
 	 */
 	public static boolean isSynchronizationActive() {
-		return (synchronizations.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.synchronizations != null);
 	}
 
 	/**
@@ -252,11 +275,39 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if synchronization is already active
 	 */
 	public static void initSynchronization() throws IllegalStateException {
-		if (isSynchronizationActive()) {
+		TransactionContext context = getContext(true);
+		if (context.synchronizations != null) {
+			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
+		}
+		logger.trace("Initializing transaction synchronization");
+		context.synchronizations = new LinkedList<TransactionSynchronization>();
+	}
+
+	/**
+	 * Activate transaction synchronization for the current thread, exposing
+	 * the given characteristics of the current transaction along with it.
+	 * Equivalent to the individual setters followed by {@link #initSynchronization()},
+	 * but resolving the current thread's context only once.
+	 * @param name the name of the transaction, or <code>null</code> if none
+	 * @param readOnly whether the transaction is read-only
+	 * @param isolationLevel the isolation level to expose, or <code>null</code> if none
+	 * @param actualTransactionActive whether there is an actual transaction active
+	 * @throws IllegalStateException if synchronization is already active
+	 * @see AbstractPlatformTransactionManager#prepareSynchronization
+	 */
+	static void initSynchronization(String name, boolean readOnly, Integer isolationLevel,
+			boolean actualTransactionActive) throws IllegalStateException {
+
+		TransactionContext context = getContext(true);
+		if (context.synchronizations != null) {
 			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
 		}
 		logger.trace("Initializing transaction synchronization");
-		synchronizations.set(new LinkedList<TransactionSynchronization>());
+		context.transactionName = name;
+		context.readOnly = readOnly;
+		context.isolationLevel = isolationLevel;
+		context.actualTransactionActive = actualTransactionActive;
+		context.synchronizations = new LinkedList<TransactionSynchronization>();
 	}
 
 	/**
@@ -273,10 +324,11 @@ public abstract class TransactionSynchronizationManager {
 	    throws IllegalStateException {
 
 		Assert.notNull(synchronization, "TransactionSynchronization must not be null");
-		if (!isSynchronizationActive()) {
+		TransactionContext context = getContext(false);
+		if (context == null || context.synchronizations == null) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
-		synchronizations.get().add(synchronization);
+		context.synchronizations.add(synchronization);
 	}
 
 	/**
@@ -287,7 +339,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see TransactionSynchronization
 	 */
 	public static List<TransactionSynchronization> getSynchronizations() throws IllegalStateException {
-		List<TransactionSynchronization> synchs = synchronizations.get();
+		TransactionContext context = getContext(false);
+		List<TransactionSynchronization> synchs = (context != null ? context.synchronizations : null);
 		if (synchs == null) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
@@ -310,11 +363,13 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if synchronization is not active
 	 */
 	public static void clearSynchronization() throws IllegalStateException {
-		if (!isSynchronizationActive()) {
+		TransactionContext context = getContext(false);
+		if (context == null || context.synchronizations == null) {
 			throw new IllegalStateException("Cannot deactivate transaction synchronization - not active");
 		}
 		logger.trace("Clearing transaction synchronization");
-		synchronizations.remove();
+		context.synchronizations = null;
+		releaseContextIfEmpty(context);
 	}
 
 
@@ -329,7 +384,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getName()
 	 */
 	public static void setCurrentTransactionName(String name) {
-		currentTransactionName.set(name);
+		TransactionContext context = getContext(name != null);
+		if (context != null) {
+			context.transactionName = name;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -339,7 +398,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getName()
 	 */
 	public static String getCurrentTransactionName() {
-		return currentTransactionName.get();
+		TransactionContext context = getContext(false);
+		return (context != null ? context.transactionName : null);
 	}
 
 	/**
@@ -350,7 +410,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#isReadOnly()
 	 */
 	public static void setCurrentTransactionReadOnly(boolean readOnly) {
-		currentTransactionReadOnly.set(readOnly ? Boolean.TRUE : null);
+		TransactionContext context = getContext(readOnly);
+		if (context != null) {
+			context.readOnly = readOnly;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -366,7 +430,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see TransactionSynchronization#beforeCommit(boolean)
 	 */
 	public static boolean isCurrentTransactionReadOnly() {
-		return (currentTransactionReadOnly.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.readOnly);
 	}
 
 	/**
@@ -386,7 +451,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getIsolationLevel()
 	 */
 	public static void setCurrentTransactionIsolationLevel(Integer isolationLevel) {
-		currentTransactionIsolationLevel.set(isolationLevel);
+		TransactionContext context = getContext(isolationLevel != null);
+		if (context != null) {
+			context.isolationLevel = isolationLevel;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -407,7 +476,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getIsolationLevel()
 	 */
 	public static Integer getCurrentTransactionIsolationLevel() {
-		return currentTransactionIsolationLevel.get();
+		TransactionContext context = getContext(false);
+		return (context != null ? context.isolationLevel : null);
 	}
 
 	/**
@@ -417,7 +487,36 @@ public abstract class TransactionSynchronizationManager {
 	 * with an actual transaction; <code>false</code> to reset that marker
 	 */
 	public static void setActualTransactionActive(boolean active) {
-		actualTransactionActive.set(active ? Boolean.TRUE : null);
+		TransactionContext context = getContext(active);
+		if (context != null) {
+			context.actualTransactionActive = active;
+			releaseContextIfEmpty(context);
+		}
+	}
+
+	/**
+	 * Expose the given characteristics of the current transaction, or reset them.
+	 * Equivalent to the individual setters, but resolving the current thread's
+	 * context only once.
+	 * @param name the name of the transaction, or <code>null</code> to reset it
+	 * @param readOnly whether the transaction is read-only
+	 * @param isolationLevel the isolation level to expose, or <code>null</code> to reset it
+	 * @param actualTransactionActive whether there is an actual transaction active
+	 * @see AbstractPlatformTransactionManager#suspend
+	 * @see AbstractPlatformTransactionManager#resume
+	 */
+	static void setCurrentTransactionCharacteristics(String name, boolean readOnly, Integer isolationLevel,
+			boolean actualTransactionActive) {
+
+		boolean empty = (name == null && !readOnly && isolationLevel == null && !actualTransactionActive);
+		TransactionContext context = getContext(!empty);
+		if (context != null) {
+			context.transactionName = name;
+			context.readOnly = readOnly;
+			context.isolationLevel = isolationLevel;
+			context.actualTransactionActive = actualTransactionActive;
+			releaseContextIfEmpty(context);
+		}
 	}
 
 	/**
@@ -432,7 +531,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #isSynchronizationActive()
 	 */
 	public static boolean isActualTransactionActive() {
-		return (actualTransactionActive.get() != null);
+		TransactionContext context = getContext(false);
+		return (context != null && context.actualTransactionActive);
 	}
 
 
@@ -446,11 +546,63 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #setActualTransactionActive
 	 */
 	public static void clear() {
-		clearSynchronization();
-		setCurrentTransactionName(null);
-		setCurrentTransactionReadOnly(false);
-		setCurrentTransactionIsolationLevel(null);
-		setActualTransactionActive(false);
+		TransactionContext context = getContext(false);
+		if (context == null || context.synchronizations == null) {
+			throw new IllegalStateException("Cannot deactivate transaction synchronization - not active");
+		}
+		logger.trace("Clearing transaction synchronization");
+		context.synchronizations = null;
+		context.transactionName = null;
+		context.readOnly = false;
+		context.isolationLevel = null;
+		context.actualTransactionActive = false;
+		releaseContextIfEmpty(context);
+	}
+
+
+	//-------------------------------------------------------------------------
+	// Propagation of the transaction context to other threads
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Return a snapshot of the transaction context of the current thread,
+	 * to be bound to another thread via {@link #setCurrentTransactionContext}.
+	 * <p>The snapshot contains the bound resources and the characteristics of
+	 * the current transaction. Transaction synchronizations are not included:
+	 * They remain with the thread that drives the transaction, which is also
+	 * the thread that will complete it.
+	 * @return the snapshot, or <code>null</code> if there is no transaction
+	 * state bound to the current thread
+	 */
+	public static TransactionContext getCurrentTransactionContext() {
+		TransactionContext context = getContext(false);
+		return (context != null ? new TransactionContext(context, false) : null);
+	}
+
+	/**
+	 * Bind the given transaction context to the current thread, replacing
+	 * the current thread's transaction state (if any).
+	 * <p>Typically used for running a task within the transaction context of
+	 * the submitting thread, restoring the previous context - as returned by
+	 * this method - once the task has completed. A copy of the given context
+	 * gets bound, so the same snapshot may be bound to several threads.
+	 * <p>Note that the caller is responsible for the originating transaction
+	 * to outlive the task, and for bound resources such as JDBC Connections
+	 * not to be used by several threads at the same time.
+	 * @param context the context to bind, or <code>null</code> to reset
+	 * the transaction state of the current thread
+	 * @return the previously bound context, or <code>null</code> if none
+	 * @see #getCurrentTransactionContext()
+	 */
+	public static TransactionContext setCurrentTransactionContext(TransactionContext context) {
+		TransactionContext previousContext = getContext(false);
+		if (context != null && !context.isEmpty()) {
+			transactionContext.set(new TransactionContext(context, true));
+		}
+		else {
+			transactionContext.remove();
+		}
+		return previousContext;
 	}
 
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link TransactionContext} handling in
+ * {@link TransactionSynchronizationManager}.
+ *
+ * @since 3.1
+ */
+public class TransactionSynchronizationManagerTests {
+
+	@After
+	public void resetTransactionContext() {
+		TransactionSynchronizationManager.setCurrentTransactionContext(null);
+	}
+
+	@Test
+	public void contextReleasedWhenEmpty() {
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+
+		TransactionSynchronizationManager.bindResource("key", "value");
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setCurrentTransactionName("tx");
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(Connection.TRANSACTION_SERIALIZABLE);
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		assertNotNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+
+		TransactionSynchronizationManager.clear();
+		assertNotNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+		assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionIsolationLevel());
+
+		TransactionSynchronizationManager.unbindResource("key");
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+	@Test
+	public void characteristicsInitializedAndClearedInBulk() {
+		TransactionSynchronizationManager.initSynchronization("tx", true, Connection.TRANSACTION_SERIALIZABLE, true);
+		assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+		assertEquals("tx", TransactionSynchronizationManager.getCurrentTransactionName());
+		assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+		assertEquals(Connection.TRANSACTION_SERIALIZABLE,
+				TransactionSynchronizationManager.getCurrentTransactionIsolationLevel().intValue());
+		assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+		try {
+			TransactionSynchronizationManager.initSynchronization(null, false, null, false);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		TransactionSynchronizationManager.setCurrentTransactionCharacteristics(null, false, null, false);
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionName());
+		assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+		TransactionSynchronizationManager.setCurrentTransactionCharacteristics("tx", true, null, true);
+		assertEquals("tx", TransactionSynchronizationManager.getCurrentTransactionName());
+
+		TransactionSynchronizationManager.clear();
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+		try {
+			TransactionSynchronizationManager.clear();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void contextSnapshotExcludesSynchronizations() {
+		TransactionSynchronizationManager.bindResource("key", "value");
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {});
+		TransactionSynchronizationManager.setCurrentTransactionName("tx");
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		TransactionContext context = TransactionSynchronizationManager.getCurrentTransactionContext();
+		assertEquals("value", context.getResourceMap().get("key"));
+		assertFalse(context.isSynchronizationActive());
+		assertEquals("tx", context.getTransactionName());
+		assertTrue(context.isReadOnly());
+		assertNull(context.getIsolationLevel());
+		assertTrue(context.isActualTransactionActive());
+
+		TransactionSynchronizationManager.clear();
+		TransactionSynchronizationManager.unbindResource("key");
+	}
+
+	@Test
+	public void contextPropagatedToOtherThread() throws Exception {
+		TransactionSynchronizationManager.bindResource("key", "value");
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setCurrentTransactionName("tx");
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		final TransactionContext context = TransactionSynchronizationManager.getCurrentTransactionContext();
+
+		final Object[] result = new Object[6];
+		Thread thread = new Thread() {
+			public void run() {
+				TransactionContext previousContext = TransactionSynchronizationManager.setCurrentTransactionContext(context);
+				try {
+					result[0] = previousContext;
+					result[1] = TransactionSynchronizationManager.getResource("key");
+					result[2] = TransactionSynchronizationManager.getCurrentTransactionName();
+					result[3] = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+					result[4] = TransactionSynchronizationManager.isSynchronizationActive();
+					TransactionSynchronizationManager.bindResource("otherKey", "otherValue");
+				}
+				finally {
+					TransactionSynchronizationManager.setCurrentTransactionContext(previousContext);
+				}
+				result[5] = TransactionSynchronizationManager.getCurrentTransactionContext();
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertNull(result[0]);
+		assertEquals("value", result[1]);
+		assertEquals("tx", result[2]);
+		assertEquals(Boolean.TRUE, result[3]);
+		assertEquals(Boolean.FALSE, result[4]);
+		assertNull(result[5]);
+
+		// Binding on the other thread must not affect the original context or the snapshot
+		assertFalse(TransactionSynchronizationManager.hasResource("otherKey"));
+		assertFalse(context.getResourceMap().containsKey("otherKey"));
+		assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+
+		TransactionSynchronizationManager.clear();
+		TransactionSynchronizationManager.unbindResource("key");
+	}
+
+	@Test
+	public void previousContextRestoredWithSynchronizations() {
+		TransactionSynchronization synchronization = new TransactionSynchronizationAdapter() {};
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.registerSynchronization(synchronization);
+		TransactionSynchronizationManager.setCurrentTransactionName("outer");
+
+		TransactionContext otherContext = new TransactionContext();
+		otherContext.transactionName = "inner";
+		TransactionContext previousContext = TransactionSynchronizationManager.setCurrentTransactionContext(otherContext);
+		assertEquals("inner", TransactionSynchronizationManager.getCurrentTransactionName());
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+
+		assertSame(otherContext.transactionName,
+				TransactionSynchronizationManager.setCurrentTransactionContext(previousContext).transactionName);
+		assertEquals("outer", TransactionSynchronizationManager.getCurrentTransactionName());
+		assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+		assertSame(synchronization, TransactionSynchronizationManager.getSynchronizations().get(0));
+
+		TransactionSynchronizationManager.clear();
+		assertNull(TransactionSynchronizationManager.getCurrentTransactionContext());
+	}
+
+}
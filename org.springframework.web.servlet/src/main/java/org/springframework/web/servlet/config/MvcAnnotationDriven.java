@@ -61,7 +61,9 @@ import org.springframework.web.bind.support.WebArgumentResolver;
  *   classpath</em>, the {@link MappingJacksonHttpMessageConverter} <em>assuming Jackson
  *   is present on the classpath</em>, and the {@link AtomFeedHttpMessageConverter} and the
  *   {@link RssChannelHttpMessageConverter} converters <em>assuming Rome is present on
- *   the classpath</em>.
+ *   the classpath</em>. {@link org.springframework.http.converter.ElementStream ElementStream}
+ *   return values are written incrementally as text, and as XML or JSON under the same
+ *   classpath conditions.
  * <li>Optionally, custom {@code WebArgumentResolver} beans to use for resolving 
  * 	custom arguments to	handler methods. These are typically implemented to detect 
  * 	special parameter types, resolving well-known argument values for them.
@@ -28,10 +28,13 @@ import org.springframework.format.support.FormattingConversionServiceFactoryBean
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.http.converter.StringElementStreamHttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.converter.feed.AtomFeedHttpMessageConverter;
 import org.springframework.http.converter.feed.RssChannelHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonElementStreamHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+import org.springframework.http.converter.xml.Jaxb2ElementStreamHttpMessageConverter;
 import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
 import org.springframework.http.converter.xml.SourceHttpMessageConverter;
 import org.springframework.http.converter.xml.XmlAwareFormHttpMessageConverter;
@@ -200,11 +203,16 @@ final class MvcAnnotationDrivenExecutor extends AbstractSpecificationExecutor<Mv
 			messageConverters.add(createConverterBeanDefinition(ResourceHttpMessageConverter.class, source));
 			messageConverters.add(createConverterBeanDefinition(SourceHttpMessageConverter.class, source));
 			messageConverters.add(createConverterBeanDefinition(XmlAwareFormHttpMessageConverter.class, source));
+			messageConverters.add(createConverterBeanDefinition(StringElementStreamHttpMessageConverter.class, source));
 			if (jaxb2Present) {
+				messageConverters
+						.add(createConverterBeanDefinition(Jaxb2ElementStreamHttpMessageConverter.class, source));
 				messageConverters
 						.add(createConverterBeanDefinition(Jaxb2RootElementHttpMessageConverter.class, source));
 			}
 			if (jacksonPresent) {
+				messageConverters.add(
+						createConverterBeanDefinition(MappingJacksonElementStreamHttpMessageConverter.class, source));
 				messageConverters.add(createConverterBeanDefinition(MappingJacksonHttpMessageConverter.class, source));
 			}
 			if (romePresent) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Versioning strategy for static resources that embeds an MD5 hash of the resource content
+ * in the resource path, e.g. {@code "css/main.css"} becomes
+ * {@code "css/main-e36d2e05253c6c7085a91522ce43a0b4.css"}.
+ *
+ * <p>Since the path changes whenever the content changes, responses for versioned paths can
+ * safely be cached by clients for a long time (see
+ * {@link ResourceHttpRequestHandler#setVersionedCacheSeconds}).
+ *
+ * <p>Computed hashes are cached per resource, and recomputed when the resource's
+ * last-modified timestamp changes.
+ *
+ * @since 3.1
+ * @see ResourceHttpRequestHandler#setVersionStrategy
+ * @see ResourceUrlProvider
+ */
+public class ContentVersionStrategy {
+
+	private static final Pattern VERSION_PATTERN = Pattern.compile("-([0-9a-f]{32})(?:\\.[^./]*)?$");
+
+
+	private final Map<Resource, CachedVersion> versionCache = new ConcurrentHashMap<Resource, CachedVersion>();
+
+
+	/**
+	 * Return the version of the given resource, i.e. the hexadecimal MD5 hash of its content.
+	 * @param resource the resource to return the version for
+	 * @return the version
+	 * @throws IOException in case of I/O errors while reading the resource
+	 */
+	public String getResourceVersion(Resource resource) throws IOException {
+		long lastModified = getLastModified(resource);
+		CachedVersion cachedVersion = this.versionCache.get(resource);
+		if (cachedVersion == null || cachedVersion.lastModified != lastModified) {
+			InputStream inputStream = resource.getInputStream();
+			try {
+				cachedVersion = new CachedVersion(DigestUtils.md5DigestAsHex(inputStream), lastModified);
+			}
+			finally {
+				inputStream.close();
+			}
+			this.versionCache.put(resource, cachedVersion);
+		}
+		return cachedVersion.version;
+	}
+
+	private long getLastModified(Resource resource) {
+		try {
+			return resource.lastModified();
+		}
+		catch (IOException ex) {
+			// no timestamp available, e.g. for in-memory resources
+			return -1;
+		}
+	}
+
+	/**
+	 * Extract the version from the given request path, if any.
+	 * @param requestPath the request path to check
+	 * @return the version, or <code>null</code> if the path is not versioned
+	 */
+	public String extractVersion(String requestPath) {
+		Matcher matcher = VERSION_PATTERN.matcher(requestPath);
+		return (matcher.find() ? matcher.group(1) : null);
+	}
+
+	/**
+	 * Remove the given version from the given request path.
+	 * @param requestPath the versioned request path
+	 * @param version the version, as returned by {@link #extractVersion}
+	 * @return the path without version
+	 */
+	public String removeVersion(String requestPath, String version) {
+		int index = requestPath.lastIndexOf("-" + version);
+		return requestPath.substring(0, index) + requestPath.substring(index + version.length() + 1);
+	}
+
+	/**
+	 * Add the given version to the given request path, in front of the file extension.
+	 * @param requestPath the request path
+	 * @param version the version to add
+	 * @return the versioned path
+	 */
+	public String addVersion(String requestPath, String version) {
+		String extension = StringUtils.getFilenameExtension(requestPath);
+		if (extension == null) {
+			return requestPath + "-" + version;
+		}
+		return StringUtils.stripFilenameExtension(requestPath) + "-" + version + "." + extension;
+	}
+
+
+	/**
+	 * Version of a resource along with the last-modified timestamp it was computed for.
+	 */
+	private static class CachedVersion {
+
+		private final String version;
+
+		private final long lastModified;
+
+		private CachedVersion(String version, long lastModified) {
+			this.version = version;
+			this.lastModified = lastModified;
+		}
+	}
+
+}
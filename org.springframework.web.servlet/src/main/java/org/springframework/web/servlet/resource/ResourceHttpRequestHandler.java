@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,17 @@
 
 package org.springframework.web.servlet.resource;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -26,6 +35,7 @@ import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.util.Assert;
 import org.springframework.util.FileCopyUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.HttpRequestHandler;
 import org.springframework.web.context.request.ServletWebRequest;
@@ -53,6 +63,17 @@ import org.springframework.web.servlet.support.WebContentGenerator;
  * is used in the URL  mapping pattern that selects this handler. Such patterns can be easily parameterized
  * using Spring EL. See the reference manual for further examples of this approach.
  *
+ * <p>Beyond that, the handler supports single byte ranges ({@code Range} and {@code If-Range} headers),
+ * strong {@code ETag} validators, {@linkplain #setGzipEnabled precompressed ".gz" variants} selected by
+ * {@code Accept-Encoding}, and a {@linkplain #setCacheResources cache} of resolved resources and their
+ * metadata. Content of file-system resources is transferred through a {@link FileChannel}, or handed
+ * off to the container for {@linkplain #setUseSendfile zero-copy transfer} where the container allows it.
+ *
+ * <p>As an alternative to a version string in the mapping pattern, a {@link ContentVersionStrategy}
+ * can be {@linkplain #setVersionStrategy configured} to serve resources under paths that contain a hash
+ * of their content. Responses for such paths are cached for a {@linkplain #setVersionedCacheSeconds long time},
+ * and links to them can be generated through {@link #getVersionedPath} or {@link ResourceUrlProvider}.
+ *
  * <p>Rather than being directly configured as a bean, this handler will typically be configured
  * through use of the {@code <mvc:resources/>} XML configuration element.
  *
@@ -63,8 +84,63 @@ import org.springframework.web.servlet.support.WebContentGenerator;
  */
 public class ResourceHttpRequestHandler extends WebContentGenerator implements HttpRequestHandler {
 
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+	private static final String HEADER_IF_RANGE = "If-Range";
+
+	private static final String HEADER_RANGE = "Range";
+
+	private static final String HEADER_VARY = "Vary";
+
+	private static final String GZIP_ENCODING = "gzip";
+
+	private static final String GZIP_SUFFIX = ".gz";
+
+	private static final String BYTES_UNIT = "bytes";
+
+	private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+	/** Maximum number of request paths to keep in the resource cache */
+	private static final int CACHE_LIMIT = 1024;
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
+	/** One year, in seconds */
+	private static final int DEFAULT_VERSIONED_CACHE_SECONDS = 31536000;
+
+
 	private List<Resource> locations;
 
+	private boolean cacheResources = false;
+
+	private boolean gzipEnabled = false;
+
+	private boolean useSendfile = false;
+
+	private ContentVersionStrategy versionStrategy;
+
+	private int versionedCacheSeconds = DEFAULT_VERSIONED_CACHE_SECONDS;
+
+	private final Map<String, ResourceEntry> resourceCache = new ConcurrentHashMap<String, ResourceEntry>();
+
+	/** Whether a subclass overrides the pre-3.1 setHeaders variant, which needs to be called then */
+	private final boolean legacySetHeadersOverridden = ReflectionUtils.isOverridden(getClass(),
+			ResourceHttpRequestHandler.class, "setHeaders", HttpServletResponse.class, Resource.class, MediaType.class);
+
 
 	public ResourceHttpRequestHandler() {
 		super(METHOD_GET, METHOD_HEAD);
@@ -79,6 +155,67 @@ public class ResourceHttpRequestHandler extends WebContentGenerator implements H
 		this.locations = locations;
 	}
 
+	/**
+	 * Set whether to cache resolved resources along with their metadata (media type, content length,
+	 * last-modified timestamp, ETag and precompressed variant), keyed by request path.
+	 * <p>Default is "false", resolving resources against the configured locations for every request.
+	 * Switch this to "true" when resources do not change while the application is running,
+	 * typically in production.
+	 */
+	public void setCacheResources(boolean cacheResources) {
+		this.cacheResources = cacheResources;
+		this.resourceCache.clear();
+	}
+
+	/**
+	 * Set whether to serve a precompressed variant of a resource, i.e. a resource with the same name
+	 * plus a ".gz" suffix next to the original, to clients that accept the {@code gzip} content encoding.
+	 * <p>Default is "false".
+	 */
+	public void setGzipEnabled(boolean gzipEnabled) {
+		this.gzipEnabled = gzipEnabled;
+		this.resourceCache.clear();
+	}
+
+	/**
+	 * Set whether to let the container send the content of file-system resources, if it indicates
+	 * support for this through the {@code org.apache.tomcat.sendfile.support} request attribute
+	 * (e.g. Tomcat's NIO and APR connectors). The container can then transfer the file straight from
+	 * the file system cache to the socket.
+	 * <p>Default is "false". Note that {@link #writeContent} is not called for content sent this way.
+	 */
+	public void setUseSendfile(boolean useSendfile) {
+		this.useSendfile = useSendfile;
+	}
+
+	/**
+	 * Set the strategy for serving resources under versioned paths, i.e. paths that contain a hash
+	 * of the resource content such as "css/main-e36d2e05253c6c7085a91522ce43a0b4.css".
+	 * <p>Default is none. Resources remain accessible through their plain paths in any case.
+	 * @see #getVersionedPath
+	 */
+	public void setVersionStrategy(ContentVersionStrategy versionStrategy) {
+		this.versionStrategy = versionStrategy;
+		this.resourceCache.clear();
+	}
+
+	/**
+	 * Return the strategy for serving resources under versioned paths, if any.
+	 */
+	public ContentVersionStrategy getVersionStrategy() {
+		return this.versionStrategy;
+	}
+
+	/**
+	 * Set the number of seconds that responses for versioned paths may be cached for.
+	 * Such responses do not change, since a change in content results in a different path.
+	 * <p>Default is one year. This setting applies instead of the
+	 * {@linkplain #setCacheSeconds "cacheSeconds" property} for versioned paths.
+	 */
+	public void setVersionedCacheSeconds(int versionedCacheSeconds) {
+		this.versionedCacheSeconds = versionedCacheSeconds;
+	}
+
 
 	/**
 	 * Processes a resource request.
@@ -87,22 +224,116 @@ public class ResourceHttpRequestHandler extends WebContentGenerator implements H
 	 * If the resource exists, the request will be checked for the presence of the
 	 * {@code Last-Modified} header, and its value will be compared against the last-modified
 	 * timestamp of the given resource, returning a {@code 304} status code if the
-	 * {@code Last-Modified} value  is greater. If the resource is newer than the
+	 * {@code Last-Modified} value  is greater. The same applies to an {@code If-None-Match}
+	 * header matching the resource's ETag. If the resource is newer than the
 	 * {@code Last-Modified} value, or the header is not present, the content resource
 	 * of the resource will be written to the response with caching headers
-	 * set to expire one year in the future.
+	 * set to expire one year in the future. A {@code Range} header selecting a single
+	 * byte range results in a {@code 206} response with the requested part of the content.
+	 * <p>Versioned paths are served with the {@linkplain #setVersionedCacheSeconds "versionedCacheSeconds"}
+	 * caching headers, provided that the version matches the current content of the resource.
 	 */
 	public void handleRequest(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		checkAndPrepare(request, response, true);
-
 		// check whether a matching resource exists
+		ResourceEntry entry = getResourceEntry(request);
+		if (entry != null && entry.versioned) {
+			checkAndPrepare(request, response, this.versionedCacheSeconds, false);
+		}
+		else {
+			checkAndPrepare(request, response, true);
+		}
+		if (entry == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		ResourceVariant variant = entry.getVariant(request);
+
+		// header phase
+		ServletWebRequest webRequest = new ServletWebRequest(request, response);
+		if (webRequest.checkNotModified(variant.lastModified) || webRequest.checkNotModified(variant.eTag)) {
+			logger.debug("Resource not modified - returning 304");
+			return;
+		}
+		long[] range = getRequestedRange(request, variant);
+		if (range == UNSATISFIABLE_RANGE) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Requested range [" + request.getHeader(HEADER_RANGE) + "] not satisfiable - returning 416");
+			}
+			response.setHeader(HEADER_CONTENT_RANGE, BYTES_UNIT + " */" + variant.contentLength);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		}
+		if (this.legacySetHeadersOverridden) {
+			setHeaders(response, variant.resource, entry.mediaType);
+		}
+		else {
+			setHeaders(response, variant.resource, variant.contentLength, entry.mediaType);
+		}
+		response.setHeader(HEADER_ACCEPT_RANGES, BYTES_UNIT);
+		if (entry.gzipped != null) {
+			response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		}
+		if (variant.gzipped) {
+			response.setHeader(HEADER_CONTENT_ENCODING, GZIP_ENCODING);
+		}
+		long start = 0;
+		long length = variant.contentLength;
+		if (range != null) {
+			start = range[0];
+			length = range[1] - range[0] + 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader(HEADER_CONTENT_RANGE,
+					BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + variant.contentLength);
+			response.setContentLength((int) length);
+		}
+
+		// content phase
+		if (METHOD_HEAD.equals(request.getMethod())) {
+			logger.trace("HEAD request - skipping content");
+			return;
+		}
+		if (this.useSendfile && variant.file != null &&
+				Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Handing off " + variant.file + " to container for sendfile");
+			}
+			request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, variant.file.getAbsolutePath());
+			request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+			request.setAttribute(SENDFILE_END_ATTRIBUTE, start + length);
+		}
+		else if (range != null) {
+			writeContent(response, variant.resource, start, length);
+		}
+		else {
+			writeContent(response, variant.resource);
+		}
+	}
+
+	/**
+	 * Look up the resource entry for the given request in the cache, or resolve it.
+	 * @return the resource entry, or <code>null</code> if no matching resource was found
+	 */
+	private ResourceEntry getResourceEntry(HttpServletRequest request) throws IOException {
+		String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+		ResourceEntry entry = (this.cacheResources && path != null ? this.resourceCache.get(path) : null);
+		if (entry != null) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Found cached resource for path [" + path + "]: " + entry.identity.resource);
+			}
+			return entry;
+		}
+
 		Resource resource = getResource(request);
+		boolean versioned = false;
+		if (resource == null && this.versionStrategy != null) {
+			resource = getVersionedResource(path);
+			versioned = (resource != null);
+		}
 		if (resource == null) {
 			logger.debug("No matching resource found - returning 404");
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-			return;
+			return null;
 		}
 
 		// check the resource's media type
@@ -116,23 +347,72 @@ public class ResourceHttpRequestHandler extends WebContentGenerator implements H
 			if (logger.isDebugEnabled()) {
 				logger.debug("No media type found for " + resource + " - returning 404");
 			}
-			response.sendError(HttpServletResponse.SC_NOT_FOUND);
-			return;
+			return null;
 		}
 
-		// header phase
-		if (new ServletWebRequest(request, response).checkNotModified(resource.lastModified())) {
-			logger.debug("Resource not modified - returning 304");
-			return;
+		Resource gzippedResource = (this.gzipEnabled ? getGzippedResource(resource) : null);
+		entry = new ResourceEntry(mediaType, createVariant(resource, false),
+				(gzippedResource != null ? createVariant(gzippedResource, true) : null), versioned);
+		if (this.cacheResources && path != null && this.resourceCache.size() < CACHE_LIMIT) {
+			this.resourceCache.put(path, entry);
 		}
-		setHeaders(response, resource, mediaType);
+		return entry;
+	}
 
-		// content phase
-		if (METHOD_HEAD.equals(request.getMethod())) {
-			logger.trace("HEAD request - skipping content");
-			return;
+	private ResourceVariant createVariant(Resource resource, boolean gzipped) throws IOException {
+		long contentLength = resource.contentLength();
+		long lastModified = resource.lastModified();
+		String eTag = generateETag(resource, contentLength, lastModified);
+		File file = null;
+		try {
+			file = resource.getFile();
+		}
+		catch (IOException ex) {
+			// not resolvable in the file system, e.g. within a jar
 		}
-		writeContent(response, resource);
+		return new ResourceVariant(resource, file, contentLength, lastModified, eTag, gzipped);
+	}
+
+	/**
+	 * Resolve the resource for the given versioned path, if the version matches the resource's content.
+	 * @return the resource, or <code>null</code> if the path is not versioned or the version is outdated
+	 */
+	private Resource getVersionedResource(String path) throws IOException {
+		String version = this.versionStrategy.extractVersion(path);
+		if (version == null) {
+			return null;
+		}
+		Resource resource = findResource(this.versionStrategy.removeVersion(path, version));
+		if (resource == null) {
+			return null;
+		}
+		if (!version.equals(this.versionStrategy.getResourceVersion(resource))) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Version [" + version + "] in path [" + path + "] does not match content of " + resource);
+			}
+			return null;
+		}
+		return resource;
+	}
+
+	/**
+	 * Return the versioned variant of the given resource path, according to the configured
+	 * {@link ContentVersionStrategy}.
+	 * @param path the resource path, relative to the configured locations
+	 * @return the versioned path, or <code>null</code> if no version strategy is configured
+	 * or no resource exists for the given path
+	 * @throws IOException in case of I/O errors while determining the version
+	 * @see #setVersionStrategy
+	 */
+	public String getVersionedPath(String path) throws IOException {
+		if (this.versionStrategy == null) {
+			return null;
+		}
+		Resource resource = findResource(path);
+		if (resource == null) {
+			return null;
+		}
+		return this.versionStrategy.addVersion(path, this.versionStrategy.getResourceVersion(resource));
 	}
 
 	protected Resource getResource(HttpServletRequest request) {
@@ -141,7 +421,13 @@ public class ResourceHttpRequestHandler extends WebContentGenerator implements H
 			throw new IllegalStateException("Required request attribute '" +
 					HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE + "' is not set");
 		}
+		return findResource(path);
+	}
 
+	/**
+	 * Find a readable resource for the given path in the configured locations.
+	 */
+	private Resource findResource(String path) {
 		if (!StringUtils.hasText(path) || path.contains("WEB-INF") || path.contains("META-INF")) {
 			if (logger.isDebugEnabled()) {
 				logger.debug("Ignoring invalid resource path [" + path + "]");
@@ -187,27 +473,291 @@ public class ResourceHttpRequestHandler extends WebContentGenerator implements H
 	 * Called for GET requests as well as HEAD requests.
 	 * @param response current servlet response
 	 * @param resource the identified resource (never <code>null</code>)
+	 * @param contentLength the resource's content length, as cached along with the resource
 	 * @param mediaType the resource's media type (never <code>null</code>)
 	 * @throws IOException in case of errors while setting the headers
+	 * @since 3.1
 	 */
-	protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType) throws IOException {
-		long length = resource.contentLength();
-		if (length > Integer.MAX_VALUE) {
+	protected void setHeaders(HttpServletResponse response, Resource resource, long contentLength,
+			MediaType mediaType) throws IOException {
+
+		if (contentLength > Integer.MAX_VALUE) {
 			throw new IOException("Resource content too long (beyond Integer.MAX_VALUE): " + resource);
 		}
-		response.setContentLength((int) length);
+		response.setContentLength((int) contentLength);
 		response.setContentType(mediaType.toString());
 	}
 
+	/**
+	 * Set headers on the given servlet response.
+	 * @param response current servlet response
+	 * @param resource the identified resource (never <code>null</code>)
+	 * @param mediaType the resource's media type (never <code>null</code>)
+	 * @throws IOException in case of errors while setting the headers
+	 * @deprecated as of Spring 3.1, in favor of {@link #setHeaders(HttpServletResponse, Resource, long, MediaType)},
+	 * which reuses the cached content length instead of determining it for every request;
+	 * only called by {@link #handleRequest} if overridden by a subclass
+	 */
+	@Deprecated
+	protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType) throws IOException {
+		setHeaders(response, resource, resource.contentLength(), mediaType);
+	}
+
+	/**
+	 * Find a precompressed variant of the given resource, i.e. a resource with the same name
+	 * plus a ".gz" suffix in the same location.
+	 * @param resource the identified resource (never <code>null</code>)
+	 * @return the gzipped variant, or <code>null</code> if none found
+	 */
+	protected Resource getGzippedResource(Resource resource) {
+		try {
+			Resource gzipped = resource.createRelative(resource.getFilename() + GZIP_SUFFIX);
+			if (gzipped.exists() && gzipped.isReadable()) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Found gzipped variant: " + gzipped);
+				}
+				return gzipped;
+			}
+		}
+		catch (IOException ex) {
+			logger.debug("Failed to create relative gzipped resource - serving uncompressed content only", ex);
+		}
+		return null;
+	}
+
+	/**
+	 * Generate the ETag header value for the given resource.
+	 * <p>The default implementation derives a strong ETag from the content length and the
+	 * last-modified timestamp, which change whenever the resource is replaced.
+	 * @param resource the identified resource (never <code>null</code>)
+	 * @param contentLength the content length of the resource
+	 * @param lastModified the last-modified timestamp of the resource
+	 * @return the ETag header value, including quotes
+	 */
+	protected String generateETag(Resource resource, long contentLength, long lastModified) {
+		return "\"" + Long.toHexString(contentLength) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	/**
+	 * Determine the byte range requested by the given GET request, if any and if still valid
+	 * according to an {@code If-Range} header. Requests for multiple ranges are served the full content.
+	 * @return the first and last byte position (inclusive), <code>null</code> for the full content,
+	 * or {@link #UNSATISFIABLE_RANGE}
+	 */
+	private long[] getRequestedRange(HttpServletRequest request, ResourceVariant variant) {
+		String rangeHeader = request.getHeader(HEADER_RANGE);
+		if (rangeHeader == null || !METHOD_GET.equals(request.getMethod()) ||
+				!rangeHeader.startsWith(BYTES_UNIT + "=") || rangeHeader.indexOf(',') != -1) {
+			return null;
+		}
+		String ifRange = request.getHeader(HEADER_IF_RANGE);
+		if (ifRange != null) {
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+				if (!ifRange.equals(variant.eTag)) {
+					return null;
+				}
+			}
+			else {
+				try {
+					if (request.getDateHeader(HEADER_IF_RANGE) != variant.lastModified / 1000 * 1000) {
+						return null;
+					}
+				}
+				catch (IllegalArgumentException ex) {
+					return null;
+				}
+			}
+		}
+		String rangeSpec = rangeHeader.substring(BYTES_UNIT.length() + 1).trim();
+		int dashIndex = rangeSpec.indexOf('-');
+		if (dashIndex == -1) {
+			return null;
+		}
+		long length = variant.contentLength;
+		try {
+			String first = rangeSpec.substring(0, dashIndex).trim();
+			String last = rangeSpec.substring(dashIndex + 1).trim();
+			long start;
+			long end;
+			if (first.length() == 0) {
+				// suffix range: the last N bytes
+				long suffixLength = Long.parseLong(last);
+				start = (suffixLength > 0 ? Math.max(length - suffixLength, 0) : length);
+				end = length - 1;
+			}
+			else {
+				start = Long.parseLong(first);
+				end = (last.length() > 0 ? Long.parseLong(last) : length - 1);
+				if (end < start) {
+					// syntactically invalid: ignore the Range header
+					return null;
+				}
+			}
+			if (start >= length) {
+				return UNSATISFIABLE_RANGE;
+			}
+			return new long[] {start, Math.min(end, length - 1)};
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
 	/**
 	 * Write the actual content out to the given servlet response,
 	 * streaming the resource's content.
+	 * <p>The default implementation delegates to {@link #writeContent(HttpServletResponse, Resource, long, long)}
+	 * for the entire content.
 	 * @param response current servlet response
 	 * @param resource the identified resource (never <code>null</code>)
 	 * @throws IOException in case of errors while writing the content
 	 */
 	protected void writeContent(HttpServletResponse response, Resource resource) throws IOException {
-		FileCopyUtils.copy(resource.getInputStream(), response.getOutputStream());
+		writeContent(response, resource, 0, -1);
+	}
+
+	/**
+	 * Write the given part of the content out to the given servlet response.
+	 * <p>Resources that can be resolved in the file system are transferred through a {@link FileChannel};
+	 * the content of other resources is streamed.
+	 * @param response current servlet response
+	 * @param resource the identified resource (never <code>null</code>)
+	 * @param start the position of the first byte to write
+	 * @param length the number of bytes to write, or -1 for all content from the start position
+	 * @throws IOException in case of errors while writing the content
+	 */
+	protected void writeContent(HttpServletResponse response, Resource resource, long start, long length)
+			throws IOException {
+
+		File file = null;
+		try {
+			file = resource.getFile();
+		}
+		catch (IOException ex) {
+			// not resolvable in the file system - stream the content instead
+		}
+		if (file != null) {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+				long position = start;
+				long end = (length >= 0 ? start + length : channel.size());
+				while (position < end) {
+					long transferred = channel.transferTo(position, end - position, out);
+					if (transferred <= 0) {
+						break;
+					}
+					position += transferred;
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		else if (start == 0 && length < 0) {
+			FileCopyUtils.copy(resource.getInputStream(), response.getOutputStream());
+		}
+		else {
+			InputStream in = resource.getInputStream();
+			try {
+				long skipped = 0;
+				while (skipped < start) {
+					long count = in.skip(start - skipped);
+					if (count <= 0) {
+						throw new IOException("Failed to skip to position " + start + " of " + resource);
+					}
+					skipped += count;
+				}
+				OutputStream out = response.getOutputStream();
+				byte[] buffer = new byte[BUFFER_SIZE];
+				long remaining = (length >= 0 ? length : Long.MAX_VALUE);
+				while (remaining > 0) {
+					int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (bytesRead == -1) {
+						break;
+					}
+					out.write(buffer, 0, bytesRead);
+					remaining -= bytesRead;
+				}
+				out.flush();
+			}
+			finally {
+				in.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Resolved resource with its media type and, if available, its precompressed variant.
+	 * Resources resolved through a versioned path are flagged as such.
+	 */
+	private static class ResourceEntry {
+
+		private final MediaType mediaType;
+
+		private final ResourceVariant identity;
+
+		private final ResourceVariant gzipped;
+
+		private final boolean versioned;
+
+		private ResourceEntry(MediaType mediaType, ResourceVariant identity, ResourceVariant gzipped,
+				boolean versioned) {
+			this.mediaType = mediaType;
+			this.identity = identity;
+			this.gzipped = gzipped;
+			this.versioned = versioned;
+		}
+
+		/**
+		 * Select the gzipped variant if available and accepted by the client.
+		 */
+		private ResourceVariant getVariant(HttpServletRequest request) {
+			if (this.gzipped != null) {
+				String acceptEncoding = request.getHeader(HEADER_ACCEPT_ENCODING);
+				if (acceptEncoding != null) {
+					for (String coding : StringUtils.commaDelimitedListToStringArray(acceptEncoding)) {
+						String[] parts = StringUtils.tokenizeToStringArray(coding, ";");
+						if (parts.length > 0 && GZIP_ENCODING.equalsIgnoreCase(parts[0]) &&
+								(parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?"))) {
+							return this.gzipped;
+						}
+					}
+				}
+			}
+			return this.identity;
+		}
+	}
+
+
+	/**
+	 * Metadata for a single representation of a resource.
+	 */
+	private static class ResourceVariant {
+
+		private final Resource resource;
+
+		private final File file;
+
+		private final long contentLength;
+
+		private final long lastModified;
+
+		private final String eTag;
+
+		private final boolean gzipped;
+
+		private ResourceVariant(Resource resource, File file, long contentLength, long lastModified,
+				String eTag, boolean gzipped) {
+			this.resource = resource;
+			this.file = file;
+			this.contentLength = contentLength;
+			this.lastModified = lastModified;
+			this.eTag = eTag;
+			this.gzipped = gzipped;
+		}
 	}
 
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Filter that wraps the {@link HttpServletResponse} and overrides its
+ * {@link HttpServletResponse#encodeURL encodeURL} method in order to translate
+ * resource URLs into versioned URLs through a {@link ResourceUrlProvider}.
+ *
+ * <p>This covers URLs rendered through the {@code <spring:url>} tag as well as
+ * {@link org.springframework.web.servlet.support.RequestContext#getContextUrl}.
+ * The {@code ResourceUrlProvider} is obtained from the {@link DispatcherServlet}'s
+ * application context when the first URL of a request is encoded; URLs are
+ * left as they are if there is none.
+ *
+ * @since 3.1
+ */
+public class ResourceUrlEncodingFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		filterChain.doFilter(request, new ResourceUrlEncodingResponseWrapper(request, response));
+	}
+
+
+	private static class ResourceUrlEncodingResponseWrapper extends HttpServletResponseWrapper {
+
+		private final HttpServletRequest request;
+
+		private ResourceUrlProvider resourceUrlProvider;
+
+		private boolean resourceUrlProviderLookedUp = false;
+
+		public ResourceUrlEncodingResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+			super(response);
+			this.request = request;
+		}
+
+		@Override
+		public String encodeURL(String url) {
+			ResourceUrlProvider resourceUrlProvider = getResourceUrlProvider();
+			if (resourceUrlProvider != null) {
+				String versionedUrl = resourceUrlProvider.getForRequestUrl(this.request, url);
+				if (versionedUrl != null) {
+					return super.encodeURL(versionedUrl);
+				}
+			}
+			return super.encodeURL(url);
+		}
+
+		private ResourceUrlProvider getResourceUrlProvider() {
+			if (!this.resourceUrlProviderLookedUp) {
+				ApplicationContext context = (ApplicationContext)
+						this.request.getAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+				if (context == null) {
+					// not within a DispatcherServlet request (yet)
+					return null;
+				}
+				Map<String, ResourceUrlProvider> providers = context.getBeansOfType(ResourceUrlProvider.class);
+				if (!providers.isEmpty()) {
+					this.resourceUrlProvider = providers.values().iterator().next();
+				}
+				this.resourceUrlProviderLookedUp = true;
+			}
+			return this.resourceUrlProvider;
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.OrderComparator;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.servlet.handler.AbstractUrlHandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * Helper that translates public resource URLs into versioned URLs served by a
+ * {@link ResourceHttpRequestHandler} with a {@link ContentVersionStrategy}, for use in views.
+ *
+ * <p>The URL patterns and the handlers serving them may be specified through the
+ * {@linkplain #setHandlerMap "handlerMap" property}. Otherwise, they are detected in the
+ * {@link AbstractUrlHandlerMapping} beans of the application context once it is refreshed,
+ * e.g. as registered through the {@code <mvc:resources/>} XML configuration element.
+ *
+ * <p>Typically used through a {@link ResourceUrlEncodingFilter}, which applies this
+ * provider to all URLs encoded through {@link javax.servlet.http.HttpServletResponse#encodeURL},
+ * such as the URLs rendered by the {@code <spring:url>} tag.
+ *
+ * @since 3.1
+ * @see ResourceHttpRequestHandler#getVersionedPath
+ */
+public class ResourceUrlProvider implements ApplicationListener<ContextRefreshedEvent> {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	private PathMatcher pathMatcher = new AntPathMatcher();
+
+	/** Unmodifiable map of URL patterns to handlers, replaced as a whole on refresh */
+	private volatile Map<String, ResourceHttpRequestHandler> handlerMap = Collections.emptyMap();
+
+	private volatile boolean autodetect = true;
+
+
+	/**
+	 * Set the {@link UrlPathHelper} to use for determining the lookup path of request URLs.
+	 * <p>Should match the UrlPathHelper of the handler mappings that map the resource handlers.
+	 */
+	public void setUrlPathHelper(UrlPathHelper urlPathHelper) {
+		Assert.notNull(urlPathHelper, "UrlPathHelper must not be null");
+		this.urlPathHelper = urlPathHelper;
+	}
+
+	/**
+	 * Set the {@link PathMatcher} to use for matching lookup paths against the URL patterns.
+	 * <p>Default is an {@link AntPathMatcher}.
+	 */
+	public void setPathMatcher(PathMatcher pathMatcher) {
+		Assert.notNull(pathMatcher, "PathMatcher must not be null");
+		this.pathMatcher = pathMatcher;
+	}
+
+	/**
+	 * Specify the URL patterns and the resource handlers serving them, switching off the
+	 * detection of resource handlers in the application context.
+	 * <p>Only handlers with a {@link ContentVersionStrategy} produce versioned URLs.
+	 */
+	public void setHandlerMap(Map<String, ResourceHttpRequestHandler> handlerMap) {
+		this.handlerMap = Collections.unmodifiableMap(new LinkedHashMap<String, ResourceHttpRequestHandler>(handlerMap));
+		this.autodetect = false;
+	}
+
+	/**
+	 * Return the URL patterns and the resource handlers serving them.
+	 */
+	public Map<String, ResourceHttpRequestHandler> getHandlerMap() {
+		return this.handlerMap;
+	}
+
+
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (this.autodetect) {
+			Map<String, ResourceHttpRequestHandler> handlerMap = new LinkedHashMap<String, ResourceHttpRequestHandler>();
+			detectResourceHandlers(event.getApplicationContext(), handlerMap);
+			this.handlerMap = Collections.unmodifiableMap(handlerMap);
+		}
+	}
+
+	/**
+	 * Register the resource handlers with a {@link ContentVersionStrategy}
+	 * of all URL handler mappings in the given application context, in order.
+	 * <p>The given map is published once fully populated, so that concurrent
+	 * lookups never see a partially detected set of handlers.
+	 * @param applicationContext the application context to search
+	 * @param handlerMap the map to register the URL patterns and handlers in
+	 */
+	protected void detectResourceHandlers(ApplicationContext applicationContext,
+			Map<String, ResourceHttpRequestHandler> handlerMap) {
+
+		Map<String, AbstractUrlHandlerMapping> beans = BeanFactoryUtils.beansOfTypeIncludingAncestors(
+				applicationContext, AbstractUrlHandlerMapping.class, true, false);
+		List<AbstractUrlHandlerMapping> handlerMappings = new ArrayList<AbstractUrlHandlerMapping>(beans.values());
+		OrderComparator.sort(handlerMappings);
+		for (AbstractUrlHandlerMapping handlerMapping : handlerMappings) {
+			for (Map.Entry<String, Object> entry : handlerMapping.getHandlerMap().entrySet()) {
+				if (entry.getValue() instanceof ResourceHttpRequestHandler) {
+					ResourceHttpRequestHandler handler = (ResourceHttpRequestHandler) entry.getValue();
+					if (handler.getVersionStrategy() != null && !handlerMap.containsKey(entry.getKey())) {
+						handlerMap.put(entry.getKey(), handler);
+					}
+				}
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Detected versioned resource handlers for URL patterns " + handlerMap.keySet());
+		}
+	}
+
+
+	/**
+	 * Return the versioned URL for the given URL of the current request's application,
+	 * e.g. as passed to {@link javax.servlet.http.HttpServletResponse#encodeURL}.
+	 * @param request the current request
+	 * @param requestUrl the URL to translate, including context path and servlet path
+	 * @return the versioned URL, or <code>null</code> if the URL does not refer to a versioned resource
+	 */
+	public String getForRequestUrl(HttpServletRequest request, String requestUrl) {
+		String lookupPath = this.urlPathHelper.getLookupPathForRequest(request);
+		String requestUri = this.urlPathHelper.getRequestUri(request);
+		int lookupPathIndex = requestUri.lastIndexOf(lookupPath);
+		if (lookupPathIndex == -1) {
+			return null;
+		}
+		String prefix = requestUri.substring(0, lookupPathIndex);
+		if (!requestUrl.startsWith(prefix)) {
+			return null;
+		}
+		int suffixIndex = requestUrl.length();
+		int queryIndex = requestUrl.indexOf('?');
+		if (queryIndex != -1) {
+			suffixIndex = queryIndex;
+		}
+		int fragmentIndex = requestUrl.indexOf('#');
+		if (fragmentIndex != -1 && fragmentIndex < suffixIndex) {
+			suffixIndex = fragmentIndex;
+		}
+		String versionedPath = getForLookupPath(requestUrl.substring(prefix.length(), suffixIndex));
+		return (versionedPath != null ? prefix + versionedPath + requestUrl.substring(suffixIndex) : null);
+	}
+
+	/**
+	 * Return the versioned variant of the given lookup path, i.e. the path within the application
+	 * or within the servlet mapping, as determined by the {@link UrlPathHelper}.
+	 * @param lookupPath the lookup path to translate
+	 * @return the versioned lookup path, or <code>null</code> if no resource handler
+	 * with a {@link ContentVersionStrategy} matches the given path
+	 */
+	public String getForLookupPath(String lookupPath) {
+		Map<String, ResourceHttpRequestHandler> handlerMap = this.handlerMap;
+		List<String> matchingPatterns = new ArrayList<String>();
+		for (String pattern : handlerMap.keySet()) {
+			if (this.pathMatcher.match(pattern, lookupPath)) {
+				matchingPatterns.add(pattern);
+			}
+		}
+		Collections.sort(matchingPatterns, this.pathMatcher.getPatternComparator(lookupPath));
+		for (String pattern : matchingPatterns) {
+			String pathWithinMapping = this.pathMatcher.extractPathWithinPattern(pattern, lookupPath);
+			String pathMapping = lookupPath.substring(0, lookupPath.length() - pathWithinMapping.length());
+			ResourceHttpRequestHandler handler = handlerMap.get(pattern);
+			try {
+				String versionedPath = handler.getVersionedPath(pathWithinMapping);
+				if (versionedPath != null) {
+					return pathMapping + versionedPath;
+				}
+			}
+			catch (IOException ex) {
+				logger.debug("Failed to determine version of resource [" + pathWithinMapping + "]", ex);
+			}
+		}
+		return null;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,9 +16,13 @@
 
 package org.springframework.web.servlet.view;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.web.context.support.WebApplicationObjectSupport;
 import org.springframework.web.servlet.View;
@@ -30,6 +34,11 @@ import org.springframework.web.servlet.ViewResolver;
  * once resolved: This means that view resolution won't be a performance problem,
  * no matter how costly initial view retrieval is.
  *
+ * <p>Cached views are looked up without locking. Creation of a view only blocks
+ * concurrent requests for the same view, not the rendering of other views.
+ * The number of cached views is {@linkplain #setCacheLimit limited}, and view names
+ * that cannot be resolved are {@linkplain #setCacheUnresolved cached} as well.
+ *
  * <p>Subclasses need to implement the {@link #loadView} template method,
  * building the View object for a specific view name and locale.
  *
@@ -39,28 +48,99 @@ import org.springframework.web.servlet.ViewResolver;
  */
 public abstract class AbstractCachingViewResolver extends WebApplicationObjectSupport implements ViewResolver {
 
-	/** Whether we should cache views, once resolved */
-	private boolean cache = true;
+	/** Default maximum number of entries for the view cache: 1024 */
+	public static final int DEFAULT_CACHE_LIMIT = 1024;
+
+	/** Dummy marker object for unresolved views in the cache Maps */
+	private static final View UNRESOLVED_VIEW = new View() {
+		public String getContentType() {
+			return null;
+		}
+		public void render(Map<String, ?> model, HttpServletRequest request, HttpServletResponse response) {
+		}
+	};
+
+
+	/** The maximum number of entries in the cache */
+	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	/** Whether we should refrain from resolving views again if unresolved once */
+	private boolean cacheUnresolved = true;
+
+	/** Fast access cache for Views, returning already cached instances without a global lock */
+	private final Map<Object, View> viewAccessCache = new ConcurrentHashMap<Object, View>(DEFAULT_CACHE_LIMIT);
 
-	/** Map from view key to View instance */
-	private final Map<Object, View> viewCache = new HashMap<Object, View>();
+	/** Map from view key to View instance, in creation order, enforcing the cache limit */
+	@SuppressWarnings("serial")
+	private final Map<Object, View> viewCreationCache =
+			new LinkedHashMap<Object, View>(DEFAULT_CACHE_LIMIT, 0.75f) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, View> eldest) {
+					if (size() > getCacheLimit()) {
+						viewAccessCache.remove(eldest.getKey());
+						return true;
+					}
+					else {
+						return false;
+					}
+				}
+			};
+
+	/** Locks for views currently being created, by view key */
+	private final ConcurrentMap<Object, Object> viewCreationLocks = new ConcurrentHashMap<Object, Object>();
 
 
+	/**
+	 * Specify the maximum number of entries for the view cache.
+	 * <p>Default is 1024. A value of 0 switches caching off.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		this.cacheLimit = cacheLimit;
+	}
+
+	/**
+	 * Return the maximum number of entries for the view cache.
+	 */
+	public int getCacheLimit() {
+		return this.cacheLimit;
+	}
+
 	/**
 	 * Enable or disable caching.
+	 * <p>This is equivalent to setting the {@link #setCacheLimit "cacheLimit"}
+	 * property to the default limit (1024) or to 0, respectively.
 	 * <p>Default is "true": caching is enabled.
 	 * Disable this only for debugging and development.
 	 * <p><b>Warning: Disabling caching can severely impact performance.</b>
 	 */
 	public void setCache(boolean cache) {
-		this.cache = cache;
+		this.cacheLimit = (cache ? DEFAULT_CACHE_LIMIT : 0);
 	}
 
 	/**
 	 * Return if caching is enabled.
 	 */
 	public boolean isCache() {
-		return this.cache;
+		return (this.cacheLimit > 0);
+	}
+
+	/**
+	 * Whether a view name once resolved to <code>null</code> should be cached and
+	 * automatically resolved to <code>null</code> subsequently.
+	 * <p>Default is "true": unresolved view names are cached. This avoids repeated
+	 * lookups of view names that this resolver cannot handle, e.g. within a chain of
+	 * resolvers or for the file extension candidates of a ContentNegotiatingViewResolver.
+	 * Set this to "false" if views may be added at runtime, without a cache refresh.
+	 */
+	public void setCacheUnresolved(boolean cacheUnresolved) {
+		this.cacheUnresolved = cacheUnresolved;
+	}
+
+	/**
+	 * Return if caching of unresolved views is enabled.
+	 */
+	public boolean isCacheUnresolved() {
+		return this.cacheUnresolved;
 	}
 
 
@@ -70,18 +150,40 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 		}
 		else {
 			Object cacheKey = getCacheKey(viewName, locale);
-			synchronized (this.viewCache) {
-				View view = this.viewCache.get(cacheKey);
-				if (view == null) {
-					// Ask the subclass to create the View object.
-					view = createView(viewName, locale);
-					this.viewCache.put(cacheKey, view);
-					if (logger.isTraceEnabled()) {
-						logger.trace("Cached view [" + cacheKey + "]");
+			View view = this.viewAccessCache.get(cacheKey);
+			if (view == null) {
+				Object lock = new Object();
+				Object existingLock = this.viewCreationLocks.putIfAbsent(cacheKey, lock);
+				if (existingLock != null) {
+					lock = existingLock;
+				}
+				try {
+					synchronized (lock) {
+						// Another thread might have created the view in the meantime.
+						view = this.viewAccessCache.get(cacheKey);
+						if (view == null) {
+							// Ask the subclass to create the View object.
+							view = createView(viewName, locale);
+							if (view == null && this.cacheUnresolved) {
+								view = UNRESOLVED_VIEW;
+							}
+							if (view != null) {
+								synchronized (this.viewCreationCache) {
+									this.viewAccessCache.put(cacheKey, view);
+									this.viewCreationCache.put(cacheKey, view);
+								}
+								if (logger.isTraceEnabled()) {
+									logger.trace("Cached view [" + cacheKey + "]");
+								}
+							}
+						}
 					}
 				}
-				return view;
+				finally {
+					this.viewCreationLocks.remove(cacheKey, lock);
+				}
 			}
+			return (view != UNRESOLVED_VIEW ? view : null);
 		}
 	}
 
@@ -106,14 +208,15 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 	 * @param locale the locale for which the view object should be removed
 	 */
 	public void removeFromCache(String viewName, Locale locale) {
-		if (!this.cache) {
+		if (!isCache()) {
 			logger.warn("View caching is SWITCHED OFF -- removal not necessary");			
 		}
 		else {
 			Object cacheKey = getCacheKey(viewName, locale);
 			Object cachedView;
-			synchronized (this.viewCache) {
-				cachedView = this.viewCache.remove(cacheKey);
+			synchronized (this.viewCreationCache) {
+				this.viewAccessCache.remove(cacheKey);
+				cachedView = this.viewCreationCache.remove(cacheKey);
 			}
 			if (cachedView == null) {
 				// Some debug output might be useful...
@@ -135,8 +238,9 @@ public abstract class AbstractCachingViewResolver extends WebApplicationObjectSu
 	 */
 	public void clearCache() {
 		logger.debug("Clearing entire view cache");
-		synchronized (this.viewCache) {
-			this.viewCache.clear();
+		synchronized (this.viewCreationCache) {
+			this.viewAccessCache.clear();
+			this.viewCreationCache.clear();
 		}
 	}
 
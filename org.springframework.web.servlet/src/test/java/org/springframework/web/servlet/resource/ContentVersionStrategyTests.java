@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * @since 3.1
+ */
+public class ContentVersionStrategyTests {
+
+	private final ContentVersionStrategy strategy = new ContentVersionStrategy();
+
+	@Test
+	public void getResourceVersion() throws Exception {
+		Resource resource = new ClassPathResource("test/foo.css", getClass());
+		assertEquals("e36d2e05253c6c7085a91522ce43a0b4", strategy.getResourceVersion(resource));
+		assertEquals("e36d2e05253c6c7085a91522ce43a0b4", strategy.getResourceVersion(resource));
+		assertEquals("5d41402abc4b2a76b9719d911017c592",
+				strategy.getResourceVersion(new ByteArrayResource("hello".getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void addVersion() {
+		assertEquals("css/foo-abc.css", strategy.addVersion("css/foo.css", "abc"));
+		assertEquals("js/foo.min-abc.js", strategy.addVersion("js/foo.min.js", "abc"));
+		assertEquals("a.dir/foo-abc", strategy.addVersion("a.dir/foo", "abc"));
+	}
+
+	@Test
+	public void extractAndRemoveVersion() {
+		String path = "css/foo-e36d2e05253c6c7085a91522ce43a0b4.css";
+		String version = strategy.extractVersion(path);
+		assertEquals("e36d2e05253c6c7085a91522ce43a0b4", version);
+		assertEquals("css/foo.css", strategy.removeVersion(path, version));
+		assertEquals("foo", strategy.removeVersion("foo-e36d2e05253c6c7085a91522ce43a0b4",
+				strategy.extractVersion("foo-e36d2e05253c6c7085a91522ce43a0b4")));
+		assertNull(strategy.extractVersion("css/foo.css"));
+		assertNull(strategy.extractVersion("css/foo-e36d2e05.css"));
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,11 @@
 
 package org.springframework.web.servlet.resource;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import static org.junit.Assert.*;
@@ -26,9 +29,11 @@ import org.junit.Test;
 
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.FileCopyUtils;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.servlet.HandlerMapping;
 
@@ -67,6 +72,30 @@ public class ResourceHttpRequestHandlerTests {
 		assertEquals("h1 { color:red; }", response.getContentAsString());
 	}
 	
+	@Test
+	@SuppressWarnings("deprecation")
+	public void getResourceWithLegacySetHeadersOverride() throws Exception {
+		ResourceHttpRequestHandler legacyHandler = new ResourceHttpRequestHandler() {
+			@Override
+			protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType)
+					throws IOException {
+				super.setHeaders(response, resource, mediaType);
+				response.setHeader("X-Custom", resource.getFilename());
+			}
+		};
+		legacyHandler.setLocations(Collections.<Resource>singletonList(new ClassPathResource("test/", getClass())));
+		legacyHandler.setServletContext(new TestServletContext());
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.setMethod("GET");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		legacyHandler.handleRequest(request, response);
+		assertEquals("foo.css", response.getHeader("X-Custom"));
+		assertEquals("text/css", response.getContentType());
+		assertEquals(17, response.getContentLength());
+		assertEquals("h1 { color:red; }", response.getContentAsString());
+	}
+
 	@Test
 	public void getResourceWithHtmlMediaType() throws Exception {
 		MockHttpServletRequest request = new MockHttpServletRequest();
@@ -190,6 +219,181 @@ public class ResourceHttpRequestHandlerTests {
 		assertEquals(404, response.getStatus());
 	}
 
+	@Test
+	public void getResourceWithETag() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		String eTag = (String) response.getHeader("ETag");
+		assertNotNull(eTag);
+		assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+
+		request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("If-None-Match", eTag);
+		response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void getByteRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Range", "bytes=0-1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 0-1/17", response.getHeader("Content-Range"));
+		assertEquals(2, response.getContentLength());
+		assertEquals("h1", response.getContentAsString());
+	}
+
+	@Test
+	public void getOpenAndSuffixByteRanges() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Range", "bytes=5-");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 5-16/17", response.getHeader("Content-Range"));
+		assertEquals("color:red; }", response.getContentAsString());
+
+		request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Range", "bytes=-3");
+		response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 14-16/17", response.getHeader("Content-Range"));
+		assertEquals("; }", response.getContentAsString());
+	}
+
+	@Test
+	public void unsatisfiableByteRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Range", "bytes=17-20");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */17", response.getHeader("Content-Range"));
+	}
+
+	@Test
+	public void byteRangeWithStaleIfRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Range", "bytes=0-1");
+		request.addHeader("If-Range", "\"stale\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("h1 { color:red; }", response.getContentAsString());
+	}
+
+	@Test
+	public void getGzippedResource() throws Exception {
+		handler.setGzipEnabled(true);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		Resource gzipped = new ClassPathResource("test/foo.css.gz", getClass());
+		assertEquals("text/css", response.getContentType());
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals(gzipped.contentLength(), response.getContentLength());
+		assertArrayEquals(FileCopyUtils.copyToByteArray(gzipped.getInputStream()), response.getContentAsByteArray());
+
+		request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.addHeader("Accept-Encoding", "gzip;q=0");
+		response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals("h1 { color:red; }", response.getContentAsString());
+	}
+
+	@Test
+	public void getCachedResource() throws Exception {
+		final List<String> resolvedPaths = new ArrayList<String>();
+		handler = new ResourceHttpRequestHandler() {
+			@Override
+			protected Resource getResource(HttpServletRequest request) {
+				resolvedPaths.add((String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+				return super.getResource(request);
+			}
+		};
+		handler.setLocations(Collections.<Resource>singletonList(new ClassPathResource("test/", getClass())));
+		handler.setServletContext(new TestServletContext());
+		handler.setCacheResources(true);
+		for (int i = 0; i < 2; i++) {
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+			request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			handler.handleRequest(request, response);
+			assertEquals("h1 { color:red; }", response.getContentAsString());
+		}
+		assertEquals(Collections.singletonList("/foo.css"), resolvedPaths);
+	}
+
+	@Test
+	public void getResourceWithSendfile() throws Exception {
+		handler.setUseSendfile(true);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(17, response.getContentLength());
+		assertEquals(0, response.getContentAsByteArray().length);
+		assertEquals(new ClassPathResource("test/foo.css", getClass()).getFile().getAbsolutePath(),
+				request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(0L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals(17L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+	}
+
+	@Test
+	public void getVersionedResource() throws Exception {
+		handler.setVersionStrategy(new ContentVersionStrategy());
+		assertEquals("/foo-e36d2e05253c6c7085a91522ce43a0b4.css", handler.getVersionedPath("/foo.css"));
+		assertNull(handler.getVersionedPath("/missing.css"));
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE,
+				"/foo-e36d2e05253c6c7085a91522ce43a0b4.css");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(200, response.getStatus());
+		assertEquals("text/css", response.getContentType());
+		assertEquals("max-age=31536000", response.getHeader("Cache-Control"));
+		assertEquals("h1 { color:red; }", response.getContentAsString());
+
+		request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "/foo.css");
+		response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals("max-age=3600, must-revalidate", response.getHeader("Cache-Control"));
+	}
+
+	@Test
+	public void getVersionedResourceWithOutdatedVersion() throws Exception {
+		handler.setVersionStrategy(new ContentVersionStrategy());
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE,
+				"/foo-00000000000000000000000000000000.css");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		assertEquals(404, response.getStatus());
+	}
+
 
 	private static class TestServletContext extends MockServletContext {
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.IOException;
+import java.util.Collections;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * @since 3.1
+ */
+public class ResourceUrlEncodingFilterTests {
+
+	@Test
+	public void encodeURL() throws Exception {
+		ResourceHttpRequestHandler handler = new ResourceHttpRequestHandler();
+		handler.setLocations(Collections.<Resource>singletonList(new ClassPathResource("test/", getClass())));
+		handler.setVersionStrategy(new ContentVersionStrategy());
+		StaticWebApplicationContext context = new StaticWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.refresh();
+		ResourceUrlProvider provider = new ResourceUrlProvider();
+		provider.setHandlerMap(Collections.singletonMap("/resources/**", handler));
+		context.getBeanFactory().registerSingleton("resourceUrlProvider", provider);
+
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/page");
+		request.setContextPath("/app");
+		request.setServletPath("/page");
+		request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+		new ResourceUrlEncodingFilter().doFilter(request, new MockHttpServletResponse(), new FilterChain() {
+			public void doFilter(ServletRequest filterRequest, ServletResponse filterResponse)
+					throws IOException, ServletException {
+				HttpServletResponse response = (HttpServletResponse) filterResponse;
+				assertEquals("/app/resources/foo-e36d2e05253c6c7085a91522ce43a0b4.css",
+						response.encodeURL("/app/resources/foo.css"));
+				assertEquals("/app/other/foo.css", response.encodeURL("/app/other/foo.css"));
+			}
+		});
+	}
+
+	@Test
+	public void encodeURLWithoutApplicationContext() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/page");
+		new ResourceUrlEncodingFilter().doFilter(request, new MockHttpServletResponse(), new FilterChain() {
+			public void doFilter(ServletRequest filterRequest, ServletResponse filterResponse) {
+				HttpServletResponse response = (HttpServletResponse) filterResponse;
+				assertEquals("/app/resources/foo.css", response.encodeURL("/app/resources/foo.css"));
+			}
+		});
+	}
+
+}
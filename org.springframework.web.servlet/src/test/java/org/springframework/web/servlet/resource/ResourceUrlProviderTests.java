@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+
+/**
+ * @since 3.1
+ */
+public class ResourceUrlProviderTests {
+
+	private ResourceHttpRequestHandler handler;
+
+	@Before
+	public void setUp() {
+		handler = new ResourceHttpRequestHandler();
+		handler.setLocations(Collections.<Resource>singletonList(new ClassPathResource("test/", getClass())));
+		handler.setVersionStrategy(new ContentVersionStrategy());
+	}
+
+	@Test
+	public void getForLookupPath() {
+		ResourceUrlProvider provider = new ResourceUrlProvider();
+		provider.setHandlerMap(Collections.singletonMap("/resources/**", handler));
+		assertEquals("/resources/foo-e36d2e05253c6c7085a91522ce43a0b4.css",
+				provider.getForLookupPath("/resources/foo.css"));
+		assertNull(provider.getForLookupPath("/resources/missing.css"));
+		assertNull(provider.getForLookupPath("/other/foo.css"));
+	}
+
+	@Test
+	public void getForRequestUrl() {
+		ResourceUrlProvider provider = new ResourceUrlProvider();
+		provider.setHandlerMap(Collections.singletonMap("/resources/**", handler));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/main/page");
+		request.setContextPath("/app");
+		request.setServletPath("/main");
+		request.setPathInfo("/page");
+		assertEquals("/app/main/resources/foo-e36d2e05253c6c7085a91522ce43a0b4.css?v=1#top",
+				provider.getForRequestUrl(request, "/app/main/resources/foo.css?v=1#top"));
+		assertNull(provider.getForRequestUrl(request, "/app/other/resources/foo.css"));
+		assertNull(provider.getForRequestUrl(request, "/app/main/resources/missing.css"));
+	}
+
+	@Test
+	public void detectResourceHandlers() {
+		Map<String, Object> urlMap = new HashMap<String, Object>();
+		urlMap.put("/resources/**", handler);
+		urlMap.put("/plain/**", new ResourceHttpRequestHandler());
+		StaticWebApplicationContext context = new StaticWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.registerSingleton("handlerMapping", SimpleUrlHandlerMapping.class);
+		context.getBeanFactory().getBeanDefinition("handlerMapping").getPropertyValues().add("urlMap", urlMap);
+		context.registerSingleton("resourceUrlProvider", ResourceUrlProvider.class);
+		context.refresh();
+
+		ResourceUrlProvider provider = context.getBean(ResourceUrlProvider.class);
+		assertEquals(Collections.singleton("/resources/**"), provider.getHandlerMap().keySet());
+		assertSame(handler, provider.getHandlerMap().get("/resources/**"));
+
+		// A refresh publishes a new map, leaving the one obtained before untouched
+		Map<String, ResourceHttpRequestHandler> handlerMap = provider.getHandlerMap();
+		provider.onApplicationEvent(new ContextRefreshedEvent(context));
+		assertNotSame(handlerMap, provider.getHandlerMap());
+		assertEquals(handlerMap, provider.getHandlerMap());
+		assertSame(handler, handlerMap.get("/resources/**"));
+	}
+
+}
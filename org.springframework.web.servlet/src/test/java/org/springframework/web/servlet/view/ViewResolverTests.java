@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,9 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -497,6 +500,86 @@ public class ViewResolverTests {
 		}
 	}
 
+	@Test
+	public void testCacheUnresolved() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		assertNull(vr.resolveViewName("unresolvable", Locale.ENGLISH));
+		assertNull(vr.resolveViewName("unresolvable", Locale.ENGLISH));
+		assertEquals(1, vr.loadCount.get());
+
+		vr.setCacheUnresolved(false);
+		vr.clearCache();
+		assertNull(vr.resolveViewName("unresolvable", Locale.ENGLISH));
+		assertNull(vr.resolveViewName("unresolvable", Locale.ENGLISH));
+		assertEquals(3, vr.loadCount.get());
+	}
+
+	@Test
+	public void testCacheLimit() throws Exception {
+		CountingViewResolver vr = new CountingViewResolver();
+		vr.setCacheLimit(2);
+		View view1 = vr.resolveViewName("view1", Locale.ENGLISH);
+		vr.resolveViewName("view2", Locale.ENGLISH);
+		assertSame(view1, vr.resolveViewName("view1", Locale.ENGLISH));
+		assertEquals(2, vr.loadCount.get());
+
+		vr.resolveViewName("view3", Locale.ENGLISH);
+		assertNotSame(view1, vr.resolveViewName("view1", Locale.ENGLISH));
+		assertEquals(4, vr.loadCount.get());
+
+		vr.setCache(false);
+		assertFalse(vr.isCache());
+		vr.resolveViewName("view3", Locale.ENGLISH);
+		assertEquals(5, vr.loadCount.get());
+	}
+
+	@Test
+	public void testViewCreationDoesNotBlockOtherViews() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingViewResolver vr = new CountingViewResolver() {
+			@Override
+			protected View loadView(String viewName, Locale locale) throws Exception {
+				if (viewName.equals("slow")) {
+					loading.countDown();
+					release.await(10, TimeUnit.SECONDS);
+				}
+				return super.loadView(viewName, locale);
+			}
+		};
+		View fast = vr.resolveViewName("fast", Locale.ENGLISH);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					vr.resolveViewName("slow", Locale.ENGLISH);
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+		thread.start();
+		assertTrue(loading.await(10, TimeUnit.SECONDS));
+		assertSame(fast, vr.resolveViewName("fast", Locale.ENGLISH));
+		assertNotNull(vr.resolveViewName("other", Locale.ENGLISH));
+		release.countDown();
+		thread.join();
+		assertEquals(3, vr.loadCount.get());
+	}
+
+
+	private static class CountingViewResolver extends AbstractCachingViewResolver {
+
+		private final AtomicInteger loadCount = new AtomicInteger();
+
+		@Override
+		protected View loadView(String viewName, Locale locale) throws Exception {
+			this.loadCount.incrementAndGet();
+			return (viewName.startsWith("unresolvable") ? null : new InternalResourceView(viewName));
+		}
+	}
+
 
 	public static class TestView extends InternalResourceView {
 
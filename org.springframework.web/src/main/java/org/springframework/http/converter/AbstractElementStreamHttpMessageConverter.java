@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+
+/**
+ * Abstract base class for {@link HttpMessageConverter} implementations that write an {@link ElementStream}
+ * incrementally, serializing one element at a time to the body of the output message.
+ *
+ * <p>The output message body is flushed every {@link #setFlushInterval flushInterval} elements, so that
+ * the container can send the content written so far (typically using chunked transfer encoding) instead
+ * of buffering the complete payload. Element streams are write-only; this converter cannot read.
+ *
+ * <p>Subclasses provide an {@link ElementWriter} per output message through {@link #createElementWriter}.
+ *
+ * @since 3.1
+ * @see ElementStream
+ */
+public abstract class AbstractElementStreamHttpMessageConverter extends AbstractHttpMessageConverter<ElementStream<?>> {
+
+	/** Default number of elements written between flushes: 100 */
+	public static final int DEFAULT_FLUSH_INTERVAL = 100;
+
+	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+
+	/**
+	 * Construct an {@code AbstractElementStreamHttpMessageConverter} with multiple supported media types.
+	 * @param supportedMediaTypes the supported media types
+	 */
+	protected AbstractElementStreamHttpMessageConverter(MediaType... supportedMediaTypes) {
+		super(supportedMediaTypes);
+	}
+
+
+	/**
+	 * Set the number of elements to write before flushing the output message body.
+	 * Default is {@link #DEFAULT_FLUSH_INTERVAL}.
+	 */
+	public void setFlushInterval(int flushInterval) {
+		Assert.isTrue(flushInterval > 0, "'flushInterval' must be larger than 0");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Return the number of elements to write before flushing the output message body.
+	 */
+	public int getFlushInterval() {
+		return this.flushInterval;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Element streams are write-only, so this implementation always returns {@code false}.
+	 */
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return ElementStream.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	protected ElementStream<?> readInternal(Class<? extends ElementStream<?>> clazz, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+
+		// should not be called, since canRead always returns false
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected final void writeInternal(ElementStream<?> elementStream, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+
+		try {
+			ElementWriter elementWriter = createElementWriter(outputMessage);
+			elementWriter.writeStart();
+			int count = 0;
+			for (Object element : elementStream) {
+				elementWriter.writeElement(element);
+				if (++count % this.flushInterval == 0) {
+					elementWriter.flush();
+					outputMessage.getBody().flush();
+				}
+			}
+			elementWriter.writeEnd();
+			elementWriter.flush();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Written " + count + " elements from " + elementStream);
+			}
+		}
+		finally {
+			elementStream.close();
+		}
+	}
+
+	/**
+	 * Create an {@link ElementWriter} that writes to the body of the given output message.
+	 * Called once per {@link ElementStream} written.
+	 * @param outputMessage the message to write to
+	 * @return the element writer
+	 * @throws IOException in case of I/O errors
+	 */
+	protected abstract ElementWriter createElementWriter(HttpOutputMessage outputMessage) throws IOException;
+
+
+	/**
+	 * Callback that serializes the elements of a single {@link ElementStream} to an output message.
+	 */
+	protected interface ElementWriter {
+
+		/**
+		 * Write any content that precedes the first element, e.g. an opening bracket or root tag.
+		 */
+		void writeStart() throws IOException;
+
+		/**
+		 * Write a single element.
+		 * @param element the element to write (may be {@code null})
+		 */
+		void writeElement(Object element) throws IOException;
+
+		/**
+		 * Write any content that follows the last element, e.g. a closing bracket or root tag.
+		 */
+		void writeEnd() throws IOException;
+
+		/**
+		 * Flush any content buffered by this writer to the output message body.
+		 */
+		void flush() throws IOException;
+	}
+
+}
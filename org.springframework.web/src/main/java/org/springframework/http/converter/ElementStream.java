@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.springframework.util.Assert;
+
+/**
+ * Write-only message body that represents a sequence of elements, serialized one by one
+ * instead of materializing the whole payload up front.
+ *
+ * <p>Returned from a {@code @ResponseBody} handler method (or used as the body of an
+ * {@link org.springframework.http.HttpEntity HttpEntity}), an {@code ElementStream} is picked up by an
+ * {@link AbstractElementStreamHttpMessageConverter} which writes each element straight to the response
+ * body, flushing periodically. This allows large exports to be rendered in constant memory.
+ *
+ * <p>An element stream can only be iterated once. If the underlying {@link Iterable} or {@link Iterator}
+ * implements {@link Closeable}, it will be closed once the stream has been written.
+ *
+ * @since 3.1
+ * @param <T> the element type
+ * @see AbstractElementStreamHttpMessageConverter
+ */
+public class ElementStream<T> implements Iterable<T> {
+
+	private final Object source;
+
+	private Iterator<? extends T> iterator;
+
+
+	/**
+	 * Create a new {@code ElementStream} for the given elements.
+	 * @param elements the elements to stream
+	 */
+	public ElementStream(Iterable<? extends T> elements) {
+		Assert.notNull(elements, "'elements' must not be null");
+		this.source = elements;
+		this.iterator = elements.iterator();
+	}
+
+	/**
+	 * Create a new {@code ElementStream} for the given element iterator.
+	 * @param elements the iterator over the elements to stream
+	 */
+	public ElementStream(Iterator<? extends T> elements) {
+		Assert.notNull(elements, "'elements' must not be null");
+		this.source = elements;
+		this.iterator = elements;
+	}
+
+
+	/**
+	 * Return the iterator over the elements of this stream.
+	 * @throws IllegalStateException if the stream has already been consumed
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized Iterator<T> iterator() {
+		Assert.state(this.iterator != null, "ElementStream has already been consumed");
+		Iterator<T> result = (Iterator<T>) this.iterator;
+		this.iterator = null;
+		return result;
+	}
+
+	/**
+	 * Release the underlying source of elements, if it is {@link Closeable}.
+	 * @throws IOException in case of errors on close
+	 */
+	public void close() throws IOException {
+		if (this.source instanceof Closeable) {
+			((Closeable) this.source).close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ElementStream from [" + this.source + "]";
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+
+/**
+ * Implementation of {@link HttpMessageConverter} that writes an {@link ElementStream} as chunked text,
+ * writing the string representation of each element followed by an {@link #setElementSeparator separator}.
+ *
+ * <p>By default, this converter writes {@code text/plain} using the
+ * {@linkplain StringHttpMessageConverter#DEFAULT_CHARSET default charset} of the {@link StringHttpMessageConverter}.
+ * This can be overridden by setting the {@link #setSupportedMediaTypes(java.util.List) supportedMediaTypes} property.
+ *
+ * @since 3.1
+ */
+public class StringElementStreamHttpMessageConverter extends AbstractElementStreamHttpMessageConverter {
+
+	private String elementSeparator = "\n";
+
+
+	public StringElementStreamHttpMessageConverter() {
+		super(new MediaType("text", "plain", StringHttpMessageConverter.DEFAULT_CHARSET));
+	}
+
+
+	/**
+	 * Set the separator to write after each element. Default is a newline ({@code "\n"}).
+	 */
+	public void setElementSeparator(String elementSeparator) {
+		Assert.notNull(elementSeparator, "'elementSeparator' must not be null");
+		this.elementSeparator = elementSeparator;
+	}
+
+	@Override
+	protected ElementWriter createElementWriter(HttpOutputMessage outputMessage) throws IOException {
+		MediaType contentType = outputMessage.getHeaders().getContentType();
+		Charset charset = (contentType != null && contentType.getCharSet() != null ?
+				contentType.getCharSet() : StringHttpMessageConverter.DEFAULT_CHARSET);
+		final Writer writer = new OutputStreamWriter(outputMessage.getBody(), charset);
+		return new ElementWriter() {
+			public void writeStart() {
+			}
+			public void writeElement(Object element) throws IOException {
+				writer.write(getElementAsString(element));
+				writer.write(elementSeparator);
+			}
+			public void writeEnd() {
+			}
+			public void flush() throws IOException {
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * Return the string representation of the given element.
+	 * <p>The default implementation returns {@link String#valueOf(Object)}, or an empty string for {@code null}.
+	 * Can be overridden in subclasses.
+	 * @param element the element to convert (may be {@code null})
+	 * @return the string to write
+	 */
+	protected String getElementAsString(Object element) {
+		return (element != null ? String.valueOf(element) : "");
+	}
+
+}
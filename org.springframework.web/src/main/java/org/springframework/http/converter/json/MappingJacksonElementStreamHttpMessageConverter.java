@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter.json;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractElementStreamHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.Assert;
+
+/**
+ * Implementation of {@link org.springframework.http.converter.HttpMessageConverter HttpMessageConverter}
+ * that writes an {@link org.springframework.http.converter.ElementStream ElementStream} as a JSON array
+ * using <a href="http://jackson.codehaus.org/">Jackson's</a> {@link ObjectMapper}, serializing one element
+ * at a time to a single {@link JsonGenerator}.
+ *
+ * <p>By default, this converter supports {@code application/json}. This can be overridden by setting the
+ * {@link #setSupportedMediaTypes(java.util.List) supportedMediaTypes} property.
+ *
+ * @since 3.1
+ * @see MappingJacksonHttpMessageConverter
+ */
+public class MappingJacksonElementStreamHttpMessageConverter extends AbstractElementStreamHttpMessageConverter {
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+
+	/**
+	 * Construct a new {@code MappingJacksonElementStreamHttpMessageConverter}.
+	 */
+	public MappingJacksonElementStreamHttpMessageConverter() {
+		super(new MediaType("application", "json", MappingJacksonHttpMessageConverter.DEFAULT_CHARSET));
+	}
+
+	/**
+	 * Sets the {@code ObjectMapper} for this converter. If not set, a default
+	 * {@link ObjectMapper#ObjectMapper() ObjectMapper} is used.
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		Assert.notNull(objectMapper, "'objectMapper' must not be null");
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected ElementWriter createElementWriter(HttpOutputMessage outputMessage) throws IOException {
+		JsonEncoding encoding = getEncoding(outputMessage.getHeaders().getContentType());
+		final JsonGenerator jsonGenerator =
+				this.objectMapper.getJsonFactory().createJsonGenerator(outputMessage.getBody(), encoding);
+		return new ElementWriter() {
+			public void writeStart() throws IOException {
+				jsonGenerator.writeStartArray();
+			}
+			public void writeElement(Object element) throws IOException {
+				try {
+					objectMapper.writeValue(jsonGenerator, element);
+				}
+				catch (JsonGenerationException ex) {
+					throw new HttpMessageNotWritableException("Could not write JSON: " + ex.getMessage(), ex);
+				}
+			}
+			public void writeEnd() throws IOException {
+				jsonGenerator.writeEndArray();
+			}
+			public void flush() throws IOException {
+				jsonGenerator.flush();
+			}
+		};
+	}
+
+	private JsonEncoding getEncoding(MediaType contentType) {
+		if (contentType != null && contentType.getCharSet() != null) {
+			Charset charset = contentType.getCharSet();
+			for (JsonEncoding encoding : JsonEncoding.values()) {
+				if (charset.name().equals(encoding.getJavaName())) {
+					return encoding;
+				}
+			}
+		}
+		return JsonEncoding.UTF8;
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter.xml;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.MarshalException;
+import javax.xml.bind.Marshaller;
+import javax.xml.transform.stream.StreamResult;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractElementStreamHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConversionException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Implementation of {@link org.springframework.http.converter.HttpMessageConverter HttpMessageConverter}
+ * that writes an {@link org.springframework.http.converter.ElementStream ElementStream} as an XML document,
+ * marshalling each element as a JAXB2 fragment within a common {@link #setRootElementName root element}.
+ *
+ * <p>Elements are expected to be annotated with {@link javax.xml.bind.annotation.XmlRootElement XmlRootElement}.
+ * One {@link Marshaller} is used per element class and written stream.
+ *
+ * <p>By default, this converter supports {@code text/xml} and {@code application/xml}. This can be overridden
+ * by setting the {@link #setSupportedMediaTypes(java.util.List) supportedMediaTypes} property.
+ *
+ * @since 3.1
+ * @see Jaxb2RootElementHttpMessageConverter
+ */
+public class Jaxb2ElementStreamHttpMessageConverter extends AbstractElementStreamHttpMessageConverter {
+
+	public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<Class, JAXBContext> jaxbContexts = new ConcurrentHashMap<Class, JAXBContext>();
+
+	private String rootElementName = "elements";
+
+
+	public Jaxb2ElementStreamHttpMessageConverter() {
+		super(MediaType.APPLICATION_XML, MediaType.TEXT_XML);
+	}
+
+
+	/**
+	 * Set the name of the root element that wraps the streamed elements. Default is "elements".
+	 */
+	public void setRootElementName(String rootElementName) {
+		Assert.hasText(rootElementName, "'rootElementName' must not be empty");
+		this.rootElementName = rootElementName;
+	}
+
+	@Override
+	protected ElementWriter createElementWriter(HttpOutputMessage outputMessage) throws IOException {
+		MediaType contentType = outputMessage.getHeaders().getContentType();
+		final Charset charset = (contentType != null && contentType.getCharSet() != null ?
+				contentType.getCharSet() : DEFAULT_CHARSET);
+		final Writer writer = new OutputStreamWriter(outputMessage.getBody(), charset);
+		final StreamResult result = new StreamResult(writer);
+		return new ElementWriter() {
+			private Class lastClass;
+			private Marshaller marshaller;
+			public void writeStart() throws IOException {
+				writer.write("<?xml version=\"1.0\" encoding=\"" + charset.name() + "\"?>");
+				writer.write("<" + rootElementName + ">");
+			}
+			public void writeElement(Object element) throws IOException {
+				if (element == null) {
+					return;
+				}
+				Class clazz = ClassUtils.getUserClass(element);
+				try {
+					if (clazz != this.lastClass) {
+						this.marshaller = createMarshaller(clazz);
+						this.lastClass = clazz;
+					}
+					this.marshaller.marshal(element, result);
+				}
+				catch (MarshalException ex) {
+					throw new HttpMessageNotWritableException(
+							"Could not marshal [" + element + "]: " + ex.getMessage(), ex);
+				}
+				catch (JAXBException ex) {
+					throw new HttpMessageConversionException("Could not instantiate JAXBContext: " + ex.getMessage(), ex);
+				}
+			}
+			public void writeEnd() throws IOException {
+				writer.write("</" + rootElementName + ">");
+			}
+			public void flush() throws IOException {
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * Create a new {@link Marshaller} for the given element class, configured to write fragments.
+	 * @param clazz the element class to create the marshaller for
+	 * @return the {@code Marshaller}
+	 * @throws JAXBException in case of JAXB errors
+	 */
+	protected Marshaller createMarshaller(Class clazz) throws JAXBException {
+		JAXBContext jaxbContext = this.jaxbContexts.get(clazz);
+		if (jaxbContext == null) {
+			jaxbContext = JAXBContext.newInstance(clazz);
+			this.jaxbContexts.putIfAbsent(clazz, jaxbContext);
+		}
+		Marshaller marshaller = jaxbContext.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		return marshaller;
+	}
+
+}
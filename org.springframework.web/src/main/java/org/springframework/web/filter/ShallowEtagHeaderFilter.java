@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2011 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,12 @@ package org.springframework.web.filter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -29,7 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.springframework.util.DigestUtils;
-import org.springframework.util.FileCopyUtils;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.util.WebUtils;
 
 /**
@@ -40,6 +43,14 @@ import org.springframework.web.util.WebUtils;
  * <p>Since the ETag is based on the response content, the response (or {@link org.springframework.web.servlet.View})
  * is still rendered. As such, this filter only saves bandwidth, not server performance.
  *
+ * <p>By default, the complete response body is buffered in order to calculate the ETag. To bound the memory
+ * used per request, a {@linkplain #setMaxEtagContentSize maximum content size} can be set: responses that exceed
+ * it are streamed directly to the client, without an ETag.
+ *
+ * <p>Unless {@link #isEligibleForEtag} or {@link #generateETagHeaderValue} are overridden, the MD5 digest for
+ * the ETag is computed incrementally while the content is being written, and the buffered content is copied to
+ * the response as-is, without creating an intermediate byte array.
+ *
  * @author Arjen Poutsma
  * @since 3.0
  */
@@ -49,19 +60,61 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 
 	private static String HEADER_IF_NONE_MATCH = "If-None-Match";
 
+	private static final String MD5_ALGORITHM_NAME = "MD5";
+
+	private static final char[] HEX_CHARS =
+			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+
+	private int maxEtagContentSize = -1;
+
+	/** Whether a subclass overrides one of the hooks that operate on the response body as byte array */
+	private final boolean bodyArrayRequired = isBodyArrayRequired(getClass());
+
+
+	/**
+	 * Set the maximum response body size, in bytes, for which an ETag is generated.
+	 * <p>Response content is buffered up to this size only; as soon as a response exceeds it, the content
+	 * buffered so far is written to the underlying response, and all further content is passed through
+	 * directly. No ETag is generated for such responses.
+	 * <p>Default is -1, meaning no limit: the entire response body is always buffered.
+	 */
+	public void setMaxEtagContentSize(int maxEtagContentSize) {
+		this.maxEtagContentSize = maxEtagContentSize;
+	}
+
+	/**
+	 * Return the maximum response body size, in bytes, for which an ETag is generated,
+	 * or -1 if not limited.
+	 */
+	public int getMaxEtagContentSize() {
+		return this.maxEtagContentSize;
+	}
+
 
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
 
-		ShallowEtagResponseWrapper responseWrapper = new ShallowEtagResponseWrapper(response);
+		ShallowEtagResponseWrapper responseWrapper = new ShallowEtagResponseWrapper(
+				response, this.maxEtagContentSize, !this.bodyArrayRequired);
 		filterChain.doFilter(request, responseWrapper);
 
-		byte[] body = responseWrapper.toByteArray();
+		if (responseWrapper.isStreaming()) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Response content exceeded " + this.maxEtagContentSize +
+						" bytes, not eligible for ETag");
+			}
+			return;
+		}
+
+		// The body array is only needed (and created) for custom hook implementations.
+		byte[] body = (this.bodyArrayRequired ? responseWrapper.toByteArray() : null);
 		int statusCode = responseWrapper.getStatusCode();
 
 		if (isEligibleForEtag(request, responseWrapper, statusCode, body)) {
-			String responseETag = generateETagHeaderValue(body);
+			String responseETag = (this.bodyArrayRequired ? generateETagHeaderValue(body) :
+					generateETagHeaderValue(responseWrapper.getContentDigest()));
 			response.setHeader(HEADER_ETAG, responseETag);
 
 			String requestETag = request.getHeader(HEADER_IF_NONE_MATCH);
@@ -76,22 +129,51 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 					logger.trace("ETag [" + responseETag + "] not equal to If-None-Match [" + requestETag +
 							"], sending normal response");
 				}
-				copyBodyToResponse(body, response);
+				copyBodyToResponse(responseWrapper, response);
 			}
 		}
 		else {
 			if (logger.isTraceEnabled()) {
 				logger.trace("Response with status code [" + statusCode + "] not eligible for ETag");
 			}
-			copyBodyToResponse(body, response);
+			copyBodyToResponse(responseWrapper, response);
+		}
+	}
+
+	private void copyBodyToResponse(ShallowEtagResponseWrapper responseWrapper, HttpServletResponse response)
+			throws IOException {
+
+		int contentSize = responseWrapper.getContentSize();
+		if (contentSize > 0) {
+			response.setContentLength(contentSize);
+			responseWrapper.writeContentTo(response.getOutputStream());
 		}
 	}
 
-	private void copyBodyToResponse(byte[] body, HttpServletResponse response) throws IOException {
-		if (body.length > 0) {
-			response.setContentLength(body.length);
-			FileCopyUtils.copy(body, response.getOutputStream());
+	/**
+	 * Generate the ETag header value from the given MD5 digest of the response body.
+	 */
+	private String generateETagHeaderValue(MessageDigest contentDigest) {
+		byte[] digest = contentDigest.digest();
+		StringBuilder builder = new StringBuilder(digest.length * 2 + 3);
+		builder.append("\"0");
+		for (byte b : digest) {
+			builder.append(HEX_CHARS[(0xF0 & b) >>> 4]);
+			builder.append(HEX_CHARS[0x0F & b]);
 		}
+		builder.append('"');
+		return builder.toString();
+	}
+
+	/**
+	 * Determine whether the given filter class overrides {@link #isEligibleForEtag} or
+	 * {@link #generateETagHeaderValue}, which both expect the response body as byte array.
+	 */
+	private static boolean isBodyArrayRequired(Class<?> filterClass) {
+		return (ReflectionUtils.isOverridden(filterClass, ShallowEtagHeaderFilter.class, "isEligibleForEtag",
+				HttpServletRequest.class, HttpServletResponse.class, int.class, byte[].class) ||
+				ReflectionUtils.isOverridden(filterClass, ShallowEtagHeaderFilter.class, "generateETagHeaderValue",
+						byte[].class));
 	}
 
 	/**
@@ -100,7 +182,8 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 	 * @param request the HTTP request
 	 * @param response the HTTP response
 	 * @param responseStatusCode the HTTP response status code
-	 * @param responseBody the response body
+	 * @param responseBody the response body; <code>null</code> unless this method or
+	 * {@link #generateETagHeaderValue} are overridden
 	 * @return {@code true} if eligible for ETag generation; {@code false} otherwise
 	 */
 	protected boolean isEligibleForEtag(HttpServletRequest request, HttpServletResponse response,
@@ -128,19 +211,40 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 	 * {@link HttpServletRequest} wrapper that buffers all content written to the
 	 * {@linkplain #getOutputStream() output stream} and {@linkplain #getWriter() writer},
 	 * and allows this content to be retrieved via a {@link #toByteArray() byte array}.
+	 * <p>If a maximum content size is given, content beyond that size is not buffered:
+	 * the wrapper switches to {@linkplain #isStreaming() streaming} it to the underlying response.
 	 */
 	private static class ShallowEtagResponseWrapper extends HttpServletResponseWrapper {
 
 		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
 
+		private final MessageDigest contentDigest;
+
 		private final ServletOutputStream outputStream = new ResponseServletOutputStream();
 
 		private PrintWriter writer;
 
 		private int statusCode = HttpServletResponse.SC_OK;
 
-		private ShallowEtagResponseWrapper(HttpServletResponse response) {
+		private final int maxContentSize;
+
+		private boolean streaming;
+
+		private ShallowEtagResponseWrapper(HttpServletResponse response, int maxContentSize, boolean digestContent) {
 			super(response);
+			this.maxContentSize = maxContentSize;
+			if (digestContent) {
+				try {
+					this.contentDigest = MessageDigest.getInstance(MD5_ALGORITHM_NAME);
+				}
+				catch (NoSuchAlgorithmException ex) {
+					throw new IllegalStateException("Could not find MessageDigest with algorithm \"" +
+							MD5_ALGORITHM_NAME + "\"", ex);
+				}
+			}
+			else {
+				this.contentDigest = null;
+			}
 		}
 
 		@Override
@@ -188,7 +292,13 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 
 		@Override
 		public void resetBuffer() {
+			if (this.streaming) {
+				super.resetBuffer();
+			}
 			this.content.reset();
+			if (this.contentDigest != null) {
+				this.contentDigest.reset();
+			}
 		}
 
 		@Override
@@ -205,23 +315,106 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 			return this.content.toByteArray();
 		}
 
+		private int getContentSize() {
+			return this.content.size();
+		}
+
+		private void writeContentTo(OutputStream out) throws IOException {
+			this.content.writeTo(out);
+		}
+
+		private MessageDigest getContentDigest() {
+			return this.contentDigest;
+		}
+
+		private boolean isStreaming() {
+			return this.streaming;
+		}
+
+		/**
+		 * Write the content buffered so far to the underlying response, and pass all further
+		 * content through to it, if the given number of additional bytes would exceed the limit.
+		 */
+		private void checkContentSize(int additionalBytes) throws IOException {
+			if (!this.streaming && this.maxContentSize >= 0 &&
+					this.content.size() + additionalBytes > this.maxContentSize) {
+				this.streaming = true;
+				this.content.writeTo(getResponse().getOutputStream());
+				this.content.reset();
+			}
+		}
+
+		private void writeContent(int b) throws IOException {
+			checkContentSize(1);
+			if (this.streaming) {
+				getResponse().getOutputStream().write(b);
+			}
+			else {
+				this.content.write(b);
+				if (this.contentDigest != null) {
+					this.contentDigest.update((byte) b);
+				}
+			}
+		}
+
+		private void writeContent(byte[] b, int off, int len) throws IOException {
+			checkContentSize(len);
+			if (this.streaming) {
+				getResponse().getOutputStream().write(b, off, len);
+			}
+			else {
+				this.content.write(b, off, len);
+				if (this.contentDigest != null) {
+					this.contentDigest.update(b, off, len);
+				}
+			}
+		}
+
+		private void flushContent() throws IOException {
+			if (this.streaming) {
+				getResponse().getOutputStream().flush();
+			}
+		}
+
 		private class ResponseServletOutputStream extends ServletOutputStream {
 
 			@Override
 			public void write(int b) throws IOException {
-				content.write(b);
+				writeContent(b);
 			}
 
 			@Override
 			public void write(byte[] b, int off, int len) throws IOException {
-				content.write(b, off, len);
+				writeContent(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				flushContent();
+			}
+		}
+
+		/**
+		 * Target stream for the {@link ResponsePrintWriter}, which flushes after every write
+		 * in order to pass characters on as bytes; these internal flushes are not propagated.
+		 */
+		private class WriterOutputStream extends OutputStream {
+
+			@Override
+			public void write(int b) throws IOException {
+				writeContent(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writeContent(b, off, len);
 			}
 		}
 
 		private class ResponsePrintWriter extends PrintWriter {
 
 			private ResponsePrintWriter(String characterEncoding) throws UnsupportedEncodingException {
-				super(new OutputStreamWriter(content, characterEncoding));
+				super(new OutputStreamWriter(new WriterOutputStream(), characterEncoding));
 			}
 
 			@Override
@@ -241,6 +434,17 @@ public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
 				super.write(c);
 				super.flush();
 			}
+
+			@Override
+			public void flush() {
+				super.flush();
+				try {
+					flushContent();
+				}
+				catch (IOException ex) {
+					setError();
+				}
+			}
 		}
 	}
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.MockHttpOutputMessage;
+
+public class StringElementStreamHttpMessageConverterTests {
+
+	private StringElementStreamHttpMessageConverter converter;
+
+	@Before
+	public void setUp() {
+		converter = new StringElementStreamHttpMessageConverter();
+	}
+
+	@Test
+	public void canRead() {
+		assertFalse(converter.canRead(ElementStream.class, new MediaType("text", "plain")));
+	}
+
+	@Test
+	public void canWrite() {
+		assertTrue(converter.canWrite(ElementStream.class, new MediaType("text", "plain")));
+		assertTrue(converter.canWrite(ElementStream.class, MediaType.ALL));
+		assertFalse(converter.canWrite(String.class, new MediaType("text", "plain")));
+		assertFalse(converter.canWrite(ElementStream.class, MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	public void write() throws IOException {
+		MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+		converter.write(new ElementStream<Object>(Arrays.<Object>asList("foo", 42, null, "bar")), null, outputMessage);
+		assertEquals("foo\n42\n\nbar\n", outputMessage.getBodyAsString(Charset.forName("ISO-8859-1")));
+		assertEquals(new MediaType("text", "plain", StringHttpMessageConverter.DEFAULT_CHARSET),
+				outputMessage.getHeaders().getContentType());
+		assertEquals(-1, outputMessage.getHeaders().getContentLength());
+	}
+
+	@Test
+	public void writeFlushesPeriodically() throws IOException {
+		FlushCountingOutputMessage outputMessage = new FlushCountingOutputMessage();
+		converter.setFlushInterval(2);
+		converter.setElementSeparator(",");
+		converter.write(new ElementStream<String>(Arrays.asList("a", "b", "c", "d", "e")), null, outputMessage);
+		assertEquals("a,b,c,d,e,", new String(outputMessage.body.toByteArray(), "ISO-8859-1"));
+		assertTrue(outputMessage.flushedContent.contains("a,b,"));
+		assertTrue(outputMessage.flushedContent.contains("a,b,c,d,"));
+	}
+
+	@Test
+	public void writeClosesSource() throws IOException {
+		CloseableIterator iterator = new CloseableIterator(Arrays.asList("foo", "bar").iterator());
+		converter.write(new ElementStream<String>(iterator), null, new MockHttpOutputMessage());
+		assertTrue(iterator.closed);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void elementStreamCanOnlyBeConsumedOnce() throws IOException {
+		ElementStream<String> elementStream = new ElementStream<String>(Arrays.asList("foo"));
+		converter.write(elementStream, null, new MockHttpOutputMessage());
+		elementStream.iterator();
+	}
+
+
+	private static class FlushCountingOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private final List<String> flushedContent = new ArrayList<String>();
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public OutputStream getBody() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+					body.write(b);
+				}
+				@Override
+				public void flush() throws IOException {
+					flushedContent.add(new String(body.toByteArray(), "ISO-8859-1"));
+				}
+			};
+		}
+	}
+
+
+	private static class CloseableIterator implements Iterator<String>, Closeable {
+
+		private final Iterator<String> delegate;
+
+		private boolean closed;
+
+		private CloseableIterator(Iterator<String> delegate) {
+			this.delegate = delegate;
+		}
+
+		public boolean hasNext() {
+			return delegate.hasNext();
+		}
+
+		public String next() {
+			return delegate.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+}
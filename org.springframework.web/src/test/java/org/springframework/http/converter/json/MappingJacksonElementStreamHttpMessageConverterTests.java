@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter.json;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MockHttpOutputMessage;
+import org.springframework.http.converter.ElementStream;
+
+public class MappingJacksonElementStreamHttpMessageConverterTests {
+
+	private MappingJacksonElementStreamHttpMessageConverter converter;
+
+	@Before
+	public void setUp() {
+		converter = new MappingJacksonElementStreamHttpMessageConverter();
+	}
+
+	@Test
+	public void canWrite() {
+		assertTrue(converter.canWrite(ElementStream.class, new MediaType("application", "json")));
+		assertFalse(converter.canWrite(Map.class, new MediaType("application", "json")));
+		assertFalse(converter.canRead(ElementStream.class, new MediaType("application", "json")));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void write() throws IOException {
+		converter.setFlushInterval(1);
+		MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+		List<Object> elements = Arrays.<Object>asList(Collections.singletonMap("foo", "bar"), "baz", 42);
+		converter.write(new ElementStream<Object>(elements), null, outputMessage);
+		String result = outputMessage.getBodyAsString(Charset.forName("UTF-8"));
+		assertEquals("[{\"foo\":\"bar\"},\"baz\",42]", result);
+		assertEquals(elements, new ObjectMapper().readValue(result, List.class));
+		assertEquals(new MediaType("application", "json", MappingJacksonHttpMessageConverter.DEFAULT_CHARSET),
+				outputMessage.getHeaders().getContentType());
+	}
+
+	@Test
+	public void writeEmpty() throws IOException {
+		MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+		converter.write(new ElementStream<Object>(Collections.emptyList()), null, outputMessage);
+		assertEquals("[]", outputMessage.getBodyAsString(Charset.forName("UTF-8")));
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.http.converter.xml;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import static org.custommonkey.xmlunit.XMLAssert.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.MockHttpOutputMessage;
+import org.springframework.http.converter.ElementStream;
+
+public class Jaxb2ElementStreamHttpMessageConverterTests {
+
+	private Jaxb2ElementStreamHttpMessageConverter converter;
+
+	@Before
+	public void setUp() {
+		converter = new Jaxb2ElementStreamHttpMessageConverter();
+	}
+
+	@Test
+	public void canWrite() throws Exception {
+		assertTrue(converter.canWrite(ElementStream.class, MediaType.APPLICATION_XML));
+	}
+
+	@Test
+	public void write() throws Exception {
+		converter.setRootElementName("items");
+		MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+		converter.write(new ElementStream<Item>(Arrays.asList(new Item("foo"), new Item("bar"))), null,
+				outputMessage);
+		assertEquals("Invalid content-type", MediaType.APPLICATION_XML, outputMessage.getHeaders().getContentType());
+		assertXMLEqual("Invalid result", "<items><item name=\"foo\"/><item name=\"bar\"/></items>",
+				outputMessage.getBodyAsString(Charset.forName("UTF-8")));
+	}
+
+
+	@XmlRootElement
+	public static class Item {
+
+		@XmlAttribute
+		public String name;
+
+		public Item() {
+		}
+
+		public Item(String name) {
+			this.name = name;
+		}
+	}
+
+}